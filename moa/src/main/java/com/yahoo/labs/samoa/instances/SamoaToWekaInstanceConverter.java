@@ -28,6 +28,9 @@ public class SamoaToWekaInstanceConverter implements Serializable {
     /** The weka instance information. */
     protected weka.core.Instances wekaInstanceInformation;
 
+    /** The header that the weka instance information was created for. */
+    protected Instances samoaInstanceInformation;
+
      /**
      * Weka instance.
      *
@@ -59,12 +62,21 @@ public class SamoaToWekaInstanceConverter implements Serializable {
             wekaInstance.setDataset(wekaInstanceInformation);
             wekaInstance.setClassValue(inst.classValue());*/
         }
+        Instances header = inst.dataset();
         if (this.wekaInstanceInformation == null) {
-            this.wekaInstanceInformation = this.wekaInstancesInformation(inst.dataset());
+            this.wekaInstanceInformation = this.wekaInstancesInformation(header);
+            this.samoaInstanceInformation = header;
+        } else if (header != null && header != this.samoaInstanceInformation) {
+            // Another header object, only converted again if it has other attributes
+            if (!isSameHeader(header)) {
+                this.wekaInstanceInformation = this.wekaInstancesInformation(header);
+            }
+            this.samoaInstanceInformation = header;
         }
         //wekaInstance.insertAttributeAt(inst.classIndex());
         wekaInstance.setDataset(wekaInstanceInformation);
-        if (inst.numOutputAttributes() == 1){
+        if (inst.numOutputAttributes() == 1 && wekaInstance instanceof weka.core.SparseInstance) {
+            // Dense values already hold the class value, and setting it would copy them
             wekaInstance.setClassValue(inst.classValue());
         }
         
@@ -81,12 +93,39 @@ public class SamoaToWekaInstanceConverter implements Serializable {
         weka.core.Instances wekaInstances = wekaInstancesInformation(instances);
         //We assume that we have only one WekaInstanceInformation for SamoaToWekaInstanceConverter
         this.wekaInstanceInformation = wekaInstances;
+        this.samoaInstanceInformation = instances;
         for (int i = 0; i < instances.numInstances(); i++) {
             wekaInstances.add(wekaInstance(instances.instance(i)));
         }
         return wekaInstances;
     }
 
+    /**
+     * Checks whether a header has the same attributes as the cached weka
+     * instance information, so that the information can be used for its
+     * instances as well.
+     *
+     * @param header the header
+     * @return true if the attributes and the class are the same
+     */
+    protected boolean isSameHeader(Instances header) {
+        if (header.numAttributes() != this.wekaInstanceInformation.numAttributes()
+                || header.instanceInformation.numOutputAttributes() != 1
+                || header.classIndex() != this.wekaInstanceInformation.classIndex()) {
+            return false;
+        }
+        for (int i = 0; i < header.numAttributes(); i++) {
+            Attribute attribute = header.attribute(i);
+            weka.core.Attribute wekaAttribute = this.wekaInstanceInformation.attribute(i);
+            if (attribute.isNominal() != wekaAttribute.isNominal()
+                    || !attribute.name().equals(wekaAttribute.name())
+                    || (attribute.isNominal() && attribute.numValues() != wekaAttribute.numValues())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
      /**
      * Weka instances information.
      *
@@ -61,14 +61,22 @@ public class NaiveBayes extends AbstractClassifier  implements MultiClassClassif
 
     protected AutoExpandVector<AttributeClassObserver> attributeObservers;
 
+    // Derived from the class distribution and the observers, so created again
+    // rather than serialized
+    protected transient NaiveBayesParameterCache parameterCache;
+
     @Override
     public void resetLearningImpl() {
         this.observedClassDistribution = new DoubleVector();
         this.attributeObservers = new AutoExpandVector<AttributeClassObserver>();
+        this.parameterCache = null;
     }
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
+        if (this.parameterCache != null) {
+            this.parameterCache.invalidate((int) inst.classValue());
+        }
         this.observedClassDistribution.addToValue((int) inst.classValue(), inst.weight());
         for (int i = 0; i < inst.numAttributes() - 1; i++) {
             int instAttIndex = modelAttIndexToInstanceAttIndex(i, inst);
@@ -84,8 +92,11 @@ public class NaiveBayes extends AbstractClassifier  implements MultiClassClassif
 
     @Override
     public double[] getVotesForInstance(Instance inst) {
-        return doNaiveBayesPrediction(inst, this.observedClassDistribution,
-                this.attributeObservers);
+        if (this.parameterCache == null) {
+            this.parameterCache = new NaiveBayesParameterCache();
+        }
+        return this.parameterCache.doNaiveBayesPrediction(inst,
+                this.observedClassDistribution, this.attributeObservers);
     }
 
     @Override
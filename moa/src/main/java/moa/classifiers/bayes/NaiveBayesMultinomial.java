@@ -26,7 +26,7 @@ import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
-import moa.core.DoubleVector;
+import moa.core.IntIndexMap;
 import moa.core.Measurement;
 import moa.core.StringUtils;
 import moa.core.Utils;
@@ -92,11 +92,32 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
      */
     protected double[] m_probOfClass;
 
+    /**
+     * the index of every word attribute seen in training in m_wordTotalForClass
+     */
+    protected IntIndexMap m_wordIndices;
+
     /**
      * probability that a word (w) exists in a class (H) (i.e. Pr[w|H]) The
-     * matrix is in the this format: m_wordTotalForClass[wordAttribute][class]
+     * array is in the this format: m_wordTotalForClass[wordIndex * m_numClasses + class]
+     * where wordIndex is the index of the word attribute in m_wordIndices
+     */
+    protected double[] m_wordTotalForClass;
+
+    /**
+     * logarithms of m_wordTotalForClass, with the Laplace correction for zero
+     * totals, computed when needed by predictions. NaN where the total has
+     * changed since
      */
-    protected DoubleVector[] m_wordTotalForClass;
+    protected double[] m_logWordTotalForClass;
+
+    /**
+     * logarithms of m_probOfClass and m_classTotals, computed when needed by
+     * predictions. NaN where the value has changed since
+     */
+    protected double[] m_logProbOfClass;
+
+    protected double[] m_logClassTotals;
 
     protected boolean reset = false;
 
@@ -123,11 +144,15 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
             m_classTotals = new double[m_numClasses];
             Arrays.fill(m_classTotals, laplace * numAttributes);
 
-            m_wordTotalForClass = new DoubleVector[m_numClasses];
-            for (int i = 0; i< m_numClasses; i++) {
-                //Arrays.fill(wordTotal, laplace);
-                m_wordTotalForClass[i] = new DoubleVector();
-            }
+            m_wordIndices = new IntIndexMap();
+            m_wordTotalForClass = new double[m_wordIndices.capacity() * m_numClasses];
+            m_logWordTotalForClass = new double[m_wordTotalForClass.length];
+            Arrays.fill(m_logWordTotalForClass, Double.NaN);
+
+            m_logProbOfClass = new double[m_numClasses];
+            m_logClassTotals = new double[m_numClasses];
+            Arrays.fill(m_logProbOfClass, Double.NaN);
+            Arrays.fill(m_logClassTotals, Double.NaN);
             this.reset = false;
         }
         // Update classifier
@@ -136,19 +161,32 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
 
         double w = inst.weight();
         m_probOfClass[classValue] += w;
+        m_logProbOfClass[classValue] = Double.NaN;
 
         m_classTotals[classValue] += w * totalSize(inst);
-        double total = m_classTotals[classValue];
+        m_logClassTotals[classValue] = Double.NaN;
 
+        // Only non-zero values are stored: a zero count leaves the total
+        // unchanged, and the Laplace correction is added with the first
+        // non-zero count instead
         for (int i = 0; i < inst.numValues(); i++) {
             int index = inst.index(i);
-            if (index != classIndex && !inst.isMissing(i)) {
-                //m_wordTotalForClass[index][classValue] += w * inst.valueSparse(i);
+            double wordCount = inst.valueSparse(i);
+            if (index != classIndex && wordCount != 0 && !Double.isNaN(wordCount)) {
+                int wordIndex = m_wordIndices.add(index);
+                if (m_wordIndices.capacity() * m_numClasses > m_wordTotalForClass.length) {
+                    int length = m_wordTotalForClass.length;
+                    m_wordTotalForClass = Arrays.copyOf(m_wordTotalForClass, m_wordIndices.capacity() * m_numClasses);
+                    m_logWordTotalForClass = Arrays.copyOf(m_logWordTotalForClass, m_wordTotalForClass.length);
+                    Arrays.fill(m_logWordTotalForClass, length, m_logWordTotalForClass.length, Double.NaN);
+                }
+                int position = wordIndex * m_numClasses + classValue;
                 double laplaceCorrection = 0.0;
-                if (m_wordTotalForClass[classValue].getValue(index)== 0) {
+                if (m_wordTotalForClass[position] == 0) {
                     laplaceCorrection = this.laplaceCorrectionOption.getValue();
                 }
-                m_wordTotalForClass[classValue].addToValue(index, w * inst.valueSparse(i) + laplaceCorrection);
+                m_wordTotalForClass[position] += w * wordCount + laplaceCorrection;
+                m_logWordTotalForClass[position] = Double.NaN;
             }
         }
     }
@@ -169,20 +207,42 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
         double totalSize = totalSize(instance);
 
         for (int i = 0; i < m_numClasses; i++) {
-            probOfClassGivenDoc[i] = Math.log(m_probOfClass[i]) - totalSize * Math.log(m_classTotals[i]);
+            if (Double.isNaN(m_logProbOfClass[i])) {
+                m_logProbOfClass[i] = Math.log(m_probOfClass[i]);
+            }
+            if (Double.isNaN(m_logClassTotals[i])) {
+                m_logClassTotals[i] = Math.log(m_classTotals[i]);
+            }
+            probOfClassGivenDoc[i] = m_logProbOfClass[i] - totalSize * m_logClassTotals[i];
         }
 
+        // Zero counts are skipped, as they add nothing to the sums
+        double logLaplace = Math.log(this.laplaceCorrectionOption.getValue());
+        int classIndex = instance.classIndex();
         for (int i = 0; i < instance.numValues(); i++) {
 
             int index = instance.index(i);
-            if (index == instance.classIndex() || instance.isMissing(i)) {
+            double wordCount = instance.valueSparse(i);
+            if (index == classIndex || wordCount == 0 || Double.isNaN(wordCount)) {
                 continue;
             }
 
-            double wordCount = instance.valueSparse(i);
+            int wordIndex = m_wordIndices.get(index);
+            if (wordIndex < 0) {
+                for (int c = 0; c < m_numClasses; c++) {
+                    probOfClassGivenDoc[c] += wordCount * logLaplace;
+                }
+                continue;
+            }
+            int offset = wordIndex * m_numClasses;
             for (int c = 0; c < m_numClasses; c++) {
-                double value = m_wordTotalForClass[c].getValue(index);
-                probOfClassGivenDoc[c] += wordCount * Math.log(value == 0 ? this.laplaceCorrectionOption.getValue() : value );
+                double logValue = m_logWordTotalForClass[offset + c];
+                if (Double.isNaN(logValue)) {
+                    double value = m_wordTotalForClass[offset + c];
+                    logValue = Math.log(value == 0 ? this.laplaceCorrectionOption.getValue() : value);
+                    m_logWordTotalForClass[offset + c] = logValue;
+                }
+                probOfClassGivenDoc[c] += wordCount * logValue;
             }
         }
 
@@ -194,10 +254,10 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
         double total = 0.0;
         for (int i = 0; i < instance.numValues(); i++) {
             int index = instance.index(i);
-            if (index == classIndex || instance.isMissing(i)) {
+            double count = instance.valueSparse(i);
+            if (index == classIndex || Double.isNaN(count)) {
                 continue;
             }
-            double count = instance.valueSparse(i);
             if (count >= 0) {
                 total += count;
             } else {
@@ -239,8 +299,9 @@ public class NaiveBayesMultinomial extends AbstractClassifier  implements MultiC
                 continue;
             }
             result.append(m_headerInfo.attribute(w).name()).append("\t");
+            int wordIndex = m_wordIndices.get(w);
             for (int c = 0; c < m_numClasses; c++) {
-                double value = m_wordTotalForClass[c].getValue(w);
+                double value = wordIndex < 0 ? 0 : m_wordTotalForClass[wordIndex * m_numClasses + c];
                 if (value == 0){
                     value = this.laplaceCorrectionOption.getValue();
                 }
@@ -0,0 +1,235 @@
+/*
+ *    NaiveBayesParameterCache.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.bayes;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
+import moa.classifiers.core.attributeclassobservers.GaussianNumericAttributeClassObserver;
+import moa.classifiers.core.attributeclassobservers.NominalAttributeClassObserver;
+import moa.core.AutoExpandVector;
+import moa.core.DoubleVector;
+import moa.core.GaussianEstimator;
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Per-class parameters of a Naive Bayes model, precomputed from its class
+ * distribution and attribute observers so that a prediction evaluates them in
+ * a loop over primitive arrays instead of querying every observer for every
+ * class.
+ *
+ * <p>The cache holds the class priors, the mean, scale and variance of the
+ * Gaussian of every numeric attribute, and the value counts and denominator of
+ * every nominal attribute. Learners call invalidate with the class of every
+ * instance they train on, and the parameters of that class are computed again
+ * at the next prediction. Those of the other classes are reused, as training
+ * on an instance only changes the observations of its own class.</p>
+ *
+ * <p>The parameters are evaluated with the same operations as
+ * GaussianEstimator and NominalAttributeClassObserver, and the votes are
+ * multiplied in the same order, so the votes are identical to those of
+ * NaiveBayes.doNaiveBayesPrediction. Observers of other types are queried as
+ * before.</p>
+ */
+public class NaiveBayesParameterCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final int UNOBSERVED = 0;
+
+    protected static final int GAUSSIAN = 1;
+
+    protected static final int NOMINAL = 2;
+
+    protected static final int OTHER = 3;
+
+    protected int numClasses;
+
+    protected int numAttributes;
+
+    protected double[] priors = new double[0];
+
+    protected boolean priorsAreValid;
+
+    protected boolean[] classIsValid = new boolean[0];
+
+    protected AttributeClassObserver[] observers = new AttributeClassObserver[0];
+
+    protected int[] attributeTypes = new int[0];
+
+    // Indexed by attribute and class. A class without observations has a NaN
+    // mean and no spread, so that its density is zero
+    protected double[][] gaussianMeans;
+
+    protected double[][] gaussianScales;
+
+    protected double[][] gaussianTwiceVariances;
+
+    protected boolean[][] gaussianHasSpread;
+
+    // Indexed by attribute and class, null for a class without observations
+    protected double[][][] nominalCounts;
+
+    protected double[][] nominalDenominators;
+
+    /**
+     * Marks the parameters of a class as changed, to be called before or after
+     * training on an instance of the class.
+     *
+     * @param classIndex the class of the instance
+     */
+    public void invalidate(int classIndex) {
+        this.priorsAreValid = false;
+        if (classIndex >= 0 && classIndex < this.classIsValid.length) {
+            this.classIsValid[classIndex] = false;
+        }
+    }
+
+    /**
+     * Marks the parameters of all classes as changed.
+     */
+    public void invalidateAll() {
+        this.priorsAreValid = false;
+        Arrays.fill(this.classIsValid, false);
+    }
+
+    public double[] doNaiveBayesPrediction(Instance inst,
+            DoubleVector observedClassDistribution,
+            AutoExpandVector<AttributeClassObserver> attributeObservers) {
+        update(observedClassDistribution, attributeObservers);
+        double[] votes = this.priors.clone();
+        int numModelAttributes = inst.numAttributes() - 1;
+        int classIndex = inst.classIndex();
+        for (int attIndex = 0; attIndex < numModelAttributes; attIndex++) {
+            int type = attIndex < this.numAttributes ? this.attributeTypes[attIndex] : UNOBSERVED;
+            int instAttIndex = classIndex > attIndex ? attIndex : attIndex + 1;
+            if (type == UNOBSERVED || inst.isMissing(instAttIndex)) {
+                continue;
+            }
+            double value = inst.value(instAttIndex);
+            if (type == GAUSSIAN) {
+                double[] means = this.gaussianMeans[attIndex];
+                double[] scales = this.gaussianScales[attIndex];
+                double[] twiceVariances = this.gaussianTwiceVariances[attIndex];
+                boolean[] hasSpread = this.gaussianHasSpread[attIndex];
+                for (int i = 0; i < votes.length; i++) {
+                    if (hasSpread[i]) {
+                        double diff = value - means[i];
+                        votes[i] *= scales[i] * Math.exp(-(diff * diff / twiceVariances[i]));
+                    } else {
+                        votes[i] *= value == means[i] ? 1.0 : 0.0;
+                    }
+                }
+            } else if (type == NOMINAL) {
+                double[][] counts = this.nominalCounts[attIndex];
+                double[] denominators = this.nominalDenominators[attIndex];
+                int valueIndex = (int) value;
+                for (int i = 0; i < votes.length; i++) {
+                    double[] classCounts = counts[i];
+                    if (classCounts == null) {
+                        votes[i] *= 0.0;
+                    } else {
+                        double count = valueIndex >= 0 && valueIndex < classCounts.length ? classCounts[valueIndex] : 0.0;
+                        votes[i] *= (count + 1.0) / denominators[i];
+                    }
+                }
+            } else {
+                AttributeClassObserver obs = this.observers[attIndex];
+                for (int i = 0; i < votes.length; i++) {
+                    votes[i] *= obs.probabilityOfAttributeValueGivenClass(value, i);
+                }
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * Brings the parameters up to date with the class distribution and the
+     * observers, computing again those of the invalidated classes and of the
+     * attributes whose observer has been replaced.
+     */
+    protected void update(DoubleVector observedClassDistribution,
+            AutoExpandVector<AttributeClassObserver> attributeObservers) {
+        int newNumClasses = observedClassDistribution.numValues();
+        int newNumAttributes = attributeObservers.size();
+        if (newNumClasses != this.numClasses || newNumAttributes != this.numAttributes) {
+            resize(newNumClasses, newNumAttributes);
+        }
+        if (!this.priorsAreValid) {
+            double observedClassSum = observedClassDistribution.sumOfValues();
+            for (int i = 0; i < this.numClasses; i++) {
+                this.priors[i] = observedClassDistribution.getValue(i) / observedClassSum;
+            }
+            this.priorsAreValid = true;
+        }
+        for (int attIndex = 0; attIndex < this.numAttributes; attIndex++) {
+            AttributeClassObserver obs = attributeObservers.get(attIndex);
+            if (obs != this.observers[attIndex]) {
+                this.observers[attIndex] = obs;
+                this.attributeTypes[attIndex] = obs == null ? UNOBSERVED
+                        : obs.getClass() == GaussianNumericAttributeClassObserver.class ? GAUSSIAN
+                        : obs.getClass() == NominalAttributeClassObserver.class ? NOMINAL : OTHER;
+                for (int i = 0; i < this.numClasses; i++) {
+                    updateParameters(attIndex, i);
+                }
+            }
+        }
+        for (int i = 0; i < this.numClasses; i++) {
+            if (!this.classIsValid[i]) {
+                for (int attIndex = 0; attIndex < this.numAttributes; attIndex++) {
+                    updateParameters(attIndex, i);
+                }
+                this.classIsValid[i] = true;
+            }
+        }
+    }
+
+    protected void resize(int newNumClasses, int newNumAttributes) {
+        this.numClasses = newNumClasses;
+        this.numAttributes = newNumAttributes;
+        this.priors = new double[newNumClasses];
+        this.priorsAreValid = false;
+        this.classIsValid = new boolean[newNumClasses];
+        this.observers = new AttributeClassObserver[newNumAttributes];
+        this.attributeTypes = new int[newNumAttributes];
+        this.gaussianMeans = new double[newNumAttributes][newNumClasses];
+        this.gaussianScales = new double[newNumAttributes][newNumClasses];
+        this.gaussianTwiceVariances = new double[newNumAttributes][newNumClasses];
+        this.gaussianHasSpread = new boolean[newNumAttributes][newNumClasses];
+        this.nominalCounts = new double[newNumAttributes][newNumClasses][];
+        this.nominalDenominators = new double[newNumAttributes][newNumClasses];
+    }
+
+    protected void updateParameters(int attIndex, int classIndex) {
+        int type = this.attributeTypes[attIndex];
+        if (type == GAUSSIAN) {
+            GaussianEstimator estimator = ((GaussianNumericAttributeClassObserver) this.observers[attIndex]).getEstimatorForClass(classIndex);
+            double stdDev = estimator != null ? estimator.getStdDev() : 0.0;
+            boolean hasObservations = estimator != null && estimator.getTotalWeightObserved() > 0.0;
+            this.gaussianHasSpread[attIndex][classIndex] = hasObservations && stdDev > 0.0;
+            this.gaussianMeans[attIndex][classIndex] = hasObservations ? estimator.getMean() : Double.NaN;
+            this.gaussianScales[attIndex][classIndex] = 1.0 / (GaussianEstimator.NORMAL_CONSTANT * stdDev);
+            this.gaussianTwiceVariances[attIndex][classIndex] = 2.0 * stdDev * stdDev;
+        } else if (type == NOMINAL) {
+            DoubleVector obs = ((NominalAttributeClassObserver) this.observers[attIndex]).attValDistPerClass.get(classIndex);
+            this.nominalCounts[attIndex][classIndex] = obs != null ? obs.getArrayRef() : null;
+            this.nominalDenominators[attIndex][classIndex] = obs != null ? obs.sumOfValues() + obs.numValues() : 0.0;
+        }
+    }
+}
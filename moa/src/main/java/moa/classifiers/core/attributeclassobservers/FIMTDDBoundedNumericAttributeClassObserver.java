@@ -0,0 +1,450 @@
+/*
+ *    FIMTDDBoundedNumericAttributeClassObserver.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.core.attributeclassobservers;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import moa.classifiers.core.AttributeSplitSuggestion;
+import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
+import moa.classifiers.core.splitcriteria.SplitCriterion;
+
+/**
+ * E-BST for regression that stores its nodes in parallel arrays instead of
+ * one object per node, and that can be limited to a maximum number of nodes.
+ * Without a limit it suggests the same splits as
+ * FIMTDDNumericAttributeClassObserver.
+ *
+ * Once the limit is reached, neighbouring bins are merged to make room for
+ * new split points: the split point closest to the next larger one is
+ * removed, and its values join the bin of the next larger split point,
+ * until half of the nodes are left. The statistics of the split points kept
+ * stay exact, and the remaining split points are stored as a balanced tree.
+ * A new split point in a merged bin gets an estimated part of the values of
+ * the bin, taking them as spread evenly around their mean value, which is
+ * kept for every bin. The memory used by an observer is then bounded
+ * whatever the number of distinct values. With a limit of one node, a new
+ * value is merged into the bin of the only split point.
+ */
+public class FIMTDDBoundedNumericAttributeClassObserver extends FIMTDDNumericAttributeClassObserver {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The maximum number of nodes, 0 for no limit. */
+    protected int maxNodes;
+
+    protected int numNodes;
+
+    protected double[] cutPoints;
+
+    // Count, sum and sum of squares of the targets of the values less than
+    // or equal to the split point of a node, in the subtree of the node
+    protected double[] leftCounts;
+
+    protected double[] leftSums;
+
+    protected double[] leftSquaredSums;
+
+    // Sum of the attribute values less than or equal to the split point of a
+    // node, in the subtree of the node, giving the mean value of a bin
+    protected double[] leftValueSums;
+
+    // Child nodes, -1 if there is none
+    protected int[] leftChildren;
+
+    protected int[] rightChildren;
+
+    // Whether the bin between the split point of a node and the next smaller
+    // split point holds values of removed split points
+    protected boolean[] mergedBins;
+
+    /** The smallest value observed, the lower bound of the first bin. */
+    protected double minValue = Double.POSITIVE_INFINITY;
+
+    public FIMTDDBoundedNumericAttributeClassObserver() {
+        this(0);
+    }
+
+    /**
+     * Creates an observer.
+     *
+     * @param maxNodes the maximum number of nodes, 0 for no limit
+     */
+    public FIMTDDBoundedNumericAttributeClassObserver(int maxNodes) {
+        this.maxNodes = maxNodes;
+        int capacity = maxNodes > 0 ? Math.min(maxNodes, 16) : 16;
+        this.cutPoints = new double[capacity];
+        this.leftCounts = new double[capacity];
+        this.leftSums = new double[capacity];
+        this.leftSquaredSums = new double[capacity];
+        this.leftValueSums = new double[capacity];
+        this.leftChildren = new int[capacity];
+        this.rightChildren = new int[capacity];
+        this.mergedBins = new boolean[capacity];
+    }
+
+    public int getMaxNodes() {
+        return this.maxNodes;
+    }
+
+    public int getNumNodes() {
+        return this.numNodes;
+    }
+
+    @Override
+    public void observeAttributeClass(double attVal, double classVal, double weight) {
+        if (Double.isNaN(attVal)) { //Instance.isMissingValue(attVal)
+            return;
+        }
+        double lowestValue = this.minValue;
+        if (attVal < this.minValue) {
+            this.minValue = attVal;
+        }
+        if (this.numNodes == 0) {
+            newNode(attVal, classVal);
+            return;
+        }
+        if (!hasRoomForNode()) {
+            mergeClosestBins();
+        }
+        // Statistics of the values less than or equal to the nearest split
+        // points below and above the value, which bound its bin
+        double lowCount = 0.0;
+        double lowSum = 0.0;
+        double lowSquaredSum = 0.0;
+        double lowValueSum = 0.0;
+        double highCount = 0.0;
+        double highSum = 0.0;
+        double highSquaredSum = 0.0;
+        double highValueSum = 0.0;
+        int lowNode = -1;
+        int highNode = -1;
+        int node = 0;
+        int child;
+        while (true) {
+            if (attVal <= this.cutPoints[node]) {
+                // Equal and smaller values update the left (<=) statistics
+                this.leftCounts[node] += 1;
+                this.leftSums[node] += classVal;
+                this.leftSquaredSums[node] += classVal * classVal;
+                this.leftValueSums[node] += attVal;
+                if (attVal == this.cutPoints[node]) {
+                    return;
+                }
+                highNode = node;
+                highCount = lowCount + this.leftCounts[node];
+                highSum = lowSum + this.leftSums[node];
+                highSquaredSum = lowSquaredSum + this.leftSquaredSums[node];
+                highValueSum = lowValueSum + this.leftValueSums[node];
+                child = this.leftChildren[node];
+                if (child < 0 && hasRoomForNode()) {
+                    child = newNode(attVal, classVal);
+                    this.leftChildren[node] = child;
+                    break;
+                }
+            } else {
+                lowNode = node;
+                lowCount += this.leftCounts[node];
+                lowSum += this.leftSums[node];
+                lowSquaredSum += this.leftSquaredSums[node];
+                lowValueSum += this.leftValueSums[node];
+                child = this.rightChildren[node];
+                if (child < 0 && hasRoomForNode()) {
+                    child = newNode(attVal, classVal);
+                    this.rightChildren[node] = child;
+                    break;
+                }
+            }
+            if (child < 0) {
+                return;
+            }
+            node = child;
+        }
+        // Values above the largest split point are never merged
+        if (highNode >= 0 && this.mergedBins[highNode]) {
+            this.mergedBins[child] = true;
+            addMergedValues(child, attVal,
+                    lowNode >= 0 ? this.cutPoints[lowNode] : lowestValue, this.cutPoints[highNode],
+                    highCount - lowCount - 1, highSum - lowSum - classVal,
+                    highSquaredSum - lowSquaredSum - classVal * classVal,
+                    highValueSum - lowValueSum - attVal);
+        }
+    }
+
+    /**
+     * Adds to a new node in a merged bin its estimated part of the values
+     * that the bin held before. The values are assumed to be spread evenly
+     * over the widest interval within the bin that has their mean value at
+     * its centre, so a bin whose values lie near one of its ends gives
+     * little of them to a new split point at the other end.
+     *
+     * @param node the new node
+     * @param attVal the split point of the new node
+     * @param lowValue the split point below the bin, or the smallest value
+     * @param highValue the split point above the bin
+     * @param count the number of values in the bin before
+     * @param sum the sum of their targets
+     * @param squaredSum the sum of the squares of their targets
+     * @param valueSum the sum of the values
+     */
+    protected void addMergedValues(int node, double attVal, double lowValue, double highValue,
+            double count, double sum, double squaredSum, double valueSum) {
+        if (count <= 0.0 || highValue <= lowValue) {
+            return;
+        }
+        double mean = Math.max(lowValue, Math.min(highValue, valueSum / count));
+        double from = lowValue;
+        double to = highValue;
+        if (2.0 * mean > lowValue + highValue) {
+            from = 2.0 * mean - highValue;
+        } else {
+            to = 2.0 * mean - lowValue;
+        }
+        double fraction = to > from ? Math.max(0.0, Math.min(1.0, (attVal - from) / (to - from)))
+                : (attVal >= mean ? 1.0 : 0.0);
+        double end = Math.max(from, Math.min(to, attVal));
+        this.leftCounts[node] += fraction * count;
+        this.leftSums[node] += fraction * sum;
+        this.leftSquaredSums[node] += fraction * squaredSum;
+        this.leftValueSums[node] += fraction * count * (from + end) / 2.0;
+    }
+
+    protected boolean hasRoomForNode() {
+        return this.maxNodes <= 0 || this.numNodes < this.maxNodes;
+    }
+
+    /**
+     * Adds a node for a value and returns its index.
+     */
+    protected int newNode(double val, double label) {
+        if (this.numNodes == this.cutPoints.length) {
+            int capacity = this.numNodes * 2;
+            if (this.maxNodes > 0) {
+                capacity = Math.min(capacity, this.maxNodes);
+            }
+            this.cutPoints = Arrays.copyOf(this.cutPoints, capacity);
+            this.leftCounts = Arrays.copyOf(this.leftCounts, capacity);
+            this.leftSums = Arrays.copyOf(this.leftSums, capacity);
+            this.leftSquaredSums = Arrays.copyOf(this.leftSquaredSums, capacity);
+            this.leftValueSums = Arrays.copyOf(this.leftValueSums, capacity);
+            this.leftChildren = Arrays.copyOf(this.leftChildren, capacity);
+            this.rightChildren = Arrays.copyOf(this.rightChildren, capacity);
+            this.mergedBins = Arrays.copyOf(this.mergedBins, capacity);
+        }
+        int node = this.numNodes++;
+        this.cutPoints[node] = val;
+        this.leftCounts[node] = 1;
+        this.leftSums[node] = label;
+        this.leftSquaredSums[node] = label * label;
+        this.leftValueSums[node] = val;
+        this.leftChildren[node] = -1;
+        this.rightChildren[node] = -1;
+        this.mergedBins[node] = false;
+        return node;
+    }
+
+    /**
+     * Removes split points until at most half of the maximum number of nodes
+     * are left, always the one closest to the next larger split point, and
+     * stores the remaining split points as a balanced tree. The largest split
+     * point is never removed.
+     */
+    protected void mergeClosestBins() {
+        int n = this.numNodes;
+        int target = Math.max(1, this.maxNodes / 2);
+        if (n <= target) {
+            return;
+        }
+        // Split points in increasing order, with the statistics of all
+        // values less than or equal to them
+        double[] cuts = new double[n];
+        double[][] cumulative = new double[4][n];
+        boolean[] merged = new boolean[n];
+        flatten(0, 0.0, 0.0, 0.0, 0.0, 0, cuts, cumulative, merged);
+
+        // Removes the split point with the smallest gap to the next one
+        // alive, until the target is reached. Entries of the queue whose gap
+        // changed since they were added are skipped
+        int[] next = new int[n];
+        int[] previous = new int[n];
+        double[] gaps = new double[n];
+        boolean[] removed = new boolean[n];
+        PriorityQueue<double[]> queue = new PriorityQueue<double[]>(n, (a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < n; i++) {
+            next[i] = i + 1;
+            previous[i] = i - 1;
+            if (i + 1 < n) {
+                gaps[i] = cuts[i + 1] - cuts[i];
+                queue.add(new double[]{gaps[i], i});
+            }
+        }
+        int alive = n;
+        while (alive > target) {
+            double[] entry = queue.poll();
+            int i = (int) entry[1];
+            if (removed[i] || entry[0] != gaps[i]) {
+                continue;
+            }
+            removed[i] = true;
+            alive--;
+            // Only split points with a larger one have a gap, so there is a next one
+            int p = previous[i];
+            int q = next[i];
+            previous[q] = p;
+            merged[q] = true;
+            if (p >= 0) {
+                next[p] = q;
+                gaps[p] = cuts[q] - cuts[p];
+                queue.add(new double[]{gaps[p], p});
+            }
+        }
+        double[] keptCuts = new double[alive];
+        double[][] keptCumulative = new double[4][alive];
+        boolean[] keptMerged = new boolean[alive];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (!removed[i]) {
+                keptCuts[k] = cuts[i];
+                keptMerged[k] = merged[i];
+                for (int j = 0; j < 4; j++) {
+                    keptCumulative[j][k] = cumulative[j][i];
+                }
+                k++;
+            }
+        }
+        this.numNodes = 0;
+        build(0, alive - 1, keptCuts, keptCumulative, keptMerged);
+    }
+
+    /**
+     * Writes the split points of a subtree in increasing order, starting at
+     * the given position, and returns the position after the last one.
+     */
+    protected int flatten(int node, double baseCount, double baseSum, double baseSquaredSum,
+            double baseValueSum, int pos, double[] cuts, double[][] cumulative, boolean[] merged) {
+        if (this.leftChildren[node] >= 0) {
+            pos = flatten(this.leftChildren[node], baseCount, baseSum, baseSquaredSum, baseValueSum,
+                    pos, cuts, cumulative, merged);
+        }
+        double count = baseCount + this.leftCounts[node];
+        double sum = baseSum + this.leftSums[node];
+        double squaredSum = baseSquaredSum + this.leftSquaredSums[node];
+        double valueSum = baseValueSum + this.leftValueSums[node];
+        cuts[pos] = this.cutPoints[node];
+        cumulative[0][pos] = count;
+        cumulative[1][pos] = sum;
+        cumulative[2][pos] = squaredSum;
+        cumulative[3][pos] = valueSum;
+        merged[pos] = this.mergedBins[node];
+        pos++;
+        if (this.rightChildren[node] >= 0) {
+            pos = flatten(this.rightChildren[node], count, sum, squaredSum, valueSum,
+                    pos, cuts, cumulative, merged);
+        }
+        return pos;
+    }
+
+    /**
+     * Adds the split points from index low to high as a balanced subtree and
+     * returns the index of its root node.
+     */
+    protected int build(int low, int high, double[] cuts, double[][] cumulative, boolean[] merged) {
+        int mid = (low + high) >>> 1;
+        int node = this.numNodes++;
+        // The left statistics of a node cover the values of its subtree, which
+        // are larger than the split point before the subtree
+        this.cutPoints[node] = cuts[mid];
+        this.leftCounts[node] = cumulative[0][mid] - (low > 0 ? cumulative[0][low - 1] : 0.0);
+        this.leftSums[node] = cumulative[1][mid] - (low > 0 ? cumulative[1][low - 1] : 0.0);
+        this.leftSquaredSums[node] = cumulative[2][mid] - (low > 0 ? cumulative[2][low - 1] : 0.0);
+        this.leftValueSums[node] = cumulative[3][mid] - (low > 0 ? cumulative[3][low - 1] : 0.0);
+        this.mergedBins[node] = merged[mid];
+        this.leftChildren[node] = low < mid ? build(low, mid - 1, cuts, cumulative, merged) : -1;
+        this.rightChildren[node] = mid < high ? build(mid + 1, high, cuts, cumulative, merged) : -1;
+        return node;
+    }
+
+    @Override
+    public AttributeSplitSuggestion getBestEvaluatedSplitSuggestion(SplitCriterion criterion, double[] preSplitDist, int attIndex, boolean binaryOnly) {
+        sumTotalLeft = 0;
+        sumTotalRight = preSplitDist[1];
+        sumSqTotalLeft = 0;
+        sumSqTotalRight = preSplitDist[2];
+        countLeftTotal = 0;
+        countRightTotal = preSplitDist[0];
+        if (this.numNodes == 0) {
+            return null;
+        }
+        return searchForBestSplitOption(0, null, criterion, attIndex);
+    }
+
+    /**
+     * Implementation of the FindBestSplit algorithm from E.Ikonomovska et al.,
+     * visiting the nodes in the same order as the superclass.
+     */
+    protected AttributeSplitSuggestion searchForBestSplitOption(int node, AttributeSplitSuggestion currentBestOption, SplitCriterion criterion, int attIndex) {
+        if (countRightTotal == 0.0) {
+            return currentBestOption;
+        }
+
+        if (this.leftChildren[node] >= 0) {
+            currentBestOption = searchForBestSplitOption(this.leftChildren[node], currentBestOption, criterion, attIndex);
+        }
+
+        double count = this.leftCounts[node];
+        double sum = this.leftSums[node];
+        double squaredSum = this.leftSquaredSums[node];
+        sumTotalLeft += sum;
+        sumTotalRight -= sum;
+        sumSqTotalLeft += squaredSum;
+        sumSqTotalRight -= squaredSum;
+        countLeftTotal += count;
+        countRightTotal -= count;
+
+        double[][] postSplitDists = new double[][]{{countLeftTotal, sumTotalLeft, sumSqTotalLeft}, {countRightTotal, sumTotalRight, sumSqTotalRight}};
+        double[] preSplitDist = new double[]{(countLeftTotal + countRightTotal), (sumTotalLeft + sumTotalRight), (sumSqTotalLeft + sumSqTotalRight)};
+        double merit = criterion.getMeritOfSplit(preSplitDist, postSplitDists);
+
+        if ((currentBestOption == null) || (merit > currentBestOption.merit)) {
+            currentBestOption = new AttributeSplitSuggestion(
+                    new NumericAttributeBinaryTest(attIndex,
+                            this.cutPoints[node], true), postSplitDists, merit);
+        }
+
+        if (this.rightChildren[node] >= 0) {
+            currentBestOption = searchForBestSplitOption(this.rightChildren[node], currentBestOption, criterion, attIndex);
+        }
+        sumTotalLeft -= sum;
+        sumTotalRight += sum;
+        sumSqTotalLeft -= squaredSum;
+        sumSqTotalRight += squaredSum;
+        countLeftTotal -= count;
+        countRightTotal += count;
+
+        return currentBestOption;
+    }
+
+    /**
+     * Keeps all the nodes. The pruning of the superclass does not remove
+     * nodes either, and the size of this E-BST is bounded by the maximum
+     * number of nodes instead.
+     */
+    @Override
+    public void removeBadSplits(SplitCriterion criterion, double lastCheckRatio, double lastCheckSDR, double lastCheckE) {
+    }
+}
@@ -86,6 +86,10 @@ public class GaussianNumericAttributeClassObserver extends AbstractOptionHandler
         return obs != null ? obs.probabilityDensity(attVal) : 0.0;
     }
 
+    public GaussianEstimator getEstimatorForClass(int classVal) {
+        return this.attValDistPerClass.get(classVal);
+    }
+
     @Override
     public AttributeSplitSuggestion getBestEvaluatedSplitSuggestion(
             SplitCriterion criterion, double[] preSplitDist, int attIndex,
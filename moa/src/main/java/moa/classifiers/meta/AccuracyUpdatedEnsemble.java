@@ -19,6 +19,10 @@
  */
 package moa.classifiers.meta;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
@@ -26,7 +30,9 @@ import moa.classifiers.trees.HoeffdingTree;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
+import moa.core.ParallelTaskRunner;
 import moa.options.ClassOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.tasks.TaskMonitor;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -36,6 +42,11 @@ import com.yahoo.labs.samoa.instances.Instances;
  * The revised version of the Accuracy Updated Ensemble as proposed by
  * Brzezinski and Stefanowski in "Reacting to Different Types of Concept Drift:
  * The Accuracy Updated Ensemble Algorithm", IEEE Trans. Neural Netw, 2013.
+ *
+ * The weights and the training of the members at the end of a chunk can be
+ * computed by several threads. A chunk can also be processed in the
+ * background while the next chunk is collected; predictions then wait for the
+ * processing to finish, or use the ensemble of the previous chunk.
  */
 public class AccuracyUpdatedEnsemble extends AbstractClassifier implements MultiClassClassifier {
 
@@ -66,6 +77,25 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	public IntOption maxByteSizeOption = new IntOption("maxByteSize", 'm', "Maximum memory consumed by ensemble.",
 			33554432, 0, Integer.MAX_VALUE);
 
+	/**
+	 * Number of threads used for processing a chunk.
+	 */
+	public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+			"Total number of concurrent jobs used for processing a chunk (-1 = as much as possible, 0 = do not use multithreading)",
+			1, -1, Integer.MAX_VALUE);
+
+	/**
+	 * Determines whether chunks are processed in the background.
+	 */
+	public FlagOption asynchronousOption = new FlagOption("asynchronous", 'y',
+			"Process a chunk in the background while the next chunk is collected.");
+
+	/**
+	 * Determines whether to predict with the previous ensemble while a chunk is processed.
+	 */
+	public FlagOption predictWithPreviousOption = new FlagOption("predictWithPrevious", 'g',
+			"Predict with the ensemble of the previous chunk while a chunk is processed in the background, instead of waiting.");
+
 	/**
 	 * The weights of stored classifiers. 
 	 * weights[x][0] = weight
@@ -98,6 +128,19 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 */
 	protected Instances currentChunk;
 
+	/**
+	 * Runs the tasks of a chunk.
+	 */
+	protected ParallelTaskRunner taskRunner;
+
+	/**
+	 * Members and weights used for predictions while a chunk is processed in
+	 * the background, null otherwise.
+	 */
+	protected Classifier[] previousLearners;
+
+	protected double[][] previousWeights;
+
 	@Override
 	public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
 		this.candidate = (Classifier) getPreparedClassOption(this.learnerOption);
@@ -108,6 +151,12 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 
 	@Override
 	public void resetLearningImpl() {
+		if (this.taskRunner != null) {
+			this.taskRunner.shutdown();
+		}
+		this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
+		this.previousLearners = null;
+		this.previousWeights = null;
 		this.currentChunk = null;
 		this.classDistributions = null;
 		this.processedInstances = 0;
@@ -126,7 +175,11 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 		this.processedInstances++;
 
 		if (this.processedInstances % this.chunkSizeOption.getValue() == 0) {
-			this.processChunk();
+			if (this.asynchronousOption.isSet()) {
+				this.processChunkInBackground();
+			} else {
+				this.processChunk();
+			}
 		}
 	}
 
@@ -142,16 +195,27 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 */
 	public double[] getVotesForInstance(Instance inst) {
 		DoubleVector combinedVote = new DoubleVector();
+		Classifier[] learners;
+		double[][] weights;
+
+		if (this.previousLearners != null && !this.taskRunner.isBackgroundDone()) {
+			learners = this.previousLearners;
+			weights = this.previousWeights;
+		} else {
+			this.waitForChunk();
+			learners = this.learners;
+			weights = this.weights;
+		}
 
 		if (this.trainingWeightSeenByModel > 0.0) {
-			for (int i = 0; i < this.learners.length; i++) {
-				if (this.weights[i][0] > 0.0) {
-					DoubleVector vote = new DoubleVector(this.learners[(int) this.weights[i][1]].getVotesForInstance(inst));
+			for (int i = 0; i < learners.length; i++) {
+				if (weights[i][0] > 0.0) {
+					DoubleVector vote = new DoubleVector(learners[(int) weights[i][1]].getVotesForInstance(inst));
 
 					if (vote.sumOfValues() > 0.0) {
 						vote.normalize();
 						// scale weight and prevent overflow
-						vote.scaleValues(this.weights[i][0] / (1.0 * this.learners.length + 1.0));
+						vote.scaleValues(weights[i][0] / (1.0 * learners.length + 1.0));
 						combinedVote.addValues(vote);
 					}
 				}
@@ -168,23 +232,100 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 
 	@Override
 	public Classifier[] getSubClassifiers() {
+		this.waitForChunk();
 		return this.learners.clone();
 	}
 
 	/**
-	 * Processes a chunk of instances.
+	 * Processes the current chunk of instances.
 	 * This method is called after collecting a chunk of examples.
 	 */
 	protected void processChunk() {
+		Instances chunk = this.currentChunk;
+		long[] chunkClassDistributions = this.classDistributions;
+		this.currentChunk = null;
+		this.classDistributions = null;
+		this.processChunk(chunk, chunkClassDistributions);
+	}
+
+	/**
+	 * Processes the current chunk of instances in the background, so that the
+	 * next chunk can be collected in the meantime. The processing of the
+	 * previous chunk is waited for first.
+	 */
+	protected void processChunkInBackground() {
+		final Instances chunk = this.currentChunk;
+		final long[] chunkClassDistributions = this.classDistributions;
+		this.currentChunk = null;
+		this.classDistributions = null;
+		this.waitForChunk();
+
+		final boolean copyLearners = this.predictWithPreviousOption.isSet();
+		if (copyLearners) {
+			// The members are trained as copies, which leaves the previous ensemble unchanged
+			this.previousLearners = this.learners.clone();
+			if (this.weights != null) {
+				this.previousWeights = new double[this.weights.length][];
+				for (int i = 0; i < this.weights.length; i++) {
+					this.previousWeights[i] = this.weights[i].clone();
+				}
+			}
+		}
+		this.taskRunner.submitBackground(new Runnable() {
+
+			@Override
+			public void run() {
+				if (copyLearners) {
+					copyLearners();
+				}
+				processChunk(chunk, chunkClassDistributions);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the chunk being processed in the background, if any.
+	 */
+	protected void waitForChunk() {
+		this.taskRunner.awaitBackground();
+		this.previousLearners = null;
+		this.previousWeights = null;
+	}
+
+	/**
+	 * Replaces every member by a copy of itself.
+	 */
+	protected void copyLearners() {
+		List<Callable<Classifier>> tasks = new ArrayList<Callable<Classifier>>(this.learners.length);
+		for (final Classifier learner : this.learners) {
+			tasks.add(() -> learner.copy());
+		}
+		this.learners = this.taskRunner.invokeAll(tasks).toArray(new Classifier[this.learners.length]);
+	}
+
+	/**
+	 * Processes a chunk of instances. The weights and the training of the
+	 * members are computed by separate tasks.
+	 *
+	 * @param chunk the chunk of instances
+	 * @param chunkClassDistributions the class distribution of the chunk
+	 */
+	protected void processChunk(final Instances chunk, long[] chunkClassDistributions) {
 		Classifier addedClassifier = null;
-		double mse_r = this.computeMseR();
+		double mse_r = this.computeMseR(chunkClassDistributions);
 
 		// Compute weights
 		double candidateClassifierWeight = 1.0 / (mse_r + Double.MIN_VALUE);
 
+		List<Callable<Double>> mseTasks = new ArrayList<Callable<Double>>(this.learners.length);
+		for (int i = 0; i < this.learners.length; i++) {
+			final Classifier learner = this.learners[(int) this.weights[i][1]];
+			mseTasks.add(() -> computeMse(learner, chunk));
+		}
+		List<Double> mse = this.taskRunner.invokeAll(mseTasks);
 		for (int i = 0; i < this.learners.length; i++) {
-			this.weights[i][0] = 1.0 / (mse_r + this.computeMse(this.learners[(int) this.weights[i][1]], this.currentChunk) + Double.MIN_VALUE);
-		}	
+			this.weights[i][0] = 1.0 / (mse_r + mse.get(i) + Double.MIN_VALUE);
+		}
 
 		if (this.learners.length < this.memberCountOption.getValue()) {
 			// Train and add classifier
@@ -201,12 +342,16 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 		}
 
 		// train classifiers
+		List<Callable<Void>> trainTasks = new ArrayList<Callable<Void>>(this.learners.length);
 		for (int i = 0; i < this.learners.length; i++) {
-			this.trainOnChunk(this.learners[(int) this.weights[i][1]]);
+			final Classifier learner = this.learners[(int) this.weights[i][1]];
+			trainTasks.add(() -> {
+				trainOnChunk(learner, chunk);
+				return null;
+			});
 		}
+		this.taskRunner.invokeAll(trainTasks);
 
-		this.classDistributions = null;
-		this.currentChunk = null;
 		this.candidate = (Classifier) getPreparedClassOption(this.learnerOption);
 		this.candidate.resetLearning();
 
@@ -231,14 +376,15 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	/**
 	 * Computes the MSEr threshold.
 	 * 
+	 * @param chunkClassDistributions class distribution of the chunk
 	 * @return The MSEr threshold.
 	 */
-	protected double computeMseR() {
+	protected double computeMseR(long[] chunkClassDistributions) {
 		double p_c;
 		double mse_r = 0;
 
-		for (int i = 0; i < this.classDistributions.length; i++) {
-			p_c = (double) this.classDistributions[i] / (double) this.chunkSizeOption.getValue();
+		for (int i = 0; i < chunkClassDistributions.length; i++) {
+			p_c = (double) chunkClassDistributions[i] / (double) this.chunkSizeOption.getValue();
 			mse_r += p_c * ((1 - p_c) * (1 - p_c));
 		}
 
@@ -286,6 +432,7 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	 */
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
+		this.waitForChunk();
 		Measurement[] measurements = new Measurement[(int) this.memberCountOption.getValue()];
 
 		for (int m = 0; m < this.memberCountOption.getValue(); m++) {
@@ -365,14 +512,16 @@ public class AccuracyUpdatedEnsemble extends AbstractClassifier implements Multi
 	}
 	
 	/**
-	 * Trains a component classifier on the most recent chunk of data.
+	 * Trains a component classifier on a chunk of data.
 	 * 
 	 * @param classifierToTrain
 	 *            Classifier being trained.
+	 * @param chunk
+	 *            Chunk of examples.
 	 */
-	private void trainOnChunk(Classifier classifierToTrain) {
+	private void trainOnChunk(Classifier classifierToTrain, Instances chunk) {
 		for (int num = 0; num < this.chunkSizeOption.getValue(); num++) {
-			classifierToTrain.trainOnInstance(this.currentChunk.instance(num));
+			classifierToTrain.trainOnInstance(chunk.instance(num));
 		}
 	}
 
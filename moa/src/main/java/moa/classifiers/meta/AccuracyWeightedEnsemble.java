@@ -19,14 +19,20 @@
  */
 package moa.classifiers.meta;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
+import moa.core.ParallelTaskRunner;
 import moa.options.ClassOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import moa.tasks.TaskMonitor;
@@ -37,6 +43,12 @@ import moa.core.Utils;
 /**
  * The Accuracy Weighted Ensemble classifier as proposed by Wang et al. in
  * "Mining concept-drifting data streams using ensemble classifiers", KDD 2003.
+ *
+ * The cross-validation folds of the candidate, the weights of the stored
+ * classifiers and the training of the candidate can be computed by several
+ * threads. A chunk can also be processed in the background while the next
+ * chunk is collected; predictions then wait for the processing to finish, or
+ * use the ensemble of the previous chunk.
  */
 public class AccuracyWeightedEnsemble extends AbstractClassifier implements MultiClassClassifier {
 
@@ -94,6 +106,21 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      */
     public IntOption numFoldsOption = new IntOption("numFolds", 'f', "Number of cross-validation folds for candidate classifier testing.", 10, 1, Integer.MAX_VALUE);
 
+    /**
+     * Number of threads used for processing a chunk.
+     */
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j', "Total number of concurrent jobs used for processing a chunk (-1 = as much as possible, 0 = do not use multithreading)", 1, -1, Integer.MAX_VALUE);
+
+    /**
+     * Determines whether chunks are processed in the background.
+     */
+    public FlagOption asynchronousOption = new FlagOption("asynchronous", 'y', "Process a chunk in the background while the next chunk is collected.");
+
+    /**
+     * Determines whether to predict with the previous ensemble while a chunk is processed.
+     */
+    public FlagOption predictWithPreviousOption = new FlagOption("predictWithPrevious", 'g', "Predict with the ensemble of the previous chunk while a chunk is processed in the background, instead of waiting.");
+
     protected long[] classDistributions;
 
     protected Classifier[] ensemble;
@@ -122,6 +149,19 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
     protected Instances currentChunk;
 
+    /**
+     * Runs the tasks of a chunk.
+     */
+    protected ParallelTaskRunner taskRunner;
+
+    /**
+     * Ensemble used for predictions while a chunk is processed in the
+     * background, null otherwise.
+     */
+    protected Classifier[] previousEnsemble;
+
+    protected double[] previousEnsembleWeights;
+
     @Override
     public void prepareForUseImpl(TaskMonitor monitor, ObjectRepository repository) {
         this.maxMemberCount = (int) memberCountOption.getValue();
@@ -141,6 +181,12 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
     @Override
     public void resetLearningImpl() {
+        if (this.taskRunner != null) {
+            this.taskRunner.shutdown();
+        }
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
+        this.previousEnsemble = null;
+        this.previousEnsembleWeights = null;
         this.currentChunk = null;
         this.classDistributions = null;
         this.processedInstances = 0;
@@ -160,7 +206,11 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
         this.processedInstances++;
 
         if (this.processedInstances % this.chunkSize == 0) {
-            this.processChunk();
+            if (this.asynchronousOption.isSet()) {
+                this.processChunkInBackground();
+            } else {
+                this.processChunk();
+            }
         }
     }
 
@@ -182,24 +232,92 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
     }
 
     /**
-     * Processes a chunk.
-     *
-     * @param useMseR Determines whether to use the MSEr threshold.
+     * Processes the current chunk.
      */
     protected void processChunk() {
-        // Compute weights
-        double candidateClassifierWeight = this.computeCandidateWeight(this.candidateClassifier, this.currentChunk, this.numFolds);
+        Instances chunk = this.currentChunk;
+        long[] chunkClassDistributions = this.classDistributions;
+        this.currentChunk = null;
+        this.classDistributions = null;
+        this.processChunk(chunk, chunkClassDistributions);
+    }
 
-        for (int i = 0; i < this.storedLearners.length; i++) {
-            this.storedWeights[i][0] = this.computeWeight(this.storedLearners[(int) this.storedWeights[i][1]], this.currentChunk);
+    /**
+     * Processes the current chunk in the background, so that the next chunk
+     * can be collected in the meantime. The processing of the previous chunk
+     * is waited for first.
+     */
+    protected void processChunkInBackground() {
+        final Instances chunk = this.currentChunk;
+        final long[] chunkClassDistributions = this.classDistributions;
+        this.currentChunk = null;
+        this.classDistributions = null;
+        this.waitForChunk();
+
+        if (this.predictWithPreviousOption.isSet()) {
+            // Predictions use copies of the members, as the processing computes
+            // the votes of the stored classifiers at the same time, which may
+            // change state they compute lazily. The weights are not changed,
+            // as the processing replaces the arrays of the ensemble
+            this.previousEnsemble = new Classifier[this.ensemble.length];
+            for (int i = 0; i < this.ensemble.length; i++) {
+                this.previousEnsemble[i] = this.ensemble[i].copy();
+            }
+            this.previousEnsembleWeights = this.ensembleWeights;
         }
+        this.taskRunner.submitBackground(new Runnable() {
 
-        if (this.storedLearners.length < this.maxStoredCount) {
-            // Train and add classifier
-            for (int num = 0; num < this.chunkSize; num++) {
-                this.candidateClassifier.trainOnInstance(this.currentChunk.instance(num));
+            @Override
+            public void run() {
+                processChunk(chunk, chunkClassDistributions);
             }
+        });
+    }
+
+    /**
+     * Waits for the chunk being processed in the background, if any.
+     */
+    protected void waitForChunk() {
+        this.taskRunner.awaitBackground();
+        this.previousEnsemble = null;
+        this.previousEnsembleWeights = null;
+    }
+
+    /**
+     * Processes a chunk. The weights of the stored classifiers and the
+     * training of the candidate are computed by separate tasks.
+     *
+     * @param chunk Data chunk of examples.
+     * @param chunkClassDistributions Class distribution of the chunk.
+     */
+    protected void processChunk(final Instances chunk, final long[] chunkClassDistributions) {
+        // Compute weights
+        double candidateClassifierWeight = this.computeCandidateWeight(this.candidateClassifier, chunk, this.numFolds, chunkClassDistributions);
+
+        // The candidate is always added while the storage is not full, so it
+        // is trained together with the computation of the weights
+        final boolean addCandidate = this.storedLearners.length < this.maxStoredCount;
+        final Classifier candidate = this.candidateClassifier;
+        List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(this.storedLearners.length + 1);
+        for (int i = 0; i < this.storedLearners.length; i++) {
+            final Classifier learner = this.storedLearners[(int) this.storedWeights[i][1]];
+            tasks.add(() -> computeWeight(learner, chunk, chunkClassDistributions));
+        }
+        if (addCandidate) {
+            tasks.add(() -> {
+                for (int num = 0; num < chunkSize; num++) {
+                    candidate.trainOnInstance(chunk.instance(num));
+                }
+                return null;
+            });
+        }
+        List<Double> storedLearnerWeights = this.taskRunner.invokeAll(tasks);
+        for (int i = 0; i < this.storedLearners.length; i++) {
+            this.storedWeights[i][0] = storedLearnerWeights.get(i);
+        }
 
+        if (addCandidate) {
+            // Add trained classifier
             this.addToStored(this.candidateClassifier, candidateClassifierWeight);
         } else {
             // Substitute poorest classifier
@@ -207,7 +325,7 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
             if (this.storedWeights[0][0] < candidateClassifierWeight) {
                 for (int num = 0; num < this.chunkSize; num++) {
-                    this.candidateClassifier.trainOnInstance(this.currentChunk.instance(num));
+                    this.candidateClassifier.trainOnInstance(chunk.instance(num));
                 }
 
                 this.storedWeights[0][0] = candidateClassifierWeight;
@@ -229,22 +347,21 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
             this.ensemble[i] = this.storedLearners[(int) this.storedWeights[storeSize - i - 1][1]];
         }
 
-        this.classDistributions = null;
-        this.currentChunk = null;
         this.candidateClassifier = (Classifier) getPreparedClassOption(this.learnerOption);
         this.candidateClassifier.resetLearning();
     }
 
     /**
-     * Computes the weight of a candidate classifier.
+     * Computes the weight of a candidate classifier. The folds are drawn in
+     * order, and each fold is trained and tested by a separate task.
      *
      * @param candidate Candidate classifier.
      * @param chunk Data chunk of examples.
      * @param numFolds Number of folds in candidate classifier cross-validation.
-     * @param useMseR Determines whether to use the MSEr threshold.
+     * @param chunkClassDistributions Class distribution of the chunk.
      * @return Candidate classifier weight.
      */
-    protected double computeCandidateWeight(Classifier candidate, Instances chunk, int numFolds) {
+    protected double computeCandidateWeight(Classifier candidate, Instances chunk, int numFolds, final long[] chunkClassDistributions) {
         double candidateWeight = 0.0;
         Random random = new Random(1);
         Instances randData = new Instances(chunk);
@@ -253,17 +370,23 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
             randData.stratify(numFolds);
         }
 
+        List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(numFolds);
         for (int n = 0; n < numFolds; n++) {
-            Instances train = randData.trainCV(numFolds, n, random);
-            Instances test = randData.testCV(numFolds, n);
+            final Instances train = randData.trainCV(numFolds, n, random);
+            final Instances test = randData.testCV(numFolds, n);
 
-            Classifier learner = candidate.copy();
+            final Classifier learner = candidate.copy();
 
-            for (int num = 0; num < train.numInstances(); num++) {
-                learner.trainOnInstance(train.instance(num));
-            }
+            tasks.add(() -> {
+                for (int num = 0; num < train.numInstances(); num++) {
+                    learner.trainOnInstance(train.instance(num));
+                }
+                return computeWeight(learner, test, chunkClassDistributions);
+            });
+        }
 
-            candidateWeight += computeWeight(learner, test);
+        for (double foldWeight : this.taskRunner.invokeAll(tasks)) {
+            candidateWeight += foldWeight;
         }
 
         double resultWeight = candidateWeight / numFolds;
@@ -280,10 +403,10 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      *
      * @param learner Classifier to calculate weight for.
      * @param chunk Data chunk of examples.
-     * @param useMseR Determines whether to use the MSEr threshold.
+     * @param chunkClassDistributions Class distribution of the chunk.
      * @return The given classifier's weight.
      */
-    protected double computeWeight(Classifier learner, Instances chunk) {
+    protected double computeWeight(Classifier learner, Instances chunk, long[] chunkClassDistributions) {
         double mse_i = 0;
         double mse_r = 0;
 
@@ -309,7 +432,7 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
         }
 
         mse_i /= this.chunkSize;
-        mse_r = this.computeMseR();
+        mse_r = this.computeMseR(chunkClassDistributions);
 
         return java.lang.Math.max(mse_r - mse_i, 0);
     }
@@ -317,14 +440,15 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
     /**
      * Computes the MSEr threshold.
      *
+     * @param chunkClassDistributions Class distribution of the chunk.
      * @return The MSEr threshold.
      */
-    protected double computeMseR() {
+    protected double computeMseR(long[] chunkClassDistributions) {
         double p_c;
         double mse_r = 0;
 
-        for (int i = 0; i < this.classDistributions.length; i++) {
-            p_c = (double) this.classDistributions[i] / (double) this.chunkSize;
+        for (int i = 0; i < chunkClassDistributions.length; i++) {
+            p_c = (double) chunkClassDistributions[i] / (double) this.chunkSize;
             mse_r += p_c * ((1 - p_c) * (1 - p_c));
         }
 
@@ -336,16 +460,27 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      */
     public double[] getVotesForInstance(Instance inst) {
         DoubleVector combinedVote = new DoubleVector();
+        Classifier[] ensemble;
+        double[] ensembleWeights;
+
+        if (this.previousEnsemble != null && !this.taskRunner.isBackgroundDone()) {
+            ensemble = this.previousEnsemble;
+            ensembleWeights = this.previousEnsembleWeights;
+        } else {
+            this.waitForChunk();
+            ensemble = this.ensemble;
+            ensembleWeights = this.ensembleWeights;
+        }
 
         if (this.trainingWeightSeenByModel > 0.0) {
-            for (int i = 0; i < this.ensemble.length; i++) {
-                if (this.ensembleWeights[i] > 0.0) {
-                    DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(inst));
+            for (int i = 0; i < ensemble.length; i++) {
+                if (ensembleWeights[i] > 0.0) {
+                    DoubleVector vote = new DoubleVector(ensemble[i].getVotesForInstance(inst));
 
                     if (vote.sumOfValues() > 0.0) {
                         vote.normalize();
                         //scale weight and prevent overflow
-                        vote.scaleValues(this.ensembleWeights[i] / (1.0 * this.ensemble.length + 1));
+                        vote.scaleValues(ensembleWeights[i] / (1.0 * ensemble.length + 1));
                         combinedVote.addValues(vote);
                     }
                 }
@@ -364,6 +499,7 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      */
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
+        this.waitForChunk();
         Measurement[] measurements = new Measurement[this.maxStoredCount];
 
         for (int m = 0; m < this.maxMemberCount; m++) {
@@ -397,6 +533,7 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
 
     @Override
     public Classifier[] getSubClassifiers() {
+        this.waitForChunk();
         return this.ensemble.clone();
     }
 
@@ -435,6 +572,7 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      * @return the size of the removed classifier.
      */
     protected int removePoorestModelBytes() {
+        this.waitForChunk();
         int poorestIndex = Utils.minIndex(this.ensembleWeights);
         int byteSize = this.ensemble[poorestIndex].measureByteSize();
         discardModel(poorestIndex);
@@ -448,6 +586,7 @@ public class AccuracyWeightedEnsemble extends AbstractClassifier implements Mult
      * @param index
      */
     protected void discardModel(int index) {
+        this.waitForChunk();
         Classifier[] newEnsemble = new Classifier[this.ensemble.length - 1];
         double[] newEnsembleWeights = new double[newEnsemble.length];
         int oldPos = 0;
@@ -28,7 +28,8 @@ import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.InstanceExample;
 import moa.core.Measurement;
-import moa.core.MiscUtils;
+import moa.core.ParallelTaskRunner;
+import moa.core.PoissonSampler;
 import moa.options.ClassOption;
 
 import com.github.javacliparser.FloatOption;
@@ -36,14 +37,12 @@ import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import moa.classifiers.trees.ARFHoeffdingTree;
 import moa.evaluation.BasicClassificationPerformanceEvaluator;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import moa.AbstractMOAObject;
 import moa.classifiers.core.driftdetection.ChangeDetector;
 
@@ -141,8 +140,12 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
     protected long instancesSeen;
     protected int subspaceSize;
     protected BasicClassificationPerformanceEvaluator evaluator;
+    protected PoissonSampler poissonSampler;
 
-    private ExecutorService executor;
+    /** Reused to read the measurements of the evaluators of the learners. */
+    protected double[] evaluatorValues;
+
+    protected ParallelTaskRunner taskRunner;
     
     @Override
     public void resetLearningImpl() {
@@ -151,17 +154,13 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         this.subspaceSize = 0;
         this.instancesSeen = 0;
         this.evaluator = new BasicClassificationPerformanceEvaluator();
+        this.poissonSampler = new PoissonSampler(this.lambdaOption.getValue());
         
         // Multi-threading
-        int numberOfJobs;
-        if(this.numberOfJobsOption.getValue() == -1) 
-            numberOfJobs = Runtime.getRuntime().availableProcessors();
-        else 
-            numberOfJobs = this.numberOfJobsOption.getValue();
-        // SINGLE_THREAD and requesting for only 1 thread are equivalent. 
-        // this.executor will be null and not used...
-        if(numberOfJobs != AdaptiveRandomForest.SINGLE_THREAD && numberOfJobs != 1)
-            this.executor = Executors.newFixedThreadPool(numberOfJobs);
+        // SINGLE_THREAD and requesting for only 1 thread are equivalent.
+        if(this.taskRunner != null)
+            this.taskRunner.shutdown();
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -170,14 +169,14 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         if(this.ensemble == null) 
             initEnsemble(instance);
         
-        Collection<TrainingRunnable> trainers = new ArrayList<TrainingRunnable>();
+        List<TrainingRunnable> trainers = new ArrayList<TrainingRunnable>();
         for (int i = 0 ; i < this.ensemble.length ; i++) {
             DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(instance));
             InstanceExample example = new InstanceExample(instance);
             this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
-            int k = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
+            int k = this.poissonSampler.nextInt(this.classifierRandom);
             if (k > 0) {
-                if(this.executor != null) {
+                if(this.taskRunner.getNumberOfJobs() > 1) {
                     TrainingRunnable trainer = new TrainingRunnable(this.ensemble[i], 
                         instance, k, this.instancesSeen);
                     trainers.add(trainer);
@@ -187,13 +186,8 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
                 }
             }
         }
-        if(this.executor != null) {
-            try {
-                this.executor.invokeAll(trainers);
-            } catch (InterruptedException ex) {
-                throw new RuntimeException("Could not call invokeAll() on training threads.");
-            }
-        }
+        if(!trainers.isEmpty())
+            this.taskRunner.invokeAll(trainers);
     }
 
     @Override
@@ -207,7 +201,7 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
             DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(testInstance));
             if (vote.sumOfValues() > 0.0) {
                 vote.normalize();
-                double acc = this.ensemble[i].evaluator.getPerformanceMeasurements()[1].getValue();
+                double acc = getAccuracy(this.ensemble[i].evaluator);
                 if(! this.disableWeightedVote.isSet() && acc > 0.0) {                        
                     for(int v = 0 ; v < vote.numValues() ; ++v) {
                         vote.setValue(v, vote.getValue(v) * acc);
@@ -219,6 +213,19 @@ public class AdaptiveRandomForest extends AbstractClassifier implements MultiCla
         return combinedVote.getArrayRef();
     }
 
+    /**
+     * Gets the accuracy in percent of a learner of the ensemble from the
+     * values of its evaluator, without creating measurement objects.
+     */
+    protected double getAccuracy(BasicClassificationPerformanceEvaluator evaluator) {
+        int numMeasurements = evaluator.getPerformanceMeasurementNames().length;
+        if (this.evaluatorValues == null || this.evaluatorValues.length < numMeasurements) {
+            this.evaluatorValues = new double[numMeasurements];
+        }
+        evaluator.getPerformanceMeasurementValues(this.evaluatorValues);
+        return this.evaluatorValues[1];
+    }
+
     @Override
     public boolean isRandomizable() {
         return true;
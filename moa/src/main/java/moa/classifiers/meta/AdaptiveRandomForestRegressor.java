@@ -29,7 +29,8 @@ import moa.classifiers.trees.ARFFIMTDD;
 import moa.core.DoubleVector;
 import moa.core.InstanceExample;
 import moa.core.Measurement;
-import moa.core.MiscUtils;
+import moa.core.ParallelTaskRunner;
+import moa.core.PoissonSampler;
 import moa.evaluation.BasicRegressionPerformanceEvaluator;
 import moa.options.ClassOption;
 
@@ -81,6 +82,10 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
     public FlagOption disableBackgroundLearnerOption = new FlagOption("disableBackgroundLearner", 'q',
             "Should use bkg learner? If disabled then reset tree immediately.");
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for training the trees (-1 = as much as possible, 0 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+
     protected static final int FEATURES_M = 0;
     protected static final int FEATURES_SQRT = 1;
     protected static final int FEATURES_SQRT_INV = 2;
@@ -90,6 +95,10 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
     protected long instancesSeen;
     protected int subspaceSize;
     protected BasicRegressionPerformanceEvaluator evaluator;
+    // The poisson weights of the trees for the current instance.
+    protected int[] treeWeights;
+    protected ParallelTaskRunner taskRunner;
+    protected PoissonSampler poissonSampler;
 
     @Override
     public void resetLearningImpl() {
@@ -98,6 +107,10 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
         this.subspaceSize = 0;
         this.instancesSeen = 0;
         this.evaluator = new BasicRegressionPerformanceEvaluator();
+        this.poissonSampler = new PoissonSampler(this.lambdaOption.getValue());
+        if(this.taskRunner != null)
+            this.taskRunner.shutdown();
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -106,14 +119,22 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
         if(this.ensemble == null)
             initEnsemble(instance);
 
-        for (int i = 0 ; i < this.ensemble.length ; i++) {
-            DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(instance));
-            InstanceExample example = new InstanceExample(instance);
-            this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
-            int k = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
-            if (k > 0) {
-                this.ensemble[i].trainOnInstance(instance, k, this.instancesSeen);
-            }
+        // The weights are drawn before the trees are trained, in the order of the trees,
+        //  so that they do not depend on the number of jobs.
+        for (int i = 0 ; i < this.ensemble.length ; i++)
+            this.treeWeights[i] = this.poissonSampler.nextInt(this.classifierRandom);
+
+        this.taskRunner.forEachIndex(this.ensemble.length, i -> trainTree(i, instance));
+    }
+
+    // Evaluates a tree on the instance and then trains it with its weight.
+    protected void trainTree(int i, Instance instance) {
+        DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(instance));
+        InstanceExample example = new InstanceExample(instance);
+        this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
+        int k = this.treeWeights[i];
+        if (k > 0) {
+            this.ensemble[i].trainOnInstance(instance, k, this.instancesSeen);
         }
     }
 
@@ -156,6 +177,7 @@ public class AdaptiveRandomForestRegressor extends AbstractClassifier implements
         // Init the ensemble.
         int ensembleSize = this.ensembleSizeOption.getValue();
         this.ensemble = new ARFFIMTDDBaseLearner[ensembleSize];
+        this.treeWeights = new int[ensembleSize];
 
         // TODO: this should be an option with default = BasicClassificationPerformanceEvaluator
         BasicRegressionPerformanceEvaluator regressionEvaluator = new BasicRegressionPerformanceEvaluator();
@@ -0,0 +1,182 @@
+/*
+ *    LatencyInstrumentedClassifier.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.meta;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import com.github.javacliparser.FlagOption;
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.AbstractClassifier;
+import moa.classifiers.Classifier;
+import moa.classifiers.MultiClassClassifier;
+import moa.core.LatencyHistogram;
+import moa.core.Measurement;
+import moa.options.ClassOption;
+
+/**
+ * Measures the latency of the predictions and of the training steps of a
+ * classifier, which is otherwise used unchanged.
+ *
+ * <p>Every call to <code>getVotesForInstance</code> and
+ * <code>trainOnInstance</code> of the base classifier is timed with the
+ * wall clock and recorded in a histogram with logarithmic buckets. The model
+ * measurements report the median, the 99th and 99.9th percentile and the
+ * maximum latency in microseconds. The histograms hold the latencies of all
+ * instances. By default the measurements report the latencies since the
+ * measurements were last read, computed as the difference to a copy of the
+ * histograms taken at that time, so the learning curve of an evaluation task
+ * shows the latencies of each sample window, which reveals stalls such as the
+ * replacement of trees after a drift. The maximum of a window is rounded up
+ * to the bucket that holds it.</p>
+ *
+ * <p>Parameters:</p> <ul> <li>-l : Classifier to measure</li> <li>-c :
+ * Report the latencies of all instances instead of the latest window</li>
+ * </ul>
+ */
+public class LatencyInstrumentedClassifier extends AbstractClassifier implements MultiClassClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final double[] PERCENTILES = {50.0, 99.0, 99.9};
+
+    private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p99.9"};
+
+    @Override
+    public String getPurposeString() {
+        return "Measures the prediction and training latency of a classifier.";
+    }
+
+    public ClassOption baseLearnerOption = new ClassOption("baseLearner", 'l',
+            "Classifier to measure.", Classifier.class, "trees.HoeffdingTree");
+
+    public FlagOption cumulativeOption = new FlagOption("cumulative", 'c',
+            "Report the latencies of all instances instead of those since the last report.");
+
+    protected Classifier baseLearner;
+
+    protected LatencyHistogram predictLatencies;
+
+    protected LatencyHistogram trainLatencies;
+
+    /** Copies of the histograms when the measurements were last read. */
+    protected LatencyHistogram reportedPredictLatencies;
+
+    protected LatencyHistogram reportedTrainLatencies;
+
+    @Override
+    public void resetLearningImpl() {
+        this.baseLearner = (Classifier) getPreparedClassOption(this.baseLearnerOption);
+        if (this.modelContext != null) {
+            this.baseLearner.setModelContext(this.modelContext);
+        }
+        this.baseLearner.resetLearning();
+        this.predictLatencies = new LatencyHistogram();
+        this.trainLatencies = new LatencyHistogram();
+        this.reportedPredictLatencies = new LatencyHistogram();
+        this.reportedTrainLatencies = new LatencyHistogram();
+    }
+
+    @Override
+    public void trainOnInstanceImpl(Instance inst) {
+        long start = System.nanoTime();
+        this.baseLearner.trainOnInstance(inst);
+        this.trainLatencies.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public double[] getVotesForInstance(Instance inst) {
+        long start = System.nanoTime();
+        double[] votes = this.baseLearner.getVotesForInstance(inst);
+        this.predictLatencies.record(System.nanoTime() - start);
+        return votes;
+    }
+
+    /**
+     * Gets the histogram of the prediction latencies of all instances.
+     */
+    public LatencyHistogram getPredictLatencies() {
+        return this.predictLatencies;
+    }
+
+    /**
+     * Gets the histogram of the training latencies of all instances.
+     */
+    public LatencyHistogram getTrainLatencies() {
+        return this.trainLatencies;
+    }
+
+    @Override
+    public boolean isRandomizable() {
+        return false;
+    }
+
+    @Override
+    protected Measurement[] getModelMeasurementsImpl() {
+        List<Measurement> measurementList = new LinkedList<Measurement>();
+        if (this.cumulativeOption.isSet()) {
+            addLatencyMeasurements(measurementList, "predict", this.predictLatencies);
+            addLatencyMeasurements(measurementList, "train", this.trainLatencies);
+        } else {
+            addLatencyMeasurements(measurementList, "predict",
+                    windowLatencies(this.predictLatencies, this.reportedPredictLatencies));
+            addLatencyMeasurements(measurementList, "train",
+                    windowLatencies(this.trainLatencies, this.reportedTrainLatencies));
+            startWindow();
+        }
+        Measurement[] modelMeasurements = ((AbstractClassifier) this.baseLearner).getModelMeasurements();
+        if (modelMeasurements != null) {
+            for (Measurement measurement : modelMeasurements) {
+                measurementList.add(measurement);
+            }
+        }
+        return measurementList.toArray(new Measurement[measurementList.size()]);
+    }
+
+    /**
+     * Starts a new window of latencies for the measurements, by taking copies
+     * of the histograms. The histograms themselves are not changed.
+     */
+    protected void startWindow() {
+        this.reportedPredictLatencies = (LatencyHistogram) this.predictLatencies.copy();
+        this.reportedTrainLatencies = (LatencyHistogram) this.trainLatencies.copy();
+    }
+
+    protected static LatencyHistogram windowLatencies(LatencyHistogram latencies,
+            LatencyHistogram reportedLatencies) {
+        LatencyHistogram window = (LatencyHistogram) latencies.copy();
+        window.subtract(reportedLatencies);
+        return window;
+    }
+
+    protected static void addLatencyMeasurements(List<Measurement> measurementList,
+            String name, LatencyHistogram latencies) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            measurementList.add(new Measurement(name + " latency " + PERCENTILE_NAMES[i]
+                    + " (microseconds)", latencies.getValueAtPercentile(PERCENTILES[i]) / 1000.0));
+        }
+        measurementList.add(new Measurement(name + " latency max (microseconds)",
+                latencies.getMax() / 1000.0));
+    }
+
+    @Override
+    public void getModelDescription(StringBuilder out, int indent) {
+        ((AbstractClassifier) this.baseLearner).getModelDescription(out, indent);
+    }
+}
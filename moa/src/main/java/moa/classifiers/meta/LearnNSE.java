@@ -19,6 +19,7 @@
  */
 package moa.classifiers.meta;
 
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
@@ -26,12 +27,15 @@ import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
+import moa.core.ParallelTaskRunner;
+import moa.core.Utils;
 import moa.options.ClassOption;
 
 /**
@@ -48,6 +52,12 @@ import moa.options.ClassOption;
  * http://dx.doi.org/10.1109/TNN.2011.2160459
  * </p>
  *
+ * <p>The votes of the members on a batch, the training of the new classifier
+ * and the errors of the members can be computed by several threads. A batch
+ * can also be processed in the background while the next batch is collected;
+ * predictions then wait for the processing to finish, or use the ensemble of
+ * the previous batch.</p>
+ *
  * @author Paulo Gonçalves (paulogoncalves@recife.ifpe.edu.br)
  * @author Dariusz Brzezinski
  *
@@ -83,6 +93,16 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
             new String[]{"NO", "AGE", "ERROR"}, new String[]{
                 "Don't prune classifiers", "Age-based", "Error-based"}, 0);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for processing a batch (-1 = as much as possible, 0 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+
+    public FlagOption asynchronousOption = new FlagOption("asynchronous", 'y',
+            "Process a batch in the background while the next batch is collected.");
+
+    public FlagOption predictWithPreviousOption = new FlagOption("predictWithPrevious", 'g',
+            "Predict with the ensemble of the previous batch while a batch is processed in the background, instead of waiting.");
+
     protected List<Classifier> ensemble;
     protected List<Double> ensembleWeights;
     protected List<ArrayList<Double>> bkts, wkts;
@@ -90,9 +110,19 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
     protected long index;
     protected double slope, crossingPoint;
     protected int pruning, ensembleSize;
+    protected ParallelTaskRunner taskRunner;
+    // Ensemble used for predictions while a batch is processed in the background
+    protected List<Classifier> previousEnsemble;
+    protected List<Double> previousEnsembleWeights;
 
     @Override
     public void resetLearningImpl() {
+        if (this.taskRunner != null) {
+            this.taskRunner.shutdown();
+        }
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
+        this.previousEnsemble = null;
+        this.previousEnsembleWeights = null;
         this.ensemble = new ArrayList<>();
         this.ensembleWeights = new ArrayList<>();
         this.bkts = new ArrayList<>();
@@ -108,7 +138,8 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
     @Override
     public void trainOnInstanceImpl(Instance inst) {
         this.index++;
-        // Store instance in the buffer
+        // Store instance in the buffer. The buffer holds copies, so processing
+        // a batch in the background only changes the weights of its own instances
         if (this.buffer == null) {
             this.buffer = new Instances(inst.dataset());
         }
@@ -116,125 +147,225 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
 
         if (this.index % this.periodOption.getValue() == 0) {
             this.index = 0;
-            double mt = this.buffer.numInstances();
-            Classifier classifier = ((Classifier) getPreparedClassOption(this.baseLearnerOption));
-            classifier.resetLearning();
+            Instances batch = this.buffer;
+            this.buffer = new Instances(this.getModelContext());
+            if (this.asynchronousOption.isSet()) {
+                this.processBatchInBackground(batch);
+            } else {
+                this.processBatch(batch);
+            }
+        }
+    }
 
-            if (this.ensemble.size() > 0) {
-                double et = 0;
-                // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    // Compute error of the existing ensemble on new data
-                    boolean vote = this.correctlyClassifies(this.buffer
-                            .instance(i));
-                    if (!vote) {
-                        et += 1.0 / mt;
-                    }
-                }
-                // Normalizing error
-                double weightSum = 0.0;
-                // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
-                    // Updating instance weights
-                    boolean vote = this.correctlyClassifies(instance);
-                    double error = (1.0 / mt) * (vote ? et : 1.0);
-                    instance.setWeight(error);
-                    weightSum += error;
-                }
-                // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
-                    // Normalize weights
-                    instance.setWeight(instance.weight() / weightSum);
+    /**
+     * Processes a batch in the background, so that the next batch can be
+     * collected in the meantime. The processing of the previous batch is
+     * waited for first.
+     */
+    protected void processBatchInBackground(final Instances batch) {
+        this.waitForBatch();
+        if (this.predictWithPreviousOption.isSet()) {
+            // Predictions use copies of the members, as the processing computes
+            // the votes of the members at the same time, which may change
+            // state they compute lazily
+            this.previousEnsemble = new ArrayList<>(this.ensemble.size());
+            for (Classifier member : this.ensemble) {
+                this.previousEnsemble.add(member.copy());
+            }
+            this.previousEnsembleWeights = new ArrayList<>(this.ensembleWeights);
+        }
+        this.taskRunner.submitBackground(new Runnable() {
 
-                    // Call base classifier
-                    Instance trainingInstance = (Instance) instance.copy();
-                    trainingInstance.setWeight(1);
-                    classifier.trainOnInstance(trainingInstance);
-                }
-            } else {
-                // First run! Iterating through all instances in the data chunk
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
+            @Override
+            public void run() {
+                processBatch(batch);
+            }
+        });
+    }
 
-                    // Initialize weights
-                    instance.setWeight(1.0 / mt);
+    /**
+     * Waits for the batch being processed in the background, if any.
+     */
+    protected void waitForBatch() {
+        this.taskRunner.awaitBackground();
+        this.previousEnsemble = null;
+        this.previousEnsembleWeights = null;
+    }
+
+    /**
+     * Trains a new classifier on a batch and updates the weights of the
+     * ensemble.
+     */
+    protected void processBatch(final Instances batch) {
+        double mt = batch.numInstances();
+        // Every member is a copy, the prepared option is the same object every time
+        final Classifier classifier = ((Classifier) getPreparedClassOption(this.baseLearnerOption)).copy();
+        classifier.resetLearning();
 
-                    // Call base classifier
-                    Instance trainingInstance = (Instance) instance.copy();
-                    trainingInstance.setWeight(1);
-                    classifier.trainOnInstance(trainingInstance);
+        if (this.ensemble.size() > 0) {
+            boolean[] votes = this.correctlyClassifies(batch);
+            double et = 0;
+            // Reading all data chunk instances
+            for (int i = 0; i < mt; i++) {
+                // Compute error of the existing ensemble on new data
+                if (!votes[i]) {
+                    et += 1.0 / mt;
                 }
             }
-            this.ensemble.add(classifier);
-            this.bkts.add(new ArrayList());
-            this.wkts.add(new ArrayList());
-            this.ensembleWeights.clear();
-            int t = this.ensemble.size();
-            double maxError = Double.NEGATIVE_INFINITY;
-            int errorIndex = Integer.MIN_VALUE;
-            // Evaluate all existing classifiers on new data set
-            for (int k = 1; k <= t; k++) {
-                double ekt = 0;
-                // Reading all data chunk instances
-                for (int i = 0; i < mt; i++) {
-                    Instance instance = this.buffer.instance(i);
-                    if (!this.ensemble.get(k - 1).correctlyClassifies(instance)) {
-                        // Ensemble incorrectly classifies this instance
-                        ekt += instance.weight();
-                    }
-                }
-                if (k == t && ekt > 0.5) {
-                    // Generate a new classifier
-                    Classifier c = (Classifier) getPreparedClassOption(this.baseLearnerOption);
-                    c.resetLearning();
-                    this.ensemble.set(k - 1, c);
-                } else if (ekt > 0.5) {
-                    // Remove voting power of this classifier
-                    ekt = 0.5;
-                }
-				// Storing the index of the classifier with higher error in case
-                // of error-based pruning
-                if (ekt > maxError) {
-                    maxError = ekt;
-                    errorIndex = k;
-                }
-                // Normalizing errors
-                double bkt = ekt / (1.0 - ekt);
-                // Retrieving normalized errors for this classifier
-                ArrayList<Double> nbkt = this.bkts.get(k - 1);
-                nbkt.add(bkt);
-				// Compute the weighted average of all normalized errors for kth
-                // classifier h_k
-                double wkt = 1.0 / (1.0 + Math.exp(-this.slope
-                        * (t - k - this.crossingPoint)));
-                List<Double> weights = this.wkts.get(k - 1);
-                double sum = 0;
-                for (Double weight : weights) {
-                    sum += weight;
+            // Normalizing error
+            double weightSum = 0.0;
+            // Reading all data chunk instances
+            for (int i = 0; i < mt; i++) {
+                Instance instance = batch.instance(i);
+                // Updating instance weights
+                double error = (1.0 / mt) * (votes[i] ? et : 1.0);
+                instance.setWeight(error);
+                weightSum += error;
+            }
+            // Reading all data chunk instances
+            for (int i = 0; i < mt; i++) {
+                Instance instance = batch.instance(i);
+                // Normalize weights
+                instance.setWeight(instance.weight() / weightSum);
+            }
+        } else {
+            // First run! Iterating through all instances in the data chunk
+            for (int i = 0; i < mt; i++) {
+                // Initialize weights
+                batch.instance(i).setWeight(1.0 / mt);
+            }
+        }
+        // The new classifier is trained while the existing classifiers are
+        // evaluated on the weighted instances
+        List<Callable<Double>> tasks = new ArrayList<>(this.ensemble.size() + 1);
+        tasks.add(() -> {
+            for (int i = 0; i < batch.numInstances(); i++) {
+                // Call base classifier
+                Instance trainingInstance = (Instance) batch.instance(i).copy();
+                trainingInstance.setWeight(1);
+                classifier.trainOnInstance(trainingInstance);
+            }
+            return null;
+        });
+        for (final Classifier member : this.ensemble) {
+            tasks.add(() -> computeError(member, batch));
+        }
+        List<Double> errors = new ArrayList<>(this.taskRunner.invokeAll(tasks));
+        errors.remove(0);
+        this.ensemble.add(classifier);
+        errors.add(computeError(classifier, batch));
+        this.bkts.add(new ArrayList());
+        this.wkts.add(new ArrayList());
+        this.ensembleWeights.clear();
+        int t = this.ensemble.size();
+        double maxError = Double.NEGATIVE_INFINITY;
+        int errorIndex = Integer.MIN_VALUE;
+        // Evaluate all existing classifiers on new data set
+        for (int k = 1; k <= t; k++) {
+            double ekt = errors.get(k - 1);
+            if (k == t && ekt > 0.5) {
+                // Generate a new classifier
+                Classifier c = ((Classifier) getPreparedClassOption(this.baseLearnerOption)).copy();
+                c.resetLearning();
+                this.ensemble.set(k - 1, c);
+            } else if (ekt > 0.5) {
+                // Remove voting power of this classifier
+                ekt = 0.5;
+            }
+            // Storing the index of the classifier with higher error in case
+            // of error-based pruning
+            if (ekt > maxError) {
+                maxError = ekt;
+                errorIndex = k;
+            }
+            // Normalizing errors
+            double bkt = ekt / (1.0 - ekt);
+            // Retrieving normalized errors for this classifier
+            ArrayList<Double> nbkt = this.bkts.get(k - 1);
+            nbkt.add(bkt);
+            // Compute the weighted average of all normalized errors for kth
+            // classifier h_k
+            double wkt = 1.0 / (1.0 + Math.exp(-this.slope
+                    * (t - k - this.crossingPoint)));
+            List<Double> weights = this.wkts.get(k - 1);
+            double sum = 0;
+            for (Double weight : weights) {
+                sum += weight;
+            }
+            weights.add(wkt / (sum + wkt));
+            double sbkt = 0.0;
+            for (int j = 0; j < weights.size(); j++) {
+                sbkt += weights.get(j) * nbkt.get(j);
+            }
+            // Calculate classifier voting weights
+            this.ensembleWeights.add(Math.log(1.0 / sbkt));
+        }
+        // Ensemble pruning strategy
+        if (pruning == 1 && t > ensembleSize) { // Age-based
+            this.ensemble.remove(0);
+            this.ensembleWeights.remove(0);
+            this.bkts.remove(0);
+            this.wkts.remove(0);
+        } else if (pruning == 2 && t > ensembleSize) { // Error-based
+            this.ensemble.remove(errorIndex - 1);
+            this.ensembleWeights.remove(errorIndex - 1);
+            this.bkts.remove(errorIndex - 1);
+            this.wkts.remove(errorIndex - 1);
+        }
+    }
+
+    /**
+     * Computes the weighted error of a classifier on a batch.
+     */
+    protected static double computeError(Classifier classifier, Instances batch) {
+        double ekt = 0;
+        // Reading all data chunk instances
+        for (int i = 0; i < batch.numInstances(); i++) {
+            Instance instance = batch.instance(i);
+            if (!classifier.correctlyClassifies(instance)) {
+                // Ensemble incorrectly classifies this instance
+                ekt += instance.weight();
+            }
+        }
+        return ekt;
+    }
+
+    /**
+     * Checks for every instance of a batch whether the ensemble classifies it
+     * correctly. The votes of every member are computed by a separate task
+     * and combined as in getVotesForInstance.
+     */
+    protected boolean[] correctlyClassifies(final Instances batch) {
+        List<Callable<double[][]>> tasks = new ArrayList<>(this.ensemble.size());
+        for (final Classifier member : this.ensemble) {
+            tasks.add(() -> {
+                double[][] votes = new double[batch.numInstances()][];
+                for (int i = 0; i < votes.length; i++) {
+                    votes[i] = member.getVotesForInstance(batch.instance(i));
                 }
-                weights.add(wkt / (sum + wkt));
-                double sbkt = 0.0;
-                for (int j = 0; j < weights.size(); j++) {
-                    sbkt += weights.get(j) * nbkt.get(j);
+                return votes;
+            });
+        }
+        List<double[][]> memberVotes = this.taskRunner.invokeAll(tasks);
+        boolean[] correct = new boolean[batch.numInstances()];
+        for (int i = 0; i < correct.length; i++) {
+            DoubleVector combinedVote = new DoubleVector();
+            for (int k = 0; k < memberVotes.size(); k++) {
+                if (this.ensembleWeights.get(k) > 0.0) {
+                    addVote(combinedVote, memberVotes.get(k)[i], this.ensembleWeights.get(k));
                 }
-                // Calculate classifier voting weights
-                this.ensembleWeights.add(Math.log(1.0 / sbkt));
             }
-            // Ensemble pruning strategy				
-            if (pruning == 1 && t > ensembleSize) { // Age-based
-                this.ensemble.remove(0);
-                this.ensembleWeights.remove(0);
-                this.bkts.remove(0);
-                this.wkts.remove(0);
-            } else if (pruning == 2 && t > ensembleSize) { // Error-based
-                this.ensemble.remove(errorIndex - 1);
-                this.ensembleWeights.remove(errorIndex - 1);
-                this.bkts.remove(errorIndex - 1);
-                this.wkts.remove(errorIndex - 1);
-            }
-            this.buffer = new Instances(this.getModelContext());
+            correct[i] = Utils.maxIndex(combinedVote.getArrayRef()) == (int) batch.instance(i).classValue();
+        }
+        return correct;
+    }
+
+    protected static void addVote(DoubleVector combinedVote, double[] memberVote, double weight) {
+        DoubleVector vote = new DoubleVector(memberVote);
+        if (vote.sumOfValues() > 0.0) {
+            vote.normalize();
+            vote.scaleValues(weight);
+            combinedVote.addValues(vote);
         }
     }
 
@@ -246,16 +377,21 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
     @Override
     public double[] getVotesForInstance(Instance inst) {
         DoubleVector combinedVote = new DoubleVector();
+        List<Classifier> ensemble;
+        List<Double> ensembleWeights;
+        if (this.previousEnsemble != null && !this.taskRunner.isBackgroundDone()) {
+            ensemble = this.previousEnsemble;
+            ensembleWeights = this.previousEnsembleWeights;
+        } else {
+            this.waitForBatch();
+            ensemble = this.ensemble;
+            ensembleWeights = this.ensembleWeights;
+        }
         if (this.trainingWeightSeenByModel > 0.0) {
-            for (int i = 0; i < this.ensemble.size(); i++) {
-                if (this.ensembleWeights.get(i) > 0.0) {
-                    DoubleVector vote = new DoubleVector(this.ensemble.get(i)
-                            .getVotesForInstance(inst));
-                    if (vote.sumOfValues() > 0.0) {
-                        vote.normalize();
-                        vote.scaleValues(this.ensembleWeights.get(i));
-                        combinedVote.addValues(vote);
-                    }
+            for (int i = 0; i < ensemble.size(); i++) {
+                if (ensembleWeights.get(i) > 0.0) {
+                    addVote(combinedVote, ensemble.get(i).getVotesForInstance(inst),
+                            ensembleWeights.get(i));
                 }
             }
         }
@@ -268,6 +404,7 @@ public class LearnNSE extends AbstractClassifier implements MultiClassClassifier
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
+        this.waitForBatch();
         Measurement[] measurements = null;
         if (this.ensembleWeights != null) {
             measurements = new Measurement[this.ensembleWeights.size()];
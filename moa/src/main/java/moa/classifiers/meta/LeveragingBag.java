@@ -35,7 +35,8 @@ import com.yahoo.labs.samoa.instances.Instance;
 
 import moa.core.DoubleVector;
 import moa.core.Measurement;
-import moa.core.MiscUtils;
+import moa.core.ParallelTaskRunner;
+import moa.core.PoissonSampler;
 
 /**
  * Leveraging Bagging for evolving data streams using ADWIN. Leveraging Bagging
@@ -84,6 +85,10 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
                 "Leveraging Subagging using resampling without replacement."
             }, 0);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for training the models (-1 = as much as possible, 0 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+
     protected Classifier[] ensemble;
 
     protected ADWIN[] ADError;
@@ -94,6 +99,23 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
 
     protected boolean initMatrixCodes = false;
 
+    /** The weights of the models for the current instance. */
+    protected double[] memberWeights;
+
+    /** The class values the models are trained on for the current instance. */
+    protected double[] memberClassValues;
+
+    /** Whether the error of a model increased for the current instance. */
+    protected boolean[] memberChanges;
+
+    protected ParallelTaskRunner taskRunner;
+
+    /** Draws the weights with the mean of the weight shrink option. */
+    protected PoissonSampler poissonSampler;
+
+    /** Draws the weights with a mean of one. */
+    protected PoissonSampler unitPoissonSampler;
+
     @Override
     public void resetLearningImpl() {
         this.ensemble = new Classifier[this.ensembleSizeOption.getValue()];
@@ -110,6 +132,15 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
         if (this.outputCodesOption.isSet()) {
             this.initMatrixCodes = true;
         }
+        this.memberWeights = new double[this.ensemble.length];
+        this.memberClassValues = new double[this.ensemble.length];
+        this.memberChanges = new boolean[this.ensemble.length];
+        this.poissonSampler = new PoissonSampler(this.weightShrinkOption.getValue());
+        this.unitPoissonSampler = new PoissonSampler(1.0);
+        if (this.taskRunner != null) {
+            this.taskRunner.shutdown();
+        }
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -150,12 +181,14 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
         Instance weightedInst = (Instance) inst.copy();
         double w = this.weightShrinkOption.getValue();
 
-        //Train ensemble of classifiers
+        // The weights and class values of the models are drawn before the
+        // models are trained, in the order of the models, so that they do not
+        // depend on the number of jobs
         for (int i = 0; i < this.ensemble.length; i++) {
             double k = 0.0;
             switch (this.leveraginBagAlgorithmOption.getChosenIndex()) {
                 case 0: //LeveragingBag
-                    k = MiscUtils.poisson(w, this.classifierRandom);
+                    k = this.poissonSampler.nextInt(this.classifierRandom);
                     break;
                 case 1: //LeveragingBagME
                     double error = this.ADError[i].getEstimation();
@@ -167,27 +200,26 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
                     break;
                 case 3: //LeveragingBagWT
                     w = 1.0;
-                    k = 1.0 + MiscUtils.poisson(w, this.classifierRandom);
+                    k = 1.0 + this.unitPoissonSampler.nextInt(this.classifierRandom);
                     break;
                 case 4: //LeveragingSubag
                     w = 1.0;
-                    k = MiscUtils.poisson(1, this.classifierRandom);
+                    k = this.unitPoissonSampler.nextInt(this.classifierRandom);
                     k = (k > 0) ? w : 0;
                     break;
             }
-            if (k > 0) {
-                if (this.outputCodesOption.isSet()) {
-                    weightedInst.setClassValue((double) this.matrixCodes[i][(int) inst.classValue()]);
-                }
-                weightedInst.setWeight(inst.weight() * k);
-                this.ensemble[i].trainOnInstance(weightedInst);
+            if (k > 0 && this.outputCodesOption.isSet()) {
+                weightedInst.setClassValue((double) this.matrixCodes[i][(int) inst.classValue()]);
             }
-            boolean correctlyClassifies = this.ensemble[i].correctlyClassifies(weightedInst);
-            double ErrEstim = this.ADError[i].getEstimation();
-            if (this.ADError[i].setInput(correctlyClassifies ? 0 : 1)) {
-                if (this.ADError[i].getEstimation() > ErrEstim) {
-                    Change = true;
-                }
+            this.memberWeights[i] = k;
+            this.memberClassValues[i] = weightedInst.classValue();
+        }
+
+        //Train ensemble of classifiers
+        this.taskRunner.forEachIndex(this.ensemble.length, i -> this.memberChanges[i] = trainMember(i, inst));
+        for (int i = 0; i < this.ensemble.length; i++) {
+            if (this.memberChanges[i]) {
+                Change = true;
             }
         }
         if (Change) {
@@ -208,6 +240,30 @@ public class LeveragingBag extends AbstractClassifier implements MultiClassClass
         }
     }
 
+    /**
+     * Trains a model with its weight and class value for the current instance
+     * and updates the estimation of its error.
+     *
+     * @return whether a change increased the error of the model
+     */
+    protected boolean trainMember(int i, Instance inst) {
+        Instance weightedInst = (Instance) inst.copy();
+        weightedInst.setClassValue(this.memberClassValues[i]);
+        double k = this.memberWeights[i];
+        if (k > 0) {
+            weightedInst.setWeight(inst.weight() * k);
+            this.ensemble[i].trainOnInstance(weightedInst);
+        }
+        boolean correctlyClassifies = this.ensemble[i].correctlyClassifies(weightedInst);
+        double ErrEstim = this.ADError[i].getEstimation();
+        if (this.ADError[i].setInput(correctlyClassifies ? 0 : 1)) {
+            if (this.ADError[i].getEstimation() > ErrEstim) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public double[] getVotesForInstance(Instance inst) {
         if (this.outputCodesOption.isSet()) {
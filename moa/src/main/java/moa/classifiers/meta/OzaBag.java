@@ -29,7 +29,8 @@ import com.yahoo.labs.samoa.instances.Instance;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
-import moa.core.MiscUtils;
+import moa.core.ParallelTaskRunner;
+import moa.core.PoissonSampler;
 import moa.options.ClassOption;
 import com.github.javacliparser.IntOption;
 
@@ -69,8 +70,19 @@ public class OzaBag extends AbstractClassifier implements MultiClassClassifier,
     public IntOption ensembleSizeOption = new IntOption("ensembleSize", 's',
             "The number of models in the bag.", 10, 1, Integer.MAX_VALUE);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for training the models (-1 = as much as possible, 0 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+
     protected Classifier[] ensemble;
 
+    /** The poisson weights of the models for the current instance. */
+    protected int[] memberWeights;
+
+    protected ParallelTaskRunner taskRunner;
+
+    protected PoissonSampler poissonSampler;
+
     @Override
     public void resetLearningImpl() {
         this.ensemble = new Classifier[this.ensembleSizeOption.getValue()];
@@ -79,17 +91,30 @@ public class OzaBag extends AbstractClassifier implements MultiClassClassifier,
         for (int i = 0; i < this.ensemble.length; i++) {
             this.ensemble[i] = baseLearner.copy();
         }
+        this.memberWeights = new int[this.ensemble.length];
+        this.poissonSampler = new PoissonSampler(1.0);
+        if (this.taskRunner != null) {
+            this.taskRunner.shutdown();
+        }
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
     }
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
+        // The weights are drawn before the models are trained, in the order
+        // of the models, so that they do not depend on the number of jobs
         for (int i = 0; i < this.ensemble.length; i++) {
-            int k = MiscUtils.poisson(1.0, this.classifierRandom);
-            if (k > 0) {
-                Instance weightedInst = (Instance) inst.copy();
-                weightedInst.setWeight(inst.weight() * k);
-                this.ensemble[i].trainOnInstance(weightedInst);
-            }
+            this.memberWeights[i] = this.poissonSampler.nextInt(this.classifierRandom);
+        }
+        this.taskRunner.forEachIndex(this.ensemble.length, i -> trainMember(i, inst));
+    }
+
+    protected void trainMember(int i, Instance inst) {
+        int k = this.memberWeights[i];
+        if (k > 0) {
+            Instance weightedInst = (Instance) inst.copy();
+            weightedInst.setWeight(inst.weight() * k);
+            this.ensemble[i].trainOnInstance(weightedInst);
         }
     }
 
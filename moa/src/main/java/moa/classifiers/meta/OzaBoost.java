@@ -27,6 +27,7 @@ import moa.classifiers.MultiClassClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
+import moa.core.ParallelTaskRunner;
 import moa.options.ClassOption;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
@@ -70,12 +71,21 @@ public class OzaBoost extends AbstractClassifier implements MultiClassClassifier
     public FlagOption pureBoostOption = new FlagOption("pureBoost", 'p',
             "Boost with weights only; no poisson.");
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for computing the votes of the models (-1 = as much as possible, 0 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+
     protected Classifier[] ensemble;
 
     protected double[] scms;
 
     protected double[] swms;
 
+    /** The votes of the models for the current instance. */
+    protected double[][] memberVotes;
+
+    protected ParallelTaskRunner taskRunner;
+
     @Override
     public void resetLearningImpl() {
         this.ensemble = new Classifier[this.ensembleSizeOption.getValue()];
@@ -86,8 +96,17 @@ public class OzaBoost extends AbstractClassifier implements MultiClassClassifier
         }
         this.scms = new double[this.ensemble.length];
         this.swms = new double[this.ensemble.length];
+        this.memberVotes = new double[this.ensemble.length][];
+        if (this.taskRunner != null) {
+            this.taskRunner.shutdown();
+        }
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
     }
 
+    /**
+     * Trains the models one after the other: the weight of the instance for
+     * a model depends on whether the previous models classify it correctly.
+     */
     @Override
     public void trainOnInstanceImpl(Instance inst) {
         double lambda_d = 1.0;
@@ -118,18 +137,20 @@ public class OzaBoost extends AbstractClassifier implements MultiClassClassifier
     }
 
     public double[] getVotesForInstance(Instance inst) {
+        // The models vote up to the first one without weight
+        int numVoters = 0;
+        while (numVoters < this.ensemble.length && getEnsembleMemberWeight(numVoters) > 0.0) {
+            numVoters++;
+        }
+        this.taskRunner.forEachIndex(numVoters, i -> this.memberVotes[i] = this.ensemble[i].getVotesForInstance(inst));
         DoubleVector combinedVote = new DoubleVector();
-        for (int i = 0; i < this.ensemble.length; i++) {
-            double memberWeight = getEnsembleMemberWeight(i);
-            if (memberWeight > 0.0) {
-                DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(inst));
-                if (vote.sumOfValues() > 0.0) {
-                    vote.normalize();
-                    vote.scaleValues(memberWeight);
-                    combinedVote.addValues(vote);
-                }
-            } else {
-                break;
+        for (int i = 0; i < numVoters; i++) {
+            DoubleVector vote = new DoubleVector(this.memberVotes[i]);
+            this.memberVotes[i] = null;
+            if (vote.sumOfValues() > 0.0) {
+                vote.normalize();
+                vote.scaleValues(getEnsembleMemberWeight(i));
+                combinedVote.addValues(vote);
             }
         }
         return combinedVote.getArrayRef();
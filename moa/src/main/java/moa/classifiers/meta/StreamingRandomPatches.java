@@ -118,6 +118,10 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
     public FlagOption disableBackgroundLearnerOption = new FlagOption("disableBackgroundLearner", 'q',
             "Should use bkg learner? If disabled, then trees are reset immediately.");
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for training the learners (-1 = as much as possible, 0 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+
     public static final int TRAIN_RANDOM_SUBSPACES = 0;
     public static final int TRAIN_RESAMPLING = 1;
     public static final int TRAIN_RANDOM_PATCHES = 2;
@@ -131,9 +135,30 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
     protected long instancesSeen;
     protected ArrayList<ArrayList<Integer>> subspaces;
 
+    /** Reused to read the measurements of the evaluators of the learners. */
+    protected double[] evaluatorValues;
+
+    protected ParallelTaskRunner taskRunner;
+
+    /** The weights of the learners for the current instance. */
+    protected double[] learnerWeights;
+
+    /**
+     * The random generators of the learners. They are streams split from the
+     * random seed, so a learner draws the same numbers whatever the number of
+     * jobs.
+     */
+    protected Random[] learnerRandoms;
+
+    protected PoissonSampler poissonSampler;
+
     @Override
     public void resetLearningImpl() {
         this.instancesSeen = 0;
+        this.poissonSampler = new PoissonSampler(this.lambdaOption.getValue());
+        if(this.taskRunner != null)
+            this.taskRunner.shutdown();
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
     }
 
     @Override
@@ -142,24 +167,30 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
         if(this.ensemble == null)
             initEnsemble(instance);
 
-        for (int i = 0 ; i < this.ensemble.length ; i++) {
-            double[] rawVote = this.ensemble[i].getVotesForInstance(instance);
-            DoubleVector vote = new DoubleVector(rawVote);
-            InstanceExample example = new InstanceExample(instance);
+        // The weights are drawn before the learners are trained, in the order of the learners,
+        // so that they do not depend on the number of jobs.
+        for (int i = 0 ; i < this.ensemble.length ; i++)
+            this.learnerWeights[i] = drawWeight();
+        this.taskRunner.forEachIndex(this.ensemble.length,
+                i -> trainLearner(i, instance, this.learnerWeights[i], this.learnerRandoms[i]));
+    }
 
-            this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
-            // Train using random subspaces without resampling, i.e. all instances are used for training.
-            if(this.trainingMethodOption.getChosenIndex() == TRAIN_RANDOM_SUBSPACES) {
-                this.ensemble[i].trainOnInstance(instance,1, this.instancesSeen, this.classifierRandom);
-            }
-            // Train using random patches or resampling, thus we simulate online bagging with poisson(lambda=...)
-            else {
-                int k = MiscUtils.poisson(this.lambdaOption.getValue(), this.classifierRandom);
-                if (k > 0) {
-                    double weight = k;
-                    this.ensemble[i].trainOnInstance(instance, weight, this.instancesSeen, this.classifierRandom);
-                }
-            }
+    protected double drawWeight() {
+        // Train using random subspaces without resampling, i.e. all instances are used for training.
+        if(this.trainingMethodOption.getChosenIndex() == TRAIN_RANDOM_SUBSPACES)
+            return 1;
+        // Train using random patches or resampling, thus we simulate online bagging with poisson(lambda=...)
+        return this.poissonSampler.nextInt(this.classifierRandom);
+    }
+
+    protected void trainLearner(int i, Instance instance, double weight, Random random) {
+        double[] rawVote = this.ensemble[i].getVotesForInstance(instance);
+        DoubleVector vote = new DoubleVector(rawVote);
+        InstanceExample example = new InstanceExample(instance);
+
+        this.ensemble[i].evaluator.addResult(example, vote.getArrayRef());
+        if (weight > 0) {
+            this.ensemble[i].trainOnInstance(instance, weight, this.instancesSeen, random);
         }
     }
 
@@ -176,7 +207,7 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
             DoubleVector vote = new DoubleVector(this.ensemble[i].getVotesForInstance(testInstance));
             if (vote.sumOfValues() > 0.0) {
                 vote.normalize();
-                double acc = this.ensemble[i].evaluator.getPerformanceMeasurements()[1].getValue();
+                double acc = getAccuracy(this.ensemble[i].evaluator);
                 if(!this.disableWeightedVote.isSet() && acc > 0.0) {
                     for(int v = 0 ; v < vote.numValues() ; ++v) {
                         vote.setValue(v, vote.getValue(v) * acc);
@@ -188,6 +219,19 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
         return combinedVote.getArrayRef();
     }
 
+    /**
+     * Gets the accuracy in percent of a learner of the ensemble from the
+     * values of its evaluator, without creating measurement objects.
+     */
+    protected double getAccuracy(BasicClassificationPerformanceEvaluator evaluator) {
+        int numMeasurements = evaluator.getPerformanceMeasurementNames().length;
+        if (this.evaluatorValues == null || this.evaluatorValues.length < numMeasurements) {
+            this.evaluatorValues = new double[numMeasurements];
+        }
+        evaluator.getPerformanceMeasurementValues(this.evaluatorValues);
+        return this.evaluatorValues[1];
+    }
+
     @Override
     public boolean isRandomizable() {
         return true;
@@ -306,6 +350,9 @@ public class StreamingRandomPatches extends AbstractClassifier implements MultiC
             }
         }
 
+        this.learnerWeights = new double[ensembleSize];
+        this.learnerRandoms = new SplitMixRandom(this.randomSeed).splitStreams(ensembleSize);
+
     }
 
     @Override
@@ -23,6 +23,8 @@ package moa.classifiers.meta;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
 import moa.core.Measurement;
+import moa.core.ParallelTaskRunner;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.options.WEKAClassOption;
 import weka.classifiers.Classifier;
@@ -34,6 +36,11 @@ import com.yahoo.labs.samoa.instances.SamoaToWekaInstanceConverter;
 /**
  * Class for using a classifier from WEKA.
  *
+ * Classifiers that are not updateable are built on a window of instances.
+ * With background training the classifier is built on a copy of the window
+ * by another thread, and the previous classifier is used for predictions
+ * until the new one is built.
+ *
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
  * @author FracPete (fracpete at waikato dot ac dot nz)
  * @version $Revision$
@@ -64,8 +71,21 @@ public class WEKAClassifier
             "How many instances between samples of the learning performance.",
             0, 0, Integer.MAX_VALUE);
 
+    public FlagOption backgroundTrainingOption = new FlagOption("backgroundTraining", 'b',
+            "Build the classifier on a background thread, predicting with the previous one until it is built.");
+
     protected Classifier classifier;
 
+    /** Unbuilt copy of the classifier, copied again for every build. */
+    protected Classifier classifierTemplate;
+
+    /** Classifier built in the background, not used yet. */
+    protected volatile Classifier builtClassifier;
+
+    protected boolean isBuilding;
+
+    protected ParallelTaskRunner trainingRunner;
+
     protected int numberInstances;
 
     protected weka.core.Instances instancesBuffer;
@@ -81,6 +101,7 @@ public class WEKAClassifier
             //System.out.println(baseLearnerOption.getValue());
             String[] options = weka.core.Utils.splitOptions(baseLearnerOption.getValueAsCLIString());
             createWekaClassifier(options);
+            this.classifierTemplate = weka.classifiers.AbstractClassifier.makeCopy(this.classifier);
         } catch (Exception e) {
             System.err.println("Creating a new classifier: " + e.getMessage());
         }
@@ -88,10 +109,17 @@ public class WEKAClassifier
         isClassificationEnabled = false;
         this.isBufferStoring = true;
         this.instanceConverter = new SamoaToWekaInstanceConverter();
+        if (this.trainingRunner != null) {
+            this.trainingRunner.shutdown();
+        }
+        this.trainingRunner = new ParallelTaskRunner(1);
+        this.builtClassifier = null;
+        this.isBuilding = false;
     }
 
     @Override
     public void trainOnInstanceImpl(Instance samoaInstance) {
+        swapBuiltClassifier(false);
         weka.core.Instance inst = this.instanceConverter.wekaInstance(samoaInstance);
         try {
             if (numberInstances == 0) {
@@ -113,7 +141,9 @@ public class WEKAClassifier
                 if (numberInstances == widthInitOption.getValue()) {
                     //Build first time Classifier
                     buildClassifier();
-                    isClassificationEnabled = true;
+                    if (!this.isBuilding) {
+                        isClassificationEnabled = true;
+                    }
                     //Continue to store instances
                     if (sampleFrequencyOption.getValue() != 0) {
                         isBufferStoring = true;
@@ -141,7 +171,9 @@ public class WEKAClassifier
                     if (numInstances == widthOption.getValue()) {
                         //Build Classifier
                         buildClassifier();
-                        isClassificationEnabled = true;
+                        if (!this.isBuilding) {
+                            isClassificationEnabled = true;
+                        }
                         this.instancesBuffer = new weka.core.Instances(inst.dataset());
                     }
                 }
@@ -152,6 +184,11 @@ public class WEKAClassifier
     }
 
     public void buildClassifier() {
+        if ((classifier instanceof UpdateableClassifier) == false
+                && this.backgroundTrainingOption.isSet()) {
+            buildClassifierInBackground();
+            return;
+        }
         try {
             if ((classifier instanceof UpdateableClassifier) == false) {
                 Classifier auxclassifier = weka.classifiers.AbstractClassifier.makeCopy(classifier);
@@ -164,8 +201,51 @@ public class WEKAClassifier
         }
     }
 
+    /**
+     * Builds the classifier on a copy of the buffer in the background. A
+     * build that has not finished yet is completed and used first.
+     */
+    protected void buildClassifierInBackground() {
+        swapBuiltClassifier(true);
+        final weka.core.Instances snapshot = new weka.core.Instances(this.instancesBuffer);
+        final Classifier template = this.classifierTemplate != null ? this.classifierTemplate : this.classifier;
+        isBufferStoring = false;
+        this.isBuilding = true;
+        this.trainingRunner.submitBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Classifier auxclassifier = weka.classifiers.AbstractClassifier.makeCopy(template);
+                    auxclassifier.buildClassifier(snapshot);
+                    builtClassifier = auxclassifier;
+                } catch (Exception e) {
+                    System.err.println("Building WEKA Classifier: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts using the classifier built in the background, if it is built.
+     *
+     * @param wait whether to wait for a build that has not finished
+     */
+    protected void swapBuiltClassifier(boolean wait) {
+        if (this.isBuilding && (wait || this.trainingRunner.isBackgroundDone())) {
+            this.trainingRunner.awaitBackground();
+            this.isBuilding = false;
+            if (this.builtClassifier != null) {
+                this.classifier = this.builtClassifier;
+                this.builtClassifier = null;
+                this.isClassificationEnabled = true;
+            }
+        }
+    }
+
     @Override
     public double[] getVotesForInstance(Instance samoaInstance) {
+        swapBuiltClassifier(false);
         weka.core.Instance inst = this.instanceConverter.wekaInstance(samoaInstance);
         double[] votes = new double[inst.numClasses()];
         if (isClassificationEnabled == false) {
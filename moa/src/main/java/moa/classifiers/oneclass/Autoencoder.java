@@ -23,8 +23,6 @@ package moa.classifiers.oneclass;
 import java.util.Collection;
 import java.util.Iterator;
 
-import org.apache.commons.math3.linear.*;
-
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -39,6 +37,9 @@ import moa.core.Measurement;
  * The autoencoder's structure is an input layer with one neuron for each non-class attribute,
  * a hidden layer of two neurons and an output layer with one neuron for each non-class attribute.
  * 
+ * The weights can be updated once per mini-batch of instances, with the average of the adjustments
+ * computed for the instances of the batch.
+ * 
  * Partially modeled on Albert Bifet's Perceptron.java, also found in the MOA project.
  * 
  * Backpropagation implementation based on Matt Mazur's excellent tutorial on this topic:
@@ -66,6 +67,9 @@ public class Autoencoder extends AbstractClassifier implements Classifier, OneCl
 	public FloatOption thresholdOption = new FloatOption("threshold", 't',
 			"Determines the threshold for recognizing outliers. Higher values means fewer outliers.", 0.6, 0.001, 0.999);
 	
+	public IntOption batchSizeOption = new IntOption("batchSize", 'b',
+			"The number of instances whose adjustments are averaged before the weights are updated.", 1, 1, Integer.MAX_VALUE);
+	
 	/**
 	 * If <b>true</b>, denotes that the autoencoder needs to be initialized.
 	 */
@@ -82,14 +86,14 @@ public class Autoencoder extends AbstractClassifier implements Classifier, OneCl
 	private int hiddenLayerSize;
 	
 	/**
-	 * The weights between the input layer and the hidden layer.
+	 * The weights between the input layer and the hidden layer, indexed by hidden neuron and input neuron.
 	 */
-	private RealMatrix weightsOne;
+	private double[][] weightsOne;
 	
 	/**
-	 * the weights between the hidden layer and the output layer.
+	 * the weights between the hidden layer and the output layer, indexed by output neuron and hidden neuron.
 	 */
-	private RealMatrix weightsTwo;
+	private double[][] weightsTwo;
 	
 	/**
 	 * The bias for the calculations between the input layer and the hidden layer.
@@ -111,6 +115,35 @@ public class Autoencoder extends AbstractClassifier implements Classifier, OneCl
 	 */
 	private double threshold;
 	
+	/**
+	 * The adjustments of the weights and bias units accumulated over the current mini-batch.
+	 */
+	private double[][] adjustmentOne;
+	
+	private double[][] adjustmentTwo;
+	
+	private double adjustBiasOne;
+	
+	private double adjustBiasTwo;
+	
+	/**
+	 * The number of instances in the current mini-batch.
+	 */
+	private int batchCount;
+	
+	/**
+	 * The activations of the neurons and the deltas of the last instance, reused for every instance.
+	 */
+	private double[] input;
+	
+	private double[] hidden;
+	
+	private double[] output;
+	
+	private double[] delta;
+	
+	private double[] deltaTwo;
+	
 	/**
 	 * Marks the autoencoder as needing to be reinitialized.
 	 */
@@ -140,11 +173,22 @@ public class Autoencoder extends AbstractClassifier implements Classifier, OneCl
 			}
 		}
 		
-		this.weightsOne = new Array2DRowRealMatrix(randomWeightsOne);
-		this.weightsTwo = new Array2DRowRealMatrix(randomWeightsTwo);
+		this.weightsOne = randomWeightsOne;
+		this.weightsTwo = randomWeightsTwo;
 		this.biasOne = this.classifierRandom.nextDouble();
 		this.biasTwo = this.classifierRandom.nextDouble();
 		
+		this.adjustmentOne = new double[this.hiddenLayerSize][this.numAttributes];
+		this.adjustmentTwo = new double[this.numAttributes][this.hiddenLayerSize];
+		this.adjustBiasOne = 0.0;
+		this.adjustBiasTwo = 0.0;
+		this.batchCount = 0;
+		this.input = new double[this.numAttributes];
+		this.hidden = new double[this.hiddenLayerSize];
+		this.output = new double[this.numAttributes];
+		this.delta = new double[this.numAttributes];
+		this.deltaTwo = new double[this.hiddenLayerSize];
+		
 		this.reset = false;
 	}
 	
@@ -168,96 +212,146 @@ public class Autoencoder extends AbstractClassifier implements Classifier, OneCl
 	 * Performs the requisite calculations between the input layer and the hidden layer.
 	 * 
 	 * @param input the input values
-	 * 
-	 * @return the activations of the hidden units
+	 * @param hidden the array to store the activations of the hidden units in
 	 */
-	private RealMatrix firstLayer(RealMatrix input)
+	private void firstLayer(double[] input, double[] hidden)
 	{
-		RealMatrix hidden = (this.weightsOne.multiply(input)).scalarAdd(this.biasOne);
-		double[] tempValues = new double[this.hiddenLayerSize];
-		
 		// Logistic function used for hidden layer activation
-		for(int i = 0 ; i < this.hiddenLayerSize ; i++)
+		for(int j = 0 ; j < this.hiddenLayerSize ; j++)
 		{
-			tempValues[i] = 1.0 / (1.0 + Math.pow(Math.E, -1.0*hidden.getEntry(i, 0)));
+			double[] weights = this.weightsOne[j];
+			double sum = 0.0;
+			
+			for(int i = 0 ; i < this.numAttributes ; i++)
+			{
+				sum += weights[i]*input[i];
+			}
+			
+			hidden[j] = 1.0 / (1.0 + Math.pow(Math.E, -1.0*(sum + this.biasOne)));
 		}
-		
-		return new Array2DRowRealMatrix(tempValues);
 	}
 	
 	/**
 	 * Performs the requisite calculations between the hidden layer and the output layer.
 	 * 
 	 * @param hidden the activations of the hidden units
-	 * 
-	 * @return the activations of the output layer
+	 * @param output the array to store the activations of the output layer in
 	 */
-	private RealMatrix secondLayer(RealMatrix hidden)
+	private void secondLayer(double[] hidden, double[] output)
 	{
-		RealMatrix output = (this.weightsTwo.multiply(hidden)).scalarAdd(this.biasTwo);
-		double[] tempValues = new double[this.numAttributes];
-		
 		// Logistic function used for output layer activation
 		for(int i = 0 ; i < this.numAttributes ; i++)
 		{
-			tempValues[i] = 1.0 / (1.0 + Math.pow(Math.E, -1.0*output.getEntry(i, 0)));
+			double[] weights = this.weightsTwo[i];
+			double sum = 0.0;
+			
+			for(int j = 0 ; j < this.hiddenLayerSize ; j++)
+			{
+				sum += weights[j]*hidden[j];
+			}
+			
+			output[i] = 1.0 / (1.0 + Math.pow(Math.E, -1.0*(sum + this.biasTwo)));
 		}
-		
-		return new Array2DRowRealMatrix(tempValues);
-		
 	}
 	
 	/**
-	 * Performs backpropagation based on a training instance.
+	 * Performs backpropagation based on a training instance. The adjustments are accumulated
+	 * and applied to the weights at the end of the mini-batch.
 	 * 
 	 * @param inst the training instance
 	 */
 	private void backpropagation(Instance inst)
 	{
-		double [] attributeValues = new double[this.numAttributes];
-		
 		for(int i = 0 ; i < this.numAttributes ; i++)
 		{
-			attributeValues[i] = inst.value(i);
+			this.input[i] = inst.value(i);
 		}
 		
-		RealMatrix input = new Array2DRowRealMatrix(attributeValues);
-		RealMatrix hidden = firstLayer(input);
-		RealMatrix output = secondLayer(hidden);
+		this.firstLayer(this.input, this.hidden);
+		this.secondLayer(this.hidden, this.output);
 		
-		RealMatrix delta = new Array2DRowRealMatrix(this.numAttributes,1);
-
-		double adjustBiasTwo = 0.0;
+		double minusLearningRate = -1.0*this.learningRate;
 		
 		// Backpropagation to adjust the weights in layer two
 		for(int i = 0 ; i < this.numAttributes ; i++)
 		{
-			double inputVal = input.getEntry(i, 0);
-			double outputVal = output.getEntry(i, 0);
-			delta.setEntry(i, 0, (outputVal-inputVal)*outputVal*(1.0-outputVal));
+			double inputVal = this.input[i];
+			double outputVal = this.output[i];
+			this.delta[i] = (outputVal-inputVal)*outputVal*(1.0-outputVal);
 			//squaredError += 0.5*Math.pow((outputVal-inputVal), 2.0);
-			adjustBiasTwo -= this.learningRate*delta.getEntry(i, 0)*this.biasTwo;
+			this.adjustBiasTwo -= this.learningRate*this.delta[i]*this.biasTwo;
+			
+			double[] adjustments = this.adjustmentTwo[i];
+			for(int j = 0 ; j < this.hiddenLayerSize ; j++)
+			{
+				adjustments[j] += (this.delta[i]*this.hidden[j])*minusLearningRate;
+			}
 		}
 		
-		RealMatrix adjustmentTwo = (delta.multiply(hidden.transpose())).scalarMultiply(-1.0*this.learningRate);
-				
 		// Back propagation to adjust the weights in layer one
-		RealMatrix hidden2 = hidden.scalarMultiply(-1.0).scalarAdd(1.0);
-		RealMatrix delta2 = delta.transpose().multiply(this.weightsTwo);
-		double adjustBiasOne = 0.0;
+		for (int j = 0 ; j < this.hiddenLayerSize ; j++)
+		{
+			double sum = 0.0;
+			
+			for(int i = 0 ; i < this.numAttributes ; i++)
+			{
+				sum += this.delta[i]*this.weightsTwo[i][j];
+			}
+			
+			this.deltaTwo[j] = sum*((this.hidden[j]*-1.0)+1.0)*this.hidden[j];
+			this.adjustBiasOne -= this.learningRate*this.deltaTwo[j]*this.biasOne;
+			
+			double[] adjustments = this.adjustmentOne[j];
+			for(int i = 0 ; i < this.numAttributes ; i++)
+			{
+				adjustments[i] += (this.deltaTwo[j]*this.input[i])*minusLearningRate;
+			}
+		}
+		
+		this.batchCount++;
 		
-		for (int i = 0 ; i < this.hiddenLayerSize ; i++)
+		if(this.batchCount >= this.batchSizeOption.getValue())
 		{
-			delta2.setEntry(0, i, delta2.getEntry(0, i)*hidden2.getEntry(i, 0)*hidden.getEntry(i, 0));
-			adjustBiasOne -= this.learningRate*delta2.getEntry(0, i)*this.biasOne;
+			this.updateWeights();
+		}
+	}
+	
+	/**
+	 * Adjusts the weights and bias units by the average of the adjustments accumulated over the mini-batch.
+	 */
+	private void updateWeights()
+	{
+		double scale = 1.0 / this.batchCount;
+		
+		for(int j = 0 ; j < this.hiddenLayerSize ; j++)
+		{
+			double[] weights = this.weightsOne[j];
+			double[] adjustments = this.adjustmentOne[j];
+			
+			for(int i = 0 ; i < this.numAttributes ; i++)
+			{
+				weights[i] += adjustments[i]*scale;
+				adjustments[i] = 0.0;
+			}
 		}
 		
-		RealMatrix adjustmentOne = delta2.transpose().multiply(input.transpose()).scalarMultiply(-1.0*this.learningRate);
+		for(int i = 0 ; i < this.numAttributes ; i++)
+		{
+			double[] weights = this.weightsTwo[i];
+			double[] adjustments = this.adjustmentTwo[i];
+			
+			for(int j = 0 ; j < this.hiddenLayerSize ; j++)
+			{
+				weights[j] += adjustments[j]*scale;
+				adjustments[j] = 0.0;
+			}
+		}
 		
-		this.weightsOne = this.weightsOne.add(adjustmentOne);
-		this.biasOne += adjustBiasOne;
-		this.weightsTwo = this.weightsTwo.add(adjustmentTwo);
-		this.biasTwo += adjustBiasTwo;
+		this.biasOne += this.adjustBiasOne*scale;
+		this.biasTwo += this.adjustBiasTwo*scale;
+		this.adjustBiasOne = 0.0;
+		this.adjustBiasTwo = 0.0;
+		this.batchCount = 0;
 	}
 	
 	/**
@@ -333,20 +427,21 @@ public class Autoencoder extends AbstractClassifier implements Classifier, OneCl
 		
 		if(!this.reset)
 		{
-			double [] attributeValues = new double[inst.numAttributes()-1];
-
+			double [] attributeValues = new double[this.numAttributes];
+			double [] hiddenValues = new double[this.hiddenLayerSize];
+			double [] outputValues = new double[this.numAttributes];
 
 			for(int i = 0 ; i < attributeValues.length ; i++)
 			{
 				attributeValues[i] = inst.value(i);
 			}
 
-			RealMatrix input = new Array2DRowRealMatrix(attributeValues);
-			RealMatrix output = secondLayer(firstLayer(input));
+			this.firstLayer(attributeValues, hiddenValues);
+			this.secondLayer(hiddenValues, outputValues);
 
 			for(int i = 0 ; i < this.numAttributes ; i++)
 			{
-				error += 0.5 * Math.pow(output.getEntry(i, 0) - input.getEntry(i, 0), 2.0);
+				error += 0.5 * Math.pow(outputValues[i] - attributeValues[i], 2.0);
 			}
 		}
 		
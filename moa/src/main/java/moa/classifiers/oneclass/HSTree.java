@@ -0,0 +1,209 @@
+/*
+ *    HSTree.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.oneclass;
+
+import java.io.Serializable;
+import java.util.Random;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * A Streaming Half-Space Tree stored in arrays, with the same nodes as a tree of
+ * HSTreeNode objects. The tree is complete, so the nodes are numbered in breadth-first
+ * order and the children of node i are the nodes 2i+1 (left) and 2i+2 (right).
+ *
+ * The mass profiles of the reference window and of the latest window are kept in two
+ * arrays that swap roles at the end of a window. Every mass is stored together with the
+ * number of the window it was counted in, and a mass from an older window counts as zero,
+ * so the latest window's profile does not need to be cleared and the swap takes constant time.
+ *
+ * Made use of by HSTrees.java.
+ */
+public class HSTree implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The maximum depth of the tree. The root node is at depth 1.
+	 */
+	private int maxDepth;
+
+	/**
+	 * The attribute that each internal node splits on.
+	 */
+	private int[] splitAttributes;
+
+	/**
+	 * The midpoint of the split attribute in the workspace of each internal node.
+	 */
+	private double[] splitValues;
+
+	/**
+	 * The two mass profiles, indexed by profile and node.
+	 */
+	private int[][] mass;
+
+	/**
+	 * The number of the window in which each mass was counted.
+	 */
+	private int[][] massWindow;
+
+	/**
+	 * The profile that holds the reference window's masses, the other holds the latest window's.
+	 */
+	private int reference;
+
+	/**
+	 * The number of the latest window. The reference window has the previous number.
+	 */
+	private int window;
+
+	/**
+	 * Constructor for an HSTree.
+	 *
+	 * @param min the minimum values of the attributes for the tree's workspace
+	 * @param max the maximum values of the attributes for the tree's workspace
+	 * @param maxDepth the maximum depth of the tree
+	 * @param random the random number generator used to choose the split attributes
+	 */
+	public HSTree(double[] min, double[] max, int maxDepth, Random random)
+	{
+		if(maxDepth > 30)
+		{
+			throw new IllegalArgumentException("The maximum depth of an HSTree must be at most 30.");
+		}
+
+		this.maxDepth = Math.max(1, maxDepth);
+		int numNodes = (1 << this.maxDepth) - 1;
+		int numInternalNodes = (1 << (this.maxDepth - 1)) - 1;
+		this.splitAttributes = new int[numInternalNodes];
+		this.splitValues = new double[numInternalNodes];
+		this.mass = new int[2][numNodes];
+		this.massWindow = new int[2][numNodes];
+		this.reference = 0;
+		this.window = 1;
+
+		this.buildNode(0, 1, min, max, random);
+	}
+
+	/**
+	 * Chooses the splits of a node and of its subordinate nodes, in the same order as HSTreeNode.
+	 *
+	 * @param node the number of the node
+	 * @param depth the depth of the node
+	 * @param min the minimum values of the attributes for this node's workspace
+	 * @param max the maximum values of the attributes for this node's workspace
+	 * @param random the random number generator used to choose the split attributes
+	 */
+	private void buildNode(int node, int depth, double[] min, double[] max, Random random)
+	{
+		if(depth < this.maxDepth)
+		{
+			int splitAttribute = (int) Math.floor((random.nextDouble() * (min.length)));
+			double splitValue = (min[splitAttribute] + max[splitAttribute]) / 2.0;
+			this.splitAttributes[node] = splitAttribute;
+			this.splitValues[node] = splitValue;
+
+			double temp = max[splitAttribute];
+			max[splitAttribute] = splitValue;
+			this.buildNode(2 * node + 1, depth + 1, min, max, random);
+
+			max[splitAttribute] = temp;
+			min[splitAttribute] = splitValue;
+			this.buildNode(2 * node + 2, depth + 1, min, max, random);
+		}
+	}
+
+	/**
+	 * Update the mass profile of the nodes that the argument instance passes through.
+	 *
+	 * @param inst the instance being passed through the HSTree.
+	 * @param referenceWindow if the HSTree is in the initial reference window: <b>true</b>, else: <b>false</b>
+	 */
+	public void updateMass(Instance inst, boolean referenceWindow)
+	{
+		int profile = referenceWindow ? this.reference : 1 - this.reference;
+		int windowNumber = referenceWindow ? this.window - 1 : this.window;
+		int[] profileMass = this.mass[profile];
+		int[] profileWindow = this.massWindow[profile];
+		int node = 0;
+
+		for(int depth = 1 ; ; depth++)
+		{
+			if(profileWindow[node] != windowNumber)
+			{
+				profileWindow[node] = windowNumber;
+				profileMass[node] = 0;
+			}
+			profileMass[node]++;
+
+			if(depth == this.maxDepth)
+				break;
+
+			node = inst.value(this.splitAttributes[node]) > this.splitValues[node] ? 2 * node + 2 : 2 * node + 1;
+		}
+	}
+
+	/**
+	 * Update the tree's model by making the latest window's mass profile the reference window's mass
+	 * profile and starting a new, empty latest window.
+	 */
+	public void updateModel()
+	{
+		this.reference = 1 - this.reference;
+		this.window++;
+	}
+
+	/**
+	 * Returns the anomaly score for the argument instance, from the first node on its path that is a leaf
+	 * node or has a reference mass profile of at most sizeLimit.
+	 *
+	 * @param inst the instance being passed through the tree
+	 * @param sizeLimit the minimum mass profile for a node to pass the argument instance on to its subordinate nodes
+	 *
+	 * @return the argument instance's anomaly score (r * 2^depth)
+	 */
+	public double score(Instance inst, int sizeLimit)
+	{
+		int node = 0;
+		int depth = 1;
+		int r = this.referenceMass(node);
+
+		while(depth < this.maxDepth && r > sizeLimit)
+		{
+			node = inst.value(this.splitAttributes[node]) > this.splitValues[node] ? 2 * node + 2 : 2 * node + 1;
+			depth++;
+			r = this.referenceMass(node);
+		}
+
+		return r * Math.pow(2.0, depth);
+	}
+
+	/**
+	 * Returns the reference window's mass profile of a node.
+	 *
+	 * @param node the number of the node
+	 *
+	 * @return the mass profile, zero if the node has not been reached in the reference window
+	 */
+	private int referenceMass(int node)
+	{
+		return this.massWindow[this.reference][node] == this.window - 1 ? this.mass[this.reference][node] : 0;
+	}
+}
@@ -20,8 +20,11 @@
 
 package moa.classifiers.oneclass;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
@@ -31,6 +34,7 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.OneClassClassifier;
 import moa.core.Measurement;
+import moa.core.ParallelTaskRunner;
 
 /**
  * Implements the Streaming Half-Space Trees one-class classifier described in
@@ -38,6 +42,8 @@ import moa.core.Measurement;
  * in IJCAI Proceedings-International Joint Conference on Artificial Intelligence,
  * 2011, vol. 22, no. 1, pp. 1511–1516.
  * 
+ * The trees are stored in arrays (see HSTree) and can be updated in parallel.
+ * 
  * @author Richard Hugh Moulton
  *
  */
@@ -58,6 +64,9 @@ public class HSTrees extends AbstractClassifier implements Classifier, OneClassC
 			0.5, Double.MIN_VALUE, 1.0);
 	public FloatOption sizeLimitOption = new FloatOption("sizeLimit", 's', "The minimum mass required in a node (as a "
 			+ "fraction of the window size) to calculate the anomaly score.", 0.1, Double.MIN_VALUE, 1.0);
+	public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+			"Total number of concurrent jobs used for updating the trees (-1 = as much as possible, 0 = do not use multithreading)",
+			1, -1, Integer.MAX_VALUE);
 	
 	// Respectively, these variables store: the window size, the number of trees, the maximum depth of the trees,
 	// the dimensionality of the data stream and the number of instances seen to date.
@@ -100,7 +109,12 @@ public class HSTrees extends AbstractClassifier implements Classifier, OneClassC
 	/**
 	 * The forest of HSTrees
 	 */
-	private HSTreeNode[] forest;
+	private HSTree[] forest;
+	
+	/**
+	 * Runs the updates of the trees.
+	 */
+	private ParallelTaskRunner taskRunner;
 	
 	/**
 	 * If the classifier is in the first reference window: <b>true</b>, else: <b>false</b>
@@ -118,9 +132,14 @@ public class HSTrees extends AbstractClassifier implements Classifier, OneClassC
 		this.maxDepth = this.maxDepthOption.getValue();
 		this.sizeLimit = this.sizeLimitOption.getValue();
 		this.numInstances = 0;
-		this.forest = new HSTreeNode[numTrees];
+		this.forest = new HSTree[numTrees];
 		this.referenceWindow = true;
 		this.anomalyThreshold = this.anomalyThresholdOption.getValue();
+		if(this.taskRunner != null)
+		{
+			this.taskRunner.shutdown();
+		}
+		this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
 	}
 
 	/**
@@ -138,15 +157,23 @@ public class HSTrees extends AbstractClassifier implements Classifier, OneClassC
 		}
 		
 		// Update the mass profile of every HSTree in the forest
-		for(int i = 0 ; i < this.numTrees ; i++)
+		if(this.taskRunner.getNumberOfJobs() > 1 && this.numTrees > 1)
 		{
-			forest[i].updateMass(inst, referenceWindow);
+			this.updateMassInParallel(inst);
+		}
+		else
+		{
+			for(int i = 0 ; i < this.numTrees ; i++)
+			{
+				forest[i].updateMass(inst, referenceWindow);
+			}
 		}
 		
 		if(this.numInstances > 50)
 			referenceWindow = false;
 		
-		// If this is the last instance of the window, update every HSTree's model
+		// If this is the last instance of the window, update every HSTree's model.
+		// This swaps each tree's mass profiles in constant time.
 		if(this.numInstances % windowSize == 0)
 		{
 			for(int i = 0 ; i < this.numTrees ; i++)
@@ -158,6 +185,38 @@ public class HSTrees extends AbstractClassifier implements Classifier, OneClassC
 		this.numInstances++;
 	}
 	
+	/**
+	 * Update the mass profiles of the HSTrees with one task for each block of trees.
+	 * 
+	 * @param inst the instance to pass to the forest
+	 */
+	private void updateMassInParallel(final Instance inst)
+	{
+		final boolean reference = this.referenceWindow;
+		int numJobs = Math.min(this.taskRunner.getNumberOfJobs(), this.numTrees);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numJobs);
+		
+		for(int job = 0 ; job < numJobs ; job++)
+		{
+			final int from = job * this.numTrees / numJobs;
+			final int to = (job + 1) * this.numTrees / numJobs;
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					for(int i = from ; i < to ; i++)
+					{
+						forest[i].updateMass(inst, reference);
+					}
+					return null;
+				}
+			});
+		}
+		
+		this.taskRunner.invokeAll(tasks);
+	}
+	
 	/**
 	 * Build the forest of Streaming Half-Space Trees
 	 * 
@@ -179,7 +238,7 @@ public class HSTrees extends AbstractClassifier implements Classifier, OneClassC
 				max[j] = sq + (2.0*Math.max(sq, 1.0-sq));
 			}
 
-			forest[i] = new HSTreeNode(min, max, 1, maxDepth);
+			forest[i] = new HSTree(min, max, maxDepth, this.classifierRandom);
 		}
 	}
 	
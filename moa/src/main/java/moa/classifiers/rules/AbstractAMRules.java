@@ -31,13 +31,15 @@ package moa.classifiers.rules;
  * 
  **/
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.List;
 
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.rules.core.Rule;
 import moa.classifiers.rules.core.Rule.Builder;
 import moa.classifiers.rules.core.RuleActiveLearningNode;
+import moa.classifiers.rules.core.RuleCoverageIndex;
 import moa.classifiers.rules.core.RuleSet;
 import moa.classifiers.rules.core.attributeclassobservers.FIMTDDNumericAttributeClassLimitObserver;
 import moa.classifiers.rules.core.voting.ErrorWeightedVote;
@@ -56,6 +58,7 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 
 	private static final long serialVersionUID = 1L;
 	protected RuleSet ruleSet = new RuleSet();
+	protected RuleCoverageIndex coverageIndex = new RuleCoverageIndex();
 	protected Rule defaultRule;
 	protected int ruleNumberID;
 	protected double[] statistics;
@@ -198,10 +201,11 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 		debug("Train",3);
 		debug("Nº instance "+numInstances + " - " + instance.toString(),3);
 		boolean rulesCoveringInstance = false;
-		Iterator<Rule> ruleIterator= this.ruleSet.iterator();
-		while (ruleIterator.hasNext()) { 
-			Rule rule = ruleIterator.next();
-			if (rule.isCovering(instance) == true) {
+		List<Rule> removedRules = null;
+		long[] covering = getCoveringRules(instance);
+		for (int i = RuleCoverageIndex.nextSetBit(covering, 0); i >= 0; i = RuleCoverageIndex.nextSetBit(covering, i + 1)) {
+			Rule rule = this.ruleSet.get(i);
+			if (this.coverageIndex.isIndexed(i) || rule.isCovering(instance)) {
 				rulesCoveringInstance = true;
 				if (isAnomaly(instance, rule) == false) {
 					//Update Change Detection Tests
@@ -210,7 +214,10 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 					if (changeDetected == true) {
 						debug("I) Drift Detected. Exa. : " +  this.numInstances + " (" + rule.getInstancesSeen() +") Remove Rule: " +rule.getRuleNumberID(),1);
 
-						ruleIterator.remove();
+						if (removedRules == null) {
+							removedRules = new ArrayList<Rule>();
+						}
+						removedRules.add(rule);
 						this.numChangesDetected+=instance.weight();  //Just for statistics 
 					} else {
 						rule.updateStatistics(instance);
@@ -218,6 +225,7 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 							if (rule.tryToExpand(this.splitConfidenceOption.getValue(), this.tieThresholdOption.getValue()) ) 
 							{
 								rule.split();
+								this.coverageIndex.setRule(i, rule.getPredicates());
 								debug("Rule Expanded:",2);
 								debug(rule.printRule(),2);
 							}	
@@ -232,6 +240,10 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 					break;
 			}
 		}	
+		if (removedRules != null) {
+			this.ruleSet.removeAll(removedRules);
+			rebuildCoverageIndex();
+		}
 
 		if (rulesCoveringInstance == false){ 
 			defaultRule.updateStatistics(instance);
@@ -243,6 +255,7 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 					defaultRule.split();
 					defaultRule.setRuleNumberID(++ruleNumberID);
 					this.ruleSet.add(this.defaultRule);
+					this.coverageIndex.addRule(this.defaultRule.getPredicates());
 
 					debug("Default rule expanded! New Rule:",2);
 					debug(defaultRule.printRule(),2);
@@ -363,6 +376,29 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 		debug(this.defaultRule.printRule(),2);
 	}
 
+	/**
+	 * Gets the candidate rules covering an instance from the coverage index,
+	 * as a bitset of positions in the rule set. The rules that are not
+	 * indexed must still be tested with isCovering.
+	 */
+	protected long[] getCoveringRules(Instance instance) {
+		if (this.coverageIndex.size() != this.ruleSet.size()) {
+			// The rule set was changed without the index
+			rebuildCoverageIndex();
+		}
+		return this.coverageIndex.getCoveringRules(instance);
+	}
+
+	/**
+	 * Indexes all rules again, after rules were removed or inserted.
+	 */
+	protected void rebuildCoverageIndex() {
+		this.coverageIndex.clear();
+		for (Rule rule : this.ruleSet) {
+			this.coverageIndex.addRule(rule.getPredicates());
+		}
+	}
+
 	abstract public RuleActiveLearningNode newRuleActiveLearningNode(Builder builder);
 
 	abstract public RuleActiveLearningNode newRuleActiveLearningNode(double[] initialClassObservations);
@@ -407,8 +443,10 @@ public abstract class AbstractAMRules extends AbstractClassifier {
 		int numberOfRulesCovering = 0;
 
 		VerboseToConsole(instance); // Verbose to console Dataset name.
-		for (Rule rule : ruleSet) {
-			if (rule.isCovering(instance) == true){
+		long[] covering = getCoveringRules(instance);
+		for (int i = RuleCoverageIndex.nextSetBit(covering, 0); i >= 0; i = RuleCoverageIndex.nextSetBit(covering, i + 1)) {
+			Rule rule = this.ruleSet.get(i);
+			if (this.coverageIndex.isIndexed(i) || rule.isCovering(instance)){
 				numberOfRulesCovering++;
 				//DoubleVector vote = new DoubleVector(rule.getPrediction(instance));
 				double [] vote=rule.getPrediction(instance);
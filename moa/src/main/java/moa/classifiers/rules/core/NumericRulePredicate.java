@@ -104,6 +104,10 @@ public class NumericRulePredicate extends AbstractMOAObject implements Predicate
 		return inputAttributeIndex;
 	}
 
+	public double getAttributeValue() {
+		return attributeValue;
+	}
+
 	@Override
 	public boolean isEqualOrLess() {
 		return isEqualOrLower;
@@ -33,6 +33,7 @@ package moa.classifiers.rules.core;
  *
  */
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -119,6 +120,17 @@ public class Rule extends AbstractMOAObject {
     }*/
 
 
+	/**
+	 * Gets the predicates of the rule, in the order they are evaluated.
+	 */
+	public List<Predicate> getPredicates() {
+		List<Predicate> predicates = new ArrayList<Predicate>(nodeList.size());
+		for (RuleSplitNode node : nodeList) {
+			predicates.add((Predicate) node.getSplitTest());
+		}
+		return predicates;
+	}
+
 	public boolean isCovering(Instance inst) {
 		boolean isCovering = true;
 		for (RuleSplitNode node : nodeList) {
@@ -0,0 +1,477 @@
+/*
+ *    RuleCoverageIndex.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.rules.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import moa.classifiers.rules.core.conditionaltests.NominalAttributeBinaryRulePredicate;
+import moa.classifiers.rules.core.conditionaltests.NumericAttributeBinaryRulePredicate;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Index of the predicates of a rule set, to find the rules that cover an
+ * instance without evaluating every rule.
+ *
+ * <p>The rules are identified by their position in the rule set. The
+ * predicates on the same attribute and with the same kind of test are
+ * grouped. The thresholds of a numeric group are kept sorted together with
+ * cumulative bitsets of the rules, so the rules whose threshold is
+ * satisfied by a value are found with a binary search. Nominal groups keep
+ * a bitset of rules per value. The covering rules are the intersection of
+ * the bitsets of all the groups.</p>
+ *
+ * <p>Predicates of other classes, and negated predicates whose result on
+ * missing values differs from the other predicates, are not indexed. The
+ * rules that have such predicates are always returned as candidates and
+ * must be tested by the caller, see <code>isIndexed</code>.</p>
+ *
+ * <p>The index must be told about every change of the rules: rules that are
+ * added at the end with <code>addRule</code>, rules whose predicates change
+ * with <code>setRule</code>, and rules that are removed or inserted with
+ * <code>clear</code> and adding all rules again.</p>
+ */
+public class RuleCoverageIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Value at most the threshold. */
+	protected static final int LESS_EQUAL = 0;
+
+	/** Value greater than the threshold, false for NaN. */
+	protected static final int GREATER = 1;
+
+	/** Value not at most the threshold, true for NaN. */
+	protected static final int NOT_LESS_EQUAL = 2;
+
+	/** Value equal to the value of the predicate. */
+	protected static final int EQUAL = 3;
+
+	/** Value truncated to an integer equal to the value of the predicate. */
+	protected static final int EQUAL_INTEGER = 4;
+
+	/** Value not equal to the value of the predicate. */
+	protected static final int NOT_EQUAL = 5;
+
+	/**
+	 * Attribute indices that do not count the class, mapped to the instance
+	 * as in <code>NumericAttributeBinaryRulePredicate</code>.
+	 */
+	protected static final int MODEL_ATTRIBUTE = 0;
+
+	/** Indices of the input attributes, as in <code>NumericRulePredicate</code>. */
+	protected static final int INPUT_ATTRIBUTE = 1;
+
+	protected int numRules;
+
+	/** Number of longs of every bitset. */
+	protected int numWords;
+
+	protected long[] unindexed = new long[1];
+
+	protected Map<Long, LiteralGroup> groupMap = new HashMap<Long, LiteralGroup>();
+
+	protected List<LiteralGroup> groups = new ArrayList<LiteralGroup>();
+
+	protected long[] covering = new long[1];
+
+	/**
+	 * Removes all rules.
+	 */
+	public void clear() {
+		this.numRules = 0;
+		this.numWords = 1;
+		this.unindexed = new long[1];
+		this.groupMap.clear();
+		this.groups.clear();
+	}
+
+	public int size() {
+		return this.numRules;
+	}
+
+	/**
+	 * Adds a rule at the end of the rule set.
+	 *
+	 * @param predicates the predicates of the rule
+	 */
+	public void addRule(List<? extends Predicate> predicates) {
+		int slot = this.numRules++;
+		int words = (this.numRules + 63) >>> 6;
+		if (words > this.numWords) {
+			int newWords = Math.max(words, 2 * this.numWords);
+			this.unindexed = Arrays.copyOf(this.unindexed, newWords);
+			for (LiteralGroup group : this.groups) {
+				group.grow(newWords);
+			}
+			this.numWords = newWords;
+		}
+		addPredicates(slot, predicates);
+	}
+
+	/**
+	 * Replaces the predicates of a rule, after the rule was expanded.
+	 *
+	 * @param slot the position of the rule in the rule set
+	 * @param predicates the predicates of the rule
+	 */
+	public void setRule(int slot, List<? extends Predicate> predicates) {
+		long mask = 1L << slot;
+		this.unindexed[slot >>> 6] &= ~mask;
+		for (LiteralGroup group : this.groups) {
+			if ((group.constrained[slot >>> 6] & mask) != 0) {
+				group.constrained[slot >>> 6] &= ~mask;
+				group.dirty = true;
+			}
+		}
+		addPredicates(slot, predicates);
+	}
+
+	/**
+	 * Whether the rule at a position is covering exactly the instances that
+	 * <code>getCoveringRules</code> returns for it.
+	 */
+	public boolean isIndexed(int slot) {
+		return (this.unindexed[slot >>> 6] & (1L << slot)) == 0;
+	}
+
+	protected void addPredicates(int slot, List<? extends Predicate> predicates) {
+		for (Predicate predicate : predicates) {
+			if (!addPredicate(slot, predicate)) {
+				this.unindexed[slot >>> 6] |= 1L << slot;
+			}
+		}
+	}
+
+	/**
+	 * Adds a predicate of a rule to its group.
+	 *
+	 * @return false if the predicate cannot be indexed
+	 */
+	protected boolean addPredicate(int slot, Predicate predicate) {
+		Class<?> predicateClass = predicate.getClass();
+		if (predicateClass == NumericAttributeBinaryRulePredicate.class) {
+			NumericAttributeBinaryRulePredicate numeric = (NumericAttributeBinaryRulePredicate) predicate;
+			if (!numeric.isEqualOrLess()) {
+				return false;
+			}
+			int type = numeric.getOperator() == 0 ? EQUAL
+					: numeric.getOperator() == 1 ? LESS_EQUAL : GREATER;
+			return addLiteral(slot, MODEL_ATTRIBUTE, numeric.getAttributeIndex(), type,
+					numeric.getSplitValue());
+		} else if (predicateClass == NominalAttributeBinaryRulePredicate.class) {
+			NominalAttributeBinaryRulePredicate nominal = (NominalAttributeBinaryRulePredicate) predicate;
+			if (!nominal.isEqualOrLess()) {
+				return false;
+			}
+			return addLiteral(slot, MODEL_ATTRIBUTE, nominal.getAttributeIndex(), EQUAL_INTEGER,
+					nominal.getAttributeValue());
+		} else if (predicateClass == NumericRulePredicate.class) {
+			NumericRulePredicate numeric = (NumericRulePredicate) predicate;
+			return addLiteral(slot, INPUT_ATTRIBUTE, numeric.getAttributeIndex(),
+					numeric.isEqualOrLess() ? LESS_EQUAL : NOT_LESS_EQUAL, numeric.getAttributeValue());
+		} else if (predicateClass == NominalRulePredicate.class) {
+			NominalRulePredicate nominal = (NominalRulePredicate) predicate;
+			return addLiteral(slot, INPUT_ATTRIBUTE, nominal.getAttributeIndex(),
+					nominal.isEqualOrLess() ? EQUAL : NOT_EQUAL, nominal.getAttributeValue());
+		}
+		return false;
+	}
+
+	protected boolean addLiteral(int slot, int mode, int attIndex, int type, double value) {
+		if (Double.isNaN(value)) {
+			return false;
+		}
+		long key = ((long) attIndex << 8) | (mode << 4) | type;
+		LiteralGroup group = this.groupMap.get(key);
+		if (group == null) {
+			group = new LiteralGroup(mode, attIndex, type, this.numWords);
+			this.groupMap.put(key, group);
+			this.groups.add(group);
+		}
+		return group.add(slot, value);
+	}
+
+	/**
+	 * Gets the rules that cover an instance, as a bitset of their positions
+	 * in the rule set. The rules that are not indexed are always included.
+	 * The bitset is reused by the next call.
+	 *
+	 * @param inst the instance
+	 * @return the bitset, with <code>(numRules + 63) / 64</code> valid longs
+	 */
+	public long[] getCoveringRules(Instance inst) {
+		if (this.covering.length < this.numWords) {
+			this.covering = new long[this.numWords];
+		}
+		long[] result = this.covering;
+		int fullWords = this.numRules >>> 6;
+		Arrays.fill(result, 0, fullWords, -1L);
+		if (fullWords < this.numWords) {
+			result[fullWords] = (this.numRules & 63) == 0 ? 0L : (1L << this.numRules) - 1;
+			Arrays.fill(result, fullWords + 1, this.numWords, 0L);
+		}
+		for (LiteralGroup group : this.groups) {
+			group.intersect(inst, result, this.numWords);
+		}
+		for (int i = 0; i < this.numWords; i++) {
+			result[i] |= this.unindexed[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the index of the first bit that is set at or after an index.
+	 *
+	 * @return the index, or -1 if there is none
+	 */
+	public static int nextSetBit(long[] bits, int fromIndex) {
+		int word = fromIndex >>> 6;
+		if (word >= bits.length) {
+			return -1;
+		}
+		long w = bits[word] & (-1L << fromIndex);
+		while (w == 0) {
+			if (++word >= bits.length) {
+				return -1;
+			}
+			w = bits[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(w);
+	}
+
+	/**
+	 * The predicates of all rules on one attribute with one kind of test.
+	 */
+	protected static class LiteralGroup implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final int mode;
+
+		protected final int attIndex;
+
+		protected final int type;
+
+		/** Rules with a predicate in this group. */
+		protected long[] constrained;
+
+		/** Value of the predicate of every rule in this group. */
+		protected double[] values;
+
+		protected boolean dirty = true;
+
+		/** Thresholds of the rules in ascending order. */
+		protected double[] thresholds;
+
+		/**
+		 * Bitsets of the rules whose threshold is satisfied for every
+		 * position in the thresholds, numWords longs each.
+		 */
+		protected long[] cumulative;
+
+		/** Bitsets of the rules for every value. */
+		protected Map<Double, long[]> valueRules;
+
+		public LiteralGroup(int mode, int attIndex, int type, int numWords) {
+			this.mode = mode;
+			this.attIndex = attIndex;
+			this.type = type;
+			this.constrained = new long[numWords];
+			this.values = new double[numWords << 6];
+		}
+
+		protected void grow(int numWords) {
+			this.constrained = Arrays.copyOf(this.constrained, numWords);
+			this.values = Arrays.copyOf(this.values, numWords << 6);
+			this.dirty = true;
+		}
+
+		/**
+		 * Adds the predicate of a rule, combining it with a predicate of the
+		 * same rule that is already in this group.
+		 *
+		 * @return false if the predicates cannot be combined
+		 */
+		protected boolean add(int slot, double value) {
+			if (value == 0.0) {
+				// Merges -0.0 into 0.0, which compare equal
+				value = 0.0;
+			}
+			long mask = 1L << slot;
+			if ((this.constrained[slot >>> 6] & mask) != 0) {
+				double current = this.values[slot];
+				switch (this.type) {
+				case LESS_EQUAL:
+					value = Math.min(value, current);
+					break;
+				case GREATER:
+				case NOT_LESS_EQUAL:
+					value = Math.max(value, current);
+					break;
+				default:
+					if (value != current) {
+						return false;
+					}
+				}
+			}
+			this.constrained[slot >>> 6] |= mask;
+			this.values[slot] = value;
+			this.dirty = true;
+			return true;
+		}
+
+		protected void rebuild(int numWords) {
+			int count = 0;
+			for (long word : this.constrained) {
+				count += Long.bitCount(word);
+			}
+			long[] entries = new long[count];
+			double[] slotValues = new double[count];
+			int n = 0;
+			for (int slot = nextSetBit(this.constrained, 0); slot >= 0; slot = nextSetBit(this.constrained, slot + 1)) {
+				slotValues[n] = this.values[slot];
+				entries[n++] = slot;
+			}
+			if (this.type == EQUAL || this.type == EQUAL_INTEGER || this.type == NOT_EQUAL) {
+				this.valueRules = new HashMap<Double, long[]>();
+				for (int i = 0; i < count; i++) {
+					long[] rules = this.valueRules.get(slotValues[i]);
+					if (rules == null) {
+						rules = new long[numWords];
+						this.valueRules.put(slotValues[i], rules);
+					}
+					rules[(int) entries[i] >>> 6] |= 1L << entries[i];
+				}
+			} else {
+				Integer[] order = new Integer[count];
+				for (int i = 0; i < count; i++) {
+					order[i] = i;
+				}
+				final double[] sortValues = slotValues;
+				Arrays.sort(order, (a, b) -> Double.compare(sortValues[a], sortValues[b]));
+				this.thresholds = new double[count];
+				this.cumulative = new long[(count + 1) * numWords];
+				if (this.type == LESS_EQUAL) {
+					// Rules with a threshold from position i on
+					for (int i = count - 1; i >= 0; i--) {
+						int slot = (int) entries[order[i]];
+						this.thresholds[i] = slotValues[order[i]];
+						System.arraycopy(this.cumulative, (i + 1) * numWords, this.cumulative, i * numWords, numWords);
+						this.cumulative[i * numWords + (slot >>> 6)] |= 1L << slot;
+					}
+				} else {
+					// Rules with a threshold before position i
+					for (int i = 0; i < count; i++) {
+						int slot = (int) entries[order[i]];
+						this.thresholds[i] = slotValues[order[i]];
+						System.arraycopy(this.cumulative, i * numWords, this.cumulative, (i + 1) * numWords, numWords);
+						this.cumulative[(i + 1) * numWords + (slot >>> 6)] |= 1L << slot;
+					}
+				}
+			}
+			this.dirty = false;
+		}
+
+		/**
+		 * Removes from a bitset the rules whose predicate in this group is
+		 * not satisfied by an instance.
+		 */
+		protected void intersect(Instance inst, long[] result, int numWords) {
+			if (this.dirty) {
+				rebuild(numWords);
+			}
+			boolean missing;
+			double value;
+			if (this.mode == MODEL_ATTRIBUTE) {
+				int instAttIndex = this.attIndex < inst.classIndex() ? this.attIndex : this.attIndex + 1;
+				missing = inst.isMissing(instAttIndex);
+				value = missing ? 0.0 : inst.value(instAttIndex);
+			} else {
+				missing = inst.isMissing(this.attIndex);
+				value = missing ? 0.0 : inst.valueInputAttribute(this.attIndex);
+			}
+			if (missing) {
+				andNot(result, this.constrained, numWords);
+				return;
+			}
+			switch (this.type) {
+			case LESS_EQUAL:
+			case GREATER:
+			case NOT_LESS_EQUAL:
+				if (Double.isNaN(value)) {
+					if (this.type != NOT_LESS_EQUAL) {
+						andNot(result, this.constrained, numWords);
+					}
+					return;
+				}
+				// First threshold that is at least the value
+				int low = 0;
+				int high = this.thresholds.length;
+				while (low < high) {
+					int mid = (low + high) >>> 1;
+					if (this.thresholds[mid] < value) {
+						low = mid + 1;
+					} else {
+						high = mid;
+					}
+				}
+				int offset = low * numWords;
+				for (int i = 0; i < numWords; i++) {
+					result[i] &= ~this.constrained[i] | this.cumulative[offset + i];
+				}
+				break;
+			case EQUAL:
+			case EQUAL_INTEGER:
+				if (this.type == EQUAL_INTEGER) {
+					value = (int) value;
+				} else if (value == 0.0) {
+					value = 0.0;
+				}
+				long[] rules = Double.isNaN(value) ? null : this.valueRules.get(value);
+				if (rules == null) {
+					andNot(result, this.constrained, numWords);
+				} else {
+					for (int i = 0; i < numWords; i++) {
+						result[i] &= ~this.constrained[i] | rules[i];
+					}
+				}
+				break;
+			default:
+				if (value == 0.0) {
+					value = 0.0;
+				}
+				long[] excluded = Double.isNaN(value) ? null : this.valueRules.get(value);
+				if (excluded != null) {
+					andNot(result, excluded, numWords);
+				}
+			}
+		}
+
+		protected static void andNot(long[] result, long[] bits, int numWords) {
+			for (int i = 0; i < numWords; i++) {
+				result[i] &= ~bits[i];
+			}
+		}
+	}
+}
@@ -20,11 +20,10 @@
 
 package moa.classifiers.rules.multilabel;
 
-import java.util.ListIterator;
-
 import moa.classifiers.AbstractMultiLabelLearner;
 import moa.classifiers.MultiLabelLearner;
 import moa.classifiers.core.driftdetection.ChangeDetector;
+import moa.classifiers.rules.core.RuleCoverageIndex;
 import moa.classifiers.rules.core.anomalydetection.AnomalyDetector;
 import moa.classifiers.rules.core.anomalydetection.OddsRatioScore;
 import moa.classifiers.rules.featureranking.FeatureRanking;
@@ -72,6 +71,7 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 
 	private static final long serialVersionUID = 1L;
 	protected MultiLabelRuleSet ruleSet;
+	protected RuleCoverageIndex coverageIndex;
 	protected MultiLabelRule defaultRule;
 	protected int ruleNumberID=1;
 	protected double[] statistics;
@@ -202,8 +202,10 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 		//int numberOfRulesCovering = 0;
 
 		VerboseToConsole(instance); // Verbose to console Dataset name.
-		for (MultiLabelRule rule : ruleSet) {
-			if (rule.isCovering(instance) == true){
+		long[] covering = getCoveringRules(instance);
+		for (int i = RuleCoverageIndex.nextSetBit(covering, 0); i >= 0; i = RuleCoverageIndex.nextSetBit(covering, i + 1)) {
+			MultiLabelRule rule = this.ruleSet.get(i);
+			if (this.coverageIndex.isIndexed(i) || rule.isCovering(instance)){
 				//numberOfRulesCovering++;
 				Prediction vote=rule.getPredictionForInstance(instance);
 				if (vote!=null){ //should only happen for first instance
@@ -306,15 +308,21 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 		debug("Train",3);
 		debug("Nº instance "+numInstances + " - " + instance.toString(),3);
 		boolean rulesCoveringInstance = false;
-		ListIterator<MultiLabelRule> ruleIterator= this.ruleSet.listIterator();
-		while (ruleIterator.hasNext()) { 
-			MultiLabelRule rule = ruleIterator.next();
-			if (rule.isCovering(instance) == true) {
+		// Rules removed or inserted so far, which shift the positions of the
+		// following rules and require a new index
+		int shift = 0;
+		boolean rulesChanged = false;
+		long[] covering = getCoveringRules(instance);
+		for (int i = RuleCoverageIndex.nextSetBit(covering, 0); i >= 0; i = RuleCoverageIndex.nextSetBit(covering, i + 1)) {
+			MultiLabelRule rule = this.ruleSet.get(i + shift);
+			if (this.coverageIndex.isIndexed(i) || rule.isCovering(instance)) {
 				rulesCoveringInstance = true;
 				if (!rule.updateAnomalyDetection(instance)) {
 					if (rule.updateChangeDetection(instance)) {
 						debug("I) Drift Detected. Exa. : " +  this.numInstances + " (" + rule.getWeightSeenSinceExpansion() +") Remove Rule: " +rule.getRuleNumberID(),1);
-						ruleIterator.remove();
+						this.ruleSet.remove(i + shift);
+						shift--;
+						rulesChanged = true;
 
 						//Rule expansion event
 						rule.notifyAll(new ChangeDetectedMessage());
@@ -331,11 +339,16 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 									rule.clearOtherOutputs();
 									otherMultiLabelRule.setRuleNumberID(++ruleNumberID);
 									setRuleOptions(otherMultiLabelRule);
-									ruleIterator.add(otherMultiLabelRule);
+									this.ruleSet.add(i + shift + 1, otherMultiLabelRule);
+									shift++;
+									rulesChanged = true;
 									if(observer!=null)
 										otherMultiLabelRule.addObserver(observer);
 								}
 								setRuleOptions(rule);
+								if (!rulesChanged) {
+									this.coverageIndex.setRule(i, rule.getPredicates());
+								}
 								debug("Rule Expanded:",2);
 								debug(rule.toString(),2);
 							}	
@@ -351,6 +364,9 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 
 			}
 		}	
+		if (rulesChanged) {
+			rebuildCoverageIndex();
+		}
 
 		if (rulesCoveringInstance == false){ 
 			defaultRule.trainOnInstance(instance);
@@ -366,6 +382,7 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 					//Add expanded rule to ruleset
 					setRuleOptions(defaultRule);
 					ruleSet.add(this.defaultRule);
+					this.coverageIndex.addRule(this.defaultRule.getPredicates());
 
 
 					debug("Default rule expanded! New Rule:",2);
@@ -525,6 +542,7 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 		defaultRule.setInstanceTransformer(new NoInstanceTransformation());
 		setRuleOptions(defaultRule);
 		ruleSet = new MultiLabelRuleSet();
+		coverageIndex = new RuleCoverageIndex();
 		ruleNumberID=1;
 		statistics=null;
 		this.featureRanking=(FeatureRanking) getPreparedClassOption(this.featureRankingOption);
@@ -532,6 +550,29 @@ public abstract class AMRulesMultiLabelLearner extends AbstractMultiLabelLearner
 	}
 
 
+	/**
+	 * Gets the candidate rules covering an instance from the coverage index,
+	 * as a bitset of positions in the rule set. The rules that are not
+	 * indexed must still be tested with isCovering.
+	 */
+	protected long[] getCoveringRules(MultiLabelInstance instance) {
+		if (this.coverageIndex.size() != this.ruleSet.size()) {
+			// The rule set was changed without the index
+			rebuildCoverageIndex();
+		}
+		return this.coverageIndex.getCoveringRules(instance);
+	}
+
+	/**
+	 * Indexes all rules again, after rules were removed or inserted.
+	 */
+	protected void rebuildCoverageIndex() {
+		this.coverageIndex.clear();
+		for (MultiLabelRule rule : this.ruleSet) {
+			this.coverageIndex.addRule(rule.getPredicates());
+		}
+	}
+
 	protected void setRuleOptions(MultiLabelRule rule){
 		rule.setSplitCriterion((MultiLabelSplitCriterion)((MultiLabelSplitCriterion)getPreparedClassOption(splitCriterionOption)).copy());
 		rule.setChangeDetector((ChangeDetector)((ChangeDetector)getPreparedClassOption(changeDetector)).copy());
@@ -20,6 +20,10 @@ public class Literal extends AbstractMOAObject{
 	}
 	
 	
+	public Predicate getPredicate(){
+		return this.predicate;
+	}
+
 	public int getAttributeIndex(){
 		return this.predicate.getAttributeIndex();
 	}
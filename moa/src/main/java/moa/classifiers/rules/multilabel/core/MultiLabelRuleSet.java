@@ -19,9 +19,9 @@
  */
 package moa.classifiers.rules.multilabel.core;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 
-public class MultiLabelRuleSet extends LinkedList<MultiLabelRule> {
+public class MultiLabelRuleSet extends ArrayList<MultiLabelRule> {
 
 	private static final long serialVersionUID = 1L;
 	
@@ -20,7 +20,7 @@
 package moa.classifiers.trees;
 
 import com.github.javacliparser.IntOption;
-import moa.classifiers.bayes.NaiveBayes;
+import moa.classifiers.bayes.NaiveBayesParameterCache;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
 import moa.core.Utils;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -107,20 +107,38 @@ public class ARFHoeffdingTree extends HoeffdingTree {
 
         private static final long serialVersionUID = 1L;
 
+        // Derived from the class distribution and the observers, so created
+        // again rather than serialized
+        protected transient NaiveBayesParameterCache naiveBayesCache;
+
         public LearningNodeNB(double[] initialClassObservations, int subspaceSize) {
             super(initialClassObservations, subspaceSize);
         }
 
+        @Override
+        public void learnFromInstance(Instance inst, HoeffdingTree ht) {
+            if (this.naiveBayesCache != null) {
+                this.naiveBayesCache.invalidate((int) inst.classValue());
+            }
+            super.learnFromInstance(inst, ht);
+        }
+
         @Override
         public double[] getClassVotes(Instance inst, HoeffdingTree ht) {
             if (getWeightSeen() >= ht.nbThresholdOption.getValue()) {
-                return NaiveBayes.doNaiveBayesPrediction(inst,
-                        this.observedClassDistribution,
-                        this.attributeObservers);
+                return doNaiveBayesPrediction(inst);
             }
             return super.getClassVotes(inst, ht);
         }
 
+        protected double[] doNaiveBayesPrediction(Instance inst) {
+            if (this.naiveBayesCache == null) {
+                this.naiveBayesCache = new NaiveBayesParameterCache();
+            }
+            return this.naiveBayesCache.doNaiveBayesPrediction(inst,
+                    this.observedClassDistribution, this.attributeObservers);
+        }
+
         @Override
         public void disableAttribute(int attIndex) {
             // should not disable poor atts - they are used in NB calc
@@ -145,8 +163,7 @@ public class ARFHoeffdingTree extends HoeffdingTree {
             if (this.observedClassDistribution.maxIndex() == trueClass) {
                 this.mcCorrectWeight += inst.weight();
             }
-            if (Utils.maxIndex(NaiveBayes.doNaiveBayesPrediction(inst,
-                    this.observedClassDistribution, this.attributeObservers)) == trueClass) {
+            if (Utils.maxIndex(doNaiveBayesPrediction(inst)) == trueClass) {
                 this.nbCorrectWeight += inst.weight();
             }
             super.learnFromInstance(inst, ht);
@@ -157,8 +174,7 @@ public class ARFHoeffdingTree extends HoeffdingTree {
             if (this.mcCorrectWeight > this.nbCorrectWeight) {
                 return this.observedClassDistribution.getArrayCopy();
             }
-            return NaiveBayes.doNaiveBayesPrediction(inst,
-                    this.observedClassDistribution, this.attributeObservers);
+            return doNaiveBayesPrediction(inst);
         }
     }
 
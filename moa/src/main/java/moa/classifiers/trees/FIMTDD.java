@@ -34,6 +34,7 @@ import moa.options.ClassOption;
 import moa.AbstractMOAObject;
 import moa.classifiers.Regressor;
 import moa.classifiers.core.AttributeSplitSuggestion;
+import moa.classifiers.core.attributeclassobservers.FIMTDDBoundedNumericAttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.FIMTDDNumericAttributeClassObserver;
 import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
 import moa.classifiers.core.splitcriteria.SplitCriterion;
@@ -122,6 +123,10 @@ public class FIMTDD extends AbstractClassifier implements Regressor {
 	public FlagOption learningRatioConstOption = new FlagOption(
 			"learningRatioConst", 'p', "Keep learning rate constant instead of decaying.");
 
+	public IntOption maxObserverNodesOption = new IntOption(
+			"maxObserverNodes", 'b', "Maximum number of split points kept for each numeric attribute in a leaf (0 = no limit). When the limit is reached, the closest split points are merged.",
+			0, 0, Integer.MAX_VALUE);
+
 	//endregion ================ OPTIONS ================
 
 	//region ================ CLASSES ================
@@ -837,7 +842,7 @@ public class FIMTDD extends AbstractClassifier implements Regressor {
 	// region --- Object instatiation methods
 
 	protected FIMTDDNumericAttributeClassObserver newNumericClassObserver() {
-		return new FIMTDDNumericAttributeClassObserver();
+		return new FIMTDDBoundedNumericAttributeClassObserver(this.maxObserverNodesOption.getValue());
 	}
 
 	protected SplitNode newSplitNode(InstanceConditionalTest splitTest) {
@@ -25,7 +25,6 @@ import java.util.Random;
 
 import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
-import moa.classifiers.bayes.NaiveBayes;
 import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
 import moa.classifiers.core.driftdetection.ADWIN;
 import moa.core.DoubleVector;
@@ -409,14 +408,12 @@ public class HoeffdingAdaptiveTree extends HoeffdingTree {
             if (predictionOption == 0) { //MC
                 dist = this.observedClassDistribution.getArrayCopy();
             } else if (predictionOption == 1) { //NB
-                dist = NaiveBayes.doNaiveBayesPrediction(inst,
-                        this.observedClassDistribution, this.attributeObservers);
+                dist = doNaiveBayesPrediction(inst);
             } else { //NBAdaptive
                 if (this.mcCorrectWeight > this.nbCorrectWeight) {
                     dist = this.observedClassDistribution.getArrayCopy();
                 } else {
-                    dist = NaiveBayes.doNaiveBayesPrediction(inst,
-                            this.observedClassDistribution, this.attributeObservers);
+                    dist = doNaiveBayesPrediction(inst);
                 }
             }
             //New for option votes
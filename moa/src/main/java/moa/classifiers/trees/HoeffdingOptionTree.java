@@ -22,12 +22,14 @@ package moa.classifiers.trees;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import com.github.javacliparser.FileOption;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
@@ -51,6 +53,7 @@ import moa.classifiers.core.splitcriteria.SplitCriterion;
 import moa.core.AutoExpandVector;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
+import moa.core.ParallelTaskRunner;
 import moa.core.SizeOf;
 import moa.core.StringUtils;
 import moa.core.Utils;
@@ -180,6 +183,10 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
     public IntOption memoryStrategyOption = new IntOption("memStrategy", 'z',
             "Memory strategy to use.", 2);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Total number of concurrent jobs used for computing the votes of the leaves (-1 = as much as possible, 0 = do not use multithreading)",
+            1, -1, Integer.MAX_VALUE);
+
     public static class FoundNode {
 
         public Node node;
@@ -188,6 +195,11 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
 
         public int parentBranch; // set to -999 for option leaves
 
+        // computed once before sorting the learning nodes by promise
+        protected double promise;
+
+        protected int headOptionCount;
+
         public FoundNode(Node node, SplitNode parent, int parentBranch) {
             this.node = node;
             this.parent = parent;
@@ -195,6 +207,45 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
         }
     }
 
+    /**
+     * List of the leaves reached by an instance that is reused for every
+     * instance, so that no objects are allocated once it has grown to the
+     * number of leaves reached.
+     */
+    public static class FoundNodeList {
+
+        protected FoundNode[] nodes = new FoundNode[8];
+
+        protected int size;
+
+        public void clear() {
+            this.size = 0;
+        }
+
+        public void add(Node node, SplitNode parent, int parentBranch) {
+            if (this.size == this.nodes.length) {
+                this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+            }
+            FoundNode foundNode = this.nodes[this.size];
+            if (foundNode == null) {
+                this.nodes[this.size] = new FoundNode(node, parent, parentBranch);
+            } else {
+                foundNode.node = node;
+                foundNode.parent = parent;
+                foundNode.parentBranch = parentBranch;
+            }
+            this.size++;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public FoundNode get(int index) {
+            return this.nodes[index];
+        }
+    }
+
     public static class Node extends AbstractMOAObject {
 
         private static final long serialVersionUID = 1L;
@@ -231,6 +282,12 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
             foundNodes.add(new FoundNode(this, splitparent, parentBranch));
         }
 
+        public void filterInstanceToLeaves(Instance inst,
+                SplitNode splitparent, int parentBranch,
+                FoundNodeList foundNodes, boolean updateSplitterCounts) {
+            foundNodes.add(this, splitparent, parentBranch);
+        }
+
         public double[] getObservedClassDistribution() {
             return this.observedClassDistribution.getArrayCopy();
         }
@@ -363,6 +420,29 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
             }
         }
 
+        @Override
+        public void filterInstanceToLeaves(Instance inst, SplitNode myparent,
+                int parentBranch, FoundNodeList foundNodes,
+                boolean updateSplitterCounts) {
+            if (updateSplitterCounts) {
+                this.observedClassDistribution.addToValue((int) inst.classValue(), inst.weight());
+            }
+            int childIndex = instanceChildIndex(inst);
+            if (childIndex >= 0) {
+                Node child = getChild(childIndex);
+                if (child != null) {
+                    child.filterInstanceToLeaves(inst, this, childIndex,
+                            foundNodes, updateSplitterCounts);
+                } else {
+                    foundNodes.add(null, this, childIndex);
+                }
+            }
+            if (this.nextOption != null) {
+                this.nextOption.filterInstanceToLeaves(inst, this, -999,
+                        foundNodes, updateSplitterCounts);
+            }
+        }
+
         @Override
         public void describeSubtree(HoeffdingOptionTree ht, StringBuilder out,
                 int indent) {
@@ -617,6 +697,13 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
 
     protected int maxPredictionPaths;
 
+    protected ParallelTaskRunner taskRunner;
+
+    // reused for every instance, created again after serialization
+    protected transient FoundNodeList trainingLeaves;
+
+    protected transient FoundNodeList predictionLeaves;
+
     public int calcByteSize() {
         int size = (int) SizeOf.sizeOf(this);
         if (this.treeRoot != null) {
@@ -640,6 +727,10 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
         this.activeLeafByteSizeEstimate = 0.0;
         this.byteSizeEstimateOverheadFraction = 1.0;
         this.maxPredictionPaths = 0;
+        if (this.taskRunner != null) {
+            this.taskRunner.shutdown();
+        }
+        this.taskRunner = new ParallelTaskRunner(this.numberOfJobsOption.getValue());
         if (this.leafpredictionOption.getChosenIndex() > 0) {
             this.removePoorAttsOption = null;
         }
@@ -651,9 +742,14 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
             this.treeRoot = newLearningNode();
             this.activeLeafNodeCount = 1;
         }
-        FoundNode[] foundNodes = this.treeRoot.filterInstanceToLeaves(inst,
-                null, -1, true);
-        for (FoundNode foundNode : foundNodes) {
+        if (this.trainingLeaves == null) {
+            this.trainingLeaves = new FoundNodeList();
+        }
+        FoundNodeList foundNodes = this.trainingLeaves;
+        foundNodes.clear();
+        this.treeRoot.filterInstanceToLeaves(inst, null, -1, foundNodes, true);
+        for (int n = 0; n < foundNodes.size(); n++) {
+            FoundNode foundNode = foundNodes.get(n);
             // option leaves will have a parentBranch of -999
             // option splits will have an option count of -999
             Node leafNode = foundNode.node;
@@ -686,25 +782,38 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
     @Override
     public double[] getVotesForInstance(Instance inst) {
         if (this.treeRoot != null) {
-            FoundNode[] foundNodes = this.treeRoot.filterInstanceToLeaves(inst,
-                    null, -1, false);
+            if (this.predictionLeaves == null) {
+                this.predictionLeaves = new FoundNodeList();
+            }
+            FoundNodeList foundNodes = this.predictionLeaves;
+            foundNodes.clear();
+            this.treeRoot.filterInstanceToLeaves(inst, null, -1, foundNodes, false);
             DoubleVector result = new DoubleVector();
             int predictionPaths = 0;
-            for (FoundNode foundNode : foundNodes) {
-                if (foundNode.parentBranch != -999) {
-                    Node leafNode = foundNode.node;
-                    if (leafNode == null) {
-                        leafNode = foundNode.parent;
-                    }
-                    double[] dist = leafNode.getClassVotes(inst, this);
-                    //Albert: changed for weights
-                    //double distSum = Utils.sum(dist);
-                    //if (distSum > 0.0) {
-                    //	Utils.normalize(dist, distSum);
-                    //}
+            if (this.taskRunner.getNumberOfJobs() > 1
+                    && foundNodes.size() >= 2 * this.taskRunner.getNumberOfJobs()) {
+                for (double[] dist : getClassVotesInParallel(inst, foundNodes)) {
                     result.addValues(dist);
                     predictionPaths++;
                 }
+            } else {
+                for (int n = 0; n < foundNodes.size(); n++) {
+                    FoundNode foundNode = foundNodes.get(n);
+                    if (foundNode.parentBranch != -999) {
+                        Node leafNode = foundNode.node;
+                        if (leafNode == null) {
+                            leafNode = foundNode.parent;
+                        }
+                        double[] dist = leafNode.getClassVotes(inst, this);
+                        //Albert: changed for weights
+                        //double distSum = Utils.sum(dist);
+                        //if (distSum > 0.0) {
+                        //	Utils.normalize(dist, distSum);
+                        //}
+                        result.addValues(dist);
+                        predictionPaths++;
+                    }
+                }
             }
             if (predictionPaths > this.maxPredictionPaths) {
                 this.maxPredictionPaths++;
@@ -714,6 +823,44 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
         return new double[0];
     }
 
+    /**
+     * Computes the votes of the leaves that predict, splitting them into one
+     * consecutive block per job. The votes are returned in the order of the
+     * leaves, so that they add up to the same result as on a single thread.
+     */
+    protected List<double[]> getClassVotesInParallel(final Instance inst,
+            FoundNodeList foundNodes) {
+        final List<Node> leaves = new ArrayList<Node>(foundNodes.size());
+        for (int n = 0; n < foundNodes.size(); n++) {
+            FoundNode foundNode = foundNodes.get(n);
+            if (foundNode.parentBranch != -999) {
+                leaves.add(foundNode.node != null ? foundNode.node : foundNode.parent);
+            }
+        }
+        int numJobs = Math.min(this.taskRunner.getNumberOfJobs(), leaves.size());
+        List<Callable<double[][]>> tasks = new ArrayList<Callable<double[][]>>(numJobs);
+        for (int job = 0; job < numJobs; job++) {
+            final int from = job * leaves.size() / numJobs;
+            final int to = (job + 1) * leaves.size() / numJobs;
+            tasks.add(new Callable<double[][]>() {
+
+                @Override
+                public double[][] call() {
+                    double[][] votes = new double[to - from][];
+                    for (int i = from; i < to; i++) {
+                        votes[i - from] = leaves.get(i).getClassVotes(inst, HoeffdingOptionTree.this);
+                    }
+                    return votes;
+                }
+            });
+        }
+        List<double[]> votes = new ArrayList<double[]>(leaves.size());
+        for (double[][] blockVotes : this.taskRunner.invokeAll(tasks)) {
+            votes.addAll(Arrays.asList(blockVotes));
+        }
+        return votes;
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return new Measurement[]{
@@ -957,37 +1104,43 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
                 * this.inactiveLeafByteSizeEstimate)
                 * this.byteSizeEstimateOverheadFraction > this.maxByteSizeOption.getValue())) {
             FoundNode[] learningNodes = findLearningNodes();
+            // the promise and option count are computed once per node instead
+            // of in every comparison
+            for (FoundNode foundNode : learningNodes) {
+                foundNode.promise = foundNode.node.calculatePromise();
+                if (foundNode.parentBranch == -999) {
+                    foundNode.headOptionCount = foundNode.parent.getHeadOptionCount();
+                }
+            }
             Arrays.sort(learningNodes, new Comparator<FoundNode>() {
 
                 public int compare(FoundNode fn1, FoundNode fn2) {
                     if (HoeffdingOptionTree.this.memoryStrategyOption.getValue() == 0) {
                         // strategy 1 - every leaf treated equal
-                        return Double.compare(fn1.node.calculatePromise(),
-                                fn2.node.calculatePromise());
+                        return Double.compare(fn1.promise, fn2.promise);
                     } else if (HoeffdingOptionTree.this.memoryStrategyOption.getValue() == 1) {
                         // strategy 2 - internal leaves penalised
-                        double p1 = fn1.node.calculatePromise();
+                        double p1 = fn1.promise;
                         if (fn1.parentBranch == -999) {
-                            p1 /= fn1.parent.getHeadOptionCount();
+                            p1 /= fn1.headOptionCount;
                         }
-                        double p2 = fn2.node.calculatePromise();
+                        double p2 = fn2.promise;
                         if (fn2.parentBranch == -999) {
-                            p1 /= fn2.parent.getHeadOptionCount();
+                            p1 /= fn2.headOptionCount;
                         }
                         return Double.compare(p1, p2);
                     } else {
                         // strategy 3 - all true leaves beat internal leaves
                         if (fn1.parentBranch == -999) {
                             if (fn2.parentBranch == -999) {
-                                return Double.compare(fn1.node.calculatePromise(), fn2.node.calculatePromise());
+                                return Double.compare(fn1.promise, fn2.promise);
                             }
                             return -1; // fn1 < fn2
                         }
                         if (fn2.parentBranch == -999) {
                             return 1; // fn1 > fn2
                         }
-                        return Double.compare(fn1.node.calculatePromise(),
-                                fn2.node.calculatePromise());
+                        return Double.compare(fn1.promise, fn2.promise);
                     }
                 }
             });
@@ -1095,7 +1248,7 @@ public class HoeffdingOptionTree extends AbstractClassifier implements MultiClas
     }
 
     protected FoundNode[] findLearningNodes() {
-        List<FoundNode> foundList = new LinkedList<FoundNode>();
+        List<FoundNode> foundList = new ArrayList<FoundNode>();
         findLearningNodes(this.treeRoot, null, -1, foundList);
         return foundList.toArray(new FoundNode[foundList.size()]);
     }
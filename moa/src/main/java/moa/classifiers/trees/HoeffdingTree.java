@@ -35,7 +35,7 @@ import moa.capabilities.Capability;
 import moa.capabilities.ImmutableCapabilities;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.MultiClassClassifier;
-import moa.classifiers.bayes.NaiveBayes;
+import moa.classifiers.bayes.NaiveBayesParameterCache;
 import moa.classifiers.core.AttributeSplitSuggestion;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.DiscreteAttributeClassObserver;
@@ -854,20 +854,38 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
 
         private static final long serialVersionUID = 1L;
 
+        // Derived from the class distribution and the observers, so created
+        // again rather than serialized
+        protected transient NaiveBayesParameterCache naiveBayesCache;
+
         public LearningNodeNB(double[] initialClassObservations) {
             super(initialClassObservations);
         }
 
+        @Override
+        public void learnFromInstance(Instance inst, HoeffdingTree ht) {
+            if (this.naiveBayesCache != null) {
+                this.naiveBayesCache.invalidate((int) inst.classValue());
+            }
+            super.learnFromInstance(inst, ht);
+        }
+
         @Override
         public double[] getClassVotes(Instance inst, HoeffdingTree ht) {
             if (getWeightSeen() >= ht.nbThresholdOption.getValue()) {
-                return NaiveBayes.doNaiveBayesPrediction(inst,
-                        this.observedClassDistribution,
-                        this.attributeObservers);
+                return doNaiveBayesPrediction(inst);
             }
             return super.getClassVotes(inst, ht);
         }
 
+        protected double[] doNaiveBayesPrediction(Instance inst) {
+            if (this.naiveBayesCache == null) {
+                this.naiveBayesCache = new NaiveBayesParameterCache();
+            }
+            return this.naiveBayesCache.doNaiveBayesPrediction(inst,
+                    this.observedClassDistribution, this.attributeObservers);
+        }
+
         @Override
         public void disableAttribute(int attIndex) {
             // should not disable poor atts - they are used in NB calc
@@ -892,8 +910,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             if (this.observedClassDistribution.maxIndex() == trueClass) {
                 this.mcCorrectWeight += inst.weight();
             }
-            if (Utils.maxIndex(NaiveBayes.doNaiveBayesPrediction(inst,
-                    this.observedClassDistribution, this.attributeObservers)) == trueClass) {
+            if (Utils.maxIndex(doNaiveBayesPrediction(inst)) == trueClass) {
                 this.nbCorrectWeight += inst.weight();
             }
             super.learnFromInstance(inst, ht);
@@ -904,8 +921,7 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             if (this.mcCorrectWeight > this.nbCorrectWeight) {
                 return this.observedClassDistribution.getArrayCopy();
             }
-            return NaiveBayes.doNaiveBayesPrediction(inst,
-                    this.observedClassDistribution, this.attributeObservers);
+            return doNaiveBayesPrediction(inst);
         }
     }
 
@@ -27,8 +27,10 @@ import moa.clusterers.clustree.util.*;
 import moa.cluster.Clustering;
 import moa.clusterers.AbstractClusterer;
 import moa.core.Measurement;
+import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.FlagOption;
+import com.github.javacliparser.MultiChoiceOption;
 import com.yahoo.labs.samoa.instances.Instance;
 
 /**
@@ -49,12 +51,30 @@ public class ClusTree extends AbstractClusterer{
 	public FlagOption breadthFirstStrategyOption = new FlagOption(
 			"breadthFirstStrategy", 'B',
 			"Use breadth first strategy");
+
+	public MultiChoiceOption budgetOption = new MultiChoiceOption(
+			"budget", 'b', "Budget that limits the depth of an insertion.",
+			new String[]{"Operations", "InterArrival", "Throughput"},
+			new String[]{
+				"Fixed number of operations per insertion",
+				"Time until the next arrival, estimated from the measured inter-arrival times",
+				"Time per insertion that achieves the target throughput"},
+			0);
+
+	public FloatOption targetThroughputOption = new FloatOption(
+			"targetThroughput", 'T',
+			"Number of insertions per second when using the Throughput budget.",
+			10000.0, Double.MIN_VALUE, Double.MAX_VALUE);
     
     protected int getDefaultHeight() {
     	return 8;
     }
     
     private static int INSERTIONS_BETWEEN_CLEANUPS = 10000;
+    /**
+     * Weight of the latest inter-arrival time in its moving average.
+     */
+    private static final double INTER_ARRIVAL_ALPHA = 0.1;
     /**
      * The root node of the tree.
      */
@@ -99,6 +119,26 @@ public class ClusTree extends AbstractClusterer{
      */
     protected boolean breadthFirstStrat = false;
     
+    /**
+     * Number of insertions that ran out of budget before reaching a leaf and
+     * left the point in a buffer as hitchhiker.
+     */
+    private long numEarlyTerminatedInsertions;
+    /**
+     * Number of insertions that reached a full leaf without budget left for
+     * a split and merged the point into the leaf instead.
+     */
+    private long numSkippedSplits;
+    /**
+     * Time of the last arrival in nanoseconds, or -1 if no point arrived yet.
+     */
+    private long lastArrival;
+    /**
+     * Moving average of the inter-arrival times in nanoseconds, or -1 if it
+     * is not known yet.
+     */
+    private double meanInterArrival;
+
     //TODO: cleanup
     private Entry alsoUpdate;
     
@@ -114,12 +154,23 @@ public class ClusTree extends AbstractClusterer{
         height = 0;
         numRootSplits = 0;
         numberInsertions = 0;
+        numEarlyTerminatedInsertions = 0;
+        numSkippedSplits = 0;
+        lastArrival = -1;
+        meanInterArrival = -1;
     }
 
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
-        return null;
+        return new Measurement[]{
+            new Measurement("early terminated insertions",
+                    numEarlyTerminatedInsertions),
+            new Measurement("early terminated insertions (percent)",
+                    numberInsertions == 0 ? 0.0 :
+                    100.0 * numEarlyTerminatedInsertions / numberInsertions),
+            new Measurement("splits skipped for lack of budget",
+                    numSkippedSplits)};
     }
 
     public boolean isRandomizable() {
@@ -156,7 +207,42 @@ public class ClusTree extends AbstractClusterer{
         }
 
         ClusKernel newPointAsKernel = new ClusKernel(instance.toDoubleArray(), numberDimensions);
-        insert(newPointAsKernel, new SimpleBudget(1000),timestamp);
+        insert(newPointAsKernel, createBudget(),timestamp);
+    }
+
+    /**
+     * Creates the <code>Budget</code> for the insertion of the current point
+     * according to the selected budget option. The InterArrival budget
+     * allows the insertion to continue until the next point is expected,
+     * based on a moving average of the measured times between arrivals.
+     * The Throughput budget allows the time per point that is available at
+     * the target throughput.
+     * @return The budget for the current insertion.
+     */
+    protected Budget createBudget() {
+        switch (budgetOption.getChosenIndex()) {
+            case 1:
+                long now = System.nanoTime();
+                if (lastArrival >= 0) {
+                    long gap = now - lastArrival;
+                    if (meanInterArrival < 0) {
+                        meanInterArrival = gap;
+                    } else {
+                        meanInterArrival += INTER_ARRIVAL_ALPHA
+                                * (gap - meanInterArrival);
+                    }
+                }
+                lastArrival = now;
+                if (meanInterArrival < 0) {
+                    return new TimeBudget(Long.MAX_VALUE);
+                }
+                return new TimeBudget(now + (long) meanInterArrival);
+            case 2:
+                return TimeBudget.fromNow(
+                        (long) (1.0e9 / targetThroughputOption.getValue()));
+            default:
+                return new SimpleBudget(1000);
+        }
     }
 
 
@@ -409,8 +495,12 @@ public class ClusTree extends AbstractClusterer{
 	    } else if (numFreeEntries >= 1) {
 	        currentNode.addEntry(newEntry, timestamp);
 	    } else {
-	        if (currentNode.isLeaf() && (this.hasMaximalSize()
+	        boolean maximalSize = this.hasMaximalSize();
+	        if (currentNode.isLeaf() && (maximalSize
 	                || !budget.hasMoreTime())) {
+	            if (!maximalSize) {
+	                this.numSkippedSplits++;
+	            }
 	            mergeEntryWithoutSplit(currentNode, newEntry,
 	                    timestamp);
 	        } else {
@@ -493,6 +583,7 @@ public class ClusTree extends AbstractClusterer{
             }
 
             if (!budget.hasMoreTime()) {
+                this.numEarlyTerminatedInsertions++;
                 bestEntry.aggregateToBuffer(pointToInsert, timestamp,
                         this.negLambda);
                 if (!isCarriedBufferEmpty) {
@@ -713,6 +804,25 @@ public class ClusTree extends AbstractClusterer{
         return numRootSplits;
     }
 
+    /**
+     * Return the number of insertions that ran out of budget before reaching
+     * a leaf. These points were left in the buffer of an inner entry and are
+     * carried further down by later insertions.
+     * @return The number of early terminated insertions.
+     */
+    public long getNumEarlyTerminatedInsertions() {
+        return numEarlyTerminatedInsertions;
+    }
+
+    /**
+     * Return the number of insertions that reached a full leaf without
+     * budget left for a split, so that the point was merged into the leaf.
+     * @return The number of skipped splits.
+     */
+    public long getNumSkippedSplits() {
+        return numSkippedSplits;
+    }
+
     /**
      * Return the current height of the tree. This should never be greater than
      * <code>maxHeight</code>.
@@ -0,0 +1,106 @@
+/*
+ *    TimeBudget.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.clusterers.clustree.util;
+
+/**
+ * A <code>Budget</code> that is bounded by wall clock time instead of a
+ * number of operations. The insertion may go on until a deadline, given in
+ * the time base of <code>System.nanoTime()</code>, is reached. This is
+ * usually the expected arrival time of the next data point. The reported
+ * operations are ignored, since the elapsed time is measured directly.
+ */
+public class TimeBudget implements Budget {
+
+    private final long deadline;
+
+    /**
+     * Creates a budget that runs out at the given deadline.
+     * @param deadline The deadline in nanoseconds as returned by
+     * <code>System.nanoTime()</code>.
+     */
+    public TimeBudget(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Creates a budget that runs out after the given number of nanoseconds.
+     * @param nanos The time available from now on.
+     * @return The budget.
+     */
+    public static TimeBudget fromNow(long nanos) {
+        long now = System.nanoTime();
+        // Avoid an overflow for very long or unlimited budgets
+        long deadline = (nanos > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + nanos;
+        return new TimeBudget(deadline);
+    }
+
+    @Override
+    public boolean hasMoreTime() {
+        return this.deadline == Long.MAX_VALUE
+                || System.nanoTime() - this.deadline < 0;
+    }
+
+    @Override
+    public void integerAddition() {
+    }
+
+    @Override
+    public void integerAddition(int number) {
+    }
+
+    @Override
+    public void doubleAddition() {
+    }
+
+    @Override
+    public void doubleAddition(int number) {
+    }
+
+    @Override
+    public void integerMultiplication() {
+    }
+
+    @Override
+    public void integerMultiplication(int number) {
+    }
+
+    @Override
+    public void doubleMultiplication() {
+    }
+
+    @Override
+    public void doubleMultiplication(int number) {
+    }
+
+    @Override
+    public void integerDivision() {
+    }
+
+    @Override
+    public void integerDivision(int number) {
+    }
+
+    @Override
+    public void doubleDivision() {
+    }
+
+    @Override
+    public void doubleDivision(int number) {
+    }
+}
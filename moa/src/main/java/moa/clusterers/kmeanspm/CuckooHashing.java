@@ -233,6 +233,7 @@ public class CuckooHashing<T> {
 	public void clear() {
 		this.hashSize = this.startHashSize;
 		this.numTables = this.startNumTables;
+		this.elements.clear();
 		this.numElements = 0;
 
 		this.hashfunctions.clear();
@@ -0,0 +1,909 @@
+/*
+ *    FlatBICO.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.clusterers.kmeanspm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.javacliparser.IntOption;
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.cluster.Cluster;
+import moa.cluster.Clustering;
+import moa.cluster.SphereCluster;
+import moa.clusterers.AbstractClusterer;
+import moa.core.AutoExpandVector;
+import moa.core.Measurement;
+import moa.core.StringUtils;
+
+/**
+ * A variant of the BICO clustering algorithm which keeps the
+ * ClusteringFeature tree in flat primitive arrays.
+ *
+ * The algorithm is the same as in {@link BICO}: every node of the tree is
+ * identified by an index into parallel arrays holding the number of points,
+ * the sum of points, the sum of squared lengths, the representative center
+ * and the threshold of its ClusteringFeature. Children are linked through
+ * first child / next sibling arrays and all distances are computed with the
+ * offset based kernels of {@link Metric}.
+ *
+ * BICO only uses the random projections for the nearest neighbour search
+ * among the children of the root. Here, every node with at least
+ * <code>ProjectedChildren</code> children keeps its own projection buckets,
+ * which store child indices in primitive int lists. The projections of each
+ * center are computed once when its node is created. With
+ * <code>ProjectedChildren</code> set to -1 only the root uses projections
+ * and the result equals the result of BICO with the same random seed, up to
+ * the rounding of the distance computations.
+ *
+ * Citation: Hendrik Fichtenberger, Marc Gillé, Melanie Schmidt,
+ * Chris Schwiegelshohn, Christian Sohler:
+ * BICO: BIRCH Meets Coresets for k-Means Clustering.
+ * ESA 2013: 481-492 (2013)
+ * http://ls2-www.cs.tu-dortmund.de/bico/
+ *
+ */
+public class FlatBICO extends AbstractClusterer {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int ROOT = 0;
+
+	private static final int NONE = -1;
+
+	public IntOption numClustersOption = new IntOption("Cluster", 'k',
+			"Number of desired centers.", 5, 1, Integer.MAX_VALUE);
+
+	public IntOption numDimensionsOption = new IntOption("Dimensions", 'd',
+			"Number of the dimensions of the input points.", 10, 1,
+			Integer.MAX_VALUE);
+
+	public IntOption maxNumClusterFeaturesOption = new IntOption(
+			"MaxClusterFeatures", 'n', "Maximum size of the coreset.", 5 * 200, 1,
+			Integer.MAX_VALUE);
+
+	public IntOption numProjectionsOption = new IntOption("Projections", 'p',
+			"Number of random projections used for the nearest neighbour search.",
+			10, 1, Integer.MAX_VALUE);
+
+	public IntOption projectedChildrenOption = new IntOption(
+			"ProjectedChildren", 'c',
+			"Minimum number of children of an inner node to search them with random projections (-1 = only the root).",
+			32, -1, Integer.MAX_VALUE);
+
+	protected int numClusters;
+	protected int numDimensions;
+	protected int maxNumClusterFeatures;
+	protected int numProjections;
+	protected int projectedChildren;
+
+	private boolean bufferPhase;
+	private double[] buffer;
+	private int bufferSize;
+	private double minDistance;
+	private int pairwiseDifferent;
+
+	// ClusteringFeature tree, node ROOT is the global root
+	private int capacity;
+	private int numNodes;
+	private int[] cfNumPoints;
+	private double[] cfSumPoints;
+	private double[] cfSumSquaredLength;
+	private double[] centers;
+	private double[] centerSquaredLength;
+	private double[] thresholds;
+	private int[] firstChild;
+	private int[] lastChild;
+	private int[] nextSibling;
+	private int[] numChildren;
+	private int[] freeNodes;
+	private int numFreeNodes;
+	private int[] queue;
+
+	// Nearest neighbour search with random projections
+	private double[] projections;
+	private double[] centerProjections;
+	private double[] pointProjections;
+	private ProjectionBuckets[] buckets;
+
+	private int rootCount;
+	private double T;
+
+	// Squared distance to the node returned by the last nearestChild call
+	private double nearestDistanceSquared;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see moa.clusterers.Clusterer#isRandomizable()
+	 */
+	@Override
+	public boolean isRandomizable() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see moa.clusterers.AbstractClusterer#implementsMicroClusterer()
+	 */
+	@Override
+	public boolean implementsMicroClusterer() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see moa.clusterers.AbstractClusterer#getMicroClusteringResult()
+	 */
+	@Override
+	public Clustering getMicroClusteringResult() {
+		AutoExpandVector<Cluster> clusters = new AutoExpandVector<Cluster>(
+				this.rootCount);
+		int[] order = preorder();
+		for (int node : order) {
+			double[] center = new double[this.numDimensions];
+			System.arraycopy(this.cfSumPoints, node * this.numDimensions,
+					center, 0, this.numDimensions);
+			for (int i = 0; i < center.length; i++) {
+				center[i] /= this.cfNumPoints[node];
+			}
+			clusters.add(new SphereCluster(center, this.thresholds[node],
+					this.cfNumPoints[node]));
+		}
+		return new Clustering(clusters);
+	}
+
+	/**
+	 * Writes all micro cluster to a given stream.
+	 *
+	 * @param stream
+	 *            the stream
+	 * @throws IOException
+	 *            If an I/O error occurs
+	 */
+	public void printMicroClusteringResult(Writer stream) throws IOException {
+		int[] order = preorder();
+		for (int node : order) {
+			int offset = node * this.numDimensions;
+			stream.write(String.valueOf(this.cfNumPoints[node]));
+			for (int j = 0; j < this.numDimensions; j++) {
+				stream.write(' ');
+				stream.write(String.valueOf(this.cfSumPoints[offset + j]
+						/ this.cfNumPoints[node]));
+			}
+			stream.write(System.getProperty("line.separator"));
+		}
+	}
+
+	/**
+	 * Returns the current size of the micro clustering.
+	 *
+	 * @return The size of the micro clustering
+	 */
+	public int getMicroClusteringSize() {
+		return this.rootCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see moa.clusterers.Clusterer#getVotesForInstance(weka.core.Instance)
+	 */
+	@Override
+	public double[] getVotesForInstance(Instance inst) {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see moa.clusterers.Clusterer#getClusteringResult()
+	 */
+	@Override
+	public Clustering getClusteringResult() {
+		List<double[]> microClustering;
+		// If the buffer phase is active then the buffer (without duplicates) is
+		// equal to the micro clustering
+		if (this.bufferPhase) {
+			microClustering = deduplicateBuffer();
+		} else {
+			// Collects all nodes as arrays with the weight in the first element
+			int[] order = preorder();
+			microClustering = new ArrayList<double[]>(order.length);
+			for (int node : order) {
+				double[] pointWeighted = new double[this.numDimensions + 1];
+				pointWeighted[0] = this.cfNumPoints[node];
+				int offset = node * this.numDimensions;
+				for (int i = 0; i < this.numDimensions; i++) {
+					pointWeighted[i + 1] = this.cfSumPoints[offset + i]
+							/ this.cfNumPoints[node];
+				}
+				microClustering.add(pointWeighted);
+			}
+		}
+		// Runs the k-means algorithm five times on the micro clustering
+		List<double[]> result = null;
+		double minValue = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 5; i++) {
+			// Creates the starting centroids
+			List<double[]> newResult = CoresetKMeans
+					.generatekMeansPlusPlusCentroids(this.numClusters,
+							microClustering, this.clustererRandom);
+			// Runs the k-means algorithm with changing the starting centroids
+			double newValue = CoresetKMeans.kMeans(newResult, microClustering);
+			// Selects the result with minimum costs
+			if (newValue < minValue) {
+				result = newResult;
+				minValue = newValue;
+			}
+		}
+
+		// Prepares the points for the clustering result
+		AutoExpandVector<Cluster> resultClustering = new AutoExpandVector<Cluster>(
+				result.size());
+		for (double[] point : result) {
+			resultClustering.add(new SphereCluster(point, 0.0));
+		}
+		return new Clustering(resultClustering);
+	}
+
+	/**
+	 * Removes duplicates from the buffer with an open addressing hash table
+	 * over the point coordinates.
+	 *
+	 * @return the distinct points of the buffer with their multiplicity in the
+	 *         first element
+	 */
+	private List<double[]> deduplicateBuffer() {
+		int d = this.numDimensions;
+		List<double[]> microClustering = new ArrayList<double[]>(this.bufferSize);
+		int tableSize = Integer.highestOneBit(Math.max(this.bufferSize, 1)) << 2;
+		int[] table = new int[tableSize];
+		for (int j = 0; j < this.bufferSize; j++) {
+			int offset = j * d;
+			int slot = hashPoint(this.buffer, offset, d) & (tableSize - 1);
+			boolean duplicate = false;
+			while (table[slot] != 0) {
+				double[] pointB = microClustering.get(table[slot] - 1);
+				int i;
+				for (i = 0; i < d; i++) {
+					if (this.buffer[offset + i] != pointB[i + 1]) {
+						break;
+					}
+				}
+				if (i == d) {
+					duplicate = true;
+					pointB[0] += 1;
+					break;
+				}
+				slot = (slot + 1) & (tableSize - 1);
+			}
+			if (!duplicate) {
+				// Copies the point to an array with the weight in the first
+				// element
+				double[] pointWeighted = new double[d + 1];
+				pointWeighted[0] = 1;
+				System.arraycopy(this.buffer, offset, pointWeighted, 1, d);
+				microClustering.add(pointWeighted);
+				table[slot] = microClustering.size();
+			}
+		}
+		return microClustering;
+	}
+
+	/**
+	 * Calculates a hash code of a point stored inside a flat array. Positive
+	 * and negative zero are mapped to the same value since they are equal
+	 * points.
+	 */
+	private static int hashPoint(double[] points, int offset, int length) {
+		long h = 1;
+		for (int i = 0; i < length; i++) {
+			double v = points[offset + i];
+			h = 31 * h + (v == 0.0 ? 0L : Double.doubleToLongBits(v));
+		}
+		h ^= (h >>> 32);
+		return (int) (h ^ (h >>> 16));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see moa.clusterers.AbstractClusterer#resetLearningImpl()
+	 */
+	@Override
+	public void resetLearningImpl() {
+		this.numClusters = this.numClustersOption.getValue();
+		this.numDimensions = this.numDimensionsOption.getValue();
+		this.maxNumClusterFeatures = this.maxNumClusterFeaturesOption.getValue();
+		this.numProjections = this.numProjectionsOption.getValue();
+		this.projectedChildren = this.projectedChildrenOption.getValue();
+
+		this.bufferPhase = true;
+		this.buffer = new double[(Math.min(this.maxNumClusterFeatures, 1 << 16) + 1)
+				* this.numDimensions];
+		this.bufferSize = 0;
+		this.minDistance = Double.POSITIVE_INFINITY;
+		this.pairwiseDifferent = 0;
+
+		// Draws the projections and the hash functions in the same order as
+		// the ClusteringTreeHeadNode of BICO
+		this.projections = new double[this.numProjections * this.numDimensions];
+		for (int i = 0; i < this.numProjections; i++) {
+			int offset = i * this.numDimensions;
+			double norm = 0.0;
+			for (int j = 0; j < this.numDimensions; j++) {
+				double d = this.clustererRandom.nextGaussian();
+				this.projections[offset + j] = d;
+				norm += d * d;
+			}
+			norm = Math.sqrt(norm);
+			for (int j = 0; j < this.numDimensions; j++) {
+				this.projections[offset + j] /= norm;
+			}
+		}
+		this.pointProjections = new double[this.numProjections];
+
+		this.capacity = 0;
+		this.numNodes = 0;
+		this.numFreeNodes = 0;
+		ensureCapacity(Math.min(this.maxNumClusterFeatures, 1 << 16) + 2);
+		// Creates the root node
+		this.numNodes = 1;
+		this.cfNumPoints[ROOT] = 1;
+		this.thresholds[ROOT] = 1;
+		this.firstChild[ROOT] = NONE;
+		this.lastChild[ROOT] = NONE;
+		this.nextSibling[ROOT] = NONE;
+		this.numChildren[ROOT] = 0;
+		this.buckets[ROOT] = newProjectionBuckets();
+		this.rootCount = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * moa.clusterers.AbstractClusterer#trainOnInstanceImpl(weka.core.Instance)
+	 */
+	@Override
+	public void trainOnInstanceImpl(Instance inst) {
+		double[] x = inst.toDoubleArray();
+		if (this.numDimensions != x.length) {
+			// Skips instances that do not match the configured dimensions
+			return;
+		}
+		// Starts with the buffer phase to calculate the starting threshold
+		if (this.bufferPhase) {
+			int d = this.numDimensions;
+			// Calculates the pairwise distance to all unequal point in the
+			// buffer
+			for (int j = 0; j < this.bufferSize; j++) {
+				double dist = Metric.distanceSquared(this.buffer, j * d, x, 0, d);
+				if (dist > 0) {
+					this.pairwiseDifferent++;
+					if (dist < this.minDistance) {
+						this.minDistance = dist;
+					}
+				}
+			}
+			if ((this.bufferSize + 1) * d > this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+			}
+			System.arraycopy(x, 0, this.buffer, this.bufferSize * d, d);
+			this.bufferSize++;
+
+			// Checks if the buffer is large enough
+			if (this.pairwiseDifferent >= this.maxNumClusterFeatures + 1) {
+				// Calculates the starting threshold
+				this.T = 16 * this.minDistance;
+				this.thresholds[ROOT] = calcRSquared(1);
+				this.bufferPhase = false;
+				// Adds all points to the ClusteringFeature tree
+				for (int j = 0; j < this.bufferSize; j++) {
+					bicoUpdate(this.buffer, j * d);
+				}
+				this.buffer = null;
+				this.bufferSize = 0;
+			}
+		} else {
+			// Adds the point directly to the ClusteringFeature tree
+			bicoUpdate(x, 0);
+		}
+	}
+
+	/**
+	 * Inserts a new point into the ClusteringFeature tree.
+	 *
+	 * @param x
+	 *            array containing the point
+	 * @param offset
+	 *            start index of the point
+	 */
+	protected void bicoUpdate(double[] x, int offset) {
+		assert (!this.bufferPhase);
+		int d = this.numDimensions;
+		double xSquaredLength = Metric.dotProduct(x, offset, x, offset, d);
+		// Projects the point once for the search on all levels
+		for (int p = 0; p < this.numProjections; p++) {
+			this.pointProjections[p] = Metric.dotProduct(x, offset,
+					this.projections, p * d, d);
+		}
+		// Starts with the global root node as the current root node
+		int r = ROOT;
+		int i = 1;
+		while (true) {
+			int y = nearestChild(r, x, offset, this.pointProjections, 0);
+			// Checks if the point can not be added to the current level
+			if (y == NONE || this.nearestDistanceSquared > calcRSquared(i)) {
+				// Creates a new node for the point and adds it to the current
+				// root node
+				addChild(r, newNode(x, offset, xSquaredLength, calcR(i)));
+				this.rootCount++;
+				break;
+			} else {
+				// Checks if the point can be added to the nearest node without
+				// exceeding the global threshold
+				int yOffset = y * d;
+				double costs = (this.cfSumSquaredLength[y] + xSquaredLength)
+						- 2 * Metric.dotProductWithAddition(this.cfSumPoints,
+								yOffset, x, offset, this.centers, yOffset, d)
+						+ (this.cfNumPoints[y] + 1) * this.centerSquaredLength[y];
+				if (costs <= this.T) {
+					// Adds the point to the ClusteringFeature
+					this.cfNumPoints[y]++;
+					for (int j = 0; j < d; j++) {
+						this.cfSumPoints[yOffset + j] += x[offset + j];
+					}
+					this.cfSumSquaredLength[y] += xSquaredLength;
+					break;
+				} else {
+					// Navigates one level down in the tree
+					r = y;
+					i++;
+				}
+			}
+		}
+		// Checks if the number of nodes in the tree exceeds the maximum number
+		if (this.rootCount > this.maxNumClusterFeatures) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * If the number of nodes exceeds the maximum bound, the global threshold T
+	 * will be doubled and the tree will be rebuild with the new threshold.
+	 *
+	 */
+	protected void rebuild() {
+		// Checks if the number of nodes in the tree exceeds the maximum number
+		while (this.rootCount > this.maxNumClusterFeatures) {
+			// Doubles the global threshold
+			this.T *= 2.0;
+			this.thresholds[ROOT] = calcRSquared(1);
+			// Adds all nodes to the ClusteringFeature tree again in breadth
+			// first order
+			int head = 0;
+			int tail = 0;
+			for (int c = this.firstChild[ROOT]; c != NONE; c = this.nextSibling[c]) {
+				this.queue[tail++] = c;
+			}
+			clearChildren(ROOT);
+			this.rootCount = 0;
+			while (head < tail) {
+				int x = this.queue[head++];
+				for (int c = this.firstChild[x]; c != NONE; c = this.nextSibling[c]) {
+					this.queue[tail++] = c;
+				}
+				clearChildren(x);
+				bicoCFUpdate(x);
+			}
+		}
+	}
+
+	/**
+	 * Inserts a detached node into the ClusteringFeature tree.
+	 *
+	 * @param x
+	 *            index of the node
+	 */
+	protected void bicoCFUpdate(int x) {
+		int d = this.numDimensions;
+		int xOffset = x * d;
+		// Starts with the global root node as the current root node
+		int r = ROOT;
+		int i = 1;
+		while (true) {
+			int y = nearestChild(r, this.centers, xOffset,
+					this.centerProjections, x * this.numProjections);
+			// Checks if the node can not be merged to the current level
+			if (y == NONE || this.nearestDistanceSquared > calcRSquared(i)) {
+				// Adds the node to the current root node
+				this.thresholds[x] = calcR(i);
+				addChild(r, x);
+				this.rootCount++;
+				break;
+			} else {
+				// Checks if the node can be merged to the nearest node without
+				// exceeding the global threshold
+				int yOffset = y * d;
+				double costs = (this.cfSumSquaredLength[y] + this.cfSumSquaredLength[x])
+						- 2 * Metric.dotProductWithAddition(this.cfSumPoints,
+								yOffset, this.cfSumPoints, xOffset, this.centers,
+								yOffset, d)
+						+ (this.cfNumPoints[y] + this.cfNumPoints[x])
+						* this.centerSquaredLength[y];
+				if (costs <= this.T) {
+					// Merges the ClusteringFeature of the node to the
+					// ClusteringFeature of the nearest node
+					this.cfNumPoints[y] += this.cfNumPoints[x];
+					for (int j = 0; j < d; j++) {
+						this.cfSumPoints[yOffset + j] += this.cfSumPoints[xOffset + j];
+					}
+					this.cfSumSquaredLength[y] += this.cfSumSquaredLength[x];
+					this.freeNodes[this.numFreeNodes++] = x;
+					break;
+				} else {
+					// Navigates one level down in the tree
+					r = y;
+					i++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches for the nearest child of a node. If the node has projection
+	 * buckets, only the children in the smallest non-empty bucket of the
+	 * point are compared, otherwise all children are compared. The squared
+	 * distance to the result is stored in nearestDistanceSquared.
+	 *
+	 * @param r
+	 *            index of the node
+	 * @param x
+	 *            array containing the point
+	 * @param offset
+	 *            start index of the point
+	 * @param xProjections
+	 *            array containing the projections of the point
+	 * @param projectionOffset
+	 *            start index of the projections of the point
+	 * @return index of the nearest child or NONE
+	 */
+	private int nearestChild(int r, double[] x, int offset,
+			double[] xProjections, int projectionOffset) {
+		int d = this.numDimensions;
+		this.nearestDistanceSquared = Double.POSITIVE_INFINITY;
+		int min = NONE;
+		ProjectionBuckets nodeBuckets = this.buckets[r];
+		if (nodeBuckets != null) {
+			IntList minBucket = null;
+			int minSize = Integer.MAX_VALUE;
+			for (int i = 0; i < this.numProjections; i++) {
+				IntList bucket = nodeBuckets.get(i).get(calcBucketNumber(r,
+						xProjections[projectionOffset + i]));
+				int bucketSize;
+				if (bucket != null && (bucketSize = bucket.size()) <= minSize) {
+					minBucket = bucket;
+					minSize = bucketSize;
+				}
+			}
+			if (minBucket != null) {
+				for (int j = 0; j < minBucket.size(); j++) {
+					int node = minBucket.get(j);
+					double dist = Metric.distanceSquared(x, offset, this.centers,
+							node * d, d, this.nearestDistanceSquared);
+					if (dist < this.nearestDistanceSquared) {
+						this.nearestDistanceSquared = dist;
+						min = node;
+					}
+				}
+			}
+		} else {
+			for (int c = this.firstChild[r]; c != NONE; c = this.nextSibling[c]) {
+				double dist = Metric.distanceSquared(x, offset, this.centers,
+						c * d, d, this.nearestDistanceSquared);
+				if (dist < this.nearestDistanceSquared) {
+					this.nearestDistanceSquared = dist;
+					min = c;
+				}
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Calculates the bucket number of a projected position among the children
+	 * of a node.
+	 */
+	private long calcBucketNumber(int node, double val) {
+		return (long) Math.floor(val / this.thresholds[node]);
+	}
+
+	/**
+	 * Creates a new node for a point whose projections are stored in
+	 * pointProjections.
+	 *
+	 * @return index of the new node
+	 */
+	private int newNode(double[] x, int offset, double xSquaredLength,
+			double threshold) {
+		int node;
+		if (this.numFreeNodes > 0) {
+			node = this.freeNodes[--this.numFreeNodes];
+		} else {
+			ensureCapacity(this.numNodes + 1);
+			node = this.numNodes++;
+		}
+		int d = this.numDimensions;
+		System.arraycopy(x, offset, this.centers, node * d, d);
+		System.arraycopy(x, offset, this.cfSumPoints, node * d, d);
+		System.arraycopy(this.pointProjections, 0, this.centerProjections,
+				node * this.numProjections, this.numProjections);
+		this.cfNumPoints[node] = 1;
+		this.cfSumSquaredLength[node] = xSquaredLength;
+		this.centerSquaredLength[node] = xSquaredLength;
+		this.thresholds[node] = threshold;
+		this.firstChild[node] = NONE;
+		this.lastChild[node] = NONE;
+		this.nextSibling[node] = NONE;
+		this.numChildren[node] = 0;
+		this.buckets[node] = null;
+		return node;
+	}
+
+	/**
+	 * Appends a node to the children of another node. Creates the projection
+	 * buckets of the parent once it has enough children.
+	 */
+	private void addChild(int parent, int node) {
+		this.nextSibling[node] = NONE;
+		if (this.firstChild[parent] == NONE) {
+			this.firstChild[parent] = node;
+		} else {
+			this.nextSibling[this.lastChild[parent]] = node;
+		}
+		this.lastChild[parent] = node;
+		this.numChildren[parent]++;
+		if (this.buckets[parent] != null) {
+			addToBuckets(parent, node);
+		} else if (this.projectedChildren >= 0
+				&& this.numChildren[parent] >= Math.max(this.projectedChildren, 1)) {
+			this.buckets[parent] = newProjectionBuckets();
+			for (int c = this.firstChild[parent]; c != NONE; c = this.nextSibling[c]) {
+				addToBuckets(parent, c);
+			}
+		}
+	}
+
+	/**
+	 * Adds a child to the projection buckets of its parent.
+	 */
+	private void addToBuckets(int parent, int node) {
+		int offset = node * this.numProjections;
+		for (int i = 0; i < this.numProjections; i++) {
+			long bucketNumber = calcBucketNumber(parent,
+					this.centerProjections[offset + i]);
+			CuckooHashing<IntList> currentBuckets = this.buckets[parent].get(i);
+			IntList bucket = currentBuckets.get(bucketNumber);
+			if (bucket == null) {
+				bucket = new IntList();
+				currentBuckets.put(bucketNumber, bucket);
+			}
+			bucket.add(node);
+		}
+	}
+
+	/**
+	 * Removes all children of a node.
+	 */
+	private void clearChildren(int node) {
+		this.firstChild[node] = NONE;
+		this.lastChild[node] = NONE;
+		this.numChildren[node] = 0;
+		if (node == ROOT) {
+			for (CuckooHashing<IntList> bucket : this.buckets[ROOT]) {
+				bucket.clear();
+			}
+		} else {
+			this.buckets[node] = null;
+		}
+	}
+
+	/**
+	 * Creates empty projection buckets.
+	 */
+	private ProjectionBuckets newProjectionBuckets() {
+		int hashSize = (int) Math.ceil(Math.log(
+				5 * this.maxNumClusterFeatures) / Math.log(2));
+		ProjectionBuckets nodeBuckets = new ProjectionBuckets(this.numProjections);
+		for (int i = 0; i < this.numProjections; i++) {
+			nodeBuckets.add(new CuckooHashing<IntList>(Math.min(hashSize, 30),
+					this.clustererRandom));
+		}
+		return nodeBuckets;
+	}
+
+	/**
+	 * Collects all nodes except the root in depth first pre-order, which is
+	 * the order of the micro clusters in BICO.
+	 */
+	private int[] preorder() {
+		int[] order = new int[this.rootCount];
+		int[] stack = new int[Math.max(this.numNodes, 1)];
+		int size = 0;
+		int top = 0;
+		if (this.firstChild[ROOT] != NONE) {
+			stack[top++] = this.firstChild[ROOT];
+		}
+		while (top > 0) {
+			int node = stack[--top];
+			order[size++] = node;
+			if (this.nextSibling[node] != NONE) {
+				stack[top++] = this.nextSibling[node];
+			}
+			if (this.firstChild[node] != NONE) {
+				stack[top++] = this.firstChild[node];
+			}
+		}
+		assert (size == this.rootCount);
+		return order;
+	}
+
+	/**
+	 * Grows the node arrays so that they can hold at least the given number of
+	 * nodes.
+	 */
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity <= this.capacity) {
+			return;
+		}
+		int newCapacity = Math.max(minCapacity, 2 * this.capacity);
+		int d = this.numDimensions;
+		int p = this.numProjections;
+		if (this.capacity == 0) {
+			this.cfNumPoints = new int[newCapacity];
+			this.cfSumPoints = new double[newCapacity * d];
+			this.cfSumSquaredLength = new double[newCapacity];
+			this.centers = new double[newCapacity * d];
+			this.centerSquaredLength = new double[newCapacity];
+			this.centerProjections = new double[newCapacity * p];
+			this.thresholds = new double[newCapacity];
+			this.firstChild = new int[newCapacity];
+			this.lastChild = new int[newCapacity];
+			this.nextSibling = new int[newCapacity];
+			this.numChildren = new int[newCapacity];
+			this.buckets = new ProjectionBuckets[newCapacity];
+			this.freeNodes = new int[newCapacity];
+		} else {
+			this.cfNumPoints = Arrays.copyOf(this.cfNumPoints, newCapacity);
+			this.cfSumPoints = Arrays.copyOf(this.cfSumPoints, newCapacity * d);
+			this.cfSumSquaredLength = Arrays.copyOf(this.cfSumSquaredLength,
+					newCapacity);
+			this.centers = Arrays.copyOf(this.centers, newCapacity * d);
+			this.centerSquaredLength = Arrays.copyOf(this.centerSquaredLength,
+					newCapacity);
+			this.centerProjections = Arrays.copyOf(this.centerProjections,
+					newCapacity * p);
+			this.thresholds = Arrays.copyOf(this.thresholds, newCapacity);
+			this.firstChild = Arrays.copyOf(this.firstChild, newCapacity);
+			this.lastChild = Arrays.copyOf(this.lastChild, newCapacity);
+			this.nextSibling = Arrays.copyOf(this.nextSibling, newCapacity);
+			this.numChildren = Arrays.copyOf(this.numChildren, newCapacity);
+			this.buckets = Arrays.copyOf(this.buckets, newCapacity);
+			this.freeNodes = Arrays.copyOf(this.freeNodes, newCapacity);
+		}
+		this.queue = new int[newCapacity];
+		this.capacity = newCapacity;
+	}
+
+	/**
+	 * Calculates the squared threshold at a specific level in the
+	 * ClusteringFeature tree.
+	 *
+	 * @param level
+	 *            level in the tree
+	 * @return the squared threshold
+	 */
+	protected double calcRSquared(int level) {
+		return this.T / (double) (1 << (3 + level));
+	}
+
+	/**
+	 * Calculates the threshold at a specific level in the ClusteringFeature
+	 * tree.
+	 *
+	 * @param level
+	 *            level in the tree
+	 * @return the threshold
+	 */
+	protected double calcR(int level) {
+		return Math.sqrt(calcRSquared(level));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see moa.clusterers.AbstractClusterer#getModelMeasurementsImpl()
+	 */
+	@Override
+	protected Measurement[] getModelMeasurementsImpl() {
+		return new Measurement[] {
+				new Measurement("micro clusters", this.rootCount),
+				new Measurement("threshold", this.T) };
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * moa.clusterers.AbstractClusterer#getModelDescription(java.lang.StringBuilder, int)
+	 */
+	@Override
+	public void getModelDescription(StringBuilder out, int indent) {
+		StringUtils.appendIndented(out, indent, "Micro clusters: " + this.rootCount);
+		StringUtils.appendNewline(out);
+		StringUtils.appendIndented(out, indent, "Threshold: " + this.T);
+		StringUtils.appendNewline(out);
+	}
+
+	/**
+	 * Projection buckets of a node, one hash table per random projection.
+	 */
+	private static final class ProjectionBuckets extends
+			ArrayList<CuckooHashing<IntList>> {
+
+		private static final long serialVersionUID = 1L;
+
+		public ProjectionBuckets(int numProjections) {
+			super(numProjections);
+		}
+	}
+
+	/**
+	 * Growable list of primitive node indices used for the projection
+	 * buckets.
+	 */
+	private static final class IntList {
+
+		private int[] elements = new int[2];
+
+		private int size;
+
+		public void add(int element) {
+			if (this.size == this.elements.length) {
+				this.elements = Arrays.copyOf(this.elements, this.size * 2);
+			}
+			this.elements[this.size++] = element;
+		}
+
+		public int get(int index) {
+			return this.elements[index];
+		}
+
+		public int size() {
+			return this.size;
+		}
+	}
+
+}
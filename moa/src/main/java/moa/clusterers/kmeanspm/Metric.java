@@ -317,4 +317,166 @@ public class Metric {
 		return product;
 	}
 
+	/**
+	 * Calculates the squared Euclidean distance of two points which are stored
+	 * inside larger flat arrays. The loop is unrolled to four independent
+	 * partial sums so that the JIT compiler can vectorize it.
+	 *
+	 * @param pointA
+	 *            array containing the first point
+	 * @param offsetA
+	 *            start index of the first point
+	 * @param pointB
+	 *            array containing the second point
+	 * @param offsetB
+	 *            start index of the second point
+	 * @param length
+	 *            number of dimensions
+	 * @return the squared Euclidean distance
+	 */
+	public static double distanceSquared(double[] pointA, int offsetA,
+			double[] pointB, int offsetB, int length) {
+		assert (offsetA + length <= pointA.length && offsetB + length <= pointB.length);
+		double d0 = 0.0, d1 = 0.0, d2 = 0.0, d3 = 0.0;
+		int i = 0;
+		for (; i + 3 < length; i += 4) {
+			double e0 = pointA[offsetA + i] - pointB[offsetB + i];
+			double e1 = pointA[offsetA + i + 1] - pointB[offsetB + i + 1];
+			double e2 = pointA[offsetA + i + 2] - pointB[offsetB + i + 2];
+			double e3 = pointA[offsetA + i + 3] - pointB[offsetB + i + 3];
+			d0 += e0 * e0;
+			d1 += e1 * e1;
+			d2 += e2 * e2;
+			d3 += e3 * e3;
+		}
+		for (; i < length; i++) {
+			double e = pointA[offsetA + i] - pointB[offsetB + i];
+			d0 += e * e;
+		}
+		return (d0 + d1) + (d2 + d3);
+	}
+
+	/**
+	 * Calculates the dot product of two points which are stored inside larger
+	 * flat arrays. The loop is unrolled to four independent partial sums so
+	 * that the JIT compiler can vectorize it.
+	 *
+	 * @param pointA
+	 *            array containing the first point
+	 * @param offsetA
+	 *            start index of the first point
+	 * @param pointB
+	 *            array containing the second point
+	 * @param offsetB
+	 *            start index of the second point
+	 * @param length
+	 *            number of dimensions
+	 * @return the dot product
+	 */
+	public static double dotProduct(double[] pointA, int offsetA,
+			double[] pointB, int offsetB, int length) {
+		assert (offsetA + length <= pointA.length && offsetB + length <= pointB.length);
+		double p0 = 0.0, p1 = 0.0, p2 = 0.0, p3 = 0.0;
+		int i = 0;
+		for (; i + 3 < length; i += 4) {
+			p0 += pointA[offsetA + i] * pointB[offsetB + i];
+			p1 += pointA[offsetA + i + 1] * pointB[offsetB + i + 1];
+			p2 += pointA[offsetA + i + 2] * pointB[offsetB + i + 2];
+			p3 += pointA[offsetA + i + 3] * pointB[offsetB + i + 3];
+		}
+		for (; i < length; i++) {
+			p0 += pointA[offsetA + i] * pointB[offsetB + i];
+		}
+		return (p0 + p1) + (p2 + p3);
+	}
+
+	/**
+	 * Calculates the dot product of the addition of the first and the second
+	 * point with the third point, where all points are stored inside larger
+	 * flat arrays.
+	 *
+	 * @param pointA1
+	 *            array containing the first point
+	 * @param offsetA1
+	 *            start index of the first point
+	 * @param pointA2
+	 *            array containing the second point
+	 * @param offsetA2
+	 *            start index of the second point
+	 * @param pointB
+	 *            array containing the third point
+	 * @param offsetB
+	 *            start index of the third point
+	 * @param length
+	 *            number of dimensions
+	 * @return the dot product
+	 */
+	public static double dotProductWithAddition(double[] pointA1, int offsetA1,
+			double[] pointA2, int offsetA2, double[] pointB, int offsetB,
+			int length) {
+		double p0 = 0.0, p1 = 0.0;
+		int i = 0;
+		for (; i + 1 < length; i += 2) {
+			p0 += (pointA1[offsetA1 + i] + pointA2[offsetA2 + i])
+					* pointB[offsetB + i];
+			p1 += (pointA1[offsetA1 + i + 1] + pointA2[offsetA2 + i + 1])
+					* pointB[offsetB + i + 1];
+		}
+		for (; i < length; i++) {
+			p0 += (pointA1[offsetA1 + i] + pointA2[offsetA2 + i])
+					* pointB[offsetB + i];
+		}
+		return p0 + p1;
+	}
+
+	/**
+	 * Calculates the squared Euclidean distance of two points which are stored
+	 * inside larger flat arrays, but stops as soon as the partial distance
+	 * exceeds the given bound. This allows a nearest neighbour search to skip
+	 * most dimensions of candidates which are farther away than the current
+	 * best one.
+	 *
+	 * @param pointA
+	 *            array containing the first point
+	 * @param offsetA
+	 *            start index of the first point
+	 * @param pointB
+	 *            array containing the second point
+	 * @param offsetB
+	 *            start index of the second point
+	 * @param length
+	 *            number of dimensions
+	 * @param bound
+	 *            upper bound of interest
+	 * @return the squared Euclidean distance, or a partial distance larger
+	 *         than the bound
+	 */
+	public static double distanceSquared(double[] pointA, int offsetA,
+			double[] pointB, int offsetB, int length, double bound) {
+		double distance = 0.0;
+		int i = 0;
+		while (i + 7 < length) {
+			double d0 = 0.0, d1 = 0.0, d2 = 0.0, d3 = 0.0;
+			for (int end = i + 8; i < end; i += 4) {
+				double e0 = pointA[offsetA + i] - pointB[offsetB + i];
+				double e1 = pointA[offsetA + i + 1] - pointB[offsetB + i + 1];
+				double e2 = pointA[offsetA + i + 2] - pointB[offsetB + i + 2];
+				double e3 = pointA[offsetA + i + 3] - pointB[offsetB + i + 3];
+				d0 += e0 * e0;
+				d1 += e1 * e1;
+				d2 += e2 * e2;
+				d3 += e3 * e3;
+			}
+			distance += (d0 + d1) + (d2 + d3);
+			if (distance > bound) {
+				return distance;
+			}
+		}
+		for (; i < length; i++) {
+			double e = pointA[offsetA + i] - pointB[offsetB + i];
+			distance += e * e;
+		}
+		return distance;
+	}
+
 }
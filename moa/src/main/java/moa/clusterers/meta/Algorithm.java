@@ -24,6 +24,7 @@ public class Algorithm {
 	public Attribute[] attributes;
 	public double prediction;
 	public double performanceMeasure;
+	public int performanceIteration = -1; // window in which the performance measure was computed
 	public boolean preventRemoval;
 	public boolean isDefault;
 
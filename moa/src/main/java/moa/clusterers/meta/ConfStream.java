@@ -11,6 +11,7 @@ public class ConfStream extends EnsembleClustererAbstract {
 
 	@Override
 	public Clustering getMicroClusteringResult() {
+		trainPendingInstances(); // the result must include the current micro-batch
 		Clustering result = this.ensemble.get(this.bestModel).clusterer.getMicroClusteringResult();
 		if(result == null){
 			result = this.ensemble.get(this.bestModel).clusterer.getClusteringResult();
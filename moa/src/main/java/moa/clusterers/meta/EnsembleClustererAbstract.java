@@ -5,9 +5,10 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.javacliparser.FileOption;
 import com.google.gson.Gson;
@@ -21,6 +22,7 @@ import moa.clusterers.AbstractClusterer;
 import moa.clusterers.Clusterer;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
+import moa.core.TimingUtils;
 import moa.evaluation.MeasureCollection;
 import moa.gui.visualization.DataPoint;
 import moa.options.ClassOption;
@@ -69,6 +71,8 @@ class GeneralConfiguration {
 	public boolean useTestEnsemble = true;
 	public double resetProbability = 0.01;
 	public int numberOfCores = 1;
+	public int microBatchSize = 100;
+	public double maxCpuShare = 1.0;
 	public String performanceMeasure = "SilhouetteCoefficient";
 	public boolean performanceMeasureMaximisation = true;
 }
@@ -88,8 +92,11 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 	GeneralConfiguration settings;
 	ArrayList<Double> performanceMeasures;
 	int verbose = 0;
-	protected ExecutorService executor;
+	protected transient ForkJoinPool pool;
 	int numberOfCores;
+	ArrayList<Instance> pendingInstances;
+	AtomicLong usedCpuTime = new AtomicLong();
+	long throttleStartTime;
 
 	// the file option dialogue in the UI
 	public FileOption fileOption = new FileOption("ConfigurationFile", 'f', "Configuration file in json format.",
@@ -131,14 +138,34 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 		for (int i = 0; i < this.ensemble.size(); i++) {
 			// this.ensemble.get(i).clusterer.resetLearning();
 			this.ensemble.get(i).init();
+			// the cached performance belongs to a window before the reset of iter
+			this.ensemble.get(i).performanceIteration = -1;
 		}
 
+		// the candidates were sampled and trained before the reset, new ones
+		// are sampled at the end of the next window
+		if (this.candidateEnsemble != null) {
+			this.candidateEnsemble.clear();
+		}
+
+		int availableProcessors = Runtime.getRuntime().availableProcessors();
 		if (this.settings.numberOfCores == -1) {
-			this.numberOfCores = Runtime.getRuntime().availableProcessors();
+			this.numberOfCores = availableProcessors;
 		} else {
 			this.numberOfCores = this.settings.numberOfCores;
 		}
-		this.executor = Executors.newFixedThreadPool(this.numberOfCores);
+		// never use more threads than the CPU share allows
+		if (this.settings.maxCpuShare < 1.0) {
+			int maxCores = Math.max(1, (int) Math.ceil(this.settings.maxCpuShare * availableProcessors));
+			this.numberOfCores = Math.min(this.numberOfCores, maxCores);
+		}
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+		this.pool = (this.numberOfCores == 1) ? null : new ForkJoinPool(this.numberOfCores);
+		this.pendingInstances = new ArrayList<Instance>(this.settings.microBatchSize);
+		this.usedCpuTime.set(0);
+		this.throttleStartTime = System.nanoTime();
 	}
 
 	@Override
@@ -153,7 +180,8 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 		this.windowPoints.add(point); // remember points of the current window
 		this.instancesSeen++;
 
-		if (this.numberOfCores == 1) {
+		if (this.pool == null) {
+			long start = isCpuShareLimited() ? TimingUtils.getNanoCPUTimeOfCurrentThread() : 0;
 			// train all models with the instance
 			for (int i = 0; i < this.ensemble.size(); i++) {
 				this.ensemble.get(i).clusterer.trainOnInstance(inst);
@@ -164,23 +192,17 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 					this.candidateEnsemble.get(i).clusterer.trainOnInstance(inst);
 				}
 			}
-		} else {
-			ArrayList<EnsembleRunnable> trainers = new ArrayList<EnsembleRunnable>();
-			for (int i = 0; i < this.ensemble.size(); i++) {
-				EnsembleRunnable trainer = new EnsembleRunnable(this.ensemble.get(i).clusterer, inst);
-				trainers.add(trainer);
-			}
-			if (this.settings.useTestEnsemble && this.candidateEnsemble.size() > 0) {
-				// train all models with the instance
-				for (int i = 0; i < this.candidateEnsemble.size(); i++) {
-					EnsembleRunnable trainer = new EnsembleRunnable(this.candidateEnsemble.get(i).clusterer, inst);
-					trainers.add(trainer);
+			if (isCpuShareLimited()) {
+				this.usedCpuTime.addAndGet(TimingUtils.getNanoCPUTimeOfCurrentThread() - start);
+				if (this.instancesSeen % this.settings.microBatchSize == 0) {
+					throttle();
 				}
 			}
-			try {
-				this.executor.invokeAll(trainers);
-			} catch (InterruptedException ex) {
-				throw new RuntimeException("Could not call invokeAll() on training threads.");
+		} else {
+			// the members are trained on whole micro-batches in parallel
+			this.pendingInstances.add(inst);
+			if (this.pendingInstances.size() >= this.settings.microBatchSize) {
+				trainPendingInstances();
 			}
 		}
 
@@ -191,9 +213,74 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 				System.out.println("-------------- Processed " + instancesSeen + " Instances --------------");
 			}
 
+			trainPendingInstances();
+			long start = isCpuShareLimited() ? TimingUtils.getNanoCPUTimeOfCurrentThread() : 0;
 			updateConfiguration(); // update configuration
+			if (isCpuShareLimited()) {
+				this.usedCpuTime.addAndGet(TimingUtils.getNanoCPUTimeOfCurrentThread() - start);
+				throttle();
+			}
+		}
+
+	}
+
+	/**
+	 * Trains all members of the ensemble and the candidate ensemble on the
+	 * instances that have not been trained on yet. Each member processes the
+	 * whole micro-batch in order, so the result does not depend on the number
+	 * of threads.
+	 */
+	protected void trainPendingInstances() {
+		if (this.pendingInstances == null || this.pendingInstances.isEmpty()) {
+			return;
+		}
+		ArrayList<Algorithm> members = new ArrayList<Algorithm>(this.ensemble);
+		if (this.settings.useTestEnsemble && this.candidateEnsemble.size() > 0) {
+			members.addAll(this.candidateEnsemble);
+		}
+		this.pool.invoke(new MemberTask(members, 0, members.size(), false));
+		this.pendingInstances.clear();
+		throttle();
+	}
+
+	/**
+	 * Computes the performance of all members of the ensemble and the
+	 * candidate ensemble on the current window in parallel. The values are
+	 * cached in the algorithms, so that they are only computed once per window.
+	 * Without a thread pool, they are computed on demand instead.
+	 */
+	protected void computePerformanceMeasures() {
+		if (this.pool != null) {
+			ArrayList<Algorithm> members = new ArrayList<Algorithm>(this.ensemble);
+			if (this.settings.useTestEnsemble) {
+				members.addAll(this.candidateEnsemble);
+			}
+			this.pool.invoke(new MemberTask(members, 0, members.size(), true));
 		}
+	}
+
+	boolean isCpuShareLimited() {
+		return this.settings.maxCpuShare < 1.0;
+	}
 
+	/**
+	 * Pauses the calling thread if more CPU time was used since the last reset
+	 * than the configured share of all processors allows.
+	 */
+	protected void throttle() {
+		if (!isCpuShareLimited()) {
+			return;
+		}
+		double share = this.settings.maxCpuShare * Runtime.getRuntime().availableProcessors();
+		long elapsed = System.nanoTime() - this.throttleStartTime;
+		long excess = (long) (this.usedCpuTime.get() / share) - elapsed;
+		if (excess > 0) {
+			try {
+				Thread.sleep(excess / 1000000, (int) (excess % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	protected void updateConfiguration() {
@@ -202,6 +289,7 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 			System.out.println(" ");
 			System.out.println("---- Evaluate performance of current ensemble:");
 		}
+		computePerformanceMeasures();
 		evaluatePerformance();
 
 		if (this.settings.useTestEnsemble) {
@@ -260,6 +348,14 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 	}
 
 	protected double computePerformanceMeasure(Algorithm algorithm) {
+		// the performance is only computed once per window
+		if (algorithm.performanceIteration == this.iter) {
+			return algorithm.performanceMeasure;
+		}
+		return computePerformanceMeasure(algorithm, this.windowPoints);
+	}
+
+	protected double computePerformanceMeasure(Algorithm algorithm, ArrayList<DataPoint> points) {
 
 		ClassOption opt = new ClassOption("", ' ', "", MeasureCollection.class, this.settings.performanceMeasure);
 		MeasureCollection performanceMeasure = (MeasureCollection) opt.materializeObject(null, null);
@@ -289,7 +385,7 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 		} else {
 			// evaluate clustering using evaluation measure
 			try {
-				performanceMeasure.evaluateClusteringPerformance(result, null, windowPoints);
+				performanceMeasure.evaluateClusteringPerformance(result, null, points);
 			} catch (Exception e) {
 				throw new RuntimeException("Could not compute clustering performance.");
 			}
@@ -300,6 +396,7 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 			}
 		}
 		algorithm.performanceMeasure = performance;
+		algorithm.performanceIteration = this.iter;
 
 		return performance;
 	}
@@ -666,27 +763,47 @@ public abstract class EnsembleClustererAbstract extends AbstractClusterer {
 
 	}
 
-	// Modified from:
-	// https://github.com/Waikato/moa/blob/master/moa/src/main/java/moa/classifiers/meta/AdaptiveRandomForest.java#L157
-	// Helper class for parallelisation
-	protected class EnsembleRunnable implements Runnable, Callable<Integer> {
-		final private AbstractClusterer clusterer;
-		final private Instance instance;
+	// Helper class for parallelisation: the range of members is split until
+	// every task handles a single member, idle threads steal the remaining ones
+	protected class MemberTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final private List<Algorithm> members;
+		final private int from;
+		final private int to;
+		final private boolean score;
 
-		public EnsembleRunnable(AbstractClusterer clusterer, Instance instance) {
-			this.clusterer = clusterer;
-			this.instance = instance;
+		public MemberTask(List<Algorithm> members, int from, int to, boolean score) {
+			this.members = members;
+			this.from = from;
+			this.to = to;
+			this.score = score;
 		}
 
 		@Override
-		public void run() {
-			clusterer.trainOnInstance(this.instance);
-		}
-
-		@Override
-		public Integer call() throws Exception {
-			run();
-			return 0;
+		protected void compute() {
+			if (this.to - this.from > 1) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new MemberTask(this.members, this.from, mid, this.score),
+						new MemberTask(this.members, mid, this.to, this.score));
+			} else if (this.to > this.from) {
+				long start = isCpuShareLimited() ? TimingUtils.getNanoCPUTimeOfCurrentThread() : 0;
+				Algorithm member = this.members.get(this.from);
+				if (this.score) {
+					// measures may store values in the points, so every member gets its own copies
+					ArrayList<DataPoint> points = new ArrayList<DataPoint>(windowPoints.size());
+					for (DataPoint point : windowPoints) {
+						points.add(new DataPoint(point, point.getTimestamp()));
+					}
+					computePerformanceMeasure(member, points);
+				} else {
+					for (Instance inst : pendingInstances) {
+						member.clusterer.trainOnInstance(inst);
+					}
+				}
+				if (isCpuShareLimited()) {
+					usedCpuTime.addAndGet(TimingUtils.getNanoCPUTimeOfCurrentThread() - start);
+				}
+			}
 		}
 	}
 
@@ -0,0 +1,375 @@
+/*
+ *    ExampleQueue.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+/**
+ * First-in first-out queue of examples, used for examples that wait for
+ * their label. The examples are kept in a circular array that doubles its
+ * size when it is full, so adding and removing an example takes constant
+ * time and needs no allocation in the steady state.
+ *
+ * Optionally, the number of examples kept in memory is bounded. Once the
+ * bound is reached, further examples are written in a compact binary layout
+ * to a memory-mapped temporary file. Whenever an example is removed, the
+ * oldest example in the file is read back into memory, so the examples in
+ * memory are always the oldest ones and new examples are kept in memory
+ * again once the file is empty. Only examples that wrap an
+ * <code>Instance</code> can be written to the file. Examples read from the
+ * file are new objects with the same values, weight and header as the
+ * original ones.
+ */
+public class ExampleQueue {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    protected Example[] elements = new Example[INITIAL_CAPACITY];
+
+    /** Position of the oldest example in memory. */
+    protected int head;
+
+    /** Number of examples in memory. */
+    protected int count;
+
+    /** Maximum number of examples in memory, -1 for no limit. */
+    protected final int maxInMemory;
+
+    protected SpillFile spillFile;
+
+    /** Number of examples in the spill file. */
+    protected long spilled;
+
+    /**
+     * Creates a queue that keeps all examples in memory.
+     */
+    public ExampleQueue() {
+        this(-1);
+    }
+
+    /**
+     * Creates a queue that writes examples to disk once the given number of
+     * examples is held in memory.
+     *
+     * @param maxInMemory the maximum number of examples in memory, -1 for no
+     * limit
+     */
+    public ExampleQueue(int maxInMemory) {
+        this.maxInMemory = maxInMemory;
+    }
+
+    /**
+     * Adds an example at the end of the queue.
+     *
+     * @param example the example
+     */
+    public void addLast(Example example) {
+        // While examples are on disk, newer ones must follow them there. The
+        // examples in memory are refilled from disk, so memory has room again
+        // only once the disk is empty
+        if (this.spilled > 0 || (this.maxInMemory >= 0 && this.count >= this.maxInMemory)) {
+            if (this.spillFile == null) {
+                this.spillFile = new SpillFile();
+            }
+            this.spillFile.write(example);
+            this.spilled++;
+            return;
+        }
+        if (this.count == this.elements.length) {
+            grow();
+        }
+        this.elements[(this.head + this.count) & (this.elements.length - 1)] = example;
+        this.count++;
+    }
+
+    /**
+     * Removes and returns the oldest example of the queue.
+     *
+     * @return the example
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public Example removeFirst() {
+        if (this.count > 0) {
+            Example example = this.elements[this.head];
+            this.elements[this.head] = null;
+            this.head = (this.head + 1) & (this.elements.length - 1);
+            this.count--;
+            if (this.spilled > 0) {
+                // Moves the oldest example on disk to the free place in memory
+                this.elements[(this.head + this.count) & (this.elements.length - 1)] = readSpilled();
+                this.count++;
+            }
+            return example;
+        }
+        if (this.spilled > 0) {
+            return readSpilled();
+        }
+        throw new NoSuchElementException();
+    }
+
+    protected Example readSpilled() {
+        Example example = this.spillFile.read();
+        this.spilled--;
+        if (this.spilled == 0) {
+            this.spillFile.reset();
+        }
+        return example;
+    }
+
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, this.count + this.spilled);
+    }
+
+    public boolean isEmpty() {
+        return this.count == 0 && this.spilled == 0;
+    }
+
+    /**
+     * Gets the number of examples that are held in the spill file.
+     *
+     * @return the number of examples on disk
+     */
+    public long spilledSize() {
+        return this.spilled;
+    }
+
+    /**
+     * Removes all examples and deletes the spill file.
+     */
+    public void clear() {
+        for (int i = 0; i < this.count; i++) {
+            this.elements[(this.head + i) & (this.elements.length - 1)] = null;
+        }
+        this.head = 0;
+        this.count = 0;
+        this.spilled = 0;
+        if (this.spillFile != null) {
+            this.spillFile.close();
+            this.spillFile = null;
+        }
+    }
+
+    protected void grow() {
+        Example[] newElements = new Example[this.elements.length * 2];
+        int firstPart = Math.min(this.count, this.elements.length - this.head);
+        System.arraycopy(this.elements, this.head, newElements, 0, firstPart);
+        System.arraycopy(this.elements, 0, newElements, firstPart, this.count - firstPart);
+        this.elements = newElements;
+        this.head = 0;
+    }
+
+    /**
+     * Temporary file that stores instances one after the other. The file is
+     * mapped into memory in segments of fixed size, and a record never
+     * crosses the end of a segment. A record consists of a type byte, the
+     * weight, the number of values, the indices of the values for sparse
+     * instances, and the values.
+     *
+     * Segments that were read completely are reused for new records, so the
+     * file grows with the largest number of records held at a time and not
+     * with the number of records written.
+     */
+    protected static class SpillFile {
+
+        private static final int SEGMENT_SIZE = 1 << 26;
+
+        private static final byte END_OF_SEGMENT = 0;
+
+        private static final byte DENSE = 1;
+
+        private static final byte SPARSE = 2;
+
+        protected final File file;
+
+        protected final RandomAccessFile raf;
+
+        protected final FileChannel channel;
+
+        /** Number of segments mapped so far, the length of the file in segments. */
+        protected int numSegments;
+
+        /** Segments holding records, from the one being read to the one being written. */
+        protected final ArrayDeque<MappedByteBuffer> usedSegments = new ArrayDeque<MappedByteBuffer>();
+
+        /** Segments that were read completely and can be written again. */
+        protected final ArrayDeque<MappedByteBuffer> freeSegments = new ArrayDeque<MappedByteBuffer>();
+
+        /** Offset of the next record to write in the last used segment. */
+        protected int writeOffset;
+
+        /** Offset of the next record to read in the first used segment. */
+        protected int readOffset;
+
+        protected Instances header;
+
+        protected int numAttributes = -1;
+
+        public SpillFile() {
+            try {
+                this.file = File.createTempFile("moa-queue", ".bin");
+                this.file.deleteOnExit();
+                this.raf = new RandomAccessFile(this.file, "rw");
+                this.channel = this.raf.getChannel();
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to create spill file.", ex);
+            }
+        }
+
+        public void write(Example example) {
+            if (!(example.getData() instanceof Instance)) {
+                throw new IllegalArgumentException("Only instances can be written to disk.");
+            }
+            Instance inst = (Instance) example.getData();
+            if (this.numAttributes < 0) {
+                this.header = inst.dataset();
+                this.numAttributes = inst.numAttributes();
+            }
+            boolean sparse = inst instanceof SparseInstance;
+            int numValues = sparse ? inst.numValues() : inst.numAttributes();
+            int recordSize = 1 + 8 + 4 + numValues * (sparse ? 12 : 8);
+            if (recordSize > SEGMENT_SIZE) {
+                throw new IllegalArgumentException("Instance is too large to be written to disk.");
+            }
+            if (this.usedSegments.isEmpty()) {
+                this.usedSegments.addLast(nextSegment());
+                this.writeOffset = 0;
+                this.readOffset = 0;
+            } else if (this.writeOffset + recordSize > SEGMENT_SIZE) {
+                if (this.writeOffset < SEGMENT_SIZE) {
+                    this.usedSegments.getLast().put(this.writeOffset, END_OF_SEGMENT);
+                }
+                this.usedSegments.addLast(nextSegment());
+                this.writeOffset = 0;
+            }
+            MappedByteBuffer buffer = this.usedSegments.getLast();
+            int offset = this.writeOffset;
+            buffer.put(offset, sparse ? SPARSE : DENSE);
+            buffer.putDouble(offset + 1, inst.weight());
+            buffer.putInt(offset + 9, numValues);
+            int pos = offset + 13;
+            if (sparse) {
+                for (int i = 0; i < numValues; i++) {
+                    buffer.putInt(pos, inst.index(i));
+                    pos += 4;
+                }
+                for (int i = 0; i < numValues; i++) {
+                    buffer.putDouble(pos, inst.valueSparse(i));
+                    pos += 8;
+                }
+            } else {
+                for (int i = 0; i < numValues; i++) {
+                    buffer.putDouble(pos, inst.value(i));
+                    pos += 8;
+                }
+            }
+            this.writeOffset += recordSize;
+        }
+
+        public Example read() {
+            MappedByteBuffer buffer = this.usedSegments.getFirst();
+            int offset = this.readOffset;
+            if (offset == SEGMENT_SIZE || buffer.get(offset) == END_OF_SEGMENT) {
+                // The segment was read completely and can be written again
+                this.freeSegments.addLast(this.usedSegments.removeFirst());
+                buffer = this.usedSegments.getFirst();
+                offset = 0;
+            }
+            byte type = buffer.get(offset);
+            double weight = buffer.getDouble(offset + 1);
+            int numValues = buffer.getInt(offset + 9);
+            int pos = offset + 13;
+            Instance inst;
+            if (type == SPARSE) {
+                int[] indices = new int[numValues];
+                double[] values = new double[numValues];
+                for (int i = 0; i < numValues; i++) {
+                    indices[i] = buffer.getInt(pos);
+                    pos += 4;
+                }
+                for (int i = 0; i < numValues; i++) {
+                    values[i] = buffer.getDouble(pos);
+                    pos += 8;
+                }
+                inst = new SparseInstance(weight, values, indices, this.numAttributes);
+            } else {
+                double[] values = new double[numValues];
+                for (int i = 0; i < numValues; i++) {
+                    values[i] = buffer.getDouble(pos);
+                    pos += 8;
+                }
+                inst = new DenseInstance(weight, values);
+            }
+            if (this.header != null) {
+                inst.setDataset(this.header);
+            }
+            this.readOffset = pos;
+            return new InstanceExample(inst);
+        }
+
+        /**
+         * Makes all segments free. Only called when all records were read.
+         */
+        public void reset() {
+            while (!this.usedSegments.isEmpty()) {
+                this.freeSegments.addLast(this.usedSegments.removeFirst());
+            }
+            this.readOffset = 0;
+            this.writeOffset = 0;
+        }
+
+        /**
+         * Gets a free segment, or maps a new one at the end of the file if
+         * none is free.
+         */
+        protected MappedByteBuffer nextSegment() {
+            MappedByteBuffer segment = this.freeSegments.pollFirst();
+            if (segment == null) {
+                try {
+                    segment = this.channel.map(FileChannel.MapMode.READ_WRITE,
+                            (long) this.numSegments * SEGMENT_SIZE, SEGMENT_SIZE);
+                } catch (IOException ex) {
+                    throw new RuntimeException("Unable to map spill file.", ex);
+                }
+                this.numSegments++;
+            }
+            return segment;
+        }
+
+        public void close() {
+            this.usedSegments.clear();
+            this.freeSegments.clear();
+            try {
+                this.raf.close();
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to close spill file.", ex);
+            }
+            this.file.delete();
+        }
+    }
+}
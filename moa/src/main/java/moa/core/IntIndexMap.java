@@ -0,0 +1,137 @@
+/*
+ *    IntIndexMap.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Map from int keys, such as attribute indices, to consecutive indices 0, 1,
+ * 2, ... in the order the keys are added. Callers store the values of a key in
+ * primitive arrays at its index, so a sparse set of keys out of a large range
+ * takes memory in proportion to the keys seen only.
+ *
+ * The keys are kept in an open addressing hash table with linear probing, with
+ * no objects per key. Keys cannot be removed.
+ */
+public class IntIndexMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Index of the key in a slot plus one, or zero for an empty slot
+    protected int[] table;
+
+    protected int[] keys;
+
+    protected int size;
+
+    protected int shift;
+
+    public IntIndexMap() {
+        this(16);
+    }
+
+    public IntIndexMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        this.table = new int[capacity];
+        this.keys = new int[capacity / 2];
+        this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    /**
+     * @param key the key
+     * @return the index of the key, or -1 if it has not been added
+     */
+    public int get(int key) {
+        int mask = this.table.length - 1;
+        for (int slot = hash(key); ; slot = (slot + 1) & mask) {
+            int entry = this.table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (this.keys[entry - 1] == key) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Adds a key if it has not been added yet.
+     *
+     * @param key the key
+     * @return the index of the key, equal to the size of the map before the
+     * call if the key is new
+     */
+    public int add(int key) {
+        int mask = this.table.length - 1;
+        int slot = hash(key);
+        for (int entry = this.table[slot]; entry != 0; entry = this.table[slot]) {
+            if (this.keys[entry - 1] == key) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int index = this.size;
+        if (index == this.keys.length) {
+            grow();
+            return add(key);
+        }
+        this.keys[index] = key;
+        this.table[slot] = index + 1;
+        this.size++;
+        return index;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of keys the map holds before its table grows, which
+     * is also the length arrays indexed by the map need
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+
+    public int keyAt(int index) {
+        return this.keys[index];
+    }
+
+    protected int hash(int key) {
+        return (key * 0x9e3779b9) >>> this.shift;
+    }
+
+    protected void grow() {
+        int capacity = 2 * this.table.length;
+        this.table = new int[capacity];
+        this.keys = Arrays.copyOf(this.keys, capacity / 2);
+        this.shift--;
+        int mask = capacity - 1;
+        for (int index = 0; index < this.size; index++) {
+            int slot = hash(this.keys[index]);
+            while (this.table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.table[slot] = index + 1;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *    LatencyHistogram.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.util.Arrays;
+
+import moa.AbstractMOAObject;
+
+/**
+ * Histogram of non-negative long values, such as latencies in nanoseconds,
+ * with buckets of logarithmically growing width. Every power of two is split
+ * into the same number of sub-buckets, so a percentile is found with a
+ * relative error below <code>2^-subBucketBits</code> whatever the magnitude
+ * of the values. Recording a value only increments a counter, and the memory
+ * used does not depend on the number of values.
+ */
+public class LatencyHistogram extends AbstractMOAObject {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final int subBucketBits;
+
+    protected final long[] counts;
+
+    protected long totalCount;
+
+    protected long max;
+
+    protected double sum;
+
+    /** Lowest and highest bucket with a count, to bound the work of reset. */
+    protected int lowestIndex = Integer.MAX_VALUE;
+
+    protected int highestIndex = -1;
+
+    /**
+     * Creates a histogram with 32 sub-buckets per power of two, which gives
+     * percentiles with a relative error below 3.2%.
+     */
+    public LatencyHistogram() {
+        this(5);
+    }
+
+    /**
+     * Creates a histogram.
+     *
+     * @param subBucketBits the base 2 logarithm of the number of sub-buckets
+     * per power of two
+     */
+    public LatencyHistogram(int subBucketBits) {
+        if (subBucketBits < 1 || subBucketBits > 16) {
+            throw new IllegalArgumentException("Invalid number of sub-bucket bits: " + subBucketBits);
+        }
+        this.subBucketBits = subBucketBits;
+        this.counts = new long[(64 - subBucketBits) << subBucketBits];
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = bucketIndex(value);
+        this.counts[index]++;
+        if (index < this.lowestIndex) {
+            this.lowestIndex = index;
+        }
+        if (index > this.highestIndex) {
+            this.highestIndex = index;
+        }
+        this.totalCount++;
+        this.sum += value;
+        if (value > this.max) {
+            this.max = value;
+        }
+    }
+
+    protected int bucketIndex(long value) {
+        if (value < (1L << this.subBucketBits)) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - this.subBucketBits;
+        return ((shift + 1) << this.subBucketBits)
+                + (int) ((value >>> shift) - (1L << this.subBucketBits));
+    }
+
+    /**
+     * Gets the highest value that falls into the same bucket as the values
+     * of a bucket index.
+     */
+    protected long highestValue(int index) {
+        int bucket = index >>> this.subBucketBits;
+        long subBucket = index & ((1 << this.subBucketBits) - 1);
+        if (bucket == 0) {
+            return subBucket;
+        }
+        long lowest = ((1L << this.subBucketBits) + subBucket) << (bucket - 1);
+        return lowest + (1L << (bucket - 1)) - 1;
+    }
+
+    /**
+     * Gets the value below or at which the given percentage of the recorded
+     * values fall. The result is the highest value of the bucket that
+     * contains the percentile, but never larger than the maximum.
+     *
+     * @param percentile the percentage, between 0 and 100
+     * @return the value at the percentile, 0 if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * this.totalCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = this.lowestIndex; i <= this.highestIndex; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.totalCount > 0 ? this.sum / this.totalCount : 0.0;
+    }
+
+    /**
+     * Adds the values recorded by another histogram with the same number of
+     * sub-buckets.
+     *
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        if (other.subBucketBits != this.subBucketBits) {
+            throw new IllegalArgumentException("Histograms have different precision.");
+        }
+        for (int i = other.lowestIndex; i <= other.highestIndex; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.lowestIndex = Math.min(this.lowestIndex, other.lowestIndex);
+        this.highestIndex = Math.max(this.highestIndex, other.highestIndex);
+        this.totalCount += other.totalCount;
+        this.sum += other.sum;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * Removes the values of an earlier copy of this histogram, so that the
+     * histogram only holds the values recorded after the copy was made. The
+     * maximum of these values is not known exactly, it becomes the highest
+     * value of the highest bucket with a count, but never larger than the
+     * maximum before.
+     *
+     * @param earlier the earlier copy
+     */
+    public void subtract(LatencyHistogram earlier) {
+        if (earlier.subBucketBits != this.subBucketBits) {
+            throw new IllegalArgumentException("Histograms have different precision.");
+        }
+        if (earlier.totalCount > this.totalCount) {
+            throw new IllegalArgumentException("Histogram is not an earlier copy.");
+        }
+        for (int i = earlier.lowestIndex; i <= earlier.highestIndex; i++) {
+            this.counts[i] -= earlier.counts[i];
+        }
+        this.totalCount -= earlier.totalCount;
+        this.sum -= earlier.sum;
+        int lowest = this.lowestIndex;
+        int highest = this.highestIndex;
+        this.lowestIndex = Integer.MAX_VALUE;
+        this.highestIndex = -1;
+        for (int i = lowest; i <= highest; i++) {
+            if (this.counts[i] != 0) {
+                if (i < this.lowestIndex) {
+                    this.lowestIndex = i;
+                }
+                this.highestIndex = i;
+            }
+        }
+        if (this.totalCount == 0) {
+            this.sum = 0.0;
+            this.max = 0;
+        } else {
+            this.max = Math.min(highestValue(this.highestIndex), this.max);
+        }
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        if (this.highestIndex >= 0) {
+            Arrays.fill(this.counts, this.lowestIndex, this.highestIndex + 1, 0L);
+        }
+        this.lowestIndex = Integer.MAX_VALUE;
+        this.highestIndex = -1;
+        this.totalCount = 0;
+        this.sum = 0.0;
+        this.max = 0;
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        StringUtils.appendIndented(sb, indent, "count: " + this.totalCount
+                + ", p50: " + getValueAtPercentile(50.0)
+                + ", p99: " + getValueAtPercentile(99.0)
+                + ", max: " + this.max);
+    }
+}
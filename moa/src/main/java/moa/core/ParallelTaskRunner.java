@@ -0,0 +1,263 @@
+/*
+ *    ParallelTaskRunner.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent tasks, such as the updates of the members of an ensemble,
+ * on a pool of threads. With a single job the tasks run on the calling thread
+ * in the order given. Tasks that do not share state give the same results
+ * whatever the number of jobs.
+ *
+ * The members of an ensemble are updated with forEachIndex. Random numbers
+ * that decide how a member is updated, such as its weight for an instance,
+ * should be drawn before the members are updated, in the order of the
+ * members. A member that draws random numbers while it is updated needs a
+ * generator of its own, such as a stream of a SplitMixRandom, so that its
+ * numbers do not depend on the order in which the members run.
+ *
+ * A runner can also run one background task at a time, for learners that
+ * process a chunk of instances while the next chunk is being collected. The
+ * background task may run tasks on the pool itself.
+ *
+ * The threads are daemon threads that stop when idle, and they are created
+ * again when needed, also after the runner is serialized or copied.
+ */
+public class ParallelTaskRunner implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Seconds an idle thread waits for a task before it stops. */
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    protected final int numberOfJobs;
+
+    protected transient ExecutorService pool;
+
+    protected transient ExecutorService backgroundExecutor;
+
+    protected transient Future<?> backgroundTask;
+
+    /**
+     * Creates a runner.
+     *
+     * @param numberOfJobs the number of threads, -1 for one per processor,
+     * 0 or 1 to run the tasks on the calling thread
+     */
+    public ParallelTaskRunner(int numberOfJobs) {
+        if (numberOfJobs == -1) {
+            numberOfJobs = Runtime.getRuntime().availableProcessors();
+        }
+        this.numberOfJobs = Math.max(1, numberOfJobs);
+    }
+
+    public int getNumberOfJobs() {
+        return this.numberOfJobs;
+    }
+
+    /**
+     * Runs tasks and waits until all of them are finished.
+     *
+     * @param tasks the tasks
+     * @return the results of the tasks, in the order of the tasks
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (this.numberOfJobs == 1 || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return results;
+        }
+        List<Future<T>> futures;
+        try {
+            futures = getPool().invokeAll(tasks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for tasks.", ex);
+        }
+        for (Future<T> future : futures) {
+            results.add(getResult(future));
+        }
+        return results;
+    }
+
+    /**
+     * Runs a task for every index from 0 to count - 1 and waits until all of
+     * them are finished. The indices are handed out to the threads one at a
+     * time, so that a slow task does not hold up the others. With a single
+     * job the task runs on the calling thread for the indices in increasing
+     * order.
+     *
+     * @param count the number of indices
+     * @param task the task
+     */
+    public void forEachIndex(final int count, final IndexedTask task) {
+        if (this.numberOfJobs == 1 || count < 2) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        final AtomicInteger nextIndex = new AtomicInteger();
+        int numWorkers = Math.min(this.numberOfJobs, count);
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>(numWorkers);
+        for (int w = 0; w < numWorkers; w++) {
+            workers.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    for (int i = nextIndex.getAndIncrement(); i < count; i = nextIndex.getAndIncrement()) {
+                        task.run(i);
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(workers);
+    }
+
+    /**
+     * Starts a task in the background, after waiting for the previous
+     * background task to finish.
+     *
+     * @param task the task
+     */
+    public void submitBackground(Runnable task) {
+        awaitBackground();
+        if (this.backgroundExecutor == null) {
+            this.backgroundExecutor = createExecutor(1, "MOA background task");
+        }
+        this.backgroundTask = this.backgroundExecutor.submit(task);
+    }
+
+    /**
+     * Checks whether the background task has finished. A finished task still
+     * has to be waited for, so that its results are visible to the caller.
+     *
+     * @return true if there is no background task or it has finished
+     */
+    public boolean isBackgroundDone() {
+        return this.backgroundTask == null || this.backgroundTask.isDone();
+    }
+
+    /**
+     * Waits for the background task to finish. An exception thrown by the
+     * task is thrown again.
+     */
+    public void awaitBackground() {
+        if (this.backgroundTask != null) {
+            Future<?> task = this.backgroundTask;
+            this.backgroundTask = null;
+            getResult(task);
+        }
+    }
+
+    /**
+     * Waits for the background task, ignoring its errors, and stops the
+     * threads.
+     */
+    public void shutdown() {
+        try {
+            awaitBackground();
+        } catch (RuntimeException ex) {
+            // The results are discarded
+        }
+        synchronized (this) {
+            if (this.pool != null) {
+                this.pool.shutdown();
+                this.pool = null;
+            }
+        }
+        if (this.backgroundExecutor != null) {
+            this.backgroundExecutor.shutdown();
+            this.backgroundExecutor = null;
+        }
+    }
+
+    /**
+     * A task that is run for a number of indices.
+     */
+    public interface IndexedTask {
+
+        void run(int index);
+    }
+
+    /**
+     * Gets the pool, creating it at first use. Synchronized, as a background
+     * task may run tasks on the pool while the caller does.
+     */
+    protected synchronized ExecutorService getPool() {
+        if (this.pool == null) {
+            this.pool = createExecutor(this.numberOfJobs, "MOA task");
+        }
+        return this.pool;
+    }
+
+    protected static ExecutorService createExecutor(int numThreads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    protected static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a task.", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
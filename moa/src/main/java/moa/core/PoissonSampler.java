@@ -0,0 +1,89 @@
+/*
+ *    PoissonSampler.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * Draws numbers from a Poisson distribution with a fixed mean, such as the
+ * weights of the instances in online bagging. A draw is the same as the draw
+ * of MiscUtils.poisson with the same mean and generator, but the cumulative
+ * sums that MiscUtils.poisson computes for every draw are computed once and
+ * kept in a table, so a draw only compares a uniform number with the table.
+ */
+public class PoissonSampler implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final double lambda;
+
+    protected final double expLambda;
+
+    // The sums of lambda^j / j! for j = 0 to i, computed as in
+    // MiscUtils.poisson, null for a mean of 100 or more
+    protected final double[] sums;
+
+    public PoissonSampler(double lambda) {
+        this.lambda = lambda;
+        if (lambda < 100.0) {
+            this.expLambda = Math.exp(lambda);
+            int max = Math.max(100, 10 * (int) Math.ceil(lambda));
+            this.sums = new double[max];
+            double product = 1.0;
+            double sum = 1.0;
+            this.sums[0] = sum;
+            for (int i = 1; i < max; i++) {
+                product *= (lambda / i);
+                sum += product;
+                this.sums[i] = sum;
+            }
+        } else {
+            this.expLambda = Double.POSITIVE_INFINITY;
+            this.sums = null;
+        }
+    }
+
+    public double getLambda() {
+        return this.lambda;
+    }
+
+    /**
+     * Draws a number.
+     *
+     * @param r the random generator
+     * @return the number
+     */
+    public int nextInt(Random r) {
+        if (this.sums == null) {
+            // Normal approximation, as in MiscUtils.poisson
+            double x = this.lambda + Math.sqrt(this.lambda) * r.nextGaussian();
+            if (x < 0.0) {
+                return 0;
+            }
+            return (int) Math.floor(x);
+        }
+        double threshold = r.nextDouble() * this.expLambda;
+        int last = this.sums.length - 1;
+        int i = 0;
+        while ((i < last) && (this.sums[i] <= threshold)) {
+            i++;
+        }
+        return i;
+    }
+}
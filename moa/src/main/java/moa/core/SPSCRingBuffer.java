@@ -0,0 +1,196 @@
+/*
+ *    SPSCRingBuffer.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer
+ * thread. Elements are stored in an array whose length is a power of two, and
+ * the producer and consumer only publish their own position, so no locks or
+ * compare-and-set operations are needed. A waiting thread first spins and
+ * yields, then parks for short periods, which keeps the hand-off fast while
+ * both threads are busy without burning a core when one of them is idle.
+ *
+ * The producer calls <code>close</code> when it has no more elements, or
+ * <code>fail</code> if it stopped because of an exception. The consumer may
+ * call <code>cancel</code> to make a blocked producer give up.
+ *
+ * @param <E> the type of the elements
+ */
+public class SPSCRingBuffer<E> {
+
+    private static final int SPINS_BEFORE_PARK = 100;
+
+    private static final long PARK_NANOS = 50000;
+
+    protected final Object[] elements;
+
+    protected final int mask;
+
+    /** Position of the next element to take, only written by the consumer. */
+    protected volatile long head;
+
+    /** Position of the next element to put, only written by the producer. */
+    protected volatile long tail;
+
+    protected volatile boolean closed;
+
+    protected volatile boolean cancelled;
+
+    protected volatile Throwable failure;
+
+    /**
+     * Creates a ring buffer that holds at least the given number of elements.
+     *
+     * @param capacity the minimum capacity, rounded up to a power of two
+     */
+    public SPSCRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.elements = new Object[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return this.elements.length;
+    }
+
+    /**
+     * Gets the number of elements that are waiting to be taken.
+     *
+     * @return the number of buffered elements
+     */
+    public int size() {
+        return (int) (this.tail - this.head);
+    }
+
+    /**
+     * Adds an element, waiting while the buffer is full. Producer only.
+     *
+     * @param element the element to add
+     * @return false if the consumer cancelled and the element was dropped
+     */
+    public boolean put(E element) {
+        long t = this.tail;
+        int spins = 0;
+        while (t - this.head >= this.elements.length) {
+            if (this.cancelled) {
+                return false;
+            }
+            spins = backOff(spins);
+        }
+        this.elements[(int) t & this.mask] = element;
+        // The volatile write publishes the element to the consumer
+        this.tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Takes the next element, waiting while the buffer is empty. Consumer
+     * only.
+     *
+     * @return the next element, or null if the buffer is closed and empty
+     * @throws RuntimeException if the producer failed
+     */
+    @SuppressWarnings("unchecked")
+    public E take() {
+        if (!awaitElement()) {
+            return null;
+        }
+        long h = this.head;
+        int index = (int) h & this.mask;
+        E element = (E) this.elements[index];
+        this.elements[index] = null;
+        this.head = h + 1;
+        return element;
+    }
+
+    /**
+     * Waits until an element can be taken or the producer has finished.
+     * Consumer only.
+     *
+     * @return true if an element is available
+     * @throws RuntimeException if the producer failed
+     */
+    public boolean awaitElement() {
+        int spins = 0;
+        while (this.tail == this.head) {
+            if (this.closed) {
+                // Elements put before closing are visible now
+                if (this.tail != this.head) {
+                    break;
+                }
+                if (this.failure != null) {
+                    throw new RuntimeException("Producer failed.", this.failure);
+                }
+                return false;
+            }
+            spins = backOff(spins);
+        }
+        return true;
+    }
+
+    /**
+     * Signals that no more elements will be added. Producer only.
+     */
+    public void close() {
+        this.closed = true;
+    }
+
+    /**
+     * Signals that the producer stopped because of an error, which is thrown
+     * to the consumer once the buffered elements are taken. Producer only.
+     *
+     * @param cause the error
+     */
+    public void fail(Throwable cause) {
+        this.failure = cause;
+        this.closed = true;
+    }
+
+    /**
+     * Signals that the consumer will not take any more elements, which
+     * releases a producer that waits for space. Consumer only.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS_BEFORE_PARK) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *    SplitMixRandom.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.util.Random;
+
+/**
+ * Random number generator that can be split into independent streams, such
+ * as one stream for every member of an ensemble. A stream is derived from the
+ * seed of the generator and the index of the stream only, so the numbers drawn
+ * from a stream do not depend on the other streams or on the order in which
+ * the streams are used, for instance by members trained in parallel.
+ *
+ * The numbers are generated with SplitMix64, see Guy L. Steele Jr., Doug Lea
+ * and Christine H. Flood: Fast splittable pseudorandom number generators.
+ * OOPSLA 2014. Being a subclass of java.util.Random, the generator can be used
+ * wherever MOA takes a Random. Unlike java.util.Random it is not thread-safe:
+ * every thread should use a stream of its own.
+ */
+public class SplitMixRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // Not initialized here, as the constructor of Random calls setSeed before
+    // the initializers of this class run
+    protected long seed;
+
+    protected long state;
+
+    public SplitMixRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Creates the generator of a stream. It starts from the same state
+     * whatever numbers have been drawn from this generator.
+     *
+     * @param index the index of the stream
+     * @return the generator of the stream
+     */
+    public SplitMixRandom split(long index) {
+        return new SplitMixRandom(mix64(this.seed + (index + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * Creates the generators of a number of streams.
+     *
+     * @param count the number of streams
+     * @return the generators of the streams 0 to count - 1
+     */
+    public SplitMixRandom[] splitStreams(int count) {
+        SplitMixRandom[] streams = new SplitMixRandom[count];
+        for (int i = 0; i < count; i++) {
+            streams[i] = split(i);
+        }
+        return streams;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        this.state += GOLDEN_GAMMA;
+        return mix64(this.state);
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    protected static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -42,6 +42,8 @@ public class ALWindowClassificationPerformanceEvaluator extends WindowClassifica
 
     private int acquiredInstances;
 
+    private String[] alMeasurementNames;
+
    /**
      * Receives the information if a label has been acquired and increases counters.
      *
@@ -71,17 +73,28 @@ public class ALWindowClassificationPerformanceEvaluator extends WindowClassifica
 
 	
 	@Override
-    public Measurement[] getPerformanceMeasurements() {
-		Measurement[] measurements = super.getPerformanceMeasurements(); 
-		measurements  = Arrays.copyOf(measurements, measurements.length + 2);
-		measurements[measurements.length - 2] = new Measurement("Abs Number of Label Acquisitions", getAbsNumOfAcqInst());
-		measurements[measurements.length - 1] = new Measurement("Rel Number of Label Acquisitions", getRelNumOfAcqInst());
-		return measurements;
-    }
+	public String[] getPerformanceMeasurementNames() {
+		if (alMeasurementNames == null) {
+			String[] names = super.getPerformanceMeasurementNames();
+			alMeasurementNames = Arrays.copyOf(names, names.length + 2);
+			alMeasurementNames[names.length] = "Abs Number of Label Acquisitions";
+			alMeasurementNames[names.length + 1] = "Rel Number of Label Acquisitions";
+		}
+		return alMeasurementNames;
+	}
+
+	@Override
+	public void getPerformanceMeasurementValues(double[] values) {
+		super.getPerformanceMeasurementValues(values);
+		int n = super.getPerformanceMeasurementNames().length;
+		values[n] = getAbsNumOfAcqInst();
+		values[n + 1] = getRelNumOfAcqInst();
+	}
 	
 	@Override
 	public void reset(int numClasses) {
 		super.reset(numClasses);
+		alMeasurementNames = null;
 		acquisitionRateEstimator = new WindowEstimator(widthOption.getValue());
 		acquiredInstances = 0;
 		
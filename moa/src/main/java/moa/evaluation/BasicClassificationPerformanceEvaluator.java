@@ -73,6 +73,12 @@ public class BasicClassificationPerformanceEvaluator extends AbstractOptionHandl
 
     private double totalWeightObserved;
 
+    /**
+     * Names of the measurements for the current number of classes, created
+     * on the first request after a reset.
+     */
+    protected String[] measurementNames;
+
     public FlagOption precisionRecallOutputOption = new FlagOption("precisionRecallOutput",
             'o',
             "Outputs average precision, recall and F1 scores.");
@@ -95,6 +101,7 @@ public class BasicClassificationPerformanceEvaluator extends AbstractOptionHandl
 
     public void reset(int numClasses) {
         this.numClasses = numClasses;
+        this.measurementNames = null;
         this.rowKappa = new Estimator[numClasses];
         this.columnKappa = new Estimator[numClasses];
         this.precision = new Estimator[numClasses];
@@ -157,45 +164,81 @@ public class BasicClassificationPerformanceEvaluator extends AbstractOptionHandl
     }
 
     @Override
-    public Measurement[] getPerformanceMeasurements() {
-        ArrayList<Measurement> measurements = new ArrayList<Measurement>();
-        measurements.add(new Measurement("classified instances", this.getTotalWeightObserved()));
-        measurements.add(new Measurement("classifications correct (percent)", this.getFractionCorrectlyClassified() * 100.0));
-        measurements.add(new Measurement("Kappa Statistic (percent)", this.getKappaStatistic() * 100.0));
-        measurements.add(new Measurement("Kappa Temporal Statistic (percent)", this.getKappaTemporalStatistic() * 100.0));
-        measurements.add(new Measurement("Kappa M Statistic (percent)", this.getKappaMStatistic() * 100.0));
-        if (precisionRecallOutputOption.isSet()) 
-            measurements.add(new Measurement("F1 Score (percent)", 
-                    this.getF1Statistic() * 100.0));
+    public String[] getPerformanceMeasurementNames() {
+        if (this.measurementNames == null) {
+            ArrayList<String> names = new ArrayList<String>();
+            names.add("classified instances");
+            names.add("classifications correct (percent)");
+            names.add("Kappa Statistic (percent)");
+            names.add("Kappa Temporal Statistic (percent)");
+            names.add("Kappa M Statistic (percent)");
+            if (precisionRecallOutputOption.isSet())
+                names.add("F1 Score (percent)");
+            if (f1PerClassOption.isSet()) {
+                for (int i = 0; i < this.numClasses; i++) {
+                    names.add("F1 Score for class " + i + " (percent)");
+                }
+            }
+            if (precisionRecallOutputOption.isSet())
+                names.add("Precision (percent)");
+            if (precisionPerClassOption.isSet()) {
+                for (int i = 0; i < this.numClasses; i++) {
+                    names.add("Precision for class " + i + " (percent)");
+                }
+            }
+            if (precisionRecallOutputOption.isSet())
+                names.add("Recall (percent)");
+            if (recallPerClassOption.isSet()) {
+                for (int i = 0; i < this.numClasses; i++) {
+                    names.add("Recall for class " + i + " (percent)");
+                }
+            }
+            this.measurementNames = names.toArray(new String[names.size()]);
+        }
+        return this.measurementNames;
+    }
+
+    @Override
+    public void getPerformanceMeasurementValues(double[] values) {
+        int n = 0;
+        values[n++] = this.getTotalWeightObserved();
+        values[n++] = this.getFractionCorrectlyClassified() * 100.0;
+        values[n++] = this.getKappaStatistic() * 100.0;
+        values[n++] = this.getKappaTemporalStatistic() * 100.0;
+        values[n++] = this.getKappaMStatistic() * 100.0;
+        if (precisionRecallOutputOption.isSet())
+            values[n++] = this.getF1Statistic() * 100.0;
         if (f1PerClassOption.isSet()) {
             for (int i = 0; i < this.numClasses; i++) {
-                measurements.add(new Measurement("F1 Score for class " + i + 
-                        " (percent)", 100.0 * this.getF1Statistic(i)));
+                values[n++] = 100.0 * this.getF1Statistic(i);
             }
         }
         if (precisionRecallOutputOption.isSet())
-            measurements.add(new Measurement("Precision (percent)", 
-                this.getPrecisionStatistic() * 100.0));               
+            values[n++] = this.getPrecisionStatistic() * 100.0;
         if (precisionPerClassOption.isSet()) {
             for (int i = 0; i < this.numClasses; i++) {
-                measurements.add(new Measurement("Precision for class " + i + 
-                        " (percent)", 100.0 * this.getPrecisionStatistic(i)));
+                values[n++] = 100.0 * this.getPrecisionStatistic(i);
             }
         }
         if (precisionRecallOutputOption.isSet())
-            measurements.add(new Measurement("Recall (percent)", 
-                this.getRecallStatistic() * 100.0));
+            values[n++] = this.getRecallStatistic() * 100.0;
         if (recallPerClassOption.isSet()) {
             for (int i = 0; i < this.numClasses; i++) {
-                measurements.add(new Measurement("Recall for class " + i + 
-                        " (percent)", 100.0 * this.getRecallStatistic(i)));
+                values[n++] = 100.0 * this.getRecallStatistic(i);
             }
         }
+    }
 
-        Measurement[] result = new Measurement[measurements.size()];
-
-        return measurements.toArray(result);
-
+    @Override
+    public Measurement[] getPerformanceMeasurements() {
+        String[] names = getPerformanceMeasurementNames();
+        double[] values = new double[names.length];
+        getPerformanceMeasurementValues(values);
+        Measurement[] measurements = new Measurement[names.length];
+        for (int i = 0; i < names.length; i++) {
+            measurements[i] = new Measurement(names[i], values[i]);
+        }
+        return measurements;
     }
 
     public double getTotalWeightObserved() {
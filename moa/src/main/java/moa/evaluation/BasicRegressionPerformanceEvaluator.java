@@ -79,20 +79,36 @@ public class BasicRegressionPerformanceEvaluator extends AbstractMOAObject
         }
     }
 
+    private static final String[] MEASUREMENT_NAMES = {
+            "classified instances",
+            "mean absolute error",
+            "root mean squared error",
+            "relative mean absolute error",
+            "relative root mean squared error"};
+
+    @Override
+    public String[] getPerformanceMeasurementNames() {
+        return MEASUREMENT_NAMES;
+    }
+
+    @Override
+    public void getPerformanceMeasurementValues(double[] values) {
+        values[0] = getTotalWeightObserved();
+        values[1] = getMeanError();
+        values[2] = getSquareError();
+        values[3] = getRelativeMeanError();
+        values[4] = getRelativeSquareError();
+    }
+
     @Override
     public Measurement[] getPerformanceMeasurements() {
-        return new Measurement[]{
-                    new Measurement("classified instances",
-                    getTotalWeightObserved()),
-                    new Measurement("mean absolute error",
-                    getMeanError()),
-                    new Measurement("root mean squared error",
-                    getSquareError()),
-                    new Measurement("relative mean absolute error",
-                    getRelativeMeanError()),
-                    new Measurement("relative root mean squared error",
-                    getRelativeSquareError())
-        };
+        Measurement[] measurements = new Measurement[MEASUREMENT_NAMES.length];
+        double[] values = new double[MEASUREMENT_NAMES.length];
+        getPerformanceMeasurementValues(values);
+        for (int i = 0; i < measurements.length; i++) {
+            measurements[i] = new Measurement(MEASUREMENT_NAMES[i], values[i]);
+        }
+        return measurements;
     }
 
     public double getTotalWeightObserved() {
@@ -34,12 +34,12 @@
 package moa.evaluation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import moa.cluster.Clustering;
 import moa.core.AutoExpandVector;
 import moa.gui.visualization.DataPoint;
-import com.yahoo.labs.samoa.instances.Instance;
 
 public class CMM_GTAnalysis{
 	
@@ -102,6 +102,11 @@ public class CMM_GTAnalysis{
      */
     private int[] mergeMap;
 
+    /**
+     * attribute values of all points, copied once to avoid conversions in the knn search
+     */
+    private double[][] pointValues;
+
     /**
      * number of non-noise points that will create an error due to the underlying clustering model
      * (e.g. point being covered by two clusters representing different classes)
@@ -255,6 +260,10 @@ public class CMM_GTAnalysis{
         
         /** connectivity of the cluster to all other clusters */
         private ArrayList<Double> connections = new ArrayList<Double>();
+
+        /** cached average knn distance of each point to this cluster,
+         * NaN if not yet calculated (reset when points are merged in) */
+        private double[] knnDistanceCache;
         
 
         private GTCluster(int workclass, int label, int gtClusteringID) {
@@ -297,21 +306,25 @@ public class CMM_GTAnalysis{
             for (int p0 : points) {
                 CMMPoint cmdp = cmmpoints.get(p0);
                 if(!cmdp.isNoise()){
-                    AutoExpandVector<Double> knnDist = new AutoExpandVector<Double>();
-                    AutoExpandVector<Integer> knnPointIndex = new AutoExpandVector<Integer>();
+                    double[] knnDist = new double[knnNeighbourhood];
+                    int[] knnPointIndex = new int[knnNeighbourhood];
                     
                     //calculate nearest neighbours 
-                    getKnnInCluster(cmdp, knnNeighbourhood, points, knnDist,knnPointIndex);
+                    int numKnn = getKnnInCluster(cmdp, knnNeighbourhood, points, knnDist, knnPointIndex);
 
                     //TODO: What to do if we have less then k neighbours?
                     double avgKnn = 0;
-                    for (int i = 0; i < knnDist.size(); i++) {
-                        avgKnn+= knnDist.get(i);
+                    for (int i = 0; i < numKnn; i++) {
+                        avgKnn+= knnDist[i];
                     }
-                    if(knnDist.size()!=0)
-                        avgKnn/=knnDist.size();
+                    if(numKnn!=0)
+                        avgKnn/=numKnn;
+                    getKnnDistanceCache()[cmdp.pID] = (numKnn!=0) ? avgKnn : -1;
                     cmdp.knnInCluster = avgKnn;
-                    cmdp.knnIndices = knnPointIndex;
+                    cmdp.knnIndices = new ArrayList<Integer>(numKnn);
+                    for (int i = 0; i < numKnn; i++) {
+                        cmdp.knnIndices.add(knnPointIndex[i]);
+                    }
                     cmdp.p.setMeasureValue("knnAvg", cmdp.knnInCluster);
 
                     knnMeanAvg+=avgKnn;
@@ -328,6 +341,45 @@ public class CMM_GTAnalysis{
 
         }
 
+        /**
+         * Returns the cache of average knn distances to this cluster
+         * @return array indexed by point ID
+         */
+        private double[] getKnnDistanceCache(){
+            if(knnDistanceCache == null){
+                knnDistanceCache = new double[numPoints];
+                Arrays.fill(knnDistanceCache, Double.NaN);
+            }
+            return knnDistanceCache;
+        }
+
+        /**
+         * Average distance of a point to its k nearest neighbours in this cluster.
+         * The distance is only calculated once and reused by all connection
+         * values until points are merged into the cluster.
+         * @param cmmp the point
+         * @return the average knn distance, or -1 if the cluster has no other points
+         */
+        private double getKnnDistance(CMMPoint cmmp){
+            double[] cache = getKnnDistanceCache();
+            double avgDist = cache[cmmp.pID];
+            if(Double.isNaN(avgDist)){
+                double[] knnDist = new double[knnNeighbourhood];
+                int[] knnPointIndex = new int[knnNeighbourhood];
+                int numKnn = getKnnInCluster(cmmp, knnNeighbourhood, points, knnDist, knnPointIndex);
+                avgDist = 0;
+                for (int i = 0; i < numKnn; i++) {
+                    avgDist+= knnDist[i];
+                }
+                if(numKnn!=0)
+                    avgDist/=numKnn;
+                else
+                    avgDist = -1;
+                cache[cmmp.pID] = avgDist;
+            }
+            return avgDist;
+        }
+
         
         /**
          * Calculate the connection of a cluster to this cluster
@@ -433,7 +485,8 @@ public class CMM_GTAnalysis{
                     gt0Clusters.get(c).workclass = c;
                 }
 
-                //update knn distances
+                //update knn distances, the neighbours of all points may have changed
+                knnDistanceCache = null;
                 calculateKnn();
                 for(int c=0; c < gt0Clusters.size(); c++){
                     gt0Clusters.get(c).connections.remove(mergeID);
@@ -501,9 +554,11 @@ public class CMM_GTAnalysis{
 
         //create cmd point wrapper instances
         cmmpoints = new ArrayList<CMMPoint>();
+        pointValues = new double[numPoints][];
         for (int p = 0; p < points.size(); p++) {
             CMMPoint cmdp = new CMMPoint(points.get(p), p);
             cmmpoints.add(cmdp);
+            pointValues[p] = cmdp.toDoubleArray();
         }
 
 
@@ -541,23 +596,12 @@ public class CMM_GTAnalysis{
      * @param clusterID the corresponding cluster
      * @return the connection value
      */
-    //TODO: Cache the connection value for a point to the different clusters???
     protected double getConnectionValue(CMMPoint cmmp, int clusterID){
-        AutoExpandVector<Double> knnDist = new AutoExpandVector<Double>();
-        AutoExpandVector<Integer> knnPointIndex = new AutoExpandVector<Integer>();
-        
-        //calculate the knn distance of the point to the cluster
-        getKnnInCluster(cmmp, knnNeighbourhood, gt0Clusters.get(clusterID).points, knnDist, knnPointIndex);
-
+        //get the (cached) knn distance of the point to the cluster
         //TODO: What to do if we have less then k neighbors?
-        double avgDist = 0;
-        for (int i = 0; i < knnDist.size(); i++) {
-            avgDist+= knnDist.get(i);
-        }
+        double avgDist = gt0Clusters.get(clusterID).getKnnDistance(cmmp);
         //what to do if we only have a single point???
-        if(knnDist.size()!=0)
-            avgDist/=knnDist.size();
-        else
+        if(avgDist < 0)
             return 0;
 
         //get the upper knn distance of the cluster
@@ -589,32 +633,38 @@ public class CMM_GTAnalysis{
      * @param cmmp point to calculate knn distance for
      * @param k number of nearest neighbors to look for
      * @param pointIDs list of point IDs to check
-     * @param knnDist sorted list of smallest knn distances (can already be filled to make updates possible)  
-     * @param knnPointIndex list of corresponding knn indices
+     * @param knnDist array of at least k entries to store the sorted smallest knn distances
+     * @param knnPointIndex array of at least k entries to store the corresponding knn indices
+     * @return number of neighbours found (less than k if the cluster is too small)
      */
-    private void getKnnInCluster(CMMPoint cmmp, int k,
-                                 ArrayList<Integer> pointIDs,
-                                 AutoExpandVector<Double> knnDist,
-                                 AutoExpandVector<Integer> knnPointIndex) {
+    private int getKnnInCluster(CMMPoint cmmp, int k,
+                                ArrayList<Integer> pointIDs,
+                                double[] knnDist,
+                                int[] knnPointIndex) {
+        double[] values = pointValues[cmmp.pID];
+        int size = 0;
 
         //iterate over every point in the choosen cluster, cal distance and insert into list
         for (int p1 = 0; p1 < pointIDs.size(); p1++) {
             int pid = pointIDs.get(p1);
             if(cmmp.pID == pid) continue;
-            double dist = distance(cmmp,cmmpoints.get(pid));
-            if(knnDist.size() < k || dist < knnDist.get(knnDist.size()-1)){
+            double dist = distance(values, pointValues[pid]);
+            if(size < k || dist < knnDist[size-1]){
                 int index = 0;
-                while(index < knnDist.size() && dist > knnDist.get(index)) {
+                while(index < size && dist > knnDist[index]) {
                     index++;
                 }
-                knnDist.add(index, dist);
-                knnPointIndex.add(index,pid);
-                if(knnDist.size() > k){
-                    knnDist.remove(knnDist.size()-1);
-                    knnPointIndex.remove(knnPointIndex.size()-1);
+                //shift larger distances, dropping the last one if the list is full
+                int last = (size < k) ? size++ : k-1;
+                for (int i = last; i > index; i--) {
+                    knnDist[i] = knnDist[i-1];
+                    knnPointIndex[i] = knnPointIndex[i-1];
                 }
+                knnDist[index] = dist;
+                knnPointIndex[index] = pid;
             }
         }
+        return size;
     }
 
 
@@ -796,21 +846,10 @@ public class CMM_GTAnalysis{
      * @param inst2 point as double array
      * @return euclidian distance
      */
-    private double distance(Instance inst1, Instance inst2){
-          return distance(inst1, inst2.toDoubleArray());
-
-    }
-    
-    /**
-     * Calculates Euclidian distance 
-     * @param inst1 point as an instance
-     * @param inst2 point as double array
-     * @return euclidian distance
-     */
-    private double distance(Instance inst1, double[] inst2){
+    private double distance(double[] inst1, double[] inst2){
         double distance = 0.0;
         for (int i = 0; i < numDims; i++) {
-            double d = inst1.value(i) - inst2[i];
+            double d = inst1[i] - inst2[i];
             distance += d * d;
         }
         return Math.sqrt(distance);
@@ -19,10 +19,6 @@
  */
 package moa.evaluation;
 
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-
 import moa.AbstractMOAObject;
 import moa.classifiers.Classifier;
 import moa.clusterers.Clusterer;
@@ -47,13 +43,18 @@ public class LearningEvaluation extends AbstractMOAObject {
 
     public LearningEvaluation(Measurement[] evaluationMeasurements,
             LearningPerformanceEvaluator cpe, Learner model) {
-        List<Measurement> measurementList = new LinkedList<Measurement>();
-        if (evaluationMeasurements != null){
-        measurementList.addAll(Arrays.asList(evaluationMeasurements));
+        Measurement[] performanceMeasurements = cpe.getPerformanceMeasurements();
+        Measurement[] modelMeasurements = model.getModelMeasurements();
+        int numEvaluationMeasurements = evaluationMeasurements != null ? evaluationMeasurements.length : 0;
+        this.measurements = new Measurement[numEvaluationMeasurements
+                + performanceMeasurements.length + modelMeasurements.length];
+        if (evaluationMeasurements != null) {
+            System.arraycopy(evaluationMeasurements, 0, this.measurements, 0, numEvaluationMeasurements);
         }
-        measurementList.addAll(Arrays.asList(cpe.getPerformanceMeasurements()));
-        measurementList.addAll(Arrays.asList(model.getModelMeasurements()));
-        this.measurements = measurementList.toArray(new Measurement[measurementList.size()]);
+        System.arraycopy(performanceMeasurements, 0, this.measurements,
+                numEvaluationMeasurements, performanceMeasurements.length);
+        System.arraycopy(modelMeasurements, 0, this.measurements,
+                numEvaluationMeasurements + performanceMeasurements.length, modelMeasurements.length);
     }
 
     public LearningEvaluation(
@@ -62,6 +62,40 @@ public interface LearningPerformanceEvaluator<E extends Example> extends MOAObje
      */
 	public Measurement[] getPerformanceMeasurements();
 
+    /**
+     * Gets the names of the measurements monitored by this evaluator, in the
+     * order of <code>getPerformanceMeasurementValues</code>. The names only
+     * change when the evaluator is reset for a different problem, so callers
+     * that read the measurements often can keep the array, which must not
+     * be modified.
+     *
+     * @return the names of the measurements
+     */
+	public default String[] getPerformanceMeasurementNames() {
+		Measurement[] measurements = getPerformanceMeasurements();
+		String[] names = new String[measurements.length];
+		for (int i = 0; i < measurements.length; i++) {
+			names[i] = measurements[i].getName();
+		}
+		return names;
+	}
+
+    /**
+     * Writes the current values of the measurements monitored by this
+     * evaluator into an array, in the order of
+     * <code>getPerformanceMeasurementNames</code>. Evaluators that override
+     * this method do it without creating objects.
+     *
+     * @param values the array to write to, with at least one element for
+     * every measurement
+     */
+	public default void getPerformanceMeasurementValues(double[] values) {
+		Measurement[] measurements = getPerformanceMeasurements();
+		for (int i = 0; i < measurements.length; i++) {
+			values[i] = measurements[i].getValue();
+		}
+	}
+
 	@Override
 	default ImmutableCapabilities defineImmutableCapabilities() {
 	  return new ImmutableCapabilities(Capability.VIEW_STANDARD);
@@ -113,15 +113,32 @@ implements MultiTargetPerformanceEvaluator, RegressionPerformanceEvaluator {
     public void addResult(Example<Instance> example, double[] prediction) {
     }
 
+    private static final String[] MEASUREMENT_NAMES = {
+            "classified instances",
+            "mean absolute error",
+            "root mean squared error"};
+
+    @Override
+    public String[] getPerformanceMeasurementNames() {
+        return MEASUREMENT_NAMES;
+    }
+
+    @Override
+    public void getPerformanceMeasurementValues(double[] values) {
+        values[0] = getTotalWeightObserved();
+        values[1] = getMeanError();
+        values[2] = getSquareError();
+    }
+
     @Override
     public Measurement[] getPerformanceMeasurements() {
-        return new Measurement[]{
-                    new Measurement("classified instances",
-                    getTotalWeightObserved()),
-                    new Measurement("mean absolute error",
-                    getMeanError()),
-                    new Measurement("root mean squared error",
-                    getSquareError())};
+        Measurement[] measurements = new Measurement[MEASUREMENT_NAMES.length];
+        double[] values = new double[MEASUREMENT_NAMES.length];
+        getPerformanceMeasurementValues(values);
+        for (int i = 0; i < measurements.length; i++) {
+            measurements[i] = new Measurement(MEASUREMENT_NAMES[i], values[i]);
+        }
+        return measurements;
     }
 
     public double getTotalWeightObserved() {
@@ -43,6 +43,13 @@ public class SSQ extends MeasureCollection{
   }
     
     public void evaluateClustering(Clustering clustering, Clustering trueClsutering, ArrayList<DataPoint> points) {
+        //get the centers only once, as clusters may compute them on every call
+        int numClusters = clustering.size();
+        double[][] centers = new double[numClusters][];
+        for (int c = 0; c < numClusters; c++) {
+            centers[c] = clustering.get(c).getCenter();
+        }
+
         double sum = 0.0;
         for (int p = 0; p < points.size(); p++) {
             //don't include noise
@@ -51,12 +58,14 @@ public class SSQ extends MeasureCollection{
             // same as in SilhouetteCoefficient
             // if(points.get(p).classValue()==-1) continue;
 
+            DataPoint point = points.get(p);
             double minDistance = Double.MAX_VALUE;
-            for (int c = 0; c < clustering.size(); c++) {
+            for (int c = 0; c < numClusters; c++) {
                 double distance = 0.0;
-                double[] center = clustering.get(c).getCenter();
-                for (int i = 0; i < center.length; i++) {
-                    double d = points.get(p).value(i) - center[i];
+                double[] center = centers[c];
+                //stop as soon as the center cannot be the closest one
+                for (int i = 0; i < center.length && distance < minDistance; i++) {
+                    double d = point.value(i) - center[i];
                     distance += d * d;
                 }
                 minDistance = Math.min(distance, minDistance);
@@ -68,8 +77,4 @@ public class SSQ extends MeasureCollection{
         addValue(0,sum);
     }
 
-
-
-
-
 }
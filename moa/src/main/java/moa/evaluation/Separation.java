@@ -44,10 +44,14 @@ public class Separation extends MeasureCollection {
   private double getBSS(Clustering clustering, double[] mean) {
     double bss = 0.0;
     for (int i = 0; i < clustering.size(); i++) {
-      double weight = clustering.get(i).getWeight();
+      Cluster cluster = clustering.get(i);
+      double weight = cluster.getWeight();
+      // getCenter() may compute a new array on every call
+      double[] center = cluster.getCenter();
       double sum = 0.0;
       for (int j = 0; j < mean.length; j++) {
-        sum += Math.pow((mean[j] - clustering.get(i).getCenter()[j]), 2);
+        double d = mean[j] - center[j];
+        sum += d * d;
       }
       bss += weight * sum;
     }
@@ -70,12 +74,10 @@ public class Separation extends MeasureCollection {
     BSS = getBSS(clustering, sc.getCenter());
 
     if (trueClustering != null) {
-      String s = "";
       List<Instance> listInstances = new ArrayList<Instance>();
       for (Cluster c : trueClustering.getClustering()) {
         DenseInstance inst = new DenseInstance(c.getWeight(), c.getCenter());
         listInstances.add(inst);
-        s += " " + c.getWeight();
       }
       SphereCluster gt = new SphereCluster(listInstances, dimension);
       BSS_GT = getBSS(trueClustering, gt.getCenter());
@@ -21,14 +21,39 @@
 package moa.evaluation; 
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Random;
 import moa.cluster.Cluster;
 import moa.cluster.Clustering;
 import moa.gui.visualization.DataPoint;
 
+/**
+ * Silhouette coefficient of a clustering, normalized to [0,1].
+ *
+ * The exact coefficient needs the distances between all pairs of points. If
+ * an error bound is set, the coefficient is estimated on a reservoir sample
+ * of the points instead. The sample size is chosen with the Hoeffding bound,
+ * such that the estimate of the normalized coefficient deviates by more
+ * than <code>errorBound</code> only with probability <code>delta</code>.
+ */
 public class SilhouetteCoefficient extends MeasureCollection{
     private double pointInclusionProbThreshold = 0.8;
 
+    /**
+     * maximum error of the estimated coefficient, 0 computes the exact value
+     */
+    public double errorBound = 0.0;
+
+    /**
+     * probability of exceeding the error bound
+     */
+    public double delta = 0.05;
+
+    /**
+     * seed of the reservoir sample
+     */
+    public int sampleSeed = 1;
+
     public SilhouetteCoefficient() {
         super();
     }
@@ -45,46 +70,59 @@ public class SilhouetteCoefficient extends MeasureCollection{
         return names;
     }
 
+    /**
+     * Number of points needed to estimate the coefficient within the error
+     * bound. The silhouette of a point lies in [-1,1], which is an error of
+     * 2*errorBound before normalization, so the Hoeffding bound gives
+     * n = ln(2/delta) / (2 errorBound^2).
+     * @return the sample size, or Integer.MAX_VALUE for the exact coefficient
+     */
+    public int getSampleSize() {
+        if (errorBound <= 0.0) {
+            return Integer.MAX_VALUE;
+        }
+        double n = Math.log(2.0 / delta) / (2.0 * errorBound * errorBound);
+        return n >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.ceil(n);
+    }
+
     public void evaluateClustering(Clustering clustering, Clustering trueClustering, ArrayList<DataPoint> points) {
         int numFCluster = clustering.size();
-
-        double [][] pointInclusionProbFC = new double[points.size()][numFCluster];
-        for (int p = 0; p < points.size(); p++) {
-            DataPoint point = points.get(p);
+        int[] sample = samplePoints(points.size(), getSampleSize());
+        int numSample = sample.length;
+
+        //copy the points and the clusters they belong to only once
+        double[][] values = new double[numSample][];
+        int[][] ownClustersByPoint = new int[numSample][];
+        int[] ownClusters = new int[numFCluster];
+        for (int s = 0; s < numSample; s++) {
+            DataPoint point = points.get(sample[s]);
+            values[s] = point.toDoubleArray();
+            int numOwn = 0;
             for (int fc = 0; fc < numFCluster; fc++) {
                 Cluster cl = clustering.get(fc);
-                pointInclusionProbFC[p][fc] = cl.getInclusionProbability(point);
+                if(cl.getInclusionProbability(point) > pointInclusionProbThreshold){
+                    ownClusters[numOwn++] = fc;
+                }
             }
+            ownClustersByPoint[s] = Arrays.copyOf(ownClusters, numOwn);
         }
 
         double silhCoeff = 0.0;
         int totalCount = 0;
-        for (int p = 0; p < points.size(); p++) {
-            DataPoint point = points.get(p);
-            ArrayList<Integer> ownClusters = new ArrayList<Integer>();
-            for (int fc = 0; fc < numFCluster; fc++) {
-                if(pointInclusionProbFC[p][fc] > pointInclusionProbThreshold){
-                    ownClusters.add(fc);
-                }
-            }
-
-            if(ownClusters.size() > 0){
-                double[] distanceByClusters = new double[numFCluster];
-                int[] countsByClusters = new int[numFCluster];
-                    //calculate averageDistance of p to all cluster
-                for (int p1 = 0; p1 < points.size(); p1++) {
-                    DataPoint point1 = points.get(p1);
-                    if(p1!= p){ 
-                        // Matthias Carnein 2019/04/03
-                        // Removed second part of if-condition: && point1.classValue() != -1 
-                        // Accessing the classValue will go outOfBounds when no class label exists
-                        // What is the purpose of this check anyway? Class label is not used for Silhouette calculation
-                        for (int fc = 0; fc < numFCluster; fc++) {
-                            if(pointInclusionProbFC[p1][fc] > pointInclusionProbThreshold){
-                                double distance = distance(point, point1);
-                                distanceByClusters[fc]+=distance;
-                                countsByClusters[fc]++;
-                            }
+        double[] distanceByClusters = new double[numFCluster];
+        int[] countsByClusters = new int[numFCluster];
+        for (int s = 0; s < numSample; s++) {
+            if(ownClustersByPoint[s].length > 0){
+                Arrays.fill(distanceByClusters, 0.0);
+                Arrays.fill(countsByClusters, 0);
+                //calculate averageDistance of p to all cluster
+                for (int s1 = 0; s1 < numSample; s1++) {
+                    int[] clusters1 = ownClustersByPoint[s1];
+                    if(s1 != s && clusters1.length > 0){
+                        double distance = distance(values[s], values[s1]);
+                        for (int fc : clusters1) {
+                            distanceByClusters[fc]+=distance;
+                            countsByClusters[fc]++;
                         }
                     }
                 }
@@ -92,9 +130,9 @@ public class SilhouetteCoefficient extends MeasureCollection{
                 //find closest OWN cluster as clusters might overlap
                 double minAvgDistanceOwn = Double.MAX_VALUE;
                 int minOwnIndex = -1;
-                for (int fc : ownClusters) {
+                for (int fc : ownClustersByPoint[s]) {
                         double normDist = distanceByClusters[fc]/(double)countsByClusters[fc];
-                        if(normDist < minAvgDistanceOwn){// && pointInclusionProbFC[p][fc] > pointInclusionProbThreshold){
+                        if(normDist < minAvgDistanceOwn){
                             minAvgDistanceOwn = normDist;
                             minOwnIndex = fc;
                         }
@@ -113,13 +151,13 @@ public class SilhouetteCoefficient extends MeasureCollection{
                 }
 
                 double silhP = (minAvgDistanceOther-minAvgDistanceOwn)/Math.max(minAvgDistanceOther, minAvgDistanceOwn);
+                DataPoint point = points.get(sample[s]);
                 point.setMeasureValue("SC - own", minAvgDistanceOwn);
                 point.setMeasureValue("SC - other", minAvgDistanceOther);
                 point.setMeasureValue("SC", silhP);
 
                 silhCoeff+=silhP;
                 totalCount++;
-                //System.out.println(point.getTimestamp()+" Silh "+silhP+" / "+avgDistanceOwn+" "+minAvgDistanceOther+" (C"+minIndex+")");
             }
         }
         if(totalCount>0)
@@ -129,11 +167,36 @@ public class SilhouetteCoefficient extends MeasureCollection{
         addValue(0,silhCoeff);
     }
 
-    private double distance(DataPoint inst1, DataPoint inst2){
+    /**
+     * Draws a reservoir sample of point indices. The indices are returned in
+     * ascending order, so the exact coefficient is computed in the same order
+     * as before.
+     * @param numPoints number of points
+     * @param sampleSize maximum size of the sample
+     * @return sorted indices of the sampled points
+     */
+    private int[] samplePoints(int numPoints, int sampleSize) {
+        int[] sample = new int[Math.min(numPoints, sampleSize)];
+        for (int p = 0; p < sample.length; p++) {
+            sample[p] = p;
+        }
+        if (sample.length < numPoints) {
+            Random random = new Random(sampleSeed);
+            for (int p = sample.length; p < numPoints; p++) {
+                int r = random.nextInt(p + 1);
+                if (r < sample.length) {
+                    sample[r] = p;
+                }
+            }
+            Arrays.sort(sample);
+        }
+        return sample;
+    }
+
+    private double distance(double[] inst1, double[] inst2){
         double distance = 0.0;
-        int numDims = inst1.numAttributes();
-        for (int i = 0; i < numDims; i++) {
-            double d = inst1.value(i) - inst2.value(i);
+        for (int i = 0; i < inst1.length; i++) {
+            double d = inst1[i] - inst2[i];
             distance += d * d;
         }
         return Math.sqrt(distance);
@@ -18,7 +18,7 @@
  */
 package moa.evaluation;
 
-import java.util.TreeSet;
+import java.util.Arrays;
 
 import moa.core.Example;
 import moa.core.Measurement;
@@ -76,77 +76,16 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 	
 	public class Estimator {
 
-		public class Score implements Comparable<Score> {
-			/**
-			 * Predicted score of the example
-			 */
-			protected double value;
-
-			/**
-			 * Age of example - position in the window where the example was
-			 * added
-			 */
-			protected int posWindow;
-
-			/**
-			 * True if example's true label is positive
-			 */
-			protected boolean isPositive;
-
-			/**
-			 * Constructor.
-			 * 
-			 * @param value
-			 *            score value
-			 * @param position
-			 *            score position in window (defines its age)
-			 * @param isPositive
-			 *            true if the example's true label is positive
-			 */
-			public Score(double value, int position, boolean isPositive) {
-				this.value = value;
-				this.posWindow = position;
-				this.isPositive = isPositive;
-			}
+		/**
+		 * Scores in the window, sorted by value. Replaces the sorted set of
+		 * single scores that had to be traversed to compute the AUC.
+		 */
+		protected ScoreTree sortedScores;
 
-			/**
-			 * Sort descending based on score value.
-			 */
-			@Override
-			public int compareTo(Score o) {
-				if (o.value < this.value) {
-					return -1;
-				} else if (o.value > this.value){
-					return 1;
-				} else {
-					if (!o.isPositive && this.isPositive) {
-						return -1;
-					} else if (o.isPositive && !this.isPositive){
-						return 1;
-					} else {
-						if (o.posWindow > this.posWindow) {
-							return -1;
-						} else if (o.posWindow < this.posWindow){
-							return 1;
-						} else {
-							return 0;
-						}
-					}
-				}
-			}
-			
-			@Override
-			public boolean equals(Object o) {
-				return (o instanceof Score) && ((Score)o).posWindow == this.posWindow;
-			}
-		}
+		protected double[] windowScores;
 
-		protected TreeSet<Score> sortedScores;
-		
-		protected TreeSet<Score> holdoutSortedScores;
+		protected boolean[] windowPositives;
 
-		protected Score[] window;
-		
 		protected double[] predictions;
 
 		protected int posWindow;
@@ -156,38 +95,64 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 		protected double numPos;
 
 		protected double numNeg;
-		
+
 		protected double holdoutNumPos;
 
 		protected double holdoutNumNeg;
-		
+
+		/**
+		 * AUC of the window at the last periodical holdout update.
+		 */
+		protected double holdoutAUC;
+
+		/**
+		 * Number of (positive, negative) pairs in which the positive has the
+		 * higher score, with ties counted as one half.
+		 */
+		protected double aucPairs;
+
+		/**
+		 * Sum over (positive, negative) pairs of the positive score if it is
+		 * the higher one, with ties counted as one half.
+		 */
+		protected double scoredPositivePairs;
+
+		/**
+		 * Sum over (positive, negative) pairs of the negative score if it is
+		 * the higher one.
+		 */
+		protected double scoredNegativePairs;
+
+		protected double negativeScoreSum;
+
 		protected double correctPredictions;
-		
+
 		protected double correctPositivePredictions;
-		
+
 	    protected double[] columnKappa;
 
 	    protected double[] rowKappa;
 
 		public Estimator(int sizeWindow) {
-			this.sortedScores = new TreeSet<Score>();
-			this.holdoutSortedScores = new TreeSet<Score>();
+			this.sortedScores = new ScoreTree(sizeWindow > 0 ? sizeWindow : 16);
 			this.size = sizeWindow;
-			this.window = new Score[sizeWindow];
+			this.windowScores = new double[sizeWindow];
+			this.windowPositives = new boolean[sizeWindow];
 			this.predictions = new double[sizeWindow];
-			
+
 	        this.rowKappa = new double[numClasses];
 	        this.columnKappa = new double[numClasses];
 	        for (int i = 0; i < numClasses; i++) {
 	            this.rowKappa[i] = 0.0;
 	            this.columnKappa[i] = 0.0;
 	        }
-			
+
 			this.posWindow = 0;
 			this.numPos = 0;
 			this.numNeg = 0;
 			this.holdoutNumPos = 0;
 			this.holdoutNumNeg = 0;
+			this.holdoutAUC = 0;
 			this.correctPredictions = 0;
 			this.correctPositivePredictions = 0;
 		}
@@ -195,177 +160,134 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 		public void add(double score, boolean isPositive, boolean correctPrediction) {
             // // periodically update holdout evaluation
 			if (size > 0 && posWindow % this.size == 0) {
-				this.holdoutSortedScores = new TreeSet<Score>();
-				
-				for (Score s : this.sortedScores) {
-					this.holdoutSortedScores.add(s);
-				}
-				
+				// // recompute the pair sums to remove rounding errors of the
+				// // incremental updates
+				recomputePairs();
 				this.holdoutNumPos = this.numPos;
 				this.holdoutNumNeg = this.numNeg;
+				this.holdoutAUC = this.numPos + this.numNeg == 0 ? 0 : getAUC();
 			}
-			
-			// // if the window is used and it's full			
+
+			// // if the window is used and it's full
 			if (size > 0 && posWindow >= this.size) {
 				// // remove the oldest example
-				sortedScores.remove(window[posWindow % size]);
-				correctPredictions -= predictions[posWindow % size];
-				correctPositivePredictions -= window[posWindow % size].isPositive ? predictions[posWindow % size] : 0;
-				
-				if (window[posWindow % size].isPositive) {
+				int oldest = posWindow % size;
+				boolean oldestIsPositive = windowPositives[oldest];
+				sortedScores.remove(windowScores[oldest], oldestIsPositive);
+				correctPredictions -= predictions[oldest];
+				correctPositivePredictions -= oldestIsPositive ? predictions[oldest] : 0;
+
+				if (oldestIsPositive) {
 					numPos--;
 				} else {
 					numNeg--;
 				}
-				
-				int oldestExampleTrueClass = window[posWindow % size].isPositive ? 1 : 0;
-	            int oldestExamplePredictedClass = predictions[posWindow % size] == 1.0 ? oldestExampleTrueClass : Math.abs(oldestExampleTrueClass - 1);  
-	            
+				updatePairs(windowScores[oldest], oldestIsPositive, -1);
+
+				int oldestExampleTrueClass = oldestIsPositive ? 1 : 0;
+	            int oldestExamplePredictedClass = predictions[oldest] == 1.0 ? oldestExampleTrueClass : Math.abs(oldestExampleTrueClass - 1);
+
 				this.rowKappa[oldestExamplePredictedClass] -= 1;
 	            this.columnKappa[oldestExampleTrueClass] -= 1;
 			}
-			
+
 			// // add new example
-			Score newScore = new Score(score, posWindow, isPositive);
-			sortedScores.add(newScore);
+			updatePairs(score, isPositive, 1);
+			sortedScores.add(score, isPositive);
 			correctPredictions += correctPrediction ? 1 : 0;
 			correctPositivePredictions += correctPrediction && isPositive ? 1 : 0;
-			
+
             int trueClass = isPositive ? 1 : 0;
-            int predictedClass = correctPrediction ? trueClass : Math.abs(trueClass - 1);    
+            int predictedClass = correctPrediction ? trueClass : Math.abs(trueClass - 1);
             this.rowKappa[predictedClass] += 1;
             this.columnKappa[trueClass] += 1;
-			
-			if (newScore.isPositive) {
+
+			if (isPositive) {
 				numPos++;
 			} else {
 				numNeg++;
 			}
 
 			if (size > 0) {
-				window[posWindow % size] = newScore;
+				windowScores[posWindow % size] = score;
+				windowPositives[posWindow % size] = isPositive;
 				predictions[posWindow % size] = correctPrediction ? 1 : 0;
 			}
-			
-			//// posWindow needs to be always incremented to differentiate between examples in the red-black tree
+
 			posWindow++;
 		}
 
-		public double getAUC() {
-			double AUC = 0;
-			double c = 0;
-			double prevc = 0;
-			double lastPosScore = Double.MAX_VALUE;
-					
-			if (numPos == 0 || numNeg == 0) {
-				return 1;
-			}
-			
-			for (Score s : sortedScores){
-				if(s.isPositive) {			
-					if (s.value != lastPosScore) {
-						prevc = c;
-						lastPosScore = s.value;
-					}
-					
-					c += 1;
-				} else {
-					if (s.value == lastPosScore) {
-						// tie
-						AUC += ((double)(c + prevc))/2.0;
-					} else {
-						AUC += c;
-					}
-				}
+		/**
+		 * Adds or removes the pairs that a score forms with the scores of the
+		 * other class in the window.
+		 */
+		protected void updatePairs(double score, boolean isPositive, double sign) {
+			ScoreTree tree = sortedScores;
+			tree.query(score);
+			if (isPositive) {
+				double negLess = numNeg - tree.negGreater - tree.negEqual;
+				aucPairs += sign * (negLess + tree.negEqual / 2.0);
+				scoredPositivePairs += sign * score * (negLess + tree.negEqual / 2.0);
+				scoredNegativePairs += sign * tree.negSumGreater;
+			} else {
+				double posLess = numPos - tree.posGreater - tree.posEqual;
+				aucPairs += sign * (tree.posGreater + tree.posEqual / 2.0);
+				scoredPositivePairs += sign * (tree.posSumGreater + score * tree.posEqual / 2.0);
+				scoredNegativePairs += sign * score * posLess;
+				negativeScoreSum += sign * score;
 			}
-			
-			return AUC / (numPos * numNeg);
 		}
-		
-		public double getHoldoutAUC() {
-			double AUC = 0;
-			double c = 0;
-			double prevc = 0;
-			double lastPosScore = Double.MAX_VALUE;
 
-			if (holdoutSortedScores.isEmpty()) {
-				return 0;
+		/**
+		 * Computes the pair sums from the scores in the window, in
+		 * descending order of the scores.
+		 */
+		protected void recomputePairs() {
+			aucPairs = 0;
+			scoredPositivePairs = 0;
+			scoredNegativePairs = 0;
+			negativeScoreSum = 0;
+			ScoreTree tree = sortedScores;
+			double posAbove = 0;
+			double posSumAbove = 0;
+			double negSumAbove = 0;
+			int numNodes = tree.sortDescending();
+			for (int i = 0; i < numNodes; i++) {
+				int node = tree.order[i];
+				double value = tree.value[node];
+				int pos = tree.pos[node];
+				int neg = tree.neg[node];
+				aucPairs += neg * (posAbove + pos / 2.0);
+				scoredPositivePairs += neg * (posSumAbove + pos * value / 2.0);
+				scoredNegativePairs += pos * negSumAbove;
+				posAbove += pos;
+				posSumAbove += pos * value;
+				negSumAbove += neg * value;
 			}
-			
-			if (holdoutNumPos == 0 || holdoutNumNeg == 0) {
+			negativeScoreSum = negSumAbove;
+		}
+
+		public double getAUC() {
+			if (numPos == 0 || numNeg == 0) {
 				return 1;
 			}
 
-			for (Score s : holdoutSortedScores){
-				if(s.isPositive) {
-					if (s.value != lastPosScore) {
-						prevc = c;
-						lastPosScore = s.value;
-					}
-					
-					c += 1;
-				} else {
-					if (s.value == lastPosScore) {
-						// tie
-						AUC += ((double)(c + prevc))/2.0;
-					} else {
-						AUC += c;
-					}
-				}
-			}
-			
-			return AUC / (holdoutNumPos * holdoutNumNeg);
+			return aucPairs / (numPos * numNeg);
+		}
+
+		public double getHoldoutAUC() {
+			return holdoutAUC;
 		}
 
 		public double getScoredAUC() {
-			double AOC = 0;
-			double AUC = 0;
-			double r = 0;
-			double prevr = 0;
-			double c = 0;
-			double prevc = 0;
 			double R_plus, R_minus;
-			double lastPosScore = Double.MAX_VALUE;
-			double lastNegScore = Double.MAX_VALUE;
-			
+
 			if (numPos == 0 || numNeg == 0) {
 				return 1;
 			}
-			
-			for (Score s : sortedScores){
-				if(s.isPositive) {
-					if (s.value != lastPosScore) {
-						prevc = c;
-						lastPosScore = s.value;
-					}
-					
-					c += s.value;
-					
-					if (s.value == lastNegScore) {
-						// tie
-						AOC += ((double)(r + prevr))/2.0;
-					} else {
-						AOC += r;
-					}
-				} else {
-					if (s.value != lastNegScore) {
-						prevr = r;
-						lastNegScore = s.value;
-					}
-					
-					r += s.value;
-					
-					if (s.value == lastPosScore) {
-						// tie
-						AUC += ((double)(c + prevc))/2.0;
-					} else {
-						AUC += c;
-					}
-				}
-			}
-			
-			R_minus = (numPos*r - AOC)/(numPos * numNeg);
-			R_plus = (AUC)/(numPos * numNeg);		
+
+			R_minus = (numPos*negativeScoreSum - scoredNegativePairs)/(numPos * numNeg);
+			R_plus = (scoredPositivePairs)/(numPos * numNeg);
 			return R_plus - R_minus;
 		}
 		
@@ -419,6 +341,294 @@ public class WindowAUCImbalancedPerformanceEvaluator extends
 		}
 	}
 
+	/**
+	 * Balanced search tree (a treap) over the distinct scores of a window.
+	 * Every node holds the number of positive and negative examples with its
+	 * score, and the counts and score sums of its subtree, so the examples
+	 * with a higher or equal score than a given one are counted in
+	 * logarithmic time. The nodes are stored in arrays and reused, so adding
+	 * and removing scores does not create objects.
+	 */
+	protected static class ScoreTree {
+
+		protected double[] value;
+
+		protected int[] left;
+
+		protected int[] right;
+
+		protected int[] priority;
+
+		protected int[] pos;
+
+		protected int[] neg;
+
+		protected int[] subtreePos;
+
+		protected int[] subtreeNeg;
+
+		protected double[] subtreePosSum;
+
+		protected double[] subtreeNegSum;
+
+		protected int root = -1;
+
+		/** First unused node, the unused nodes are linked by left. */
+		protected int free = -1;
+
+		protected int numNodes;
+
+		protected int seed = 0x2545F491;
+
+		/** Nodes in descending order of their scores, see sortDescending. */
+		protected int[] order;
+
+		/** Results of the last query. */
+		protected int posGreater, posEqual, negGreater, negEqual;
+
+		protected double posSumGreater, negSumGreater;
+
+		public ScoreTree(int capacity) {
+			this.value = new double[capacity];
+			this.left = new int[capacity];
+			this.right = new int[capacity];
+			this.priority = new int[capacity];
+			this.pos = new int[capacity];
+			this.neg = new int[capacity];
+			this.subtreePos = new int[capacity];
+			this.subtreeNeg = new int[capacity];
+			this.subtreePosSum = new double[capacity];
+			this.subtreeNegSum = new double[capacity];
+		}
+
+		public void add(double score, boolean isPositive) {
+			this.root = add(this.root, score, isPositive);
+		}
+
+		public void remove(double score, boolean isPositive) {
+			this.root = remove(this.root, score, isPositive);
+		}
+
+		protected int add(int node, double score, boolean isPositive) {
+			if (node < 0) {
+				node = newNode(score);
+				if (isPositive) {
+					this.pos[node]++;
+				} else {
+					this.neg[node]++;
+				}
+			} else if (score < this.value[node]) {
+				// // the arrays may grow while adding to the subtree
+				int child = add(this.left[node], score, isPositive);
+				this.left[node] = child;
+				if (this.priority[this.left[node]] > this.priority[node]) {
+					node = rotateRight(node);
+				}
+			} else if (score > this.value[node]) {
+				// // the arrays may grow while adding to the subtree
+				int child = add(this.right[node], score, isPositive);
+				this.right[node] = child;
+				if (this.priority[this.right[node]] > this.priority[node]) {
+					node = rotateLeft(node);
+				}
+			} else if (isPositive) {
+				this.pos[node]++;
+			} else {
+				this.neg[node]++;
+			}
+			update(node);
+			return node;
+		}
+
+		protected int remove(int node, double score, boolean isPositive) {
+			if (node < 0) {
+				throw new IllegalStateException("Score is not in the window: " + score);
+			}
+			if (score < this.value[node]) {
+				this.left[node] = remove(this.left[node], score, isPositive);
+			} else if (score > this.value[node]) {
+				this.right[node] = remove(this.right[node], score, isPositive);
+			} else {
+				if (isPositive) {
+					this.pos[node]--;
+				} else {
+					this.neg[node]--;
+				}
+				if (this.pos[node] == 0 && this.neg[node] == 0) {
+					return delete(node);
+				}
+			}
+			update(node);
+			return node;
+		}
+
+		/**
+		 * Removes a node by rotating it down to a leaf.
+		 */
+		protected int delete(int node) {
+			int l = this.left[node];
+			int r = this.right[node];
+			if (l < 0 || r < 0) {
+				this.left[node] = this.free;
+				this.free = node;
+				this.numNodes--;
+				return l < 0 ? r : l;
+			}
+			int top;
+			if (this.priority[l] > this.priority[r]) {
+				top = rotateRight(node);
+				this.right[top] = delete(node);
+			} else {
+				top = rotateLeft(node);
+				this.left[top] = delete(node);
+			}
+			update(top);
+			return top;
+		}
+
+		protected int rotateRight(int node) {
+			int l = this.left[node];
+			this.left[node] = this.right[l];
+			this.right[l] = node;
+			update(node);
+			update(l);
+			return l;
+		}
+
+		protected int rotateLeft(int node) {
+			int r = this.right[node];
+			this.right[node] = this.left[r];
+			this.left[r] = node;
+			update(node);
+			update(r);
+			return r;
+		}
+
+		protected void update(int node) {
+			int l = this.left[node];
+			int r = this.right[node];
+			this.subtreePos[node] = this.pos[node];
+			this.subtreeNeg[node] = this.neg[node];
+			this.subtreePosSum[node] = this.pos[node] * this.value[node];
+			this.subtreeNegSum[node] = this.neg[node] * this.value[node];
+			if (l >= 0) {
+				this.subtreePos[node] += this.subtreePos[l];
+				this.subtreeNeg[node] += this.subtreeNeg[l];
+				this.subtreePosSum[node] += this.subtreePosSum[l];
+				this.subtreeNegSum[node] += this.subtreeNegSum[l];
+			}
+			if (r >= 0) {
+				this.subtreePos[node] += this.subtreePos[r];
+				this.subtreeNeg[node] += this.subtreeNeg[r];
+				this.subtreePosSum[node] += this.subtreePosSum[r];
+				this.subtreeNegSum[node] += this.subtreeNegSum[r];
+			}
+		}
+
+		protected int newNode(double score) {
+			int node;
+			if (this.free >= 0) {
+				node = this.free;
+				this.free = this.left[node];
+			} else {
+				if (this.numNodes == this.value.length) {
+					grow();
+				}
+				node = this.numNodes;
+			}
+			this.numNodes++;
+			// // xorshift random priorities keep the tree balanced
+			this.seed ^= this.seed << 13;
+			this.seed ^= this.seed >>> 17;
+			this.seed ^= this.seed << 5;
+			this.value[node] = score;
+			this.left[node] = -1;
+			this.right[node] = -1;
+			this.priority[node] = this.seed;
+			this.pos[node] = 0;
+			this.neg[node] = 0;
+			return node;
+		}
+
+		protected void grow() {
+			int capacity = this.value.length * 2;
+			this.value = Arrays.copyOf(this.value, capacity);
+			this.left = Arrays.copyOf(this.left, capacity);
+			this.right = Arrays.copyOf(this.right, capacity);
+			this.priority = Arrays.copyOf(this.priority, capacity);
+			this.pos = Arrays.copyOf(this.pos, capacity);
+			this.neg = Arrays.copyOf(this.neg, capacity);
+			this.subtreePos = Arrays.copyOf(this.subtreePos, capacity);
+			this.subtreeNeg = Arrays.copyOf(this.subtreeNeg, capacity);
+			this.subtreePosSum = Arrays.copyOf(this.subtreePosSum, capacity);
+			this.subtreeNegSum = Arrays.copyOf(this.subtreeNegSum, capacity);
+		}
+
+		/**
+		 * Counts the examples with a higher and with the same score as the
+		 * given one, and sums the higher scores. The results are stored in
+		 * the query fields.
+		 */
+		public void query(double score) {
+			this.posGreater = 0;
+			this.negGreater = 0;
+			this.posEqual = 0;
+			this.negEqual = 0;
+			this.posSumGreater = 0;
+			this.negSumGreater = 0;
+			int node = this.root;
+			while (node >= 0) {
+				boolean equal = score == this.value[node];
+				if (equal || score < this.value[node]) {
+					int r = this.right[node];
+					if (r >= 0) {
+						this.posGreater += this.subtreePos[r];
+						this.negGreater += this.subtreeNeg[r];
+						this.posSumGreater += this.subtreePosSum[r];
+						this.negSumGreater += this.subtreeNegSum[r];
+					}
+					if (equal) {
+						this.posEqual = this.pos[node];
+						this.negEqual = this.neg[node];
+						return;
+					}
+					this.posGreater += this.pos[node];
+					this.negGreater += this.neg[node];
+					this.posSumGreater += this.pos[node] * this.value[node];
+					this.negSumGreater += this.neg[node] * this.value[node];
+					node = this.left[node];
+				} else {
+					node = this.right[node];
+				}
+			}
+		}
+
+		/**
+		 * Stores the nodes in descending order of their scores in order.
+		 *
+		 * @return the number of nodes
+		 */
+		public int sortDescending() {
+			if (this.order == null || this.order.length < this.numNodes) {
+				this.order = new int[this.value.length];
+			}
+			int[] stack = new int[this.numNodes];
+			int stackSize = 0;
+			int count = 0;
+			int node = this.root;
+			while (node >= 0 || stackSize > 0) {
+				while (node >= 0) {
+					stack[stackSize++] = node;
+					node = this.right[node];
+				}
+				node = stack[--stackSize];
+				this.order[count++] = node;
+				node = this.left[node];
+			}
+			return count;
+		}
+	}
+
 	@Override
 	public void reset() {
 		reset(this.numClasses);
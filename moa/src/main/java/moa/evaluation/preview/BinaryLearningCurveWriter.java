@@ -0,0 +1,237 @@
+/*
+ *    BinaryLearningCurveWriter.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.evaluation.preview;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import moa.core.Measurement;
+
+/**
+ * Writes the entries of a learning curve to a binary file while a task is
+ * running. The columns are fixed by the measurements of the first entry.
+ * Every entry is then stored as one row of doubles in a buffer that is only
+ * written to the file when it is full, on <code>flush</code> and on
+ * <code>close</code>. Measurements of later entries whose name is not a
+ * column are ignored, and columns without a measurement are stored as NaN.
+ *
+ * The file starts with a magic number, the number of columns and the
+ * column names in UTF-8, followed by the rows. <code>read</code> loads a
+ * file as a <code>LearningCurve</code>, and <code>exportCSV</code> writes it
+ * in the csv format of the learning curve.
+ */
+public class BinaryLearningCurveWriter implements Closeable {
+
+    /** "MOAL" followed by the version of the format. */
+    protected static final long MAGIC = 0x4D4F414C00000001L;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    protected final File file;
+
+    protected final FileChannel channel;
+
+    protected final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    protected String[] columnNames;
+
+    protected Map<String, Integer> columnIndices;
+
+    protected double[] row;
+
+    protected long numRows;
+
+    public BinaryLearningCurveWriter(File file) {
+        this.file = file;
+        try {
+            this.channel = new FileOutputStream(file).getChannel();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to open learning curve file: " + file, ex);
+        }
+    }
+
+    /**
+     * Appends an entry. The first entry fixes the columns.
+     *
+     * @param measurements the measurements of the entry
+     */
+    public void append(Measurement[] measurements) {
+        if (this.columnNames == null) {
+            writeHeader(measurements);
+        }
+        Arrays.fill(this.row, Double.NaN);
+        for (Measurement measurement : measurements) {
+            Integer index = this.columnIndices.get(measurement.getName());
+            if (index != null) {
+                this.row[index] = measurement.getValue();
+            }
+        }
+        for (double value : this.row) {
+            if (this.buffer.remaining() < 8) {
+                writeBuffer();
+            }
+            this.buffer.putDouble(value);
+        }
+        this.numRows++;
+    }
+
+    protected void writeHeader(Measurement[] measurements) {
+        this.columnNames = new String[measurements.length];
+        this.columnIndices = new HashMap<String, Integer>();
+        for (int i = 0; i < measurements.length; i++) {
+            this.columnNames[i] = measurements[i].getName();
+            this.columnIndices.put(this.columnNames[i], i);
+        }
+        this.row = new double[measurements.length];
+        this.buffer.putLong(MAGIC);
+        this.buffer.putInt(this.columnNames.length);
+        for (String name : this.columnNames) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (this.buffer.remaining() < 4 + bytes.length) {
+                writeBuffer();
+            }
+            this.buffer.putInt(bytes.length);
+            this.buffer.put(bytes);
+        }
+    }
+
+    public int getColumnCount() {
+        return this.columnNames == null ? 0 : this.columnNames.length;
+    }
+
+    public long getRowCount() {
+        return this.numRows;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    protected void writeBuffer() {
+        this.buffer.flip();
+        try {
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write learning curve file: " + this.file, ex);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Writes the buffered entries to the file.
+     */
+    public void flush() {
+        writeBuffer();
+    }
+
+    @Override
+    public void close() {
+        writeBuffer();
+        try {
+            this.channel.close();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to close learning curve file: " + this.file, ex);
+        }
+    }
+
+    /**
+     * Reads a binary learning curve file.
+     *
+     * @param file the file
+     * @return the learning curve, with the first column as ordering
+     * measurement
+     * @throws IOException if the file cannot be read or has a wrong format
+     */
+    public static LearningCurve read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), BUFFER_SIZE));
+        try {
+            List<String> names = new ArrayList<String>();
+            List<double[]> rows = new ArrayList<double[]>();
+            long magic;
+            try {
+                magic = in.readLong();
+            } catch (EOFException ex) {
+                // No entry was written
+                return new LearningCurve("learning evaluation instances");
+            }
+            if (magic != MAGIC) {
+                throw new IOException("Not a binary learning curve file: " + file);
+            }
+            int numColumns = in.readInt();
+            for (int i = 0; i < numColumns; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                names.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            while (true) {
+                double[] row = new double[numColumns];
+                try {
+                    for (int i = 0; i < numColumns; i++) {
+                        row[i] = in.readDouble();
+                    }
+                } catch (EOFException ex) {
+                    break;
+                }
+                rows.add(row);
+            }
+            LearningCurve curve = new LearningCurve(names.get(0));
+            curve.setData(names, rows);
+            return curve;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a binary learning curve file in csv format, with the same
+     * header and number format as <code>LearningCurve</code>.
+     *
+     * @param file the binary file
+     * @param out the stream to write the csv lines to
+     * @param withHeader whether to write the header line
+     * @throws IOException if the file cannot be read
+     */
+    public static void exportCSV(File file, PrintStream out, boolean withHeader) throws IOException {
+        LearningCurve curve = read(file);
+        if (withHeader && curve.numEntries() > 0) {
+            out.println(curve.headerToString());
+        }
+        for (int i = 0; i < curve.numEntries(); i++) {
+            out.println(curve.entryToString(i));
+        }
+        out.flush();
+    }
+}
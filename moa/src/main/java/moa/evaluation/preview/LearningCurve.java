@@ -88,6 +88,19 @@ public class LearningCurve extends Preview {
         this.measurementValues.add(index, entryVals.getArrayRef());
     }
 
+    /**
+     * Gets a copy of this learning curve for previews. Entries are never
+     * changed once inserted, so the copy shares them with this curve and
+     * only the lists are copied, which is much cheaper than a deep copy.
+     *
+     * @return the copy
+     */
+    public LearningCurve snapshot() {
+        LearningCurve curve = new LearningCurve(getOrderingMeasurementName(), this.taskClass);
+        curve.setData(this.measurementNames, this.measurementValues);
+        return curve;
+    }
+
     public int numEntries() {
         return this.measurementValues.size();
     }
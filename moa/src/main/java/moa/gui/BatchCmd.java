@@ -128,8 +128,20 @@ public class BatchCmd implements ClusterEventListener{
 
 	public static void runBatch(ClusteringStream stream, AbstractClusterer clusterer,
 			boolean[] measureCollection, int amountInstances, String outputFile){
+		runBatch(stream, clusterer, measureCollection, amountInstances, outputFile, 0.0);
+	}
+
+
+	/**
+	 * Runs the batch job as above, but estimates the silhouette coefficient
+	 * on a sample of the points within the given error bound.
+	 * A bound of 0 computes the exact coefficient.
+	 */
+	public static void runBatch(ClusteringStream stream, AbstractClusterer clusterer,
+			boolean[] measureCollection, int amountInstances, String outputFile,
+			double silhouetteErrorBound){
 		// create the measure collection 
-		MeasureCollection[] measures = getMeasures(getMeasureSelection(measureCollection));
+		MeasureCollection[] measures = createMeasures(measureCollection, silhouetteErrorBound);
 		
 		// run the batch job
 		BatchCmd batch = new BatchCmd(clusterer, stream, measures, amountInstances);
@@ -214,6 +226,22 @@ public class BatchCmd implements ClusterEventListener{
 		}
 	}
 
+	/**
+	 * Creates new instances of the selected measure collections.
+	 * @param measureCollection the selection of measure collections
+	 * @param silhouetteErrorBound error bound of the silhouette coefficient (0 = exact)
+	 * @return the measures
+	 */
+	static MeasureCollection[] createMeasures(boolean[] measureCollection, double silhouetteErrorBound){
+		MeasureCollection[] measures = getMeasures(getMeasureSelection(measureCollection));
+		for (MeasureCollection m : measures) {
+			if (m instanceof SilhouetteCoefficient) {
+				((SilhouetteCoefficient) m).errorBound = silhouetteErrorBound;
+			}
+		}
+		return measures;
+	}
+
 	@SuppressWarnings("unchecked")
 	private static MeasureCollection[] getMeasures(ArrayList<Class> measure_classes){
 		MeasureCollection[] measures = new MeasureCollection[measure_classes.size()];
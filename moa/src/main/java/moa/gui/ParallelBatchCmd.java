@@ -0,0 +1,377 @@
+/**
+ * ParallelBatchCmd.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ *
+ */
+
+package moa.gui;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import moa.cluster.Cluster;
+import moa.cluster.Clustering;
+import moa.cluster.SphereCluster;
+import moa.clusterers.AbstractClusterer;
+import moa.clusterers.ClusterGenerator;
+import moa.core.TimingUtils;
+import moa.evaluation.MeasureCollection;
+import moa.gui.visualization.DataPoint;
+import moa.streams.clustering.ClusterEvent;
+import moa.streams.clustering.ClusterEventListener;
+import moa.streams.clustering.ClusteringStream;
+import moa.streams.clustering.RandomRBFGeneratorEvents;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Evaluates several clusterers on the same stream at the same time, like
+ * {@link BatchCmd} does for a single clusterer.
+ *
+ * The stream is read once. Batches of instances are broadcast to one worker
+ * thread per clusterer through bounded queues, so a fast clusterer can run
+ * ahead of a slow one by at most the capacity of its queue. Each worker keeps
+ * its own copy of the points of the current horizon and evaluates its own
+ * measures at the end of the horizon, which is the only point where the
+ * workers depend on the stream state. The CPU time of training and of the
+ * evaluation is measured separately on each worker thread.
+ */
+public class ParallelBatchCmd implements ClusterEventListener{
+
+	/** Number of instances in a batch that is passed to the workers. */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/** Number of batches that may wait in the queue of each worker. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	private ArrayList<ClusterEvent> clusterEvents;
+	private AbstractClusterer[] clusterers;
+	private ClusteringStream stream;
+	private MeasureCollection[][] measures;
+
+	private int totalInstances;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+	private long[] trainingTimes;
+	private long[] evaluationTimes;
+
+
+	/**
+	 * @param clusterers the clusterers to evaluate
+	 * @param stream the stream all clusterers are trained on
+	 * @param measures the measures of each clusterer, must not be shared
+	 * @param totalInstances number of instances to process, -1 for the whole stream
+	 */
+	public ParallelBatchCmd(AbstractClusterer[] clusterers, ClusteringStream stream, MeasureCollection[][] measures, int totalInstances){
+		this.clusterers = clusterers;
+		this.stream = stream;
+		if(totalInstances == -1)
+			this.totalInstances = Integer.MAX_VALUE;
+		else
+			this.totalInstances = totalInstances;
+		this.measures = measures;
+
+		if(stream instanceof RandomRBFGeneratorEvents){
+			((RandomRBFGeneratorEvents)stream).addClusterChangeListener(this);
+			clusterEvents = new ArrayList<ClusterEvent>();
+		}
+		else{
+			clusterEvents = null;
+		}
+		stream.prepareForUse();
+		for (AbstractClusterer clusterer : clusterers) {
+			clusterer.prepareForUse();
+		}
+		trainingTimes = new long[clusterers.length];
+		evaluationTimes = new long[clusterers.length];
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Runs all clusterers and the given measures on the stream and writes the
+	 * results of clusterer i to outputFiles[i].
+	 * @return the CPU seconds spent on training (row 0) and on the evaluation
+	 * (row 1) of each clusterer
+	 */
+	public static double[][] runBatch(ClusteringStream stream, AbstractClusterer[] clusterers,
+			boolean[] measureCollection, int amountInstances, String[] outputFiles,
+			double silhouetteErrorBound){
+		// every clusterer needs its own measures, as they store the values
+		MeasureCollection[][] measures = new MeasureCollection[clusterers.length][];
+		for (int i = 0; i < clusterers.length; i++) {
+			measures[i] = BatchCmd.createMeasures(measureCollection, silhouetteErrorBound);
+		}
+
+		// run the batch job
+		ParallelBatchCmd batch = new ParallelBatchCmd(clusterers, stream, measures, amountInstances);
+		batch.run();
+
+		// write results to files
+		int horizon = stream.decayHorizonOption.getValue();
+		for (int i = 0; i < clusterers.length; i++) {
+			BatchCmd.exportCSV(outputFiles[i], batch.getEventList(), measures[i], horizon);
+		}
+
+		double[][] times = new double[2][clusterers.length];
+		for (int i = 0; i < clusterers.length; i++) {
+			times[0][i] = batch.getTrainingTime(i);
+			times[1][i] = batch.getEvaluationTime(i);
+		}
+		return times;
+	}
+
+
+	public void run(){
+		TimingUtils.enablePreciseTiming();
+		int decayHorizon = stream.getDecayHorizon();
+		double decay_threshold = stream.getDecayThreshold();
+		double decay_rate = (-1*Math.log(decay_threshold)/decayHorizon);
+
+		boolean needsSourceClustering = false;
+		for (AbstractClusterer clusterer : clusterers) {
+			if(clusterer instanceof ClusterGenerator && clusterer.implementsMicroClusterer())
+				needsSourceClustering = true;
+		}
+		needsSourceClustering &= stream instanceof RandomRBFGeneratorEvents;
+
+		Worker[] workers = new Worker[clusterers.length];
+		for (int i = 0; i < clusterers.length; i++) {
+			workers[i] = new Worker(i, decay_rate);
+			workers[i].start();
+		}
+
+		int m_timestamp = 0;
+		int counter = decayHorizon;
+		Batch batch = new Batch(batchSize);
+		try {
+			while(m_timestamp < totalInstances && stream.hasMoreInstances()){
+				m_timestamp++;
+				counter--;
+				Instance next = stream.nextInstance().getData();
+				if(m_timestamp == 1){
+					// DataPoint looks up the noise label, which may add it to the
+					// shared header, so do this once before the workers see it
+					next.dataset().classAttribute().indexOfValue("noise");
+				}
+				batch.instances[batch.size++] = next;
+				batch.timestamp = m_timestamp;
+
+				if(counter <= 0){
+					batch.horizonEnd = true;
+					if(needsSourceClustering)
+						batch.sourceClustering = copyClustering(((RandomRBFGeneratorEvents)stream).getMicroClustering());
+					counter = decayHorizon;
+				}
+				if(batch.horizonEnd || batch.size == batchSize){
+					broadcast(workers, batch);
+					batch = new Batch(batchSize);
+				}
+			}
+			// partial batches at the end are trained on, but not evaluated
+			batch.last = true;
+			broadcast(workers, batch);
+			for (Worker worker : workers) {
+				worker.join();
+			}
+		} catch (InterruptedException ex) {
+			for (Worker worker : workers) {
+				worker.interrupt();
+			}
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		for (Worker worker : workers) {
+			if(worker.failure != null)
+				throw new RuntimeException("Evaluation of "+clusterers[worker.index].getClass().getSimpleName()+" failed", worker.failure);
+		}
+	}
+
+	private void broadcast(Worker[] workers, Batch batch) throws InterruptedException{
+		for (Worker worker : workers) {
+			worker.queue.put(batch);
+		}
+	}
+
+	/**
+	 * The micro clusters of the stream keep changing while the workers
+	 * evaluate, so they get a copy of the state at the horizon.
+	 */
+	private static Clustering copyClustering(Clustering clustering){
+		Clustering copy = new Clustering();
+		for (Cluster c : clustering.getClustering()) {
+			SphereCluster sc = new SphereCluster(c.getCenter(), ((SphereCluster)c).getRadius(), c.getWeight());
+			sc.setId(c.getId());
+			sc.setGroundTruth(c.getGroundTruth());
+			copy.add(sc);
+		}
+		return copy;
+	}
+
+	ArrayList<ClusterEvent> getEventList(){
+		return clusterEvents;
+	}
+
+	/**
+	 * @param index index of the clusterer
+	 * @return CPU seconds the clusterer spent on training and on creating its clusterings
+	 */
+	public double getTrainingTime(int index){
+		return TimingUtils.nanoTimeToSeconds(trainingTimes[index]);
+	}
+
+	/**
+	 * @param index index of the clusterer
+	 * @return CPU seconds spent on evaluating the measures of the clusterer
+	 */
+	public double getEvaluationTime(int index){
+		return TimingUtils.nanoTimeToSeconds(evaluationTimes[index]);
+	}
+
+	public void changeCluster(ClusterEvent e) {
+		if(clusterEvents!=null) clusterEvents.add(e);
+	}
+
+
+	/**
+	 * Instances that are passed to all workers. The instances are only read
+	 * by the workers, every worker makes its own copies.
+	 */
+	private static class Batch{
+		final Instance[] instances;
+		int size;
+		/** timestamp of the last instance in the batch */
+		int timestamp;
+		/** the batch ends a horizon, the clusterers are evaluated afterwards */
+		boolean horizonEnd;
+		/** the micro clustering of the stream at the end of the horizon */
+		Clustering sourceClustering;
+		/** no more batches will follow */
+		boolean last;
+
+		Batch(int capacity){
+			instances = new Instance[capacity];
+		}
+	}
+
+
+	/**
+	 * Trains and evaluates a single clusterer.
+	 */
+	private class Worker extends Thread{
+		final int index;
+		final BlockingQueue<Batch> queue;
+		final double decay_rate;
+		final ArrayList<DataPoint> pointBuffer = new ArrayList<DataPoint>();
+		volatile Throwable failure;
+
+		Worker(int index, double decay_rate){
+			super("ParallelBatchCmd-"+clusterers[index].getClass().getSimpleName()+"-"+index);
+			this.index = index;
+			this.decay_rate = decay_rate;
+			this.queue = new ArrayBlockingQueue<Batch>(queueCapacity);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run(){
+			AbstractClusterer clusterer = clusterers[index];
+			Instance[] traininst = new Instance[batchSize];
+			try {
+				while(true){
+					Batch batch = queue.take();
+					// keep draining after a failure so the stream is not blocked
+					if(failure == null){
+						try {
+							process(clusterer, batch, traininst);
+						} catch (Throwable t) {
+							failure = t;
+						}
+					}
+					if(batch.last)
+						return;
+				}
+			} catch (InterruptedException ex) {
+				// the run was cancelled
+			}
+		}
+
+		private void process(AbstractClusterer clusterer, Batch batch, Instance[] traininst){
+			int firstTimestamp = batch.timestamp - batch.size + 1;
+			for (int i = 0; i < batch.size; i++) {
+				DataPoint point0 = new DataPoint(batch.instances[i], firstTimestamp + i);
+				pointBuffer.add(point0);
+				traininst[i] = new DenseInstance(point0);
+				if(clusterer instanceof ClusterGenerator)
+					traininst[i].setDataset(point0.dataset());
+				else
+					traininst[i].deleteAttributeAt(point0.classIndex());
+			}
+
+			long start = TimingUtils.getNanoCPUTimeOfCurrentThread();
+			for (int i = 0; i < batch.size; i++) {
+				clusterer.trainOnInstanceImpl(traininst[i]);
+				traininst[i] = null;
+			}
+			trainingTimes[index] += TimingUtils.getNanoCPUTimeOfCurrentThread() - start;
+
+			if(batch.horizonEnd)
+				evaluate(clusterer, batch);
+		}
+
+		private void evaluate(AbstractClusterer clusterer, Batch batch){
+			for(DataPoint p:pointBuffer)
+				p.updateWeight(batch.timestamp, decay_rate);
+
+			Clustering gtClustering0 = new Clustering(pointBuffer);
+			long start = TimingUtils.getNanoCPUTimeOfCurrentThread();
+			Clustering clustering0 = clusterer.getClusteringResult();
+			if(clusterer.implementsMicroClusterer()){
+				if(clusterer instanceof ClusterGenerator && batch.sourceClustering != null){
+					((ClusterGenerator)clusterer).setSourceClustering(batch.sourceClustering);
+				}
+				Clustering microC = clusterer.getMicroClusteringResult();
+				if(clusterer.evaluateMicroClusteringOption.isSet()){
+					clustering0 = microC;
+				}
+				else{
+					if(clustering0 == null && microC != null)
+						clustering0 = moa.clusterers.KMeans.gaussianMeans(gtClustering0, microC);
+				}
+			}
+			long end = TimingUtils.getNanoCPUTimeOfCurrentThread();
+			trainingTimes[index] += end - start;
+
+			MeasureCollection[] m = measures[index];
+			for (int i = 0; i < m.length; i++) {
+				try {
+					m[i].evaluateClusteringPerformance(clustering0, gtClustering0, pointBuffer);
+				} catch (Exception ex) { ex.printStackTrace(); }
+			}
+			evaluationTimes[index] += TimingUtils.getNanoCPUTimeOfCurrentThread() - end;
+
+			pointBuffer.clear();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *    PrefetchingStream.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.streams;
+
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+
+import moa.AbstractMOAObject;
+import moa.core.Example;
+import moa.core.SPSCRingBuffer;
+import moa.core.TimingUtils;
+
+/**
+ * Stream that reads another stream on a separate producer thread. The
+ * examples are handed over through a bounded single-producer/single-consumer
+ * ring buffer, so generating or parsing the next examples overlaps with the
+ * work of the consumer, which still receives them in exactly the same order.
+ *
+ * The source stream must not be used by any other thread while it is being
+ * prefetched. The CPU time spent in the source stream is measured on the
+ * producer thread and can be read with <code>getStreamTime</code>.
+ */
+public class PrefetchingStream extends AbstractMOAObject implements ExampleStream<Example> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of examples between updates of the producer statistics. */
+    private static final int UPDATE_INTERVAL = 1024;
+
+    protected final ExampleStream<?> source;
+
+    protected final InstancesHeader header;
+
+    protected final long maxInstances;
+
+    protected transient SPSCRingBuffer<Example> buffer;
+
+    protected transient Thread producer;
+
+    protected volatile long streamTime;
+
+    protected volatile long sourceRemainingInstances;
+
+    /**
+     * Creates a prefetching stream and starts the producer thread.
+     *
+     * @param source the stream to read
+     * @param bufferSize the number of examples that can be read ahead
+     * @param maxInstances the number of examples to read at most, -1 for no
+     * limit
+     */
+    public PrefetchingStream(ExampleStream<?> source, int bufferSize, long maxInstances) {
+        this.source = source;
+        this.header = source.getHeader();
+        this.maxInstances = maxInstances;
+        this.sourceRemainingInstances = source.estimatedRemainingInstances();
+        this.buffer = new SPSCRingBuffer<Example>(bufferSize);
+        this.producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                produce();
+            }
+        }, "MOA stream prefetcher");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    protected void produce() {
+        TimingUtils.enablePreciseTiming();
+        long startTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+        long produced = 0;
+        try {
+            while ((this.maxInstances < 0 || produced < this.maxInstances)
+                    && this.source.hasMoreInstances()) {
+                if (!this.buffer.put(this.source.nextInstance())) {
+                    break;
+                }
+                produced++;
+                if (produced % UPDATE_INTERVAL == 0) {
+                    this.streamTime = TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+                    this.sourceRemainingInstances = this.source.estimatedRemainingInstances();
+                }
+            }
+            this.streamTime = TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+            this.sourceRemainingInstances = 0;
+            this.buffer.close();
+        } catch (Throwable t) {
+            this.buffer.fail(t);
+        }
+    }
+
+    /**
+     * Gets the CPU time used by the source stream so far. The value is
+     * updated every few thousand examples and when the source is exhausted.
+     *
+     * @return the CPU time of the producer thread in nanoseconds
+     */
+    public long getStreamTime() {
+        return this.streamTime;
+    }
+
+    /**
+     * Stops the producer thread and waits for it to finish. Examples that
+     * were read ahead are discarded.
+     */
+    public void stop() {
+        this.buffer.cancel();
+        try {
+            this.producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        return this.header;
+    }
+
+    @Override
+    public long estimatedRemainingInstances() {
+        long remaining = this.sourceRemainingInstances;
+        return remaining < 0 ? -1 : remaining + this.buffer.size();
+    }
+
+    @Override
+    public boolean hasMoreInstances() {
+        return this.buffer.awaitElement();
+    }
+
+    @Override
+    public Example nextInstance() {
+        return this.buffer.take();
+    }
+
+    @Override
+    public boolean isRestartable() {
+        return false;
+    }
+
+    @Override
+    public void restart() {
+        throw new UnsupportedOperationException("Prefetching streams cannot be restarted.");
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        sb.append("Prefetching ");
+        this.source.getDescription(sb, indent);
+    }
+}
@@ -16,6 +16,7 @@ package moa.streams.generators;
  * 
  */
 
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.*;
 import moa.core.InstanceExample;
@@ -25,6 +26,7 @@ import moa.streams.InstanceStream;
 import moa.tasks.TaskMonitor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -41,6 +43,9 @@ public class TextGenerator extends AbstractOptionHandler implements InstanceStre
             "instanceRandomSeed", 'i',
             "Seed for random generation of instances.", 1);
 
+    public FlagOption sparseOption = new FlagOption("sparse", 's',
+            "Generate sparse instances with numeric word attributes, instead of dense instances with nominal ones.");
+
     protected InstancesHeader streamHeader;
 
     protected Random instanceRandom;
@@ -76,8 +81,9 @@ public class TextGenerator extends AbstractOptionHandler implements InstanceStre
     @Override
     public InstanceExample nextInstance() {
         int[] votes;
-        double[] attVals;
-        attVals = new double[this.numAttsOption.getValue() + 1];
+        // The words of rejected tweets are kept, as in earlier versions
+        int[] words = new int[64];
+        int numWords = 0;
 
         do {
             int length = (int) (lengthTweet * (1.0 + this.instanceRandom.nextGaussian()));
@@ -99,19 +105,60 @@ public class TextGenerator extends AbstractOptionHandler implements InstanceStre
                     }
                 } while ((this.sumFreqTwitterGenerator[mid] != rand) && (min <= max));
 
-                attVals[this.wordTwitterGenerator[mid]] = 1;
+                if (numWords == words.length) {
+                    words = Arrays.copyOf(words, 2 * numWords);
+                }
+                words[numWords++] = this.wordTwitterGenerator[mid];
                 votes[this.classTwitterGenerator[mid]]++;
 
             }
         } while (votes[1] == votes[2]);
 
-        Instance inst = new SparseInstance(1.0, attVals);
-        inst.setDataset(getHeader());
-        inst.setClassValue((votes[1] > votes[2]) ? 0 : 1);
+        int classValue = (votes[1] > votes[2]) ? 0 : 1;
+        Instance inst = this.sparseOption.isSet() ? newSparseInstance(words, numWords, classValue)
+                : newDenseInstance(words, numWords, classValue);
         this.countTweets++;
         return new InstanceExample(inst);
     }
 
+    protected Instance newDenseInstance(int[] words, int numWords, int classValue) {
+        double[] attVals = new double[this.numAttsOption.getValue() + 1];
+        for (int j = 0; j < numWords; j++) {
+            attVals[words[j]] = 1;
+        }
+        Instance inst = new SparseInstance(1.0, attVals);
+        inst.setDataset(getHeader());
+        inst.setClassValue(classValue);
+        return inst;
+    }
+
+    /**
+     * Creates an instance that stores the distinct words and the class only,
+     * with the same values as the dense instance of the words.
+     */
+    protected Instance newSparseInstance(int[] words, int numWords, int classValue) {
+        int classIndex = this.numAttsOption.getValue();
+        Arrays.sort(words, 0, numWords);
+        int[] indexValues = new int[numWords + 1];
+        double[] attributeValues = new double[numWords + 1];
+        int numValues = 0;
+        for (int j = 0; j < numWords; j++) {
+            // The class value takes the place of a word with the index of the class
+            if (words[j] != classIndex && (numValues == 0 || indexValues[numValues - 1] != words[j])) {
+                indexValues[numValues] = words[j];
+                attributeValues[numValues] = 1;
+                numValues++;
+            }
+        }
+        indexValues[numValues] = classIndex;
+        attributeValues[numValues] = classValue;
+        numValues++;
+        Instance inst = new SparseInstance(1.0, Arrays.copyOf(attributeValues, numValues),
+                Arrays.copyOf(indexValues, numValues), classIndex + 1);
+        inst.setDataset(getHeader());
+        return inst;
+    }
+
     @Override
     public boolean isRestartable() {
         return true;
@@ -164,7 +211,8 @@ public class TextGenerator extends AbstractOptionHandler implements InstanceStre
         }
         ArrayList<Attribute> attributes = new ArrayList();
         for (int i = 0; i < this.numAttsOption.getValue(); i++) {
-            attributes.add(new Attribute("att" + (i + 1), classLabels));
+            attributes.add(this.sparseOption.isSet() ? new Attribute("att" + (i + 1))
+                    : new Attribute("att" + (i + 1), classLabels));
         }
         attributes.add(new Attribute("class", classLabels));
         this.streamHeader = new InstancesHeader(new Instances(
@@ -0,0 +1,420 @@
+/*
+ *    AsyncPredictionWriter.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Prediction;
+
+import moa.core.SPSCRingBuffer;
+
+/**
+ * Writes the output predictions of an evaluation task on a background
+ * thread. The task fills a large direct buffer, which is handed to the
+ * writer thread when it is full while the task continues with a spare
+ * buffer. The file is only written when a buffer is full, and only flushed
+ * and synchronized with the disk on <code>flush</code>, <code>sync</code>
+ * and <code>close</code>.
+ *
+ * The predictions are either written as text lines or in a binary format.
+ * A binary file starts with a magic number, followed by one record per
+ * prediction: the index of the instance, the number of outputs, and for
+ * every output the true value (NaN if it is missing), the number of votes
+ * and the votes. <code>exportCSV</code> converts a binary file to text.
+ */
+public class AsyncPredictionWriter implements Closeable {
+
+    /** "MOAP" followed by the version of the format. */
+    protected static final long MAGIC = 0x4D4F415000000001L;
+
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    private static final int NUM_BUFFERS = 2;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    protected final File file;
+
+    protected final boolean binary;
+
+    protected final FileChannel channel;
+
+    /** Buffers that are full, from the task to the writer thread. */
+    protected final SPSCRingBuffer<ByteBuffer> fullBuffers;
+
+    /** Buffers that were written, from the writer thread to the task. */
+    protected final SPSCRingBuffer<ByteBuffer> freeBuffers;
+
+    /** Buffers that the task can fill next. */
+    protected final ArrayDeque<ByteBuffer> spareBuffers = new ArrayDeque<ByteBuffer>();
+
+    protected ByteBuffer buffer;
+
+    /** Number of buffers held by the writer thread. */
+    protected int pendingBuffers;
+
+    protected final Thread writerThread;
+
+    protected boolean closed;
+
+    /** The error that stopped the writer thread, if any. */
+    protected volatile Throwable writerError;
+
+    /**
+     * Opens a prediction file and starts the writer thread. Predictions are
+     * appended if the file exists, which must then have the same format.
+     *
+     * @param file the file
+     * @param binary whether to use the binary format
+     */
+    public AsyncPredictionWriter(File file, boolean binary) {
+        this.file = file;
+        this.binary = binary;
+        boolean append = file.exists() && file.length() > 0;
+        if (append) {
+            checkExistingFormat(file, binary);
+        }
+        try {
+            this.channel = new FileOutputStream(file, append).getChannel();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to open prediction result file: " + file, ex);
+        }
+        this.fullBuffers = new SPSCRingBuffer<ByteBuffer>(NUM_BUFFERS);
+        this.freeBuffers = new SPSCRingBuffer<ByteBuffer>(NUM_BUFFERS);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        for (int i = 1; i < NUM_BUFFERS; i++) {
+            this.spareBuffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        if (binary && !append) {
+            this.buffer.putLong(MAGIC);
+        }
+        this.writerThread = new Thread("MOA prediction output") {
+
+            @Override
+            public void run() {
+                writeBuffers();
+            }
+        };
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public boolean isBinary() {
+        return this.binary;
+    }
+
+    /**
+     * Writes a line of text. Only valid for text output.
+     *
+     * @param line the line, without line separator
+     */
+    public void writeLine(String line) {
+        checkFormat(false);
+        int length = line.length();
+        if (length + LINE_SEPARATOR.length <= BUFFER_SIZE) {
+            reserve(length + LINE_SEPARATOR.length);
+            int start = this.buffer.position();
+            for (int i = 0; i < length; i++) {
+                char c = line.charAt(i);
+                if (c >= 0x80) {
+                    // Not ASCII, encode the whole line
+                    this.buffer.position(start);
+                    putBytes(line.getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                this.buffer.put((byte) c);
+            }
+        } else {
+            putBytes(line.getBytes(StandardCharsets.UTF_8));
+        }
+        putBytes(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the prediction for an instance with one output. Only valid for
+     * binary output.
+     *
+     * @param index the index of the instance
+     * @param trueValue the true value, NaN if it is missing
+     * @param votes the votes of the learner
+     */
+    public void write(long index, double trueValue, double[] votes) {
+        checkFormat(true);
+        reserve(8 + 4);
+        this.buffer.putLong(index);
+        this.buffer.putInt(1);
+        putOutput(trueValue, votes);
+    }
+
+    /**
+     * Writes the prediction for an instance with one or several outputs.
+     * Only valid for binary output.
+     *
+     * @param index the index of the instance
+     * @param instance the instance, with the true values of the outputs
+     * @param prediction the prediction of the learner
+     */
+    public void write(long index, Instance instance, Prediction prediction) {
+        checkFormat(true);
+        int numOutputs = instance.numOutputAttributes();
+        reserve(8 + 4);
+        this.buffer.putLong(index);
+        this.buffer.putInt(numOutputs);
+        for (int i = 0; i < numOutputs; i++) {
+            double[] votes = prediction != null && prediction.hasVotesForAttribute(i)
+                    ? prediction.getVotes(i) : null;
+            putOutput(instance.valueOutputAttribute(i), votes);
+        }
+    }
+
+    protected void putOutput(double trueValue, double[] votes) {
+        int numVotes = votes == null ? 0 : votes.length;
+        reserve(8 + 4);
+        this.buffer.putDouble(trueValue);
+        this.buffer.putInt(numVotes);
+        for (int i = 0; i < numVotes; i++) {
+            if (this.buffer.remaining() < 8) {
+                handOff();
+            }
+            this.buffer.putDouble(votes[i]);
+        }
+    }
+
+    protected void putBytes(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!this.buffer.hasRemaining()) {
+                handOff();
+            }
+            int length = Math.min(this.buffer.remaining(), bytes.length - offset);
+            this.buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    protected void checkFormat(boolean binary) {
+        if (this.closed) {
+            throw new IllegalStateException("Prediction file is closed: " + this.file);
+        }
+        if (this.binary != binary) {
+            throw new IllegalStateException("Prediction file is "
+                    + (this.binary ? "binary: " : "text: ") + this.file);
+        }
+    }
+
+    /**
+     * Makes sure the current buffer has room for the given number of bytes.
+     */
+    protected void reserve(int length) {
+        if (this.buffer.remaining() < length) {
+            handOff();
+        }
+    }
+
+    /**
+     * Passes the current buffer to the writer thread and continues with a
+     * spare buffer, waiting for one if all buffers are being written.
+     */
+    protected void handOff() {
+        if (this.buffer.position() == 0) {
+            return;
+        }
+        this.buffer.flip();
+        if (!this.fullBuffers.put(this.buffer)) {
+            throw new RuntimeException("Unable to write prediction result file: " + this.file, this.writerError);
+        }
+        this.pendingBuffers++;
+        this.buffer = this.spareBuffers.poll();
+        if (this.buffer == null) {
+            this.buffer = takeFreeBuffer();
+        }
+    }
+
+    protected ByteBuffer takeFreeBuffer() {
+        ByteBuffer free;
+        try {
+            free = this.freeBuffers.take();
+        } catch (RuntimeException ex) {
+            throw new RuntimeException("Unable to write prediction result file: " + this.file, ex.getCause());
+        }
+        if (free == null) {
+            throw new RuntimeException("Unable to write prediction result file: " + this.file);
+        }
+        this.pendingBuffers--;
+        return free;
+    }
+
+    /**
+     * Runs on the writer thread until the task closes the file.
+     */
+    protected void writeBuffers() {
+        ByteBuffer full;
+        try {
+            while ((full = this.fullBuffers.take()) != null) {
+                while (full.hasRemaining()) {
+                    this.channel.write(full);
+                }
+                full.clear();
+                this.freeBuffers.put(full);
+            }
+            this.freeBuffers.close();
+        } catch (Throwable ex) {
+            // The error is set before the task is released
+            this.writerError = ex;
+            this.freeBuffers.fail(ex);
+            this.fullBuffers.cancel();
+        }
+    }
+
+    /**
+     * Writes all predictions to the file and waits until they are written.
+     */
+    public void flush() {
+        handOff();
+        while (this.pendingBuffers > 0) {
+            this.spareBuffers.add(takeFreeBuffer());
+        }
+    }
+
+    /**
+     * Writes all predictions to the file and forces them to the disk.
+     */
+    public void sync() {
+        flush();
+        try {
+            this.channel.force(true);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to write prediction result file: " + this.file, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            this.closed = true;
+            this.fullBuffers.close();
+            try {
+                this.writerThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                this.channel.close();
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to close prediction result file: " + this.file, ex);
+            }
+        }
+    }
+
+    /**
+     * Checks that predictions in the given format can be appended to an
+     * existing file, so that binary records are not appended to a text file
+     * or the other way round.
+     *
+     * @param file the existing file
+     * @param binary whether the predictions are written in binary format
+     */
+    protected static void checkExistingFormat(File file, boolean binary) {
+        boolean isBinary;
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                isBinary = in.readLong() == MAGIC;
+            } catch (EOFException ex) {
+                isBinary = false;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to read prediction result file: " + file, ex);
+        }
+        if (isBinary != binary) {
+            throw new RuntimeException("Unable to append " + (binary ? "binary" : "text")
+                    + " predictions to prediction result file in another format: " + file);
+        }
+    }
+
+    /**
+     * Writes a binary prediction file in csv format. Every line holds the
+     * index of the instance and, for every output, the true value followed
+     * by the votes.
+     *
+     * @param file the binary file
+     * @param out the stream to write the csv lines to
+     * @throws IOException if the file cannot be read or has a wrong format
+     */
+    public static void exportCSV(File file, PrintStream out) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 1 << 16));
+        try {
+            try {
+                if (in.readLong() != MAGIC) {
+                    throw new IOException("Not a binary prediction file: " + file);
+                }
+            } catch (EOFException ex) {
+                return;
+            }
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                long index;
+                try {
+                    index = in.readLong();
+                } catch (EOFException ex) {
+                    break;
+                }
+                line.setLength(0);
+                line.append(index);
+                int numOutputs = in.readInt();
+                for (int i = 0; i < numOutputs; i++) {
+                    double trueValue = in.readDouble();
+                    line.append(',').append(Double.isNaN(trueValue) ? "?" : Double.toString(trueValue));
+                    int numVotes = in.readInt();
+                    for (int j = 0; j < numVotes; j++) {
+                        line.append(',').append(in.readDouble());
+                    }
+                }
+                out.println(line);
+            }
+            out.flush();
+        } finally {
+            in.close();
+        }
+    }
+}
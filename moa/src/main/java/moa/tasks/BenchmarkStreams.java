@@ -0,0 +1,333 @@
+/*
+ *    BenchmarkStreams.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.IntOption;
+import com.github.javacliparser.ListOption;
+import com.github.javacliparser.Option;
+import com.github.javacliparser.StringOption;
+
+import moa.core.Globals;
+import moa.core.ObjectRepository;
+import moa.core.TimingUtils;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ArffFileStream;
+import moa.streams.ExampleStream;
+
+/**
+ * Task for measuring the speed of many streams in one run, so that the
+ * results of different versions of MOA can be compared. By default all the
+ * generators are measured, together with the filters and concept drift
+ * compositions of generators.
+ *
+ * Every stream is first run for a number of warm up instances, so that the
+ * code is compiled, and then measured several times. The repetition with
+ * the median time is reported: the instances per second of wall clock and
+ * CPU time, the bytes allocated per instance by the thread that reads the
+ * stream, and the number and total time of the garbage collections during
+ * the repetition. Allocation is only measured on virtual machines that
+ * support it, and is missing otherwise.
+ *
+ * The result is a csv table with one line per stream, which is also written
+ * to the output file if one is given.
+ */
+public class BenchmarkStreams extends AuxiliarMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Measures the speed, allocation and garbage collection of a list of streams.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final String[] DEFAULT_STREAMS = {
+        "generators.AgrawalGenerator",
+        "generators.AssetNegotiationGenerator",
+        "generators.HyperplaneGenerator",
+        "generators.LEDGenerator",
+        "generators.LEDGeneratorDrift",
+        "generators.MixedGenerator",
+        "generators.RandomRBFGenerator",
+        "generators.RandomRBFGeneratorDrift",
+        "generators.RandomTreeGenerator",
+        "generators.SEAGenerator",
+        "generators.STAGGERGenerator",
+        "generators.SineGenerator",
+        "generators.TextGenerator",
+        "generators.WaveformGenerator",
+        "generators.WaveformGeneratorDrift",
+        "FilteredStream -s generators.RandomTreeGenerator -f AddNoiseFilter",
+        "FilteredStream -s generators.RandomTreeGenerator -f RemoveDiscreteAttributeFilter",
+        "FilteredStream -s generators.RandomTreeGenerator -f ReplacingMissingValuesFilter",
+        "FilteredStream -s generators.RandomRBFGenerator -f ReLUFilter",
+        "ConceptDriftStream -s generators.AgrawalGenerator -d (generators.AgrawalGenerator -f 2) -p 50000 -w 10000",
+        "ConceptDriftStream -s (ConceptDriftStream -s generators.SEAGenerator -d (generators.SEAGenerator -f 2) -p 50000 -w 1000) "
+                + "-d (generators.SEAGenerator -f 3) -p 100000 -w 1000"
+    };
+
+    protected static final String CSV_HEADER = "stream,instances,wall seconds,cpu seconds,"
+            + "instances per second,instances per cpu second,bytes allocated per instance,"
+            + "gc collections,gc time (milliseconds),moa version,java version";
+
+    public ListOption streamsOption = new ListOption("streams", 's',
+            "Streams to measure, separated by semicolons.",
+            new StringOption("stream", ' ', "", "generators.RandomTreeGenerator"),
+            defaultStreams(), ';');
+
+    public FileOption arffFileOption = new FileOption("arffFile", 'a',
+            "ARFF file to measure as well, read with ArffFileStream.", null, "arff", false);
+
+    public IntOption warmupSizeOption = new IntOption("warmupSize", 'w',
+            "Number of instances read before measuring a stream.", 100000, 0, Integer.MAX_VALUE);
+
+    public IntOption generateSizeOption = new IntOption("generateSize", 'g',
+            "Number of instances read in every repetition.", 1000000, 1, Integer.MAX_VALUE);
+
+    public IntOption repetitionsOption = new IntOption("repetitions", 'r',
+            "Number of repetitions of every measurement, the median is reported.", 3, 1, Integer.MAX_VALUE);
+
+    public FileOption outputFileOption = new FileOption("outputFile", 'o',
+            "File to write the results to in csv format.", null, "csv", true);
+
+    protected static Option[] defaultStreams() {
+        Option[] streams = new Option[DEFAULT_STREAMS.length];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = new StringOption("stream", ' ', "", DEFAULT_STREAMS[i]);
+        }
+        return streams;
+    }
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return String.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        TimingUtils.enablePreciseTiming();
+        List<String> streams = new ArrayList<String>();
+        for (Option stream : this.streamsOption.getList()) {
+            streams.add(stream.getValueAsCLIString());
+        }
+        File arffFile = this.arffFileOption.getFile();
+        if (arffFile != null) {
+            streams.add(arffFile.getPath());
+        }
+        StringBuilder result = new StringBuilder();
+        result.append(CSV_HEADER).append('\n');
+        for (int i = 0; i < streams.size(); i++) {
+            monitor.setCurrentActivity("Measuring " + streams.get(i) + "...",
+                    (double) i / streams.size());
+            ExampleStream stream;
+            String streamString = streams.get(i);
+            if (arffFile != null && i == streams.size() - 1) {
+                // Created directly, so that the path does not need quoting
+                stream = new ArffFileStream(streamString, -1);
+                streamString = "ArffFileStream -f " + streamString;
+            } else {
+                try {
+                    stream = (ExampleStream) ClassOption.cliStringToObject(streamString,
+                            ExampleStream.class, null);
+                } catch (Exception ex) {
+                    throw new RuntimeException("Problem creating stream: " + streamString, ex);
+                }
+                if (stream instanceof OptionHandler) {
+                    ((OptionHandler) stream).prepareForUse();
+                }
+            }
+            Run run = measure(streamString, stream, monitor);
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+            result.append(run.toCSV()).append('\n');
+            if (monitor.resultPreviewRequested()) {
+                monitor.setLatestResultPreview(result.toString());
+            }
+        }
+        File outputFile = this.outputFileOption.getFile();
+        if (outputFile != null) {
+            try {
+                PrintStream out = new PrintStream(new FileOutputStream(outputFile));
+                try {
+                    out.print(result);
+                } finally {
+                    out.close();
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("Unable to write benchmark results to " + outputFile, ex);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Measures one stream and returns the repetition with the median wall
+     * clock time.
+     */
+    protected Run measure(String streamString, ExampleStream stream, TaskMonitor monitor) {
+        readInstances(stream, this.warmupSizeOption.getValue(), streamString);
+        Run[] runs = new Run[this.repetitionsOption.getValue()];
+        for (int r = 0; r < runs.length; r++) {
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+            Run run = new Run(streamString);
+            long gcCount = getGCCount();
+            long gcTime = getGCTime();
+            long allocatedBytes = getAllocatedBytes();
+            long cpuTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            long wallTime = System.nanoTime();
+            run.numInstances = readInstances(stream, this.generateSizeOption.getValue(), streamString);
+            run.wallTime = System.nanoTime() - wallTime;
+            run.cpuTime = TimingUtils.getNanoCPUTimeOfCurrentThread() - cpuTime;
+            if (allocatedBytes >= 0) {
+                run.allocatedBytes = getAllocatedBytes() - allocatedBytes;
+            }
+            run.gcTime = getGCTime() - gcTime;
+            run.gcCount = getGCCount() - gcCount;
+            runs[r] = run;
+        }
+        Arrays.sort(runs);
+        return runs[runs.length / 2];
+    }
+
+    /**
+     * Reads instances from a stream, restarting it when it has no more
+     * instances.
+     */
+    protected static long readInstances(ExampleStream stream, int numInstances, String streamString) {
+        long read = 0;
+        boolean restarted = false;
+        while (read < numInstances) {
+            if (!stream.hasMoreInstances()) {
+                if (restarted) {
+                    throw new RuntimeException("Stream has no instances: " + streamString);
+                }
+                stream.restart();
+                restarted = true;
+                continue;
+            }
+            stream.nextInstance();
+            restarted = false;
+            read++;
+        }
+        return read;
+    }
+
+    /**
+     * Measurements of one repetition.
+     */
+    protected static class Run implements Comparable<Run> {
+
+        protected final String stream;
+
+        protected long numInstances;
+
+        protected long wallTime;
+
+        protected long cpuTime;
+
+        /** Bytes allocated by the thread, -1 if not measured. */
+        protected long allocatedBytes = -1;
+
+        protected long gcCount;
+
+        /** Time of the garbage collections in milliseconds. */
+        protected long gcTime;
+
+        public Run(String stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return Long.compare(this.wallTime, other.wallTime);
+        }
+
+        public String toCSV() {
+            double wallSeconds = TimingUtils.nanoTimeToSeconds(this.wallTime);
+            double cpuSeconds = TimingUtils.nanoTimeToSeconds(this.cpuTime);
+            return quote(this.stream) + ","
+                    + this.numInstances + ","
+                    + wallSeconds + ","
+                    + cpuSeconds + ","
+                    + this.numInstances / wallSeconds + ","
+                    + this.numInstances / cpuSeconds + ","
+                    + (this.allocatedBytes < 0 ? "?" : Double.toString((double) this.allocatedBytes / this.numInstances)) + ","
+                    + this.gcCount + ","
+                    + this.gcTime + ","
+                    + quote(Globals.versionString.trim()) + ","
+                    + quote(System.getProperty("java.version"));
+        }
+    }
+
+    protected static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread, or -1 if
+     * the virtual machine does not measure it.
+     */
+    protected static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+            try {
+                if (bean.isThreadAllocatedMemorySupported()) {
+                    if (!bean.isThreadAllocatedMemoryEnabled()) {
+                        bean.setThreadAllocatedMemoryEnabled(true);
+                    }
+                    return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            } catch (UnsupportedOperationException ex) {
+                // Not measured by this virtual machine
+            }
+        }
+        return -1;
+    }
+
+    protected static long getGCCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    protected static long getGCTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+}
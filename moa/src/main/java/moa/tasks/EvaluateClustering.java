@@ -15,6 +15,7 @@ import moa.gui.BatchCmd;
 import moa.options.ClassOption;
 import com.github.javacliparser.FileOption;
 import com.github.javacliparser.FlagOption;
+import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.clustering.ClusteringStream;
 
@@ -60,6 +61,10 @@ public class EvaluateClustering extends AuxiliarMainTask {
     public FlagOption separationOption = new FlagOption("Separation", 'p', "BSS, BSS-GT, BSS-Ratio.");
     
     public FlagOption silhouetteOption = new FlagOption("Silhouette", 'h', "SilhCoeff.");
+
+    public FloatOption silhouetteErrorOption = new FloatOption("silhouetteError", 'E',
+            "Error bound of the silhouette coefficient when it is estimated on a sample of the points (0 = exact).",
+            0.0, 0.0, 1.0);
     
     public FlagOption statisticalOption = new FlagOption("Statistical", 't', "van Dongen, Rand statistic.");
        
@@ -124,7 +129,8 @@ public class EvaluateClustering extends AuxiliarMainTask {
                 (AbstractClusterer) getPreparedClassOption(this.learnerOption),
                 measureCollection,
                 (int) this.instanceLimitOption.getValue(),
-                (String) dumpFileOption.getValue());
+                (String) dumpFileOption.getValue(),
+                this.silhouetteErrorOption.getValue());
 
         LearningCurve learningCurve = new LearningCurve("EvaluateClustering does not support custom output file (> [filename]).\n" +
         												"Check out the dump file to see the results (if you haven't specified, dumpClustering.csv by default).");
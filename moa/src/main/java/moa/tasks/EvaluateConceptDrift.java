@@ -222,7 +222,7 @@ public class EvaluateConceptDrift extends ConceptDriftMainTask{
                         : (double) instancesProcessed
                         / (double) (instancesProcessed + estimatedRemainingInstances));
                 if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                    monitor.setLatestResultPreview(learningCurve.snapshot());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
                         - evaluateStartTime);
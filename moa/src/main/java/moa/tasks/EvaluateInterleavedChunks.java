@@ -276,7 +276,7 @@ public class EvaluateInterleavedChunks extends ClassificationMainTask {
 								: (double) instancesProcessed
 										/ (double) (instancesProcessed + estimatedRemainingInstances));
 				if (monitor.resultPreviewRequested()) {
-					monitor.setLatestResultPreview(learningCurve.copy());
+					monitor.setLatestResultPreview(learningCurve.snapshot());
 				}
 				secondsElapsed = (int) TimingUtils
 						.nanoTimeToSeconds(TimingUtils
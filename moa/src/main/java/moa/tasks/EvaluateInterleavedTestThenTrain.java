@@ -208,7 +208,7 @@ public class EvaluateInterleavedTestThenTrain extends ClassificationMainTask {
                         : (double) instancesProcessed
                         / (double) (instancesProcessed + estimatedRemainingInstances));
                 if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                    monitor.setLatestResultPreview(learningCurve.snapshot());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
                         - evaluateStartTime);
@@ -20,9 +20,8 @@
 package moa.tasks;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.capabilities.CapabilitiesHandler;
 import moa.capabilities.Capability;
@@ -81,6 +80,9 @@ public class EvaluateModel extends ClassificationMainTask implements Capabilitie
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public FlagOption binaryPredictionOutputOption = new FlagOption("binaryPredictionOutput", 'P',
+            "Write the output predictions in binary format, with the true values and all votes.");
+
     public EvaluateModel() {
     }
 
@@ -109,68 +111,67 @@ public class EvaluateModel extends ClassificationMainTask implements Capabilitie
 
         //File for output predictions
         File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
+        AsyncPredictionWriter outputPredictionWriter = null;
         if (outputPredictionFile != null) {
-            try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
-                } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException(
-                        "Unable to open prediction result file: " + outputPredictionFile, ex);
-            }
+            outputPredictionWriter = new AsyncPredictionWriter(outputPredictionFile,
+                    this.binaryPredictionOutputOption.isSet());
         }
-        while (stream.hasMoreInstances()
-                && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
-            Example testInst = (Example) stream.nextInstance();//.copy();
-            int trueClass = (int) ((Instance) testInst.getData()).classValue();
-            //testInst.setClassMissing();
-            double[] prediction = model.getVotesForInstance(testInst);
-            //evaluator.addClassificationAttempt(trueClass, prediction, testInst
-            //		.weight());
-            if (outputPredictionFile != null) {
-                outputPredictionResultStream.println(Utils.maxIndex(prediction) + "," +(
-                        ((Instance) testInst.getData()).classIsMissing() == true ? " ? " : trueClass));
-            }
-            evaluator.addResult(testInst, prediction);
-            instancesProcessed++;
-
-            if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                    || stream.hasMoreInstances() == false) {
-	            learningCurve.insertEntry(new LearningEvaluation(
-	                    new Measurement[]{
-	                        new Measurement(
-	                        "learning evaluation instances",
-	                        instancesProcessed)
-	                    },
-	                    evaluator, model));
-            }
-            if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
-                if (monitor.taskShouldAbort()) {
-                    return null;
-                }
-                long estimatedRemainingInstances = stream.estimatedRemainingInstances();
-                if (maxInstances > 0) {
-                    long maxRemaining = maxInstances - instancesProcessed;
-                    if ((estimatedRemainingInstances < 0)
-                            || (maxRemaining < estimatedRemainingInstances)) {
-                        estimatedRemainingInstances = maxRemaining;
+        try {
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
+                Example testInst = (Example) stream.nextInstance();//.copy();
+                int trueClass = (int) ((Instance) testInst.getData()).classValue();
+                //testInst.setClassMissing();
+                double[] prediction = model.getVotesForInstance(testInst);
+                //evaluator.addClassificationAttempt(trueClass, prediction, testInst
+                //		.weight());
+                if (outputPredictionWriter != null) {
+                    boolean classIsMissing = ((Instance) testInst.getData()).classIsMissing();
+                    if (outputPredictionWriter.isBinary()) {
+                        outputPredictionWriter.write(instancesProcessed,
+                                classIsMissing ? Double.NaN : trueClass, prediction);
+                    } else {
+                        outputPredictionWriter.writeLine(Utils.maxIndex(prediction) + "," + (
+                                classIsMissing ? " ? " : trueClass));
                     }
                 }
-                monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
-                        : (double) instancesProcessed
-                        / (double) (instancesProcessed + estimatedRemainingInstances));
-                if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                evaluator.addResult(testInst, prediction);
+                instancesProcessed++;
+
+                if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                        || stream.hasMoreInstances() == false) {
+    	            learningCurve.insertEntry(new LearningEvaluation(
+    	                    new Measurement[]{
+    	                        new Measurement(
+    	                        "learning evaluation instances",
+    	                        instancesProcessed)
+    	                    },
+    	                    evaluator, model));
+                }
+                if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                    if (monitor.taskShouldAbort()) {
+                        return null;
+                    }
+                    long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                    if (maxInstances > 0) {
+                        long maxRemaining = maxInstances - instancesProcessed;
+                        if ((estimatedRemainingInstances < 0)
+                                || (maxRemaining < estimatedRemainingInstances)) {
+                            estimatedRemainingInstances = maxRemaining;
+                        }
+                    }
+                    monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                            : (double) instancesProcessed
+                            / (double) (instancesProcessed + estimatedRemainingInstances));
+                    if (monitor.resultPreviewRequested()) {
+                        monitor.setLatestResultPreview(learningCurve.snapshot());
+                    }
                 }
             }
-        }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
+        } finally {
+            if (outputPredictionWriter != null) {
+                outputPredictionWriter.close();
+            }
         }
         return learningCurve;
     }
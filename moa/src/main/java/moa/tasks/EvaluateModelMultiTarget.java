@@ -20,11 +20,10 @@
 package moa.tasks;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instance;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
 import moa.classifiers.Classifier;
 import moa.classifiers.MultiTargetRegressor;
 import moa.core.Example;
@@ -73,6 +72,9 @@ public class EvaluateModelMultiTarget extends MultiTargetMainTask {
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public FlagOption binaryPredictionOutputOption = new FlagOption("binaryPredictionOutput", 'P',
+            "Write the output predictions in binary format, with the true values and all votes.");
+
     public EvaluateModelMultiTarget() {
     }
 
@@ -91,6 +93,26 @@ public class EvaluateModelMultiTarget extends MultiTargetMainTask {
 
     @Override
     public Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        //File for output predictions
+        File outputPredictionFile = this.outputPredictionFileOption.getFile();
+        AsyncPredictionWriter outputPredictionWriter = null;
+        if (outputPredictionFile != null) {
+            outputPredictionWriter = new AsyncPredictionWriter(outputPredictionFile,
+                    this.binaryPredictionOutputOption.isSet());
+        }
+        try {
+            return evaluateModel(monitor, outputPredictionWriter);
+        } finally {
+            if (outputPredictionWriter != null) {
+                outputPredictionWriter.close();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the model on the stream, writing the predictions if a writer is given.
+     */
+    protected Object evaluateModel(TaskMonitor monitor, AsyncPredictionWriter outputPredictionWriter) {
         Learner model = (Learner) getPreparedClassOption(this.modelOption);
         ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
         LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
@@ -98,23 +120,6 @@ public class EvaluateModelMultiTarget extends MultiTargetMainTask {
         long instancesProcessed = 0;
         monitor.setCurrentActivity("Evaluating model...", -1.0);
 
-        //File for output predictions
-        File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
-        if (outputPredictionFile != null) {
-            try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
-                } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException(
-                        "Unable to open prediction result file: " + outputPredictionFile, ex);
-            }
-        }
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
             Example testInst = (Example) stream.nextInstance();//.copy();
@@ -123,8 +128,12 @@ public class EvaluateModelMultiTarget extends MultiTargetMainTask {
             double[] prediction = model.getVotesForInstance(testInst);
             //evaluator.addClassificationAttempt(trueClass, prediction, testInst
             //		.weight());
-            if (outputPredictionFile != null) {
-                outputPredictionResultStream.println(prediction[0] + "," + trueClass);
+            if (outputPredictionWriter != null) {
+                if (outputPredictionWriter.isBinary()) {
+                    outputPredictionWriter.write(instancesProcessed, trueClass, prediction);
+                } else {
+                    outputPredictionWriter.writeLine(prediction[0] + "," + trueClass);
+                }
             }
             evaluator.addResult(testInst, prediction);
             instancesProcessed++;
@@ -149,9 +158,6 @@ public class EvaluateModelMultiTarget extends MultiTargetMainTask {
                 }
             }
         }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
-        }
         return new LearningEvaluation(evaluator, model);
     }
 }
@@ -28,11 +28,17 @@ import java.util.logging.Logger;
 
 import com.github.javacliparser.FileOption;
 import com.github.javacliparser.FlagOption;
+import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
+import com.github.javacliparser.ListOption;
+import com.github.javacliparser.Option;
 import com.opencsv.*;
 
 import moa.clusterers.AbstractClusterer;
+import moa.core.Measurement;
 import moa.core.ObjectRepository;
+import moa.evaluation.LearningEvaluation;
+import moa.gui.ParallelBatchCmd;
 import moa.gui.visualization.RunVisualizer;
 import moa.options.ClassOption;
 import moa.streams.clustering.ClusteringStream;
@@ -61,6 +67,11 @@ public class EvaluateMultipleClusterings extends AuxiliarMainTask {
 	public ClassOption learnerOption = new ClassOption("learner", 'l',
 			"Clusterer to train.", AbstractClusterer.class, "clustream.Clustream");
 
+	public ListOption otherLearnersOption = new ListOption("otherLearners", 'L',
+			"Further clusterers that are trained side by side with the learner on the same streams, each on its own thread.",
+			new ClassOption("learner", ' ', "", AbstractClusterer.class, "clustream.Clustream"),
+			new Option[0], ',');
+
 	public ClassOption streamOption = new ClassOption("stream", 's',
             "Base stream to learn from (must use FileStream).",  ClusteringStream.class,
             "FileStream");
@@ -91,6 +102,10 @@ public class EvaluateMultipleClusterings extends AuxiliarMainTask {
     public FlagOption separationOption = new FlagOption("Separation", 'p', "BSS, BSS-GT, BSS-Ratio.");
     
     public FlagOption silhouetteOption = new FlagOption("Silhouette", 'h', "SilhCoeff.");
+
+    public FloatOption silhouetteErrorOption = new FloatOption("silhouetteError", 'E',
+            "Error bound of the silhouette coefficient when it is estimated on a sample of the points (0 = exact).",
+            0.0, 0.0, 1.0);
     
     public FlagOption statisticalOption = new FlagOption("Statistical", 't', "van Dongen, Rand statistic.");
 
@@ -106,6 +121,11 @@ public class EvaluateMultipleClusterings extends AuxiliarMainTask {
 	@Override
 	protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository)
 	{
+		if(this.otherLearnersOption.getList().length > 0)
+		{
+			return doParallelTask(monitor, repository);
+		}
+
 		Object result = null;
 		String arffFile, outputFile;
 		FileStream fStream;
@@ -153,6 +173,7 @@ public class EvaluateMultipleClusterings extends AuxiliarMainTask {
         	measureCollection[7] = this.statisticalOption.isSet();
             
             this.task.setMeasures(measureCollection);
+            this.task.silhouetteErrorOption.setValue(this.silhouetteErrorOption.getValue());
             
             System.out.println("Evaluation #"+(i+1)+" of "+this.numStreamsOption.getValue()+
             		": "+this.task.getCLICreationString(this.task.getClass()));
@@ -173,6 +194,107 @@ public class EvaluateMultipleClusterings extends AuxiliarMainTask {
 		return result;
 	}
 	
+	/**
+	 * Evaluates the learner and the other learners on each stream at the same
+	 * time. The results of the learner are written as usual, the results of
+	 * the i-th other learner get the suffix "c"+i.
+	 * 
+	 * @return the CPU time of each clusterer summed over all streams
+	 */
+	protected Object doParallelTask(TaskMonitor monitor, ObjectRepository repository)
+	{
+		Option[] otherLearners = this.otherLearnersOption.getList();
+		int numLearners = otherLearners.length + 1;
+		double[][] totalTimes = new double[2][numLearners];
+		String[] names = new String[numLearners];
+		
+		String baseFile = this.dumpFileOption.getValueAsCLIString();
+		if(baseFile.endsWith(".csv"))
+		{
+			baseFile = baseFile.substring(0, baseFile.length()-4);
+		}
+		
+		// Measure Collection
+		boolean[] measureCollection = new boolean[8];
+		measureCollection[0] = this.generalEvalOption.isSet();
+		measureCollection[1] = this.f1Option.isSet();
+		measureCollection[2] = this.entropyOption.isSet();
+		measureCollection[3] = this.cmmOption.isSet();
+		measureCollection[4] = this.ssqOption.isSet();
+		measureCollection[5] = this.separationOption.isSet();
+		measureCollection[6] = this.silhouetteOption.isSet();
+		measureCollection[7] = this.statisticalOption.isSet();
+		
+		for(int i = 0 ; i < this.numStreamsOption.getValue() ; i++)
+		{
+			if(monitor.taskShouldAbort())
+			{
+				return null;
+			}
+			
+			// New learners for every stream
+			AbstractClusterer[] clusterers = new AbstractClusterer[numLearners];
+			clusterers[0] = (AbstractClusterer) getPreparedClassOption(this.learnerOption);
+			for(int j = 1 ; j < numLearners ; j++)
+			{
+				clusterers[j] = (AbstractClusterer) ((ClassOption) otherLearners[j-1]).materializeObject(monitor, repository);
+			}
+			
+			// Build stream
+			FileStream fStream = (FileStream) getPreparedClassOption(this.streamOption);
+			String arffFile = fStream.arffFileOption.getValueAsCLIString();
+			arffFile = arffFile.substring(0, arffFile.lastIndexOf('n')+1).concat(i+".arff");
+			fStream.arffFileOption.setValueViaCLIString(arffFile);
+			
+			// Build Output Files
+			String[] outputFiles = new String[numLearners];
+			for(int j = 0 ; j < numLearners ; j++)
+			{
+				outputFiles[j] = baseFile.concat("n"+i+clustererSuffix(j)+".csv");
+				names[j] = clusterers[j].getClass().getSimpleName();
+			}
+			
+			System.out.println("Evaluation #"+(i+1)+" of "+this.numStreamsOption.getValue()+
+					": "+numLearners+" clusterers in parallel on "+arffFile);
+			monitor.setCurrentActivity("Evaluating stream "+(i+1)+" of "+this.numStreamsOption.getValue()+"...",
+					(double) i / this.numStreamsOption.getValue());
+			
+			//Run clusterers
+			double[][] times = ParallelBatchCmd.runBatch(fStream, clusterers, measureCollection, -1,
+					outputFiles, this.silhouetteErrorOption.getValue());
+			
+			for(int j = 0 ; j < numLearners ; j++)
+			{
+				System.out.println("  "+names[j]+clustererSuffix(j)+": training "+times[0][j]+"s, evaluation "+times[1][j]+"s CPU time");
+				totalTimes[0][j] += times[0][j];
+				totalTimes[1][j] += times[1][j];
+				
+				if(this.mergeResultsOption.isSet())
+				{
+					String mergedFile = baseFile.concat(clustererSuffix(j)+".csv");
+					String tempFile = baseFile.concat(clustererSuffix(j)+"*.csv");
+					if (i == 0)
+						writeToMergeFile(mergedFile, outputFiles[j]);
+					else
+						mergeFiles(mergedFile, outputFiles[j], tempFile);
+				}
+			}
+		}
+		
+		Measurement[] measurements = new Measurement[2*numLearners];
+		for(int j = 0 ; j < numLearners ; j++)
+		{
+			measurements[2*j] = new Measurement("training CPU time "+names[j]+clustererSuffix(j)+" (seconds)", totalTimes[0][j]);
+			measurements[2*j+1] = new Measurement("evaluation CPU time "+names[j]+clustererSuffix(j)+" (seconds)", totalTimes[1][j]);
+		}
+		return new LearningEvaluation(measurements);
+	}
+	
+	private static String clustererSuffix(int index)
+	{
+		return index == 0 ? "" : "c"+index;
+	}
+	
 	private void writeToMergeFile(String mergedFile, String outputFile)
 	{
 		CSVWriter writer = null;
@@ -240,7 +240,7 @@ public class EvaluatePeriodicHeldOutTest extends ClassificationMainTask {
                 immediateResultStream.flush();
             }
             if (monitor.resultPreviewRequested()) {
-                monitor.setLatestResultPreview(learningCurve.copy());
+                monitor.setLatestResultPreview(learningCurve.snapshot());
             }
             // if (learner instanceof HoeffdingTree
             // || learner instanceof HoeffdingOptionTree) {
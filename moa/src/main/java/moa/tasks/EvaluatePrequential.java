@@ -22,6 +22,7 @@ package moa.tasks;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 
 import moa.capabilities.CapabilitiesHandler;
@@ -33,6 +34,7 @@ import moa.core.Measurement;
 import moa.core.ObjectRepository;
 import moa.core.TimingUtils;
 import moa.evaluation.WindowClassificationPerformanceEvaluator;
+import moa.evaluation.preview.BinaryLearningCurveWriter;
 import moa.evaluation.preview.LearningCurve;
 import moa.evaluation.EWMAClassificationPerformanceEvaluator;
 import moa.evaluation.FadingFactorClassificationPerformanceEvaluator;
@@ -42,9 +44,11 @@ import moa.learners.Learner;
 import moa.options.ClassOption;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.ExampleStream;
+import moa.streams.PrefetchingStream;
 import com.yahoo.labs.samoa.instances.Instance;
 import moa.core.Utils;
 
@@ -100,6 +104,13 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public FlagOption binaryPredictionOutputOption = new FlagOption("binaryPredictionOutput", 'P',
+            "Write the output predictions in binary format, with the true values and all votes.");
+
+    public FileOption binaryDumpFileOption = new FileOption("binaryDumpFile", 'D',
+            "File to write intermediate results to in binary form instead of keeping them in memory. The csv dump file is then written when the task ends, and the result of the task is read back from the binary file.",
+            null, "lcb", true);
+
     //New for prequential method DEPRECATED
     public IntOption widthOption = new IntOption("width",
             'w', "Size of Window", 1000);
@@ -108,6 +119,13 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
             'a', "Fading factor or exponential smoothing factor", .01);
     //End New for prequential methods
 
+    public FlagOption prefetchStreamOption = new FlagOption("prefetchStream", 'p',
+            "Read the stream on a separate thread and report stream and learner time separately.");
+
+    public IntOption prefetchBufferSizeOption = new IntOption("prefetchBufferSize", 'b',
+            "Number of instances the prefetching thread may read ahead.",
+            1024, 1, 1 << 30);
+
     @Override
     public Class<?> getTaskResultType() {
         return LearningCurve.class;
@@ -170,55 +188,66 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
         }
         //File for output predictions
         File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
+        AsyncPredictionWriter outputPredictionWriter = null;
         if (outputPredictionFile != null) {
-            try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
-                } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException(
-                        "Unable to open prediction result file: " + outputPredictionFile, ex);
-            }
+            outputPredictionWriter = new AsyncPredictionWriter(outputPredictionFile,
+                    this.binaryPredictionOutputOption.isSet());
+        }
+        File binaryDumpFile = this.binaryDumpFileOption.getFile();
+        BinaryLearningCurveWriter curveWriter = null;
+        if (binaryDumpFile != null) {
+            curveWriter = new BinaryLearningCurveWriter(binaryDumpFile);
         }
         boolean firstDump = true;
         boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
-        while (stream.hasMoreInstances()
-                && ((maxInstances < 0) || (instancesProcessed < maxInstances))
-                && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
-            Example trainInst = stream.nextInstance();
-            Example testInst = (Example) trainInst; //.copy();
-            //testInst.setClassMissing();
-            double[] prediction = learner.getVotesForInstance(testInst);
-            // Output prediction
-            if (outputPredictionFile != null) {
-                int trueClass = (int) ((Instance) trainInst.getData()).classValue();
-                outputPredictionResultStream.println(Utils.maxIndex(prediction) + "," + (
-                 ((Instance) testInst.getData()).classIsMissing() == true ? " ? " : trueClass));
-            }
+        // The producer thread starts right away, so the stream is wrapped
+        // only once the files are open and stopped in the finally block
+        PrefetchingStream prefetcher = null;
+        if (this.prefetchStreamOption.isSet()) {
+            prefetcher = new PrefetchingStream(stream,
+                    this.prefetchBufferSizeOption.getValue(), maxInstances);
+            stream = prefetcher;
+        }
+        try {
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))
+                    && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
+                Example trainInst = stream.nextInstance();
+                Example testInst = (Example) trainInst; //.copy();
+                //testInst.setClassMissing();
+                double[] prediction = learner.getVotesForInstance(testInst);
+                // Output prediction
+                if (outputPredictionWriter != null) {
+                    int trueClass = (int) ((Instance) trainInst.getData()).classValue();
+                    boolean classIsMissing = ((Instance) testInst.getData()).classIsMissing();
+                    if (outputPredictionWriter.isBinary()) {
+                        outputPredictionWriter.write(instancesProcessed,
+                                classIsMissing ? Double.NaN : trueClass, prediction);
+                    } else {
+                        outputPredictionWriter.writeLine(Utils.maxIndex(prediction) + "," + (
+                                classIsMissing ? " ? " : trueClass));
+                    }
+                }
 
-            //evaluator.addClassificationAttempt(trueClass, prediction, testInst.weight());
-            evaluator.addResult(testInst, prediction);
-            learner.trainOnInstance(trainInst);
-            instancesProcessed++;
-            if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                    || stream.hasMoreInstances() == false) {
-                long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-                double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
-                double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
-                double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
-                RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
-                RAMHours += RAMHoursIncrement;
-                lastEvaluateStartTime = evaluateTime;
-                learningCurve.insertEntry(new LearningEvaluation(
-                        new Measurement[]{
+                //evaluator.addClassificationAttempt(trueClass, prediction, testInst.weight());
+                evaluator.addResult(testInst, prediction);
+                learner.trainOnInstance(trainInst);
+                instancesProcessed++;
+                if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                        || stream.hasMoreInstances() == false) {
+                    long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                    double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
+                    double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
+                    double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                    RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
+                    RAMHours += RAMHoursIncrement;
+                    lastEvaluateStartTime = evaluateTime;
+                    Measurement[] measurements;
+                    if (prefetcher == null) {
+                        measurements = new Measurement[]{
                             new Measurement(
                             "learning evaluation instances",
                             instancesProcessed),
@@ -230,49 +259,121 @@ public class EvaluatePrequential extends ClassificationMainTask implements Capab
                             new Measurement(
                             "model cost (RAM-Hours)",
                             RAMHours)
-                        },
-                        evaluator, learner));
+                        };
+                    } else {
+                        // The stream runs on its own thread, so the time of this
+                        // thread only covers the learner and the evaluator
+                        double streamTime = TimingUtils.nanoTimeToSeconds(prefetcher.getStreamTime());
+                        String unit = (preciseCPUTiming ? "cpu " : "") + "seconds)";
+                        measurements = new Measurement[]{
+                            new Measurement(
+                            "learning evaluation instances",
+                            instancesProcessed),
+                            new Measurement(
+                            "evaluation time (" + unit,
+                            time + streamTime),
+                            new Measurement(
+                            "stream time (" + unit,
+                            streamTime),
+                            new Measurement(
+                            "learner time (" + unit,
+                            time),
+                            new Measurement(
+                            "model cost (RAM-Hours)",
+                            RAMHours)
+                        };
+                    }
+                    LearningEvaluation evaluation = new LearningEvaluation(
+                            measurements, evaluator, learner);
+                    if (curveWriter != null) {
+                        // The binary file holds the curve, only the last entry is kept in memory
+                        // and the curve is read back from the file when the task ends
+                        learningCurve = new LearningCurve(
+                                "learning evaluation instances");
+                    }
+                    learningCurve.insertEntry(evaluation);
 
-                if (immediateResultStream != null) {
-                    if (firstDump) {
-                        immediateResultStream.println(learningCurve.headerToString());
-                        firstDump = false;
+                    if (curveWriter != null) {
+                        curveWriter.append(evaluation.getMeasurements());
+                    } else if (immediateResultStream != null) {
+                        if (firstDump) {
+                            immediateResultStream.println(learningCurve.headerToString());
+                            firstDump = false;
+                        }
+                        immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
+                        immediateResultStream.flush();
                     }
-                    immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
-                    immediateResultStream.flush();
                 }
-            }
-            if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
-                if (monitor.taskShouldAbort()) {
-                    return null;
-                }
-                long estimatedRemainingInstances = stream.estimatedRemainingInstances();
-                if (maxInstances > 0) {
-                    long maxRemaining = maxInstances - instancesProcessed;
-                    if ((estimatedRemainingInstances < 0)
-                            || (maxRemaining < estimatedRemainingInstances)) {
-                        estimatedRemainingInstances = maxRemaining;
+                if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                    if (monitor.taskShouldAbort()) {
+                        return null;
+                    }
+                    long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                    if (maxInstances > 0) {
+                        long maxRemaining = maxInstances - instancesProcessed;
+                        if ((estimatedRemainingInstances < 0)
+                                || (maxRemaining < estimatedRemainingInstances)) {
+                            estimatedRemainingInstances = maxRemaining;
+                        }
                     }
+                    monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                            : (double) instancesProcessed
+                            / (double) (instancesProcessed + estimatedRemainingInstances));
+                    if (monitor.resultPreviewRequested()) {
+                        if (curveWriter != null) {
+                            curveWriter.flush();
+                            monitor.setLatestResultPreview(readLearningCurve(binaryDumpFile));
+                        } else {
+                            monitor.setLatestResultPreview(learningCurve.snapshot());
+                        }
+                    }
+                    secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
+                            - evaluateStartTime);
                 }
-                monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
-                        : (double) instancesProcessed
-                        / (double) (instancesProcessed + estimatedRemainingInstances));
-                if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+            }
+            if (curveWriter != null) {
+                curveWriter.flush();
+                learningCurve = readLearningCurve(binaryDumpFile);
+            }
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.stop();
+            }
+            if (outputPredictionWriter != null) {
+                outputPredictionWriter.close();
+            }
+            if (curveWriter != null) {
+                curveWriter.close();
+                if (immediateResultStream != null) {
+                    // Export the csv file from the binary results, also when
+                    // the task stops early
+                    try {
+                        BinaryLearningCurveWriter.exportCSV(binaryDumpFile, immediateResultStream, true);
+                    } catch (IOException ex) {
+                        throw new RuntimeException(
+                                "Unable to export immediate result file: " + dumpFile, ex);
+                    }
                 }
-                secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
-                        - evaluateStartTime);
             }
-        }
-        if (immediateResultStream != null) {
-            immediateResultStream.close();
-        }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
+            if (immediateResultStream != null) {
+                immediateResultStream.close();
+            }
         }
         return learningCurve;
     }
 
+    /**
+     * Reads the learning curve written to the binary dump file so far.
+     */
+    protected static LearningCurve readLearningCurve(File binaryDumpFile) {
+        try {
+            return BinaryLearningCurveWriter.read(binaryDumpFile);
+        } catch (IOException ex) {
+            throw new RuntimeException(
+                    "Unable to read binary result file: " + binaryDumpFile, ex);
+        }
+    }
+
     @Override
     public ImmutableCapabilities defineImmutableCapabilities() {
         if (this.getClass() == EvaluatePrequential.class)
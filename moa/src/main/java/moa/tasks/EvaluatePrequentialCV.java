@@ -108,6 +108,12 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
     public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
             "Seed for random behaviour of the task.", 1);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of threads that process the folds (-1 = as much as possible).", 1, -1, Integer.MAX_VALUE);
+
+
+    /** Number of examples that are shared with the fold threads at once. */
+    protected static final int FOLD_BATCH_SIZE = 1000;
 
     @Override
     public Class<?> getTaskResultType() {
@@ -162,16 +168,22 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
+        ParallelFolds folds = new ParallelFolds(learners.length,
+                this.numberOfJobsOption.getValue(), FOLD_BATCH_SIZE);
+        ParallelFolds.FoldStep step = (i, example, k) -> {
+            evaluators[i].addResult(example, learners[i].getVotesForInstance(example));
+            if (k > 0) {
+                Example weightedInst = (Example) example.copy();
+                weightedInst.setWeight(example.weight() * k);
+                learners[i].trainOnInstance(weightedInst);
+            }
+        };
+
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))
                 && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
             Example trainInst = stream.nextInstance();
-            Example testInst = (Example) trainInst; //.copy();
-            //testInst.setClassMissing();
-
-            for (int i = 0; i < learners.length; i++) {
-                evaluators[i].addResult(testInst, learners[i].getVotesForInstance(testInst));
-            }
+            folds.add(trainInst);
 
             for (int i = 0; i < learners.length; i++) {
                 int k = 1;
@@ -186,17 +198,19 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
                         k = instancesProcessed % learners.length == i ? 1: 0; //Test only one
                         break;
                 }
-                if (k > 0) {
-                    Example weightedInst = (Example) trainInst.copy();
-                    weightedInst.setWeight(trainInst.weight() * k);
-                    learners[i].trainOnInstance(weightedInst);
-                }
+                folds.setWeight(i, k);
             }
 
             instancesProcessed++;
-            if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                    || stream.hasMoreInstances() == false) {
-                long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            boolean sample = instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                    || stream.hasMoreInstances() == false;
+            boolean monitorUpdate = instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0;
+            // The folds must be up to date whenever the results are read
+            if (sample || monitorUpdate || folds.isFull() || instancesProcessed == maxInstances) {
+                folds.process(step);
+            }
+            if (sample) {
+                long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread() + folds.getWorkerTime();
                 double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
 
@@ -232,8 +246,9 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
                     immediateResultStream.flush();
                 }
             }
-            if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+            if (monitorUpdate) {
                 if (monitor.taskShouldAbort()) {
+                    folds.shutdown();
                     return null;
                 }
                 long estimatedRemainingInstances = stream.estimatedRemainingInstances();
@@ -248,12 +263,14 @@ public class EvaluatePrequentialCV extends ClassificationMainTask {
                         : (double) instancesProcessed
                         / (double) (instancesProcessed + estimatedRemainingInstances));
                 if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                    monitor.setLatestResultPreview(learningCurve.snapshot());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
-                        - evaluateStartTime);
+                        + folds.getWorkerTime() - evaluateStartTime);
             }
         }
+        folds.process(step);
+        folds.shutdown();
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
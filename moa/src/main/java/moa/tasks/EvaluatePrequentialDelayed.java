@@ -46,7 +46,7 @@ import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.ExampleStream;
 import com.yahoo.labs.samoa.instances.Instance;
-import java.util.LinkedList;
+import moa.core.ExampleQueue;
 import moa.core.InstanceExample;
 import moa.core.Utils;
 
@@ -123,6 +123,9 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public FlagOption binaryPredictionOutputOption = new FlagOption("binaryPredictionOutput", 'P',
+            "Write the output predictions in binary format, with the true values and all votes.");
+
     //New for prequential method DEPRECATED
     public IntOption widthOption = new IntOption("width",
             'w', "Size of Window", 1000);
@@ -130,8 +133,12 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
     public FloatOption alphaOption = new FloatOption("alpha",
             'a', "Fading factor or exponential smoothing factor", .01);
 
+    public IntOption maxInMemoryOption = new IntOption("maxInMemory", 'x',
+            "Number of delayed instances kept in memory before further ones are written to disk (-1 = no limit).",
+            -1, -1, Integer.MAX_VALUE);
+
     // Buffer of instances to use for training. 
-    protected LinkedList<Example> trainInstances;
+    protected ExampleQueue trainInstances;
     
     @Override
     public Class<?> getTaskResultType() {
@@ -146,7 +153,7 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
         LearningCurve learningCurve = new LearningCurve(
                 "learning evaluation instances");
 
-        this.trainInstances = new LinkedList<Example>();
+        this.trainInstances = new ExampleQueue(this.maxInMemoryOption.getValue());
         
         //New for prequential methods
         if (evaluator instanceof WindowClassificationPerformanceEvaluator) {
@@ -196,20 +203,10 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
         }
         //File for output predictions
         File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
+        AsyncPredictionWriter outputPredictionWriter = null;
         if (outputPredictionFile != null) {
-            try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
-                } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException(
-                        "Unable to open prediction result file: " + outputPredictionFile, ex);
-            }
+            outputPredictionWriter = new AsyncPredictionWriter(outputPredictionFile,
+                    this.binaryPredictionOutputOption.isSet());
         }
         boolean firstDump = true;
         boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
@@ -217,119 +214,130 @@ public class EvaluatePrequentialDelayed extends ClassificationMainTask {
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
         
-        while (stream.hasMoreInstances()
-                && ((maxInstances < 0) || (instancesProcessed < maxInstances))
-                && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
+        try {
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))
+                    && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
             
-            instancesProcessed++;
-            Example currentInst = stream.nextInstance();
+                instancesProcessed++;
+                Example currentInst = stream.nextInstance();
             
-            if(instancesProcessed <= this.initialWindowSizeOption.getValue()) {
-                if(this.trainOnInitialWindowOption.isSet()) {
-                    learner.trainOnInstance(currentInst);
+                if(instancesProcessed <= this.initialWindowSizeOption.getValue()) {
+                    if(this.trainOnInitialWindowOption.isSet()) {
+                        learner.trainOnInstance(currentInst);
+                    }
+                    else if((this.initialWindowSizeOption.getValue() - instancesProcessed) < this.delayLengthOption.getValue()) {
+                        this.trainInstances.addLast(currentInst);
+                    }
                 }
-                else if((this.initialWindowSizeOption.getValue() - instancesProcessed) < this.delayLengthOption.getValue()) {
+                else {
                     this.trainInstances.addLast(currentInst);
-                }
-            }
-            else {
-                this.trainInstances.addLast(currentInst);
 
-                if(this.delayLengthOption.getValue() < this.trainInstances.size()) {
-                    if(this.trainInBatches.isSet()) {
-                        // Do not train on the latest instance, otherwise
-                        // it would train on k+1 instances
-                        while(this.trainInstances.size() > 1) {
+                    if(this.delayLengthOption.getValue() < this.trainInstances.size()) {
+                        if(this.trainInBatches.isSet()) {
+                            // Do not train on the latest instance, otherwise
+                            // it would train on k+1 instances
+                            while(this.trainInstances.size() > 1) {
+                                Example trainInst = this.trainInstances.removeFirst();
+                                learner.trainOnInstance(trainInst);
+                            }
+                        }
+                        else {
                             Example trainInst = this.trainInstances.removeFirst();
                             learner.trainOnInstance(trainInst);
                         }
                     }
-                    else {
-                        Example trainInst = this.trainInstances.removeFirst();
-                        learner.trainOnInstance(trainInst);
-                    }
-                }
 
-                // Remove class label from test instances. 
-                Instance testInstance = ((Instance) currentInst.getData()).copy();
-                Example testInst = new InstanceExample(testInstance);
-                testInstance.setMissing(testInstance.classAttribute());
-                testInstance.setClassValue(0.0);
+                    // Remove class label from test instances. 
+                    Instance testInstance = ((Instance) currentInst.getData()).copy();
+                    Example testInst = new InstanceExample(testInstance);
+                    testInstance.setMissing(testInstance.classAttribute());
+                    testInstance.setClassValue(0.0);
           
-                double[] prediction = learner.getVotesForInstance(testInst);
-    //          reinstate the testInstance as it is used in evaluator.addResult
-                testInstance = ((Instance) currentInst.getData()).copy();
-                testInst = new InstanceExample(testInstance);
+                    double[] prediction = learner.getVotesForInstance(testInst);
+        //          reinstate the testInstance as it is used in evaluator.addResult
+                    testInstance = ((Instance) currentInst.getData()).copy();
+                    testInst = new InstanceExample(testInstance);
 
-                // Output prediction
-                if (outputPredictionFile != null) {
-                    int trueClass = (int) ((Instance) currentInst.getData()).classValue();
-                    outputPredictionResultStream.println(Utils.maxIndex(prediction) + "," + (
-                     ((Instance) testInst.getData()).classIsMissing() == true ? " ? " : trueClass));
-                }
-                evaluator.addResult(testInst, prediction);
-                
-                if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                        || stream.hasMoreInstances() == false) {
-                    long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-                    double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
-                    double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
-                    double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
-                    RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
-                    RAMHours += RAMHoursIncrement;
-                    lastEvaluateStartTime = evaluateTime;
-                    learningCurve.insertEntry(new LearningEvaluation(
-                            new Measurement[]{
-                                new Measurement(
-                                "learning evaluation instances",
-                                instancesProcessed),
-                                new Measurement(
-                                "evaluation time ("
-                                + (preciseCPUTiming ? "cpu "
-                                : "") + "seconds)",
-                                time),
-                                new Measurement(
-                                "model cost (RAM-Hours)",
-                                RAMHours)
-                            },
-                            evaluator, learner));
-                    if (immediateResultStream != null) {
-                        if (firstDump) {
-                            immediateResultStream.println(learningCurve.headerToString());
-                            firstDump = false;
+                    // Output prediction
+                    if (outputPredictionWriter != null) {
+                        int trueClass = (int) ((Instance) currentInst.getData()).classValue();
+                        boolean classIsMissing = ((Instance) testInst.getData()).classIsMissing();
+                        if (outputPredictionWriter.isBinary()) {
+                            outputPredictionWriter.write(instancesProcessed,
+                                    classIsMissing ? Double.NaN : trueClass, prediction);
+                        } else {
+                            outputPredictionWriter.writeLine(Utils.maxIndex(prediction) + "," + (
+                                    classIsMissing ? " ? " : trueClass));
                         }
-                        immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
-                        immediateResultStream.flush();
                     }
-                }
-                if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
-                    if (monitor.taskShouldAbort()) {
-                        return null;
-                    }
-                    long estimatedRemainingInstances = stream.estimatedRemainingInstances();
-                    if (maxInstances > 0) {
-                        long maxRemaining = maxInstances - instancesProcessed;
-                        if ((estimatedRemainingInstances < 0)
-                                || (maxRemaining < estimatedRemainingInstances)) {
-                            estimatedRemainingInstances = maxRemaining;
+                    evaluator.addResult(testInst, prediction);
+                
+                    if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                            || stream.hasMoreInstances() == false) {
+                        long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                        double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
+                        double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
+                        double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                        RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
+                        RAMHours += RAMHoursIncrement;
+                        lastEvaluateStartTime = evaluateTime;
+                        learningCurve.insertEntry(new LearningEvaluation(
+                                new Measurement[]{
+                                    new Measurement(
+                                    "learning evaluation instances",
+                                    instancesProcessed),
+                                    new Measurement(
+                                    "evaluation time ("
+                                    + (preciseCPUTiming ? "cpu "
+                                    : "") + "seconds)",
+                                    time),
+                                    new Measurement(
+                                    "model cost (RAM-Hours)",
+                                    RAMHours)
+                                },
+                                evaluator, learner));
+                        if (immediateResultStream != null) {
+                            if (firstDump) {
+                                immediateResultStream.println(learningCurve.headerToString());
+                                firstDump = false;
+                            }
+                            immediateResultStream.println(learningCurve.entryToString(learningCurve.numEntries() - 1));
+                            immediateResultStream.flush();
                         }
                     }
-                    monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
-                            : (double) instancesProcessed
-                            / (double) (instancesProcessed + estimatedRemainingInstances));
-                    if (monitor.resultPreviewRequested()) {
-                        monitor.setLatestResultPreview(learningCurve.copy());
+                    if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                        if (monitor.taskShouldAbort()) {
+                            this.trainInstances.clear();
+                            return null;
+                        }
+                        long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+                        if (maxInstances > 0) {
+                            long maxRemaining = maxInstances - instancesProcessed;
+                            if ((estimatedRemainingInstances < 0)
+                                    || (maxRemaining < estimatedRemainingInstances)) {
+                                estimatedRemainingInstances = maxRemaining;
+                            }
+                        }
+                        monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                                : (double) instancesProcessed
+                                / (double) (instancesProcessed + estimatedRemainingInstances));
+                        if (monitor.resultPreviewRequested()) {
+                            monitor.setLatestResultPreview(learningCurve.snapshot());
+                        }
+                        secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
+                                - evaluateStartTime);
                     }
-                    secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
-                            - evaluateStartTime);
                 }
             }
-        }
-        if (immediateResultStream != null) {
-            immediateResultStream.close();
-        }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
+            this.trainInstances.clear();
+            if (immediateResultStream != null) {
+                immediateResultStream.close();
+            }
+        } finally {
+            if (outputPredictionWriter != null) {
+                outputPredictionWriter.close();
+            }
         }
         return learningCurve;
     }
@@ -120,11 +120,21 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
     public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
             "Seed for random behaviour of the task.", 1);
 
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of threads that process the folds (-1 = as much as possible).", 1, -1, Integer.MAX_VALUE);
+
+    public IntOption maxInMemoryOption = new IntOption("maxInMemory", 'x',
+            "Number of delayed instances kept in memory before further ones are written to disk (-1 = no limit).",
+            -1, -1, Integer.MAX_VALUE);
+
     // Buffer of instances to use for training. 
-    // Note: It is a list of lists because it stores instances per learner, e.g.
-    // CV of 10, would be 10 lists of buffered instances for delayed training. 
-    protected LinkedList<LinkedList<Example>> trainInstances;
+    // Note: It is an array of queues because it stores instances per learner, e.g.
+    // CV of 10, would be 10 queues of buffered instances for delayed training. 
+    protected ExampleQueue[] trainInstances;
     
+    /** Number of examples that are shared with the fold threads at once. */
+    protected static final int FOLD_BATCH_SIZE = 1000;
+
     @Override
     public Class<?> getTaskResultType() {
         return LearningCurve.class;
@@ -156,10 +166,10 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
         int secondsElapsed = 0;
         monitor.setCurrentActivity("Evaluating learner...", -1.0);
 
-        this.trainInstances = new LinkedList<LinkedList<Example>>();
+        this.trainInstances = new ExampleQueue[learners.length];
         
         for(int i = 0; i < learners.length; i++) {
-            this.trainInstances.add(new LinkedList<Example>());
+            this.trainInstances[i] = new ExampleQueue(this.maxInMemoryOption.getValue());
         }
         File dumpFile = this.dumpFileOption.getFile();
         PrintStream immediateResultStream = null;
@@ -184,20 +194,34 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
         long lastEvaluateStartTime = evaluateStartTime;
         double RAMHours = 0.0;
         
+        final int delayLength = this.delayLengthOption.getValue();
+        ParallelFolds folds = new ParallelFolds(learners.length,
+                this.numberOfJobsOption.getValue(), FOLD_BATCH_SIZE);
+        ParallelFolds.FoldStep step = (i, example, k) -> {
+            double[] prediction = learners[i].getVotesForInstance(example);
+            evaluators[i].addResult(example, prediction);
+            ExampleQueue foldInstances = this.trainInstances[i];
+            if (k > 0) {
+                // Every fold keeps its own copy, as learners may change the
+                // instances they train on while the folds run in parallel
+                foldInstances.addLast((Example) example.copy());
+            }
+            if (delayLength < foldInstances.size()) {
+                Example trainInstI = foldInstances.removeFirst();
+                learners[i].trainOnInstance(trainInstI);
+            }
+        };
+
         while (stream.hasMoreInstances()
                 && ((maxInstances < 0) || (instancesProcessed < maxInstances))
                 && ((maxSeconds < 0) || (secondsElapsed < maxSeconds))) {
             
             
             Example trainInst = stream.nextInstance();
-            Example testInst = (Example) trainInst;
+            folds.add(trainInst);
             
             instancesProcessed++;
             for (int i = 0; i < learners.length; i++) {
-                
-                double[] prediction = learners[i].getVotesForInstance(testInst);
-                evaluators[i].addResult(testInst, prediction);
-                
                 int k = 1;
                 switch (this.validationMethodologyOption.getChosenIndex()) {
                     case 0: //Cross-Validation;
@@ -210,18 +234,18 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
                         k = instancesProcessed % learners.length == i ? 1: 0; //Test only one
                         break;
                 }
-                if (k > 0) {
-                    this.trainInstances.get(i).addLast(trainInst);
-                }
-                if(this.delayLengthOption.getValue() < this.trainInstances.get(i).size()) {
-                    Example trainInstI = this.trainInstances.get(i).removeFirst();
-                    learners[i].trainOnInstance(trainInstI);
-                }
+                folds.setWeight(i, k);
             }
             
-            if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0
-                    || stream.hasMoreInstances() == false) {
-                long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            boolean sample = instancesProcessed % this.sampleFrequencyOption.getValue() == 0
+                    || stream.hasMoreInstances() == false;
+            boolean monitorUpdate = instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0;
+            // The folds must be up to date whenever the results are read
+            if (sample || monitorUpdate || folds.isFull() || instancesProcessed == maxInstances) {
+                folds.process(step);
+            }
+            if (sample) {
+                long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread() + folds.getWorkerTime();
                 double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
 
@@ -257,8 +281,10 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
                     immediateResultStream.flush();
                 }
             }
-            if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+            if (monitorUpdate) {
                 if (monitor.taskShouldAbort()) {
+                    folds.shutdown();
+                    clearTrainInstances();
                     return null;
                 }
                 long estimatedRemainingInstances = stream.estimatedRemainingInstances();
@@ -273,12 +299,15 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
                         : (double) instancesProcessed
                         / (double) (instancesProcessed + estimatedRemainingInstances));
                 if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                    monitor.setLatestResultPreview(learningCurve.snapshot());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
-                        - evaluateStartTime);
+                        + folds.getWorkerTime() - evaluateStartTime);
             }
         }
+        folds.process(step);
+        folds.shutdown();
+        clearTrainInstances();
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
@@ -286,6 +315,12 @@ public class EvaluatePrequentialDelayedCV extends ClassificationMainTask {
     }
 
 
+    protected void clearTrainInstances() {
+        for (ExampleQueue foldInstances : this.trainInstances) {
+            foldInstances.clear();
+        }
+    }
+
     public Measurement[] getEvaluationMeasurements(Measurement[] modelMeasurements, LearningPerformanceEvaluator[] subEvaluators) {
         List<Measurement> measurementList = new LinkedList<>();
         if (modelMeasurements != null) {
@@ -274,7 +274,7 @@ public class EvaluatePrequentialMultiLabel extends MultiLabelMainTask {
                         : (double) instancesProcessed
                         / (double) (instancesProcessed + estimatedRemainingInstances));
                 if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                    monitor.setLatestResultPreview(learningCurve.snapshot());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
                         - evaluateStartTime);
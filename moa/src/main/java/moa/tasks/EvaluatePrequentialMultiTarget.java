@@ -21,6 +21,7 @@
 package moa.tasks;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instance;
@@ -102,6 +103,9 @@ public class EvaluatePrequentialMultiTarget extends MultiTargetMainTask {
     public FileOption outputPredictionFileOption = new FileOption("outputPredictionFile", 'o',
             "File to append output predictions to.", null, "pred", true);
 
+    public FlagOption binaryPredictionOutputOption = new FlagOption("binaryPredictionOutput", 'P',
+            "Write the output predictions in binary format, with the true values and all votes.");
+
     //New for prequential method DEPRECATED
     public IntOption widthOption = new IntOption("width",
             'w', "Size of Window", 1000);
@@ -117,6 +121,26 @@ public class EvaluatePrequentialMultiTarget extends MultiTargetMainTask {
 
     @Override
     protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        //File for output predictions
+        File outputPredictionFile = this.outputPredictionFileOption.getFile();
+        AsyncPredictionWriter outputPredictionWriter = null;
+        if (outputPredictionFile != null) {
+            outputPredictionWriter = new AsyncPredictionWriter(outputPredictionFile,
+                    this.binaryPredictionOutputOption.isSet());
+        }
+        try {
+            return evaluatePrequential(monitor, outputPredictionWriter);
+        } finally {
+            if (outputPredictionWriter != null) {
+                outputPredictionWriter.close();
+            }
+        }
+    }
+
+    /**
+     * Tests and trains the learner on the stream, writing the predictions if a writer is given.
+     */
+    protected Object evaluatePrequential(TaskMonitor monitor, AsyncPredictionWriter outputPredictionWriter) {
         Learner learner = (Learner) getPreparedClassOption(this.learnerOption);
         ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
         LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
@@ -170,23 +194,6 @@ public class EvaluatePrequentialMultiTarget extends MultiTargetMainTask {
                         "Unable to open immediate result file: " + dumpFile, ex);
             }
         }
-        //File for output predictions
-        File outputPredictionFile = this.outputPredictionFileOption.getFile();
-        PrintStream outputPredictionResultStream = null;
-        if (outputPredictionFile != null) {
-            try {
-                if (outputPredictionFile.exists()) {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile, true), true);
-                } else {
-                    outputPredictionResultStream = new PrintStream(
-                            new FileOutputStream(outputPredictionFile), true);
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException(
-                        "Unable to open prediction result file: " + outputPredictionFile, ex);
-            }
-        }
         boolean firstDump = true;
         boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
         long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
@@ -201,9 +208,13 @@ public class EvaluatePrequentialMultiTarget extends MultiTargetMainTask {
             //double[] prediction = learner.getVotesForInstance(testInst);
             Prediction prediction = learner.getPredictionForInstance(testInst);
             // Output prediction
-            if (outputPredictionFile != null) {
-                double trueClass = ((Instance) trainInst.getData()).classValue();
-                outputPredictionResultStream.println(prediction + "," + trueClass);
+            if (outputPredictionWriter != null) {
+                Instance inst = (Instance) trainInst.getData();
+                if (outputPredictionWriter.isBinary()) {
+                    outputPredictionWriter.write(instancesProcessed, inst, prediction);
+                } else {
+                    outputPredictionWriter.writeLine(prediction + "," + inst.classValue());
+                }
             }
 
             //evaluator.addClassificationAttempt(trueClass, prediction, testInst.weight());
@@ -260,7 +271,7 @@ public class EvaluatePrequentialMultiTarget extends MultiTargetMainTask {
                         : (double) instancesProcessed
                         / (double) (instancesProcessed + estimatedRemainingInstances));
                 if (monitor.resultPreviewRequested()) {
-                    monitor.setLatestResultPreview(learningCurve.copy());
+                    monitor.setLatestResultPreview(learningCurve.snapshot());
                 }
                 secondsElapsed = (int) TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread()
                         - evaluateStartTime);
@@ -274,9 +285,6 @@ public class EvaluatePrequentialMultiTarget extends MultiTargetMainTask {
         if (immediateResultStream != null) {
             immediateResultStream.close();
         }
-        if (outputPredictionResultStream != null) {
-            outputPredictionResultStream.close();
-        }
         return learningCurve;
     }
 }
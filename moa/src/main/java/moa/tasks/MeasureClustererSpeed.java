@@ -0,0 +1,150 @@
+/*
+ *    MeasureClustererSpeed.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.javacliparser.IntOption;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.clusterers.AbstractClusterer;
+import moa.clusterers.ClusterGenerator;
+import moa.core.Measurement;
+import moa.core.ObjectRepository;
+import moa.core.TimingUtils;
+import moa.evaluation.LearningEvaluation;
+import moa.options.ClassOption;
+import moa.streams.clustering.ClusteringStream;
+
+/**
+ * Task for comparing the speed of a clusterer with a baseline clusterer.
+ * Both clusterers are trained on the same instances, which are generated
+ * before the measurement starts so that the time of the stream is not
+ * included.
+ *
+ * The defaults compare FlatBICO with BICO on 100000 points with 50
+ * dimensions.
+ *
+ */
+public class MeasureClustererSpeed extends AuxiliarMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Compares the training speed of a clusterer with a baseline clusterer.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ClassOption learnerOption = new ClassOption("learner", 'l',
+            "Clusterer to measure.", AbstractClusterer.class,
+            "kmeanspm.FlatBICO -d 50");
+
+    public ClassOption baselineOption = new ClassOption("baseline", 'b',
+            "Baseline clusterer to compare with.", AbstractClusterer.class,
+            "kmeanspm.BICO -d 50");
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to learn from.", ClusteringStream.class,
+            "RandomRBFGeneratorEvents -a 50 -R 0.01");
+
+    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+            "Number of instances to train on.", 100000, 1, Integer.MAX_VALUE);
+
+    public IntOption repetitionsOption = new IntOption("repetitions", 'r',
+            "Number of times each clusterer is trained from scratch.", 3, 1,
+            Integer.MAX_VALUE);
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        TimingUtils.enablePreciseTiming();
+        ClusteringStream stream = (ClusteringStream) getPreparedClassOption(this.streamOption);
+        AbstractClusterer learner = (AbstractClusterer) getPreparedClassOption(this.learnerOption);
+        AbstractClusterer baseline = (AbstractClusterer) getPreparedClassOption(this.baselineOption);
+
+        monitor.setCurrentActivity("Generating instances...", -1.0);
+        int numInstances = this.instanceLimitOption.getValue();
+        List<Instance> instances = new ArrayList<Instance>(numInstances);
+        while (instances.size() < numInstances && stream.hasMoreInstances()) {
+            Instance next = stream.nextInstance().getData();
+            Instance inst = new DenseInstance(next);
+            if (!(learner instanceof ClusterGenerator || baseline instanceof ClusterGenerator)) {
+                inst.deleteAttributeAt(next.classIndex());
+            }
+            instances.add(inst);
+        }
+
+        double[] learnerTimes = measure(learner, instances, monitor, "learner");
+        if (monitor.taskShouldAbort()) {
+            return null;
+        }
+        double[] baselineTimes = measure(baseline, instances, monitor, "baseline");
+        if (monitor.taskShouldAbort()) {
+            return null;
+        }
+        return new LearningEvaluation(
+                new Measurement[]{
+                    new Measurement("Number of instances", instances.size()),
+                    new Measurement("Training time (learner)", learnerTimes[0]),
+                    new Measurement("Instances per second (learner)",
+                    instances.size() / learnerTimes[0]),
+                    new Measurement("Clustering time (learner)", learnerTimes[1]),
+                    new Measurement("Training time (baseline)", baselineTimes[0]),
+                    new Measurement("Instances per second (baseline)",
+                    instances.size() / baselineTimes[0]),
+                    new Measurement("Clustering time (baseline)", baselineTimes[1]),
+                    new Measurement("Training speedup",
+                    baselineTimes[0] / learnerTimes[0])});
+    }
+
+    /**
+     * Trains a clusterer from scratch on the instances and requests the final
+     * clustering. Returns the fastest training and clustering CPU time in
+     * seconds over all repetitions.
+     */
+    protected double[] measure(AbstractClusterer clusterer,
+            List<Instance> instances, TaskMonitor monitor, String name) {
+        double[] best = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        int repetitions = this.repetitionsOption.getValue();
+        for (int r = 0; r < repetitions; r++) {
+            monitor.setCurrentActivity("Training " + name + " (" + (r + 1)
+                    + "/" + repetitions + ")...", (double) r / repetitions);
+            if (monitor.taskShouldAbort()) {
+                return best;
+            }
+            clusterer.resetLearning();
+            long startTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            for (Instance inst : instances) {
+                clusterer.trainOnInstanceImpl(inst);
+            }
+            long trainTime = TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+            startTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            clusterer.getClusteringResult();
+            long clusteringTime = TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime;
+            best[0] = Math.min(best[0], TimingUtils.nanoTimeToSeconds(trainTime));
+            best[1] = Math.min(best[1], TimingUtils.nanoTimeToSeconds(clusteringTime));
+        }
+        return best;
+    }
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return LearningEvaluation.class;
+    }
+}
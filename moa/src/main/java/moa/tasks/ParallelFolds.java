@@ -0,0 +1,178 @@
+/*
+ *    ParallelFolds.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import moa.core.Example;
+import moa.core.ParallelTaskRunner;
+import moa.core.TimingUtils;
+
+/**
+ * Runs the folds of a prequential cross-validation on several threads. The
+ * examples of the stream are collected in a batch together with the training
+ * weight of every fold. The batch is then shared read-only by all workers,
+ * and each worker processes all examples of the batch for its folds in the
+ * order of the stream. Since the folds are independent, every fold sees
+ * exactly the same sequence of examples and weights as in a sequential run.
+ *
+ * With a single job the folds are processed on the calling thread. The
+ * worker threads are daemon threads that stop when idle.
+ */
+public class ParallelFolds {
+
+    /**
+     * Processing of one example by one fold.
+     */
+    public interface FoldStep {
+
+        /**
+         * Tests and trains the model of a fold on an example.
+         *
+         * @param fold the index of the fold
+         * @param example the example, which must not be modified
+         * @param weight the number of times the fold trains on the example
+         */
+        void process(int fold, Example example, int weight);
+    }
+
+    protected final int numFolds;
+
+    protected final int numJobs;
+
+    protected final ParallelTaskRunner taskRunner;
+
+    protected final Example[] examples;
+
+    /** Training weight of every example in the batch, by fold. */
+    protected final int[][] weights;
+
+    protected int size;
+
+    protected final AtomicLong workerTime = new AtomicLong();
+
+    /**
+     * Creates the batch and the worker threads.
+     *
+     * @param numFolds the number of folds
+     * @param numberOfJobs the number of threads, -1 for one per processor
+     * @param batchSize the number of examples shared with the workers at once
+     */
+    public ParallelFolds(int numFolds, int numberOfJobs, int batchSize) {
+        if (numberOfJobs == -1) {
+            numberOfJobs = Runtime.getRuntime().availableProcessors();
+        }
+        this.numFolds = numFolds;
+        this.numJobs = Math.max(1, Math.min(numberOfJobs, numFolds));
+        this.taskRunner = this.numJobs > 1 ? new ParallelTaskRunner(this.numJobs) : null;
+        this.examples = new Example[batchSize];
+        this.weights = new int[numFolds][batchSize];
+    }
+
+    /**
+     * Adds an example to the batch. The weights of the folds for this example
+     * are set afterwards with <code>setWeight</code>.
+     *
+     * @param example the example
+     */
+    public void add(Example example) {
+        this.examples[this.size++] = example;
+    }
+
+    /**
+     * Sets the training weight of a fold for the example added last.
+     *
+     * @param fold the index of the fold
+     * @param weight the number of times the fold trains on the example
+     */
+    public void setWeight(int fold, int weight) {
+        this.weights[fold][this.size - 1] = weight;
+    }
+
+    public boolean isFull() {
+        return this.size == this.examples.length;
+    }
+
+    /**
+     * Processes all examples of the batch for all folds and empties the
+     * batch.
+     *
+     * @param step the processing of an example by a fold
+     */
+    public void process(final FoldStep step) {
+        if (this.size == 0) {
+            return;
+        }
+        if (this.taskRunner == null) {
+            for (int fold = 0; fold < this.numFolds; fold++) {
+                processFold(step, fold);
+            }
+        } else {
+            List<Callable<Integer>> jobs = new ArrayList<Callable<Integer>>(this.numJobs);
+            for (int job = 0; job < this.numJobs; job++) {
+                final int firstFold = job;
+                jobs.add(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() {
+                        long startTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                        for (int fold = firstFold; fold < numFolds; fold += numJobs) {
+                            processFold(step, fold);
+                        }
+                        workerTime.addAndGet(TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime);
+                        return 0;
+                    }
+                });
+            }
+            this.taskRunner.invokeAll(jobs);
+        }
+        for (int i = 0; i < this.size; i++) {
+            this.examples[i] = null;
+        }
+        this.size = 0;
+    }
+
+    protected void processFold(FoldStep step, int fold) {
+        int[] foldWeights = this.weights[fold];
+        for (int i = 0; i < this.size; i++) {
+            step.process(fold, this.examples[i], foldWeights[i]);
+        }
+    }
+
+    /**
+     * Gets the CPU time used by the worker threads. The time of folds that
+     * are processed on the calling thread is not included.
+     *
+     * @return the CPU time in nanoseconds
+     */
+    public long getWorkerTime() {
+        return this.workerTime.get();
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        if (this.taskRunner != null) {
+            this.taskRunner.shutdown();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ *    RunExperimentGrid.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.github.javacliparser.IntOption;
+import com.github.javacliparser.ListOption;
+import com.github.javacliparser.Option;
+import com.github.javacliparser.StringOption;
+
+import moa.core.Measurement;
+import moa.core.ObjectRepository;
+import moa.core.TimingUtils;
+import moa.evaluation.LearningEvaluation;
+import moa.evaluation.preview.LearningCurve;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+
+/**
+ * Task for running a grid of experiments without a graphical interface. The
+ * given task is run for every combination of learner, stream and seed. The
+ * experiments run on a bounded pool of threads, and the CPU time of every
+ * experiment is measured on the thread that runs it.
+ *
+ * Every experiment writes its learning curve to its own csv file in the
+ * output directory, and a line to the file <code>summary.csv</code> when it
+ * finishes. The csv file of an experiment is only created once the
+ * experiment is complete, so if the grid is started again after a crash, the
+ * experiments whose file exists are skipped. The learners, streams and
+ * seeds must not be changed between such runs, since the files are named
+ * after their positions in the grid.
+ *
+ * The learner and the stream are set through the options named
+ * <code>learner</code> and <code>stream</code> of the task. The seed is set
+ * through the options of the learner and the stream whose names are given,
+ * where the objects have such an option.
+ */
+public class RunExperimentGrid extends AuxiliarMainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Runs a task for every combination of learners, streams and seeds in parallel.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ClassOption taskOption = new ClassOption("task", 't',
+            "Task to do for every cell of the grid.", Task.class,
+            "EvaluatePrequential -i 100000 -f 10000");
+
+    public ListOption learnersOption = new ListOption("learners", 'l',
+            "Learners to evaluate, separated by semicolons.",
+            new StringOption("learner", ' ', "", "bayes.NaiveBayes"),
+            new Option[]{new StringOption("learner", ' ', "", "bayes.NaiveBayes")}, ';');
+
+    public ListOption streamsOption = new ListOption("streams", 's',
+            "Streams to evaluate on, separated by semicolons.",
+            new StringOption("stream", ' ', "", "generators.RandomTreeGenerator"),
+            new Option[]{new StringOption("stream", ' ', "", "generators.RandomTreeGenerator")}, ';');
+
+    public StringOption seedsOption = new StringOption("seeds", 'r',
+            "Seeds to run every combination with, separated by commas.", "1");
+
+    public StringOption learnerSeedOption = new StringOption("learnerSeedOption", 'p',
+            "Name of the learner option that receives the seed.", "randomSeed");
+
+    public StringOption streamSeedOption = new StringOption("streamSeedOption", 'q',
+            "Name of the stream option that receives the seed.", "instanceRandomSeed");
+
+    public IntOption numberOfJobsOption = new IntOption("numberOfJobs", 'j',
+            "Number of experiments that run at the same time (-1 = as much as possible).",
+            -1, -1, Integer.MAX_VALUE);
+
+    public StringOption outputDirectoryOption = new StringOption("outputDirectory", 'd',
+            "Directory to write the results of the experiments to.", "experiments");
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return LearningEvaluation.class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        File directory = new File(this.outputDirectoryOption.getValue());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Unable to create output directory: " + directory);
+        }
+        String taskString = this.taskOption.getValueAsCLIString();
+        Option[] learners = this.learnersOption.getList();
+        Option[] streams = this.streamsOption.getList();
+        String[] seeds = this.seedsOption.getValue().split(",");
+
+        List<Cell> cells = new ArrayList<Cell>();
+        int skipped = 0;
+        for (int l = 0; l < learners.length; l++) {
+            for (int s = 0; s < streams.length; s++) {
+                for (String seed : seeds) {
+                    Cell cell = new Cell(taskString, learners[l].getValueAsCLIString(),
+                            streams[s].getValueAsCLIString(), seed.trim(),
+                            new File(directory, "l" + l + "_s" + s + "_r" + seed.trim() + ".csv"));
+                    if (cell.file.exists()) {
+                        skipped++;
+                    } else {
+                        cells.add(cell);
+                    }
+                }
+            }
+        }
+
+        int numberOfJobs = this.numberOfJobsOption.getValue();
+        if (numberOfJobs == -1) {
+            numberOfJobs = Runtime.getRuntime().availableProcessors();
+        }
+        numberOfJobs = Math.max(1, Math.min(numberOfJobs, cells.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfJobs);
+        CompletionService<Cell> completionService = new ExecutorCompletionService<Cell>(executor);
+        CellMonitor cellMonitor = new CellMonitor();
+        File summaryFile = new File(directory, "summary.csv");
+        for (Cell cell : cells) {
+            completionService.submit(new CellRunner(cell, cellMonitor, repository, summaryFile));
+        }
+
+        int completed = 0;
+        int failed = 0;
+        double cpuTime = 0.0;
+        try {
+            int finished = 0;
+            while (finished < cells.size()) {
+                monitor.setCurrentActivity("Running experiments (" + finished + "/"
+                        + cells.size() + ", " + skipped + " skipped)...",
+                        (double) finished / cells.size());
+                Future<Cell> future = completionService.poll(1, TimeUnit.SECONDS);
+                if (monitor.taskShouldAbort()) {
+                    cellMonitor.abort = true;
+                    return null;
+                }
+                if (future != null) {
+                    Cell cell = future.get();
+                    if (cell.error == null) {
+                        completed++;
+                    } else {
+                        failed++;
+                    }
+                    cpuTime += cell.cpuTime;
+                    finished++;
+                }
+            }
+        } catch (InterruptedException ex) {
+            cellMonitor.abort = true;
+            throw new RuntimeException("Interrupted while waiting for experiments.", ex);
+        } catch (ExecutionException ex) {
+            cellMonitor.abort = true;
+            throw new RuntimeException("Experiment runner failed.", ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return new LearningEvaluation(
+                new Measurement[]{
+                    new Measurement("experiments", cells.size() + skipped),
+                    new Measurement("experiments completed", completed),
+                    new Measurement("experiments skipped", skipped),
+                    new Measurement("experiments failed", failed),
+                    new Measurement("total experiment time (cpu seconds)", cpuTime)});
+    }
+
+    /**
+     * One combination of learner, stream and seed.
+     */
+    protected static class Cell {
+
+        public final String task;
+
+        public final String learner;
+
+        public final String stream;
+
+        public final String seed;
+
+        public final File file;
+
+        public double cpuTime;
+
+        public Throwable error;
+
+        public Cell(String task, String learner, String stream, String seed, File file) {
+            this.task = task;
+            this.learner = learner;
+            this.stream = stream;
+            this.seed = seed;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Monitor of the experiments, which only passes on a request to abort.
+     */
+    protected static class CellMonitor extends NullMonitor {
+
+        public volatile boolean abort;
+
+        @Override
+        public boolean taskShouldAbort() {
+            return this.abort;
+        }
+    }
+
+    protected class CellRunner implements Callable<Cell> {
+
+        protected final Cell cell;
+
+        protected final TaskMonitor monitor;
+
+        protected final ObjectRepository repository;
+
+        protected final File summaryFile;
+
+        public CellRunner(Cell cell, TaskMonitor monitor, ObjectRepository repository,
+                File summaryFile) {
+            this.cell = cell;
+            this.monitor = monitor;
+            this.repository = repository;
+            this.summaryFile = summaryFile;
+        }
+
+        @Override
+        public Cell call() {
+            if (this.monitor.taskShouldAbort()) {
+                return this.cell;
+            }
+            TimingUtils.enablePreciseTiming();
+            long startTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            long wallStartTime = System.nanoTime();
+            Object result = null;
+            try {
+                Task task = createTask();
+                result = task.doTask(this.monitor, this.repository);
+            } catch (Throwable t) {
+                this.cell.error = t;
+            }
+            this.cell.cpuTime = TimingUtils.nanoTimeToSeconds(
+                    TimingUtils.getNanoCPUTimeOfCurrentThread() - startTime);
+            double wallTime = (System.nanoTime() - wallStartTime) / 1.0e9;
+            if (this.cell.error == null && result != null) {
+                try {
+                    writeResult(result);
+                } catch (IOException ex) {
+                    this.cell.error = ex;
+                }
+            } else if (this.cell.error == null) {
+                // The task was aborted
+                return this.cell;
+            }
+            writeSummary(wallTime);
+            return this.cell;
+        }
+
+        protected Task createTask() throws Exception {
+            Task task = (Task) ClassOption.cliStringToObject(this.cell.task, Task.class, null);
+            ClassOption learnerOption = getClassOption(task, "learner");
+            ClassOption streamOption = getClassOption(task, "stream");
+            learnerOption.setValueViaCLIString(this.cell.learner);
+            streamOption.setValueViaCLIString(this.cell.stream);
+            setSeed(learnerOption, learnerSeedOption.getValue());
+            setSeed(streamOption, streamSeedOption.getValue());
+            return task;
+        }
+
+        protected ClassOption getClassOption(Task task, String name) {
+            Option option = ((OptionHandler) task).getOptions().getOption(name);
+            if (!(option instanceof ClassOption)) {
+                throw new IllegalArgumentException("Task " + this.cell.task
+                        + " has no option named " + name);
+            }
+            return (ClassOption) option;
+        }
+
+        protected void setSeed(ClassOption option, String seedOptionName) {
+            Object object = option.getPreMaterializedObject();
+            if (object instanceof OptionHandler) {
+                Option seedOption = ((OptionHandler) object).getOptions().getOption(seedOptionName);
+                if (seedOption != null) {
+                    seedOption.setValueViaCLIString(this.cell.seed);
+                }
+            }
+        }
+
+        protected void writeResult(Object result) throws IOException {
+            // Write to a temporary file first, so that only complete results
+            // are found when the grid is resumed
+            File tempFile = new File(this.cell.file.getPath() + ".tmp");
+            PrintStream out = new PrintStream(new FileOutputStream(tempFile));
+            try {
+                if (result instanceof LearningCurve) {
+                    LearningCurve curve = (LearningCurve) result;
+                    out.println(curve.headerToString());
+                    for (int i = 0; i < curve.numEntries(); i++) {
+                        out.println(curve.entryToString(i));
+                    }
+                } else {
+                    out.println(result);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(tempFile.toPath(), this.cell.file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        protected void writeSummary(double wallTime) {
+            synchronized (RunExperimentGrid.this) {
+                try {
+                    boolean newFile = !this.summaryFile.exists();
+                    PrintStream out = new PrintStream(new FileOutputStream(this.summaryFile, true));
+                    try {
+                        if (newFile) {
+                            out.println("file,learner,stream,seed,cpu seconds,wall seconds,status");
+                        }
+                        out.println(this.cell.file.getName() + "," + quote(this.cell.learner)
+                                + "," + quote(this.cell.stream) + "," + this.cell.seed
+                                + "," + this.cell.cpuTime + "," + wallTime + ","
+                                + (this.cell.error == null ? "completed"
+                                : quote("failed: " + this.cell.error)));
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException ex) {
+                    throw new RuntimeException("Unable to write summary file: " + this.summaryFile, ex);
+                }
+            }
+        }
+    }
+
+    protected static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
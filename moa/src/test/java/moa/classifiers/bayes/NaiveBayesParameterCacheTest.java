@@ -0,0 +1,67 @@
+/*
+ *    NaiveBayesParameterCacheTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.bayes;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.options.ClassOption;
+import moa.streams.ExampleStream;
+
+/**
+ * Checks that the votes of the cached parameters are identical to those
+ * computed from the observers.
+ */
+public class NaiveBayesParameterCacheTest {
+
+	@Test
+	public void testNumericAttributes() throws Exception {
+		assertSameVotes("generators.RandomRBFGeneratorDrift -s 0.01 -c 4");
+	}
+
+	@Test
+	public void testNominalAttributes() throws Exception {
+		assertSameVotes("generators.LEDGeneratorDrift -d 3");
+	}
+
+	@Test
+	public void testMixedAttributes() throws Exception {
+		assertSameVotes("generators.RandomTreeGenerator -c 3 -o 5 -u 5");
+	}
+
+	protected void assertSameVotes(String streamString) throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(streamString, ExampleStream.class, null);
+		((moa.options.OptionHandler) stream).prepareForUse();
+		NaiveBayes learner = new NaiveBayes();
+		learner.setModelContext(stream.getHeader());
+		learner.prepareForUse();
+		for (int i = 0; i < 5000; i++) {
+			Instance instance = (Instance) stream.nextInstance().getData();
+			if (i % 7 == 0) {
+				instance.setMissing(0);
+			}
+			assertArrayEquals("instance " + i,
+					NaiveBayes.doNaiveBayesPrediction(instance, learner.observedClassDistribution, learner.attributeObservers),
+					learner.getVotesForInstance(instance), 0.0);
+			learner.trainOnInstance(instance);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ *    ParallelEnsembleTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.meta;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+
+import moa.classifiers.Classifier;
+import moa.core.Example;
+import moa.core.InstanceExample;
+import moa.core.Measurement;
+import moa.evaluation.BasicClassificationPerformanceEvaluator;
+import moa.evaluation.BasicRegressionPerformanceEvaluator;
+import moa.evaluation.LearningPerformanceEvaluator;
+import moa.options.ClassOption;
+import moa.streams.ExampleStream;
+
+/**
+ * Checks that the ensembles that train their members on parallel tasks give
+ * the same learning curves with one job as with several jobs.
+ */
+public class ParallelEnsembleTest {
+
+	protected static final int NUM_INSTANCES = 3000;
+
+	protected static final int SAMPLE_FREQUENCY = 250;
+
+	protected static final String CLASSIFICATION_STREAM = "generators.RandomRBFGeneratorDrift -s 0.01";
+
+	@Test
+	public void testOzaBag() throws Exception {
+		assertSameClassificationCurves("meta.OzaBag -s 5", 1, 4);
+	}
+
+	@Test
+	public void testOzaBoost() throws Exception {
+		assertSameClassificationCurves("meta.OzaBoost -s 5", 1, 4);
+	}
+
+	@Test
+	public void testLeveragingBag() throws Exception {
+		assertSameClassificationCurves("meta.LeveragingBag -s 5", 1, 4);
+		assertSameClassificationCurves("meta.LeveragingBag -s 5 -m 1", 1, 4);
+		assertSameClassificationCurves("meta.LeveragingBag -s 5 -o", 1, 4);
+	}
+
+	@Test
+	public void testAdaptiveRandomForest() throws Exception {
+		assertSameClassificationCurves("meta.AdaptiveRandomForest -s 5", 1, 4);
+	}
+
+	@Test
+	public void testStreamingRandomPatches() throws Exception {
+		assertSameClassificationCurves("meta.StreamingRandomPatches -s 5", 1, 4);
+		assertSameClassificationCurves("meta.StreamingRandomPatches -s 5 -t (Random Subspaces)", 1, 4);
+	}
+
+	@Test
+	public void testAdaptiveRandomForestRegressor() throws Exception {
+		List<Instance> instances = new ArrayList<Instance>();
+		InstancesHeader header = generateRegressionInstances(instances);
+		String learner = "meta.AdaptiveRandomForestRegressor -s 5";
+		assertArrayEquals(learner,
+				learningCurve(learner, 1, header, instances, new BasicRegressionPerformanceEvaluator()),
+				learningCurve(learner, 4, header, instances, new BasicRegressionPerformanceEvaluator()), 0.0);
+	}
+
+	protected void assertSameClassificationCurves(String learner, int numberOfJobs, int otherNumberOfJobs) throws Exception {
+		ExampleStream stream = (ExampleStream) ClassOption.cliStringToObject(CLASSIFICATION_STREAM, ExampleStream.class, null);
+		((moa.options.OptionHandler) stream).prepareForUse();
+		List<Instance> instances = new ArrayList<Instance>();
+		for (int i = 0; i < NUM_INSTANCES; i++) {
+			instances.add((Instance) stream.nextInstance().getData());
+		}
+		InstancesHeader header = stream.getHeader();
+		assertArrayEquals(learner,
+				learningCurve(learner, numberOfJobs, header, instances, new BasicClassificationPerformanceEvaluator()),
+				learningCurve(learner, otherNumberOfJobs, header, instances, new BasicClassificationPerformanceEvaluator()), 0.0);
+	}
+
+	/**
+	 * Tests and then trains a learner on the instances, and returns the
+	 * measurements of the evaluator and the votes of the latest instance
+	 * every SAMPLE_FREQUENCY instances.
+	 */
+	protected static double[] learningCurve(String learnerString, int numberOfJobs, InstancesHeader header,
+			List<Instance> instances, LearningPerformanceEvaluator<Example<Instance>> evaluator) throws Exception {
+		Classifier learner = (Classifier) ClassOption.cliStringToObject(learnerString + " -j " + numberOfJobs, Classifier.class, null);
+		learner.setModelContext(header);
+		learner.prepareForUse();
+		List<Double> curve = new ArrayList<Double>();
+		for (int i = 0; i < instances.size(); i++) {
+			Instance instance = instances.get(i);
+			double[] votes = learner.getVotesForInstance(instance);
+			evaluator.addResult(new InstanceExample(instance), votes);
+			learner.trainOnInstance(instance);
+			if ((i + 1) % SAMPLE_FREQUENCY == 0) {
+				for (Measurement measurement : evaluator.getPerformanceMeasurements()) {
+					curve.add(measurement.getValue());
+				}
+				for (double vote : votes) {
+					curve.add(vote);
+				}
+			}
+		}
+		double[] result = new double[curve.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = curve.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Generates instances of the Friedman #1 function, which changes after
+	 * half of the instances, and returns their header.
+	 */
+	protected static InstancesHeader generateRegressionInstances(List<Instance> instances) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < 6; i++) {
+			attributes.add(new Attribute("x" + i));
+		}
+		attributes.add(new Attribute("y"));
+		Instances data = new Instances("friedman", attributes, 0);
+		data.setClassIndex(6);
+		InstancesHeader header = new InstancesHeader(data);
+		Random random = new Random(1);
+		for (int i = 0; i < NUM_INSTANCES; i++) {
+			double[] values = new double[7];
+			for (int j = 0; j < 6; j++) {
+				values[j] = random.nextDouble();
+			}
+			values[6] = 10 * Math.sin(Math.PI * values[0] * values[1]) + 20 * (values[2] - 0.5) * (values[2] - 0.5)
+					+ 10 * values[3] + 5 * values[4] + random.nextGaussian()
+					+ (i >= NUM_INSTANCES / 2 ? 10 * values[5] : 0);
+			Instance instance = new DenseInstance(1.0, values);
+			instance.setDataset(header);
+			instances.add(instance);
+		}
+		return header;
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ *    RuleCoverageIndexTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.classifiers.rules.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
+import moa.classifiers.rules.AMRulesRegressorOld;
+import moa.classifiers.rules.core.conditionaltests.NominalAttributeBinaryRulePredicate;
+import moa.classifiers.rules.core.conditionaltests.NumericAttributeBinaryRulePredicate;
+import moa.classifiers.rules.multilabel.core.Literal;
+import moa.classifiers.rules.multilabel.core.MultiLabelRule;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import com.yahoo.labs.samoa.instances.MultiLabelInstance;
+import com.yahoo.labs.samoa.instances.Range;
+
+public class RuleCoverageIndexTest {
+
+	private static final int NUM_NUMERIC = 4;
+
+	private static final int NUM_NOMINAL = 3;
+
+	private static final int NUM_VALUES = 4;
+
+	private static final int NUM_RULES = 150;
+
+	private static final int NUM_INSTANCES = 1000;
+
+	@Test
+	public void testRulesMatchIsCovering() {
+		Random random = new Random(1);
+		InstancesHeader header = createHeader(false);
+		AMRulesRegressorOld learner = new AMRulesRegressorOld();
+		List<Rule> rules = new ArrayList<Rule>();
+		RuleCoverageIndex index = new RuleCoverageIndex();
+		index.clear();
+		for (int i = 0; i < NUM_RULES; i++) {
+			Rule rule = newRule(learner, i);
+			int numPredicates = random.nextInt(5);
+			for (int j = 0; j < numPredicates; j++) {
+				addPredicate(rule, random);
+			}
+			rules.add(rule);
+			index.addRule(rule.getPredicates());
+		}
+		assertRulesMatch(header, rules, index, random);
+
+		// Expands some rules, and removes and inserts others as the learners do
+		for (int i = 0; i < NUM_RULES; i += 3) {
+			addPredicate(rules.get(i), random);
+			index.setRule(i, rules.get(i).getPredicates());
+		}
+		assertRulesMatch(header, rules, index, random);
+		rules.remove(10);
+		Collections.shuffle(rules, random);
+		rules.add(5, newRule(learner, NUM_RULES));
+		index.clear();
+		for (Rule rule : rules) {
+			index.addRule(rule.getPredicates());
+		}
+		assertRulesMatch(header, rules, index, random);
+	}
+
+	@Test
+	public void testMultiLabelRulesMatchIsCovering() {
+		Random random = new Random(2);
+		InstancesHeader header = createHeader(true);
+		List<TestMultiLabelRule> rules = new ArrayList<TestMultiLabelRule>();
+		RuleCoverageIndex index = new RuleCoverageIndex();
+		index.clear();
+		for (int i = 0; i < NUM_RULES; i++) {
+			TestMultiLabelRule rule = new TestMultiLabelRule(i);
+			int numPredicates = random.nextInt(5);
+			for (int j = 0; j < numPredicates; j++) {
+				rule.addPredicate(random);
+			}
+			rules.add(rule);
+			index.addRule(rule.getPredicates());
+		}
+		assertMultiLabelRulesMatch(header, rules, index, random);
+
+		for (int i = 0; i < NUM_RULES; i += 3) {
+			rules.get(i).addPredicate(random);
+			index.setRule(i, rules.get(i).getPredicates());
+		}
+		assertMultiLabelRulesMatch(header, rules, index, random);
+		rules.remove(10);
+		Collections.shuffle(rules, random);
+		rules.add(5, new TestMultiLabelRule(NUM_RULES));
+		index.clear();
+		for (MultiLabelRule rule : rules) {
+			index.addRule(rule.getPredicates());
+		}
+		assertMultiLabelRulesMatch(header, rules, index, random);
+	}
+
+	@Test
+	public void testUnindexedPredicates() {
+		RuleCoverageIndex index = new RuleCoverageIndex();
+		index.clear();
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		predicates.add(new NumericAttributeBinaryRulePredicate(0, 1.0, 1));
+		index.addRule(predicates);
+		NumericAttributeBinaryRulePredicate negated = new NumericAttributeBinaryRulePredicate(0, 1.0, 1);
+		negated.negateCondition();
+		predicates.add(negated);
+		index.addRule(predicates);
+		predicates.clear();
+		predicates.add(new NumericRulePredicate(0, Double.NaN, true));
+		index.addRule(predicates);
+		predicates.clear();
+		predicates.add(new NominalRulePredicate(0, 1.0, true));
+		predicates.add(new NominalRulePredicate(0, 2.0, true));
+		index.addRule(predicates);
+		assertEquals(4, index.size());
+		assertTrue(index.isIndexed(0));
+		assertFalse(index.isIndexed(1));
+		assertFalse(index.isIndexed(2));
+		assertFalse(index.isIndexed(3));
+
+		// A rule that is expanded with indexed predicates only is indexed again
+		predicates.clear();
+		predicates.add(new NumericAttributeBinaryRulePredicate(0, 1.0, 2));
+		index.setRule(1, predicates);
+		assertTrue(index.isIndexed(1));
+	}
+
+	/**
+	 * Checks that the index returns every rule that covers an instance, and
+	 * only those among the rules that it indexes.
+	 */
+	protected static void assertRulesMatch(InstancesHeader header, List<Rule> rules,
+			RuleCoverageIndex index, Random random) {
+		assertEquals(rules.size(), index.size());
+		for (int n = 0; n < NUM_INSTANCES; n++) {
+			Instance inst = newInstance(header, random);
+			long[] covering = index.getCoveringRules(inst);
+			for (int i = 0; i < rules.size(); i++) {
+				assertCovering(index, covering, i, rules.get(i).isCovering(inst));
+			}
+			assertNoRulesAfter(covering, rules.size());
+		}
+	}
+
+	protected static void assertMultiLabelRulesMatch(InstancesHeader header,
+			List<? extends MultiLabelRule> rules, RuleCoverageIndex index, Random random) {
+		assertEquals(rules.size(), index.size());
+		for (int n = 0; n < NUM_INSTANCES; n++) {
+			MultiLabelInstance inst = (MultiLabelInstance) newInstance(header, random);
+			long[] covering = index.getCoveringRules(inst);
+			for (int i = 0; i < rules.size(); i++) {
+				assertCovering(index, covering, i, rules.get(i).isCovering(inst));
+			}
+			assertNoRulesAfter(covering, rules.size());
+		}
+	}
+
+	/**
+	 * Checks that no bits are set after the last rule in the valid longs of
+	 * a bitset.
+	 */
+	protected static void assertNoRulesAfter(long[] covering, int numRules) {
+		int next = RuleCoverageIndex.nextSetBit(covering, numRules);
+		assertTrue(next < 0 || next >= ((numRules + 63) >>> 6) << 6);
+	}
+
+	protected static void assertCovering(RuleCoverageIndex index, long[] covering, int slot,
+			boolean isCovering) {
+		boolean candidate = (covering[slot >>> 6] & (1L << slot)) != 0;
+		if (index.isIndexed(slot)) {
+			assertEquals("rule " + slot, isCovering, candidate);
+		} else {
+			assertTrue("rule " + slot, candidate);
+		}
+	}
+
+	/**
+	 * Creates a header with numeric attributes followed by nominal ones, with
+	 * one target between them or two targets in the middle of the inputs.
+	 */
+	protected static InstancesHeader createHeader(boolean multiTarget) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < NUM_NUMERIC; i++) {
+			attributes.add(new Attribute("x" + i));
+		}
+		attributes.add(new Attribute("y0"));
+		if (multiTarget) {
+			attributes.add(new Attribute("y1"));
+		}
+		List<String> values = new ArrayList<String>();
+		for (int v = 0; v < NUM_VALUES; v++) {
+			values.add("v" + v);
+		}
+		for (int i = 0; i < NUM_NOMINAL; i++) {
+			attributes.add(new Attribute("n" + i, values));
+		}
+		Instances data = new Instances("rules", attributes, 0);
+		if (multiTarget) {
+			Range range = new Range((NUM_NUMERIC + 1) + "-" + (NUM_NUMERIC + 2));
+			range.setUpper(attributes.size());
+			data.setRangeOutputIndices(range);
+		} else {
+			data.setClassIndex(NUM_NUMERIC);
+		}
+		return new InstancesHeader(data);
+	}
+
+	/**
+	 * Creates an instance with few distinct values, so that they often equal
+	 * the thresholds, and with missing values.
+	 */
+	protected static Instance newInstance(InstancesHeader header, Random random) {
+		double[] values = new double[header.numAttributes()];
+		for (int i = 0; i < values.length; i++) {
+			if (random.nextInt(5) == 0) {
+				values[i] = Double.NaN;
+			} else if (header.attribute(i).isNominal()) {
+				values[i] = random.nextInt(NUM_VALUES);
+			} else {
+				values[i] = randomValue(random);
+			}
+		}
+		Instance inst = new DenseInstance(1.0, values);
+		inst.setDataset(header);
+		return inst;
+	}
+
+	protected static double randomValue(Random random) {
+		int value = random.nextInt(7) - 3;
+		return value == 0 && random.nextBoolean() ? -0.0 : value * 0.5;
+	}
+
+	protected static Rule newRule(AMRulesRegressorOld learner, int id) {
+		Rule rule = new Rule.Builder().
+				threshold(50).
+				alpha(0.005).
+				statistics(new double[3]).
+				id(id).
+				amRules(learner).build();
+		rule.getBuilder().setOwner(rule);
+		return rule;
+	}
+
+	/**
+	 * Adds a predicate of the kinds AMRules creates, sometimes negated as for
+	 * the other branch of a split. The attribute indices do not count the
+	 * target.
+	 */
+	protected static void addPredicate(Rule rule, Random random) {
+		int kind = random.nextInt(4);
+		Predicate predicate;
+		if (kind < 3) {
+			predicate = new NumericAttributeBinaryRulePredicate(random.nextInt(NUM_NUMERIC),
+					randomValue(random), random.nextInt(3));
+		} else {
+			predicate = new NominalAttributeBinaryRulePredicate(NUM_NUMERIC + random.nextInt(NUM_NOMINAL),
+					random.nextInt(NUM_VALUES));
+		}
+		if (random.nextInt(10) == 0) {
+			predicate.negateCondition();
+		}
+		rule.getNodeList().add(new RuleSplitNode((InstanceConditionalTest) predicate, new double[0]));
+	}
+
+	/**
+	 * Rule whose literals are added by the test.
+	 */
+	protected static class TestMultiLabelRule extends MultiLabelRule {
+
+		private static final long serialVersionUID = 1L;
+
+		public TestMultiLabelRule(int id) {
+			super(id);
+		}
+
+		/**
+		 * Adds a predicate of the kinds the multi-label learners create, on
+		 * the indices of the input attributes.
+		 */
+		public void addPredicate(Random random) {
+			Predicate predicate;
+			if (random.nextInt(4) < 3) {
+				double value = random.nextInt(20) == 0 ? Double.NaN : randomValue(random);
+				predicate = new NumericRulePredicate(random.nextInt(NUM_NUMERIC), value, random.nextBoolean());
+			} else {
+				predicate = new NominalRulePredicate(NUM_NUMERIC + random.nextInt(NUM_NOMINAL),
+						random.nextInt(NUM_VALUES), random.nextBoolean());
+			}
+			this.literalList.add(new Literal(predicate));
+		}
+	}
+}
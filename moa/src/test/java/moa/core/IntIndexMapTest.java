@@ -0,0 +1,52 @@
+/*
+ *    IntIndexMapTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntIndexMapTest {
+
+	@Test
+	public void testSameIndicesAsHashMap() {
+		IntIndexMap map = new IntIndexMap();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			int key = random.nextInt(1 << 20) - (1 << 10);
+			Integer index = expected.get(key);
+			assertEquals(index != null ? index.intValue() : -1, map.get(key));
+			if (random.nextBoolean()) {
+				if (index == null) {
+					index = expected.size();
+					expected.put(key, index);
+				}
+				assertEquals(index.intValue(), map.add(key));
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getKey().intValue(), map.keyAt(entry.getValue()));
+		}
+	}
+}
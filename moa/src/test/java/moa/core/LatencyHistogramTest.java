@@ -0,0 +1,176 @@
+/*
+ *    LatencyHistogramTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private static final double[] PERCENTILES = new double[]{0.0, 1.0, 25.0, 50.0, 90.0, 99.0, 99.9, 100.0};
+
+	@Test
+	public void testBucketsCoverAllValues() {
+		for (int bits = 1; bits <= 8; bits++) {
+			LatencyHistogram histogram = new LatencyHistogram(bits);
+			// Every bucket starts right after the previous one
+			long previousHighest = -1;
+			for (int index = 0; index < histogram.counts.length; index++) {
+				long highest = histogram.highestValue(index);
+				assertEquals(index, histogram.bucketIndex(previousHighest + 1));
+				assertEquals(index, histogram.bucketIndex(highest));
+				long lowest = previousHighest + 1;
+				assertTrue("bits " + bits + ", index " + index,
+						highest - lowest <= Math.max(0, lowest >> bits));
+				previousHighest = highest;
+			}
+			assertEquals(Long.MAX_VALUE, previousHighest);
+		}
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram(5);
+		for (int value = 31; value >= 0; value--) {
+			histogram.record(value);
+		}
+		for (int rank = 1; rank <= 32; rank++) {
+			assertEquals(rank - 1, histogram.getValueAtPercentile(100.0 * rank / 32));
+		}
+		assertEquals(32, histogram.getTotalCount());
+		assertEquals(31, histogram.getMax());
+		assertEquals(15.5, histogram.getMean(), 0.0);
+	}
+
+	@Test
+	public void testPercentiles() {
+		Random random = new Random(1);
+		for (int bits = 1; bits <= 8; bits++) {
+			LatencyHistogram histogram = new LatencyHistogram(bits);
+			long[] values = new long[10000];
+			for (int i = 0; i < values.length; i++) {
+				// Values of all magnitudes
+				values[i] = (long) Math.exp(random.nextDouble() * 40.0);
+				histogram.record(values[i]);
+			}
+			assertPercentiles(histogram, values);
+		}
+	}
+
+	@Test
+	public void testNegativeValuesAreZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		assertEquals(0, histogram.getValueAtPercentile(100.0));
+		assertEquals(0, histogram.getMax());
+		assertEquals(1, histogram.getTotalCount());
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(50.0));
+		assertEquals(0.0, histogram.getMean(), 0.0);
+	}
+
+	@Test
+	public void testAdd() {
+		Random random = new Random(2);
+		long[] values = new long[2000];
+		LatencyHistogram histogram = new LatencyHistogram();
+		LatencyHistogram other = new LatencyHistogram();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(1000000);
+			(i % 2 == 0 ? histogram : other).record(values[i]);
+		}
+		histogram.add(other);
+		assertPercentiles(histogram, values);
+	}
+
+	@Test
+	public void testSubtractEarlierCopy() {
+		Random random = new Random(3);
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 1000; i++) {
+			histogram.record(random.nextInt(1000000));
+		}
+		LatencyHistogram earlier = (LatencyHistogram) histogram.copy();
+		long[] values = new long[1000];
+		LatencyHistogram expected = new LatencyHistogram();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1000 + random.nextInt(1000);
+			histogram.record(values[i]);
+			expected.record(values[i]);
+		}
+		LatencyHistogram window = (LatencyHistogram) histogram.copy();
+		window.subtract(earlier);
+		assertEquals(values.length, window.getTotalCount());
+		assertEquals(expected.getMean(), window.getMean(), 1e-6);
+		// The maximum is rounded up to the highest value of its bucket
+		assertEquals(expected.highestValue(expected.bucketIndex(expected.getMax())), window.getMax());
+		for (double percentile : PERCENTILES) {
+			long value = expected.getValueAtPercentile(percentile);
+			assertEquals(expected.highestValue(expected.bucketIndex(value)), window.getValueAtPercentile(percentile));
+		}
+		window.subtract(window);
+		assertEquals(0, window.getTotalCount());
+		assertEquals(0, window.getMax());
+		assertEquals(0, window.getValueAtPercentile(50.0));
+	}
+
+	@Test
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.record(5);
+		histogram.reset();
+		assertEquals(0, histogram.getTotalCount());
+		assertEquals(0, histogram.getValueAtPercentile(100.0));
+		histogram.record(7);
+		assertEquals(7, histogram.getValueAtPercentile(50.0));
+		assertEquals(7, histogram.getMax());
+	}
+
+	/**
+	 * Checks that every percentile is the highest value of the bucket that
+	 * holds the exact percentile, but not above the maximum, and within the
+	 * relative error of the histogram.
+	 */
+	protected static void assertPercentiles(LatencyHistogram histogram, long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		long max = sorted[sorted.length - 1];
+		assertEquals(max, histogram.getMax());
+		assertEquals(values.length, histogram.getTotalCount());
+		for (double percentile : PERCENTILES) {
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * sorted.length));
+			long exact = sorted[(int) rank - 1];
+			long value = histogram.getValueAtPercentile(percentile);
+			assertEquals("percentile " + percentile,
+					Math.min(histogram.highestValue(histogram.bucketIndex(exact)), max), value);
+			assertTrue("percentile " + percentile, value >= exact);
+			assertTrue("percentile " + percentile,
+					value - exact <= exact / (1 << histogram.subBucketBits));
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ *    PoissonSamplerTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PoissonSamplerTest {
+
+	@Test
+	public void testSameDrawsAsMiscUtils() {
+		double[] lambdas = new double[]{0.0, 0.5, 1.0, 6.0, 10.0, 99.5, 100.0, 150.0};
+		for (double lambda : lambdas) {
+			PoissonSampler sampler = new PoissonSampler(lambda);
+			Random random = new Random(1);
+			Random otherRandom = new Random(1);
+			for (int i = 0; i < 100000; i++) {
+				assertEquals("lambda " + lambda, MiscUtils.poisson(lambda, random), sampler.nextInt(otherRandom));
+			}
+		}
+	}
+}
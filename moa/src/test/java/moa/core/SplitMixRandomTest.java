@@ -0,0 +1,49 @@
+/*
+ *    SplitMixRandomTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SplitMixRandomTest {
+
+	@Test
+	public void testSplitStreams() {
+		SplitMixRandom random = new SplitMixRandom(1);
+		SplitMixRandom[] streams = random.splitStreams(3);
+		for (int i = 0; i < 10; i++) {
+			random.nextLong();
+			streams[1].nextLong();
+		}
+		// A stream depends on the seed and its index only
+		SplitMixRandom[] otherStreams = new SplitMixRandom(1).splitStreams(3);
+		assertArrayEquals(draw(streams[0]), draw(otherStreams[0]));
+		assertArrayEquals(draw(random.split(2)), draw(otherStreams[2]));
+	}
+
+	protected static long[] draw(Random random) {
+		long[] values = new long[100];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextLong();
+		}
+		return values;
+	}
+}
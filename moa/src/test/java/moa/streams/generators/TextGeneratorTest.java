@@ -0,0 +1,70 @@
+/*
+ *    TextGeneratorTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.streams.generators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.bayes.NaiveBayesMultinomial;
+
+/**
+ * Checks that the sparse instances of the text generator hold the same values
+ * as the dense ones, and that multinomial Naive Bayes learns the same model
+ * from both.
+ */
+public class TextGeneratorTest {
+
+	@Test
+	public void testSparseInstances() {
+		TextGenerator dense = newGenerator(false);
+		TextGenerator sparse = newGenerator(true);
+		NaiveBayesMultinomial denseLearner = newLearner(dense);
+		NaiveBayesMultinomial sparseLearner = newLearner(sparse);
+		for (int i = 0; i < 2000; i++) {
+			Instance denseInstance = dense.nextInstance().getData();
+			Instance sparseInstance = sparse.nextInstance().getData();
+			assertEquals(denseInstance.numAttributes(), sparseInstance.numAttributes());
+			for (int j = 0; j < denseInstance.numAttributes(); j++) {
+				assertEquals("instance " + i, denseInstance.value(j), sparseInstance.value(j), 0.0);
+			}
+			assertArrayEquals("instance " + i, denseLearner.getVotesForInstance(denseInstance),
+					sparseLearner.getVotesForInstance(sparseInstance), 0.0);
+			denseLearner.trainOnInstance(denseInstance);
+			sparseLearner.trainOnInstance(sparseInstance);
+		}
+	}
+
+	protected static TextGenerator newGenerator(boolean sparse) {
+		TextGenerator generator = new TextGenerator();
+		generator.numAttsOption.setValue(500);
+		generator.sparseOption.setValue(sparse);
+		generator.prepareForUse();
+		return generator;
+	}
+
+	protected static NaiveBayesMultinomial newLearner(TextGenerator generator) {
+		NaiveBayesMultinomial learner = new NaiveBayesMultinomial();
+		learner.setModelContext(generator.getHeader());
+		learner.prepareForUse();
+		return learner;
+	}
+}
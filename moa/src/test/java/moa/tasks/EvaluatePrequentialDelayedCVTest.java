@@ -0,0 +1,102 @@
+/*
+ *    EvaluatePrequentialDelayedCVTest.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.bayes.NaiveBayes;
+import moa.evaluation.preview.LearningCurve;
+import moa.options.ClassOption;
+
+/**
+ * Checks that the delayed cross-validation gives the same learning curves
+ * with one job as with several jobs.
+ */
+public class EvaluatePrequentialDelayedCVTest {
+
+	protected static final String TASK = "EvaluatePrequentialDelayedCV -s (generators.RandomRBFGeneratorDrift -s 0.01)"
+			+ " -i 3000 -f 250 -k 100 -w 6";
+
+	@Test
+	public void testNaiveBayes() throws Exception {
+		assertSameCurves("-l bayes.NaiveBayes");
+		assertSameCurves("-l bayes.NaiveBayes -a Bootstrap-Validation");
+	}
+
+	@Test
+	public void testLearnNSE() throws Exception {
+		assertSameCurves("-l (meta.LearnNSE -p 100)");
+	}
+
+	@Test
+	public void testLearnerChangingInstances() throws Exception {
+		assertSameCurves("-l " + WeightChangingNaiveBayes.class.getName());
+	}
+
+	protected void assertSameCurves(String options) throws Exception {
+		double[] expected = learningCurve(options, 1);
+		assertTrue(expected.length > 0);
+		assertArrayEquals(options, expected, learningCurve(options, 3), 0.0);
+	}
+
+	/**
+	 * Runs the task and returns all measurements of its learning curve except
+	 * the times and the memory costs, which depend on the threads.
+	 */
+	protected static double[] learningCurve(String options, int numberOfJobs) throws Exception {
+		Task task = (Task) ClassOption.cliStringToObject(TASK + " " + options + " -j " + numberOfJobs, Task.class, null);
+		LearningCurve curve = (LearningCurve) task.doTask();
+		List<Double> values = new ArrayList<Double>();
+		for (int entry = 0; entry < curve.numEntries(); entry++) {
+			for (int m = 0; m < curve.getMeasurementNameCount(); m++) {
+				String name = curve.getMeasurementName(m);
+				if (!name.contains("time") && !name.contains("RAM-Hours")) {
+					values.add(curve.getMeasurement(entry, m));
+				}
+			}
+		}
+		double[] result = new double[values.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Naive Bayes that changes the weight of every instance it trains on, so
+	 * that folds sharing an instance would affect each other.
+	 */
+	public static class WeightChangingNaiveBayes extends NaiveBayes {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void trainOnInstanceImpl(Instance inst) {
+			super.trainOnInstanceImpl(inst);
+			inst.setWeight(inst.weight() * 2.0);
+		}
+	}
+}